@@ -24,10 +24,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.mime.MimeTypes;
 import org.apache.tika.utils.StringUtils;
 
 /**
@@ -44,6 +46,12 @@ public class CompositeDetector implements Detector {
 
     private final List<Detector> detectors;
 
+    /**
+     * Number of bytes read ahead into the buffer shared by the component
+     * detectors, see {@link TikaInputStream#peekPrefix(int)}.
+     */
+    private final int prefixLength;
+
     public CompositeDetector(MediaTypeRegistry registry, List<Detector> detectors,
                              Collection<Class<? extends Detector>> excludeDetectors) {
         if (excludeDetectors == null || excludeDetectors.isEmpty()) {
@@ -57,6 +65,7 @@ public class CompositeDetector implements Detector {
             }
         }
         this.registry = registry;
+        this.prefixLength = getPrefixLength(this.detectors);
     }
 
     public CompositeDetector(MediaTypeRegistry registry, List<Detector> detectors) {
@@ -78,6 +87,12 @@ public class CompositeDetector implements Detector {
         }
         MediaType type = MediaType.OCTET_STREAM;
 
+        if (prefixLength > 0 && input instanceof TikaInputStream) {
+            // Read the longest prefix needed by any of the detectors up front,
+            // so that they can all share it instead of each reading their own
+            ((TikaInputStream) input).peekPrefix(prefixLength);
+        }
+
         //we have to iterate through all detectors because the override detector may
         //be within a CompositeDetector
         for (Detector detector : getDetectors()) {
@@ -111,6 +126,23 @@ public class CompositeDetector implements Detector {
         }
         return null;
     }
+    /**
+     * Returns the length of the longest prefix that any of the given
+     * detectors is known to read from the document stream, or zero if
+     * none of them is known to read a prefix.
+     */
+    private static int getPrefixLength(List<Detector> detectors) {
+        int length = 0;
+        for (Detector detector : detectors) {
+            if (detector instanceof MimeTypes) {
+                length = Math.max(length, ((MimeTypes) detector).getMinLength());
+            } else if (detector instanceof CompositeDetector) {
+                length = Math.max(length, ((CompositeDetector) detector).prefixLength);
+            }
+        }
+        return length;
+    }
+
     /**
      * Returns the component detectors.
      */
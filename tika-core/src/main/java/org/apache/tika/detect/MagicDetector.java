@@ -16,18 +16,16 @@
  */
 package org.apache.tika.detect;
 
-import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 
@@ -90,6 +88,18 @@ public class MagicDetector implements Detector {
      * starts at this offset.
      */
     private final int offsetRangeEnd;
+    /**
+     * The compiled regular expression if {@link #isRegex} is true,
+     * <code>null</code> otherwise. Compiled patterns are immutable and
+     * safe for use by multiple concurrent detections.
+     */
+    private final Pattern regex;
+    /**
+     * Index of the first pattern byte that is compared exactly (full mask,
+     * case-sensitive), or -1 if there is none. Used to quickly skip the
+     * windows that can't match when scanning an offset range.
+     */
+    private final int scanIndex;
 
     /**
      * Creates a detector for input documents that have the exact given byte
@@ -181,6 +191,27 @@ public class MagicDetector implements Detector {
 
         this.offsetRangeBegin = offsetRangeBegin;
         this.offsetRangeEnd = offsetRangeEnd;
+
+        if (this.isRegex) {
+            int flags = 0;
+            if (this.isStringIgnoreCase) {
+                flags = Pattern.CASE_INSENSITIVE;
+            }
+            this.regex = Pattern.compile(new String(this.pattern, UTF_8), flags);
+        } else {
+            this.regex = null;
+        }
+
+        int firstExact = -1;
+        if (!this.isRegex && !this.isStringIgnoreCase) {
+            for (int i = 0; i < this.patternLength; i++) {
+                if (this.mask[i] == (byte) 0xFF) {
+                    firstExact = i;
+                    break;
+                }
+            }
+        }
+        this.scanIndex = firstExact;
     }
 
     public static MagicDetector parse(MediaType mediaType, String type, String offset, String value,
@@ -341,6 +372,12 @@ public class MagicDetector implements Detector {
             return MediaType.OCTET_STREAM;
         }
 
+        if (input instanceof TikaInputStream) {
+            // Use the read-ahead buffer shared with the other detectors
+            byte[] prefix = ((TikaInputStream) input).peekPrefix(offsetRangeEnd + length);
+            return matches(prefix) ? type : MediaType.OCTET_STREAM;
+        }
+
         input.mark(offsetRangeEnd + length);
         try {
             int offset = 0;
@@ -373,44 +410,15 @@ public class MagicDetector implements Detector {
             }
 
             if (this.isRegex) {
-                int flags = 0;
-                if (this.isStringIgnoreCase) {
-                    flags = Pattern.CASE_INSENSITIVE;
-                }
-
-                Pattern p = Pattern.compile(new String(this.pattern, UTF_8), flags);
-
-                ByteBuffer bb = ByteBuffer.wrap(buffer);
-                CharBuffer result = ISO_8859_1.decode(bb);
-                Matcher m = p.matcher(result);
-
-                boolean match = false;
-                // Loop until we've covered the entire offset range
-                for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
-                    m.region(i, length + i);
-                    match = m.lookingAt(); // match regex from start of region
-                    if (match) {
-                        return type;
-                    }
+                if (matchesRegex(buffer, 0)) {
+                    return type;
                 }
             } else {
                 if (offset < offsetRangeBegin + length) {
                     return MediaType.OCTET_STREAM;
                 }
-                // Loop until we've covered the entire offset range
-                for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
-                    boolean match = true;
-                    int masked;
-                    for (int j = 0; match && j < length; j++) {
-                        masked = (buffer[i + j] & mask[j]);
-                        if (this.isStringIgnoreCase) {
-                            masked = Character.toLowerCase(masked);
-                        }
-                        match = (masked == pattern[j]);
-                    }
-                    if (match) {
-                        return type;
-                    }
+                if (matchesBytes(buffer, 0)) {
+                    return type;
                 }
             }
 
@@ -420,10 +428,190 @@ public class MagicDetector implements Detector {
         }
     }
 
+    /**
+     * Checks whether the given document prefix matches this magic. This
+     * gives the same result as calling {@link #detect(InputStream, Metadata)}
+     * with a stream over the given bytes, but works directly on the array
+     * so that callers that already hold the document prefix in memory
+     * don't need to wrap it in a stream or copy it into a new buffer.
+     *
+     * @param prefix first few bytes of the document
+     * @return <code>true</code> if the prefix matches, <code>false</code> otherwise
+     * @since Apache Tika 2.8.0
+     */
+    public boolean matches(byte[] prefix) {
+        if (prefix == null || prefix.length < offsetRangeBegin) {
+            return false;
+        }
+        if (this.isRegex) {
+            return matchesRegex(prefix, offsetRangeBegin);
+        }
+        if (prefix.length < offsetRangeBegin + length) {
+            return false;
+        }
+        return matchesBytes(prefix, offsetRangeBegin);
+    }
+
+    /**
+     * Matches the regular expression against every window in the offset
+     * range, with the first window starting at <code>start</code> in the
+     * given data. The bytes are seen as ISO_8859_1 characters without
+     * being decoded or copied.
+     */
+    private boolean matchesRegex(byte[] data, int start) {
+        Matcher m = regex.matcher(new Latin1Sequence(data, start,
+                length + (offsetRangeEnd - offsetRangeBegin)));
+
+        // Loop until we've covered the entire offset range
+        for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
+            m.region(i, length + i);
+            if (m.lookingAt()) { // match regex from start of region
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the (masked) pattern against every window in the offset
+     * range, with the first window starting at <code>start</code> in the
+     * given data. Bytes past the end of the data are treated as zero, just
+     * like the unfilled tail of the buffer in
+     * {@link #detect(InputStream, Metadata)}.
+     */
+    private boolean matchesBytes(byte[] data, int start) {
+        // Loop until we've covered the entire offset range
+        for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
+            if (scanIndex != -1) {
+                int index = start + i + scanIndex;
+                byte value = index < data.length ? data[index] : 0;
+                if (value != pattern[scanIndex]) {
+                    continue;
+                }
+            }
+            boolean match = true;
+            int masked;
+            for (int j = 0; match && j < length; j++) {
+                int index = start + i + j;
+                masked = index < data.length ? (data[index] & mask[j]) : 0;
+                if (this.isStringIgnoreCase) {
+                    masked = Character.toLowerCase(masked);
+                }
+                match = (masked == pattern[j]);
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read-only ISO_8859_1 view of a window of bytes, where each byte is
+     * mapped to the char of the same (unsigned) value. Bytes past the end
+     * of the array are seen as zero chars, just like the unfilled tail of
+     * the buffer in {@link #detect(InputStream, Metadata)}.
+     */
+    private static final class Latin1Sequence implements CharSequence {
+
+        private final byte[] data;
+
+        private final int start;
+
+        private final int length;
+
+        private Latin1Sequence(byte[] data, int start, int length) {
+            this.data = data;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+            }
+            int position = start + index;
+            return position < data.length ? (char) (data[position] & 0xFF) : 0;
+        }
+
+        @Override
+        public CharSequence subSequence(int begin, int end) {
+            if (begin < 0 || end > length || begin > end) {
+                throw new IndexOutOfBoundsException(
+                        "Range: [" + begin + "," + end + "), length: " + length);
+            }
+            return new Latin1Sequence(data, start + begin, end - begin);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+
+    }
+
     public int getLength() {
         return this.patternLength;
     }
 
+    /**
+     * @return first offset (inclusive) of the comparison window
+     * @since Apache Tika 2.8.0
+     */
+    public int getOffsetRangeBegin() {
+        return offsetRangeBegin;
+    }
+
+    /**
+     * @return last offset (inclusive) of the comparison window
+     * @since Apache Tika 2.8.0
+     */
+    public int getOffsetRangeEnd() {
+        return offsetRangeEnd;
+    }
+
+    /**
+     * @return <code>true</code> if the pattern is a regular expression
+     * @since Apache Tika 2.8.0
+     */
+    public boolean isRegex() {
+        return isRegex;
+    }
+
+    /**
+     * @return <code>true</code> if this is a case-insensitive string match
+     * @since Apache Tika 2.8.0
+     */
+    public boolean isStringIgnoreCase() {
+        return isStringIgnoreCase;
+    }
+
+    /**
+     * @return a copy of the (already masked) magic match pattern
+     * @since Apache Tika 2.8.0
+     */
+    public byte[] getPattern() {
+        return pattern.clone();
+    }
+
+    /**
+     * @return a copy of the bit mask applied to the source bytes
+     * @since Apache Tika 2.8.0
+     */
+    public byte[] getMask() {
+        return mask.clone();
+    }
+
     /**
      * Returns a string representation of the Detection Rule.
      * Should sort nicely by type and details, as we sometimes
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 
@@ -115,10 +116,16 @@ public class TextDetector implements Detector {
             return MediaType.OCTET_STREAM;
         }
 
+        TextStatistics stats = new TextStatistics();
+        if (input instanceof TikaInputStream) {
+            // Use the read-ahead buffer shared with the other detectors
+            byte[] prefix = ((TikaInputStream) input).peekPrefix(bytesToTest);
+            stats.addData(prefix, 0, Math.min(prefix.length, bytesToTest));
+            return detect(stats);
+        }
+
         input.mark(bytesToTest);
         try {
-            TextStatistics stats = new TextStatistics();
-
             byte[] buffer = new byte[1024];
             int n = 0;
             int m = input.read(buffer, 0, Math.min(bytesToTest, buffer.length));
@@ -128,14 +135,18 @@ public class TextDetector implements Detector {
                 m = input.read(buffer, 0, Math.min(bytesToTest - n, buffer.length));
             }
 
-            if (stats.isMostlyAscii() || stats.looksLikeUTF8()) {
-                return MediaType.TEXT_PLAIN;
-            } else {
-                return MediaType.OCTET_STREAM;
-            }
+            return detect(stats);
         } finally {
             input.reset();
         }
     }
 
+    private MediaType detect(TextStatistics stats) {
+        if (stats.isMostlyAscii() || stats.looksLikeUTF8()) {
+            return MediaType.TEXT_PLAIN;
+        } else {
+            return MediaType.OCTET_STREAM;
+        }
+    }
+
 }
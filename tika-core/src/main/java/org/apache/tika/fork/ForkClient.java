@@ -41,6 +41,7 @@ import org.apache.tika.exception.TikaException;
 import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
 import org.apache.tika.utils.ProcessUtils;
+import org.apache.tika.utils.SharedArchiveUtils;
 
 class ForkClient {
     private static final AtomicInteger CLIENT_COUNTER = new AtomicInteger(0);
@@ -81,6 +82,17 @@ class ForkClient {
     public ForkClient(Path tikaDir, ParserFactoryFactory parserFactoryFactory,
                       ClassLoader classLoader, List<String> java, TimeoutLimits timeoutLimits)
             throws IOException, TikaException {
+        this(tikaDir, parserFactoryFactory, classLoader, java, timeoutLimits, null);
+    }
+
+    /**
+     * @param sharedArchiveFile AppCDS archive for the child server, may be <code>null</code>;
+     *                          see {@link SharedArchiveUtils}
+     */
+    public ForkClient(Path tikaDir, ParserFactoryFactory parserFactoryFactory,
+                      ClassLoader classLoader, List<String> java, TimeoutLimits timeoutLimits,
+                      Path sharedArchiveFile)
+            throws IOException, TikaException {
         jar = null;
         loader = null;
         boolean ok = false;
@@ -95,6 +107,8 @@ class ForkClient {
         }
         dirString = ProcessUtils.escapeCommandLine(dirString);
         command.add(dirString);
+        command.addAll(1, SharedArchiveUtils.getJvmArgs(command.get(0),
+                new ArrayList<>(command.subList(1, command.size())), sharedArchiveFile));
         command.add("org.apache.tika.fork.ForkServer");
         command.add(Long.toString(timeoutLimits.getPulseMS()));
         command.add(Long.toString(timeoutLimits.getParseTimeoutMS()));
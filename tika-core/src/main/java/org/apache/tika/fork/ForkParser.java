@@ -20,6 +20,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -78,6 +79,8 @@ public class ForkParser extends AbstractParser implements Closeable {
     @Field
     private long serverWaitTimeoutMillis = 60000;
 
+    private Path sharedArchiveFile = null;
+
     @Field
     private int maxFilesProcessedPerClient = -1;
 
@@ -348,13 +351,15 @@ public class ForkParser extends AbstractParser implements Closeable {
         TimeoutLimits timeoutLimits = new TimeoutLimits(serverPulseMillis, serverParseTimeoutMillis,
                 serverWaitTimeoutMillis);
         if (loader == null && parser == null && tikaBin != null && parserFactoryFactory != null) {
-            return new ForkClient(tikaBin, parserFactoryFactory, java, timeoutLimits);
+            return new ForkClient(tikaBin, parserFactoryFactory, null, java, timeoutLimits,
+                    sharedArchiveFile);
         } else if (loader != null && parser != null && tikaBin == null &&
                 parserFactoryFactory == null) {
             return new ForkClient(loader, parser, java, timeoutLimits);
         } else if (loader != null && parser == null && tikaBin != null &&
                 parserFactoryFactory != null) {
-            return new ForkClient(tikaBin, parserFactoryFactory, loader, java, timeoutLimits);
+            return new ForkClient(tikaBin, parserFactoryFactory, loader, java, timeoutLimits,
+                    sharedArchiveFile);
         } else {
             //TODO: make this more useful
             throw new IllegalStateException("Unexpected combination of state items");
@@ -424,4 +429,31 @@ public class ForkParser extends AbstractParser implements Closeable {
         this.maxFilesProcessedPerClient = maxFilesProcessedPerClient;
     }
 
+    /**
+     * AppCDS archive for the forked servers; it is created by a training run in
+     * the background if it doesn't exist yet. See
+     * {@link org.apache.tika.utils.SharedArchiveUtils}.
+     * This requires java 13 or later, and it is only used when the servers are
+     * started from a directory of jars (<code>tikaBin</code>), not with the legacy
+     * bootstrap jar.
+     * Default is <code>null</code>, which turns this off.
+     *
+     * @param sharedArchiveFile
+     */
+    public void setSharedArchiveFile(Path sharedArchiveFile) {
+        this.sharedArchiveFile = sharedArchiveFile;
+    }
+
+    /**
+     * @see #setSharedArchiveFile(Path)
+     */
+    @Field
+    public void setSharedArchiveFile(String sharedArchiveFile) {
+        setSharedArchiveFile(Paths.get(sharedArchiveFile));
+    }
+
+    public Path getSharedArchiveFile() {
+        return sharedArchiveFile;
+    }
+
 }
@@ -25,19 +25,23 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Blob;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import org.apache.commons.io.input.TaggedInputStream;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
@@ -98,6 +102,12 @@ public class TikaInputStream extends TaggedInputStream {
      * then the value is <code>null</code>.
      */
     private Path path;
+    /**
+     * The full contents of this stream, if it has been spooled to memory
+     * by a call to the {@link #spoolToMemory(int)} method. Otherwise
+     * <code>null</code>.
+     */
+    private byte[] data;
     /**
      * Total length of the stream, or -1 if unknown.
      */
@@ -118,6 +128,20 @@ public class TikaInputStream extends TaggedInputStream {
     private Object openContainer;
     private int consecutiveEOFs = 0;
     private byte[] skipBuffer;
+    /**
+     * Read-ahead buffer shared by all callers of {@link #peekPrefix(int)},
+     * or <code>null</code> if nothing has been peeked at yet.
+     */
+    private byte[] prefix;
+    /**
+     * Stream position at which the {@link #prefix} starts.
+     */
+    private long prefixPosition = -1;
+    /**
+     * Number of bytes requested when the {@link #prefix} was read. If the
+     * prefix is shorter than that, the end of the stream has been reached.
+     */
+    private int prefixCapacity = 0;
 
     //suffix of the file if known. This is used to create temp files
     //with the right suffixes. This should include the initial . as in ".doc"
@@ -633,6 +657,37 @@ public class TikaInputStream extends TaggedInputStream {
         return n;
     }
 
+    /**
+     * Returns upcoming bytes from this stream without advancing the current
+     * stream position, like {@link #peek(byte[])}. Unlike that method, the
+     * bytes are read into a buffer that is kept and shared by all callers
+     * peeking at the same position. This allows all the detectors in a
+     * chain to look at the same document prefix while it is read only once
+     * from the underlying stream.
+     * <p>
+     * The returned array holds at least <code>length</code> bytes, unless the
+     * end of stream is encountered before that. It can hold more bytes if a
+     * longer prefix was already read at this position, so callers should only
+     * look at the first <code>length</code> bytes. The array is shared and
+     * must not be modified.
+     *
+     * @param length number of bytes needed by the caller
+     * @return shared buffer with the upcoming bytes
+     * @throws IOException if the stream can not be read
+     * @since Apache Tika 2.8.0
+     */
+    public byte[] peekPrefix(int length) throws IOException {
+        if (prefix == null || prefixPosition != position ||
+                (prefix.length < length && prefix.length == prefixCapacity)) {
+            byte[] buffer = new byte[length];
+            int n = peek(buffer);
+            prefix = n < length ? Arrays.copyOf(buffer, n) : buffer;
+            prefixCapacity = length;
+            prefixPosition = position;
+        }
+        return prefix;
+    }
+
     /**
      * Returns the open container object if any, such as a
      * POIFS FileSystem in the event of an OLE2 document
@@ -726,33 +781,115 @@ public class TikaInputStream extends TaggedInputStream {
                     Files.copy(this, tmpFile, REPLACE_EXISTING);
                 }
                 //successful so far, set tis' path to tmpFile
-                path = tmpFile;
-
-                // Create a new input stream and make sure it'll get closed
-                InputStream newStream = Files.newInputStream(path);
-                tmp.addResource(newStream);
-
-                // Replace the spooled stream with the new stream in a way
-                // that still ends up closing the old stream if or when the
-                // close() method is called. The closing of the new stream
-                // is already being handled as noted above.
-                final InputStream oldStream = in;
-                in = new BufferedInputStream(newStream) {
-                    @Override
-                    public void close() throws IOException {
-                        oldStream.close();
-                    }
-                };
-
-                // Update length to file size. Update position, mark
-                length = Files.size(path);
-                position = 0;
-                mark = -1;
+                useSpooledFile(tmpFile);
             }
         }
         return path;
     }
 
+    private void useSpooledFile(Path tmpFile) throws IOException {
+        path = tmpFile;
+
+        // Create a new input stream and make sure it'll get closed
+        InputStream newStream = Files.newInputStream(path);
+        tmp.addResource(newStream);
+
+        // Replace the spooled stream with the new stream in a way
+        // that still ends up closing the old stream if or when the
+        // close() method is called. The closing of the new stream
+        // is already being handled as noted above.
+        final InputStream oldStream = in;
+        in = new BufferedInputStream(newStream) {
+            @Override
+            public void close() throws IOException {
+                oldStream.close();
+            }
+        };
+
+        // Update length to file size. Update position, mark
+        length = Files.size(path);
+        position = 0;
+        mark = -1;
+    }
+
+    /**
+     * Reads the entire stream into memory, as long as it is no longer than
+     * <code>maxBytes</code>. This is an alternative to spooling the stream to
+     * a temporary file with {@link #getPath()}, for consumers that can work
+     * with the {@link #getSeekableByteChannel() channel} instead of a file.
+     * For small to medium sized documents, this avoids the cost of creating,
+     * writing and deleting the temporary file.
+     * <p>
+     * Nothing is done if this stream is already backed by a file, or if it
+     * is already being read. If the stream is longer than <code>maxBytes</code>,
+     * then callers can fall back to {@link #getPath()} or {@link #getPath(int)}.
+     * If its length wasn't known, the bytes that were read to find that out
+     * are kept in memory in front of the rest of the stream, which is left
+     * unread.
+     *
+     * @param maxBytes maximum number of bytes to keep in memory
+     * @return <code>true</code> if the full contents of the stream are
+     * now available in memory, <code>false</code> otherwise
+     * @throws IOException if the stream can not be read
+     * @since Apache Tika 2.8.0
+     */
+    public boolean spoolToMemory(int maxBytes) throws IOException {
+        if (data != null) {
+            return true;
+        } else if (path != null || maxBytes < 0 || length > maxBytes || position > 0) {
+            return false;
+        }
+
+        UnsynchronizedByteArrayOutputStream bytes = new UnsynchronizedByteArrayOutputStream();
+        // Read one more byte than allowed, to tell whether the stream was too long.
+        // This reads the underlying stream directly; a mark would make the buffer
+        // of that stream grow to hold a second copy of the bytes.
+        int readLimit = maxBytes == Integer.MAX_VALUE ? maxBytes : maxBytes + 1;
+        bytes.write(new BoundedInputStream(readLimit, in));
+        if (bytes.size() > maxBytes) {
+            // Put the bytes that were read back in front of the rest of the
+            // stream, so that the caller can still apply its own bound, e.g.
+            // with getPath(int), rather than having the whole stream on disk
+            in = new BufferedInputStream(
+                    new SequenceInputStream(bytes.toInputStream(), in));
+            return false;
+        }
+
+        data = bytes.toByteArray();
+
+        // Replace the spooled stream with an in-memory stream in a way
+        // that still ends up closing the old stream, as in getPath()
+        final InputStream oldStream = in;
+        in = new UnsynchronizedByteArrayInputStream(data) {
+            @Override
+            public void close() throws IOException {
+                oldStream.close();
+            }
+        };
+        length = data.length;
+        position = 0;
+        mark = -1;
+        return true;
+    }
+
+    /**
+     * Returns a channel for random access to the contents of this stream.
+     * If the stream has been {@link #spoolToMemory(int) spooled to memory},
+     * then a read-only channel over the in-memory copy is returned.
+     * Otherwise this is the same as {@link #getFileChannel()}, which may
+     * spool the stream to a temporary file.
+     *
+     * @return channel positioned at the start of the stream
+     * @throws IOException if the channel can not be opened
+     * @since Apache Tika 2.8.0
+     */
+    public SeekableByteChannel getSeekableByteChannel() throws IOException {
+        if (data != null) {
+            return new ByteArraySeekableByteChannel(data, data.length);
+        }
+        return getFileChannel();
+    }
+
     /**
      * @see #getPath()
      */
@@ -841,6 +978,8 @@ public class TikaInputStream extends TaggedInputStream {
     public void close() throws IOException {
         path = null;
         mark = -1;
+        prefix = null;
+        data = null;
 
         // The close method was explicitly called, so we indeed
         // are expected to close the input stream. Handle that
@@ -43,6 +43,17 @@ class AndClause implements Clause {
         return size;
     }
 
+    public MagicIndex.Anchor getAnchor() {
+        // All the clauses must match, so any of their anchors will do
+        for (Clause clause : clauses) {
+            MagicIndex.Anchor anchor = clause.getAnchor();
+            if (anchor != null) {
+                return anchor;
+            }
+        }
+        return null;
+    }
+
     public String toString() {
         return "and" + Arrays.toString(clauses);
     }
@@ -34,4 +34,14 @@ interface Clause extends Serializable {
      */
     int size();
 
+    /**
+     * Returns a single byte that every chunk of data matched by this clause
+     * must contain at a fixed offset, or <code>null</code> if there is no
+     * such byte. Used to index the magics so that clauses that can't
+     * possibly match are skipped without being evaluated.
+     */
+    default MagicIndex.Anchor getAnchor() {
+        return null;
+    }
+
 }
@@ -53,6 +53,10 @@ class Magic implements Clause, Comparable<Magic> {
         return clause.size();
     }
 
+    public MagicIndex.Anchor getAnchor() {
+        return clause.getAnchor();
+    }
+
     public String toString() {
         return string;
     }
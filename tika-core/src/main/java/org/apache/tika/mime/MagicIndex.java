@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled form of the sorted list of all registered magics, built once
+ * after all the types have been loaded.
+ * <p>
+ * Most magics require a specific byte at a fixed offset (e.g. the first
+ * byte of a file signature at offset zero). Those magics are indexed by
+ * that offset and byte value, so that for a given document prefix only
+ * the magics whose anchor byte is actually present get evaluated. This
+ * is done by looking up each distinct anchor offset once, instead of
+ * evaluating every one of the ~1,500 magics in turn. Magics without an
+ * anchor (regular expressions, offset ranges, etc.) are always evaluated.
+ * <p>
+ * The candidate magics are evaluated in the same sort order as the full
+ * list, so the results are identical to a linear walk over all magics.
+ */
+final class MagicIndex implements Serializable {
+
+    private static final long serialVersionUID = 2916582385364071218L;
+
+    private static final int[] NO_MAGICS = new int[0];
+
+    /**
+     * All the magics, in priority order.
+     */
+    private final Magic[] magics;
+
+    /**
+     * Distinct offsets of all the anchor bytes.
+     */
+    private final int[] anchorOffsets;
+
+    /**
+     * For each anchor offset, and each possible byte value at that
+     * offset, the indexes of the magics anchored on that byte.
+     */
+    private final int[][][] anchoredMagics;
+
+    /**
+     * Indexes of the magics that have no anchor, and so always need
+     * to be evaluated.
+     */
+    private final BitSet unanchoredMagics;
+
+    MagicIndex(List<Magic> sortedMagics) {
+        this.magics = sortedMagics.toArray(new Magic[0]);
+        this.unanchoredMagics = new BitSet(magics.length);
+
+        Map<Integer, List<List<Integer>>> byOffset = new TreeMap<>();
+        for (int i = 0; i < magics.length; i++) {
+            Anchor anchor = magics[i].getAnchor();
+            if (anchor == null) {
+                unanchoredMagics.set(i);
+                continue;
+            }
+            List<List<Integer>> byValue = byOffset.get(anchor.offset);
+            if (byValue == null) {
+                byValue = new ArrayList<>(256);
+                for (int b = 0; b < 256; b++) {
+                    byValue.add(null);
+                }
+                byOffset.put(anchor.offset, byValue);
+            }
+            int value = anchor.value & 0xFF;
+            if (byValue.get(value) == null) {
+                byValue.set(value, new ArrayList<>());
+            }
+            byValue.get(value).add(i);
+        }
+
+        this.anchorOffsets = new int[byOffset.size()];
+        this.anchoredMagics = new int[byOffset.size()][][];
+        int o = 0;
+        for (Map.Entry<Integer, List<List<Integer>>> entry : byOffset.entrySet()) {
+            anchorOffsets[o] = entry.getKey();
+            anchoredMagics[o] = new int[256][];
+            for (int b = 0; b < 256; b++) {
+                List<Integer> indexes = entry.getValue().get(b);
+                if (indexes == null) {
+                    anchoredMagics[o][b] = NO_MAGICS;
+                } else {
+                    anchoredMagics[o][b] = new int[indexes.size()];
+                    for (int j = 0; j < indexes.size(); j++) {
+                        anchoredMagics[o][b][j] = indexes.get(j);
+                    }
+                }
+            }
+            o++;
+        }
+    }
+
+    /**
+     * Returns the types of the highest priority magics that match the
+     * given document prefix, or an empty list if no magic matches.
+     *
+     * @param data first few bytes of a document stream, never empty
+     * @return matching types
+     */
+    List<MimeType> match(byte[] data) {
+        BitSet candidates = candidates(data);
+
+        List<MimeType> result = new ArrayList<>(1);
+        int currentPriority = -1;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Magic magic = magics[i];
+            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
+                break;
+            }
+            if (magic.eval(data)) {
+                result.add(magic.getType());
+                currentPriority = magic.getPriority();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether any of the magics of the given type match the given
+     * document prefix.
+     */
+    boolean matches(MimeType type, byte[] data) {
+        BitSet candidates = candidates(data);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (magics[i].getType().equals(type) && magics[i].eval(data)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BitSet candidates(byte[] data) {
+        BitSet candidates = (BitSet) unanchoredMagics.clone();
+        for (int o = 0; o < anchorOffsets.length; o++) {
+            int offset = anchorOffsets[o];
+            if (offset >= data.length) {
+                // Offsets are sorted, so no other anchor can match either
+                break;
+            }
+            for (int i : anchoredMagics[o][data[offset] & 0xFF]) {
+                candidates.set(i);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * A byte that must be present at a fixed offset for a clause to match.
+     */
+    static final class Anchor {
+
+        private final int offset;
+
+        private final byte value;
+
+        Anchor(int offset, byte value) {
+            this.offset = offset;
+            this.value = value;
+        }
+
+        public String toString() {
+            return value + "@" + offset;
+        }
+
+    }
+
+}
@@ -16,12 +16,7 @@
  */
 package org.apache.tika.mime;
 
-import java.io.IOException;
-
-import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
-
 import org.apache.tika.detect.MagicDetector;
-import org.apache.tika.metadata.Metadata;
 
 /**
  * Defines a magic match.
@@ -56,19 +51,30 @@ class MagicMatch implements Clause {
     }
 
     public boolean eval(byte[] data) {
-        try {
-            return getDetector().detect(new UnsynchronizedByteArrayInputStream(data), new Metadata()) !=
-                    MediaType.OCTET_STREAM;
-        } catch (IOException e) {
-            // Should never happen with a ByteArrayInputStream
-            return false;
-        }
+        return getDetector().matches(data);
     }
 
     public int size() {
         return getDetector().getLength();
     }
 
+    public MagicIndex.Anchor getAnchor() {
+        MagicDetector detector = getDetector();
+        if (detector.isRegex() || detector.isStringIgnoreCase() ||
+                detector.getOffsetRangeBegin() != detector.getOffsetRangeEnd()) {
+            return null;
+        }
+        // Use the first byte of the pattern that isn't affected by the mask
+        byte[] mask = detector.getMask();
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i] == (byte) 0xFF) {
+                return new MagicIndex.Anchor(detector.getOffsetRangeBegin() + i,
+                        detector.getPattern()[i]);
+            }
+        }
+        return null;
+    }
+
     public String toString() {
         return mediaType.toString() + " " + type + " " + offset + " " + value + " " + mask;
     }
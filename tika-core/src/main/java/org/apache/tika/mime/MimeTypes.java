@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +39,7 @@ import org.apache.tika.Tika;
 import org.apache.tika.detect.Detector;
 import org.apache.tika.detect.TextDetector;
 import org.apache.tika.detect.XmlRootExtractor;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 
@@ -109,6 +111,10 @@ public final class MimeTypes implements Detector, Serializable {
      * Sorted list of all registered magics
      */
     private final List<Magic> magics = new ArrayList<>();
+    /**
+     * Compiled index of the sorted magics, built by {@link #init()}
+     */
+    private MagicIndex magicIndex = null;
     /**
      * Sorted list of all registered rootXML
      */
@@ -228,15 +234,21 @@ public final class MimeTypes implements Detector, Serializable {
         }
 
         // Then, check for magic bytes
-        List<MimeType> result = new ArrayList<>(1);
-        int currentPriority = -1;
-        for (Magic magic : magics) {
-            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
-                break;
-            }
-            if (magic.eval(data)) {
-                result.add(magic.getType());
-                currentPriority = magic.getPriority();
+        MagicIndex index = magicIndex;
+        List<MimeType> result;
+        if (index != null) {
+            result = index.match(data);
+        } else {
+            result = new ArrayList<>(1);
+            int currentPriority = -1;
+            for (Magic magic : magics) {
+                if (currentPriority > 0 && currentPriority > magic.getPriority()) {
+                    break;
+                }
+                if (magic.eval(data)) {
+                    result.add(magic.getType());
+                    currentPriority = magic.getPriority();
+                }
             }
         }
 
@@ -264,13 +276,17 @@ public final class MimeTypes implements Detector, Serializable {
                         // So, if we got here, we might have a HTML file that's
                         //  invalid XML. So, try our HTML magics explicitly (TIKA-2419)
                         boolean isHTML = false;
-                        for (Magic magic : magics) {
-                            if (!magic.getType().equals(htmlMimeType)) {
-                                continue;
-                            }
-                            if (magic.eval(data)) {
-                                isHTML = true;
-                                break;
+                        if (index != null) {
+                            isHTML = index.matches(htmlMimeType, data);
+                        } else {
+                            for (Magic magic : magics) {
+                                if (!magic.getType().equals(htmlMimeType)) {
+                                    continue;
+                                }
+                                if (magic.eval(data)) {
+                                    isHTML = true;
+                                    break;
+                                }
                             }
                         }
 
@@ -477,6 +493,8 @@ public final class MimeTypes implements Detector, Serializable {
         // Update the magics index...
         if (type.hasMagic()) {
             magics.addAll(type.getMagics());
+            // ...which invalidates the compiled index until the next init()
+            magicIndex = null;
         }
 
         // Update the xml (xmlRoot) index...
@@ -487,7 +505,7 @@ public final class MimeTypes implements Detector, Serializable {
 
     /**
      * Called after all configured types have been loaded.
-     * Initializes the magics and xmls sets.
+     * Initializes the magics and xmls sets, and compiles the magics index.
      */
     void init() {
         for (MimeType type : types.values()) {
@@ -498,6 +516,7 @@ public final class MimeTypes implements Detector, Serializable {
         }
         Collections.sort(magics);
         Collections.sort(xmls);
+        magicIndex = new MagicIndex(magics);
     }
 
     /**
@@ -517,7 +536,14 @@ public final class MimeTypes implements Detector, Serializable {
         List<MimeType> possibleTypes = null;
 
         // Get type based on magic prefix
-        if (input != null) {
+        if (input instanceof TikaInputStream) {
+            // Use the read-ahead buffer shared with the other detectors
+            byte[] prefix = ((TikaInputStream) input).peekPrefix(getMinLength());
+            if (prefix.length > getMinLength()) {
+                prefix = Arrays.copyOf(prefix, getMinLength());
+            }
+            possibleTypes = getMimeType(prefix);
+        } else if (input != null) {
             input.mark(getMinLength());
             try {
                 byte[] prefix = readMagicHeader(input);
@@ -17,11 +17,14 @@
 package org.apache.tika.mime;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Defines a MimeType pattern.
@@ -44,13 +47,22 @@ class Patterns implements Serializable {
      * Index of extension patterns of the form "*extension".
      */
     private final Map<String, MimeType> extensions = new HashMap<>();
+    /**
+     * The extension patterns as a trie of reversed extensions, so that all
+     * the extensions of a name can be looked up in a single backwards pass
+     * over the name.
+     */
+    private final SuffixNode suffixes = new SuffixNode();
     /**
      * Index of generic glob patterns, sorted by length.
      */
     private final SortedMap<String, MimeType> globs =
             new TreeMap<>(new LengthComparator());
-    private int minExtensionLength = Integer.MAX_VALUE;
-    private int maxExtensionLength = 0;
+    /**
+     * All the glob patterns compiled into a single regular expression,
+     * or <code>null</code> if it needs to be (re)compiled.
+     */
+    private transient volatile CompiledGlobs compiledGlobs = null;
 
     public Patterns(MediaTypeRegistry registry) {
         this.registry = registry;
@@ -101,9 +113,11 @@ class Patterns implements Serializable {
         MimeType previous = extensions.get(extension);
         if (previous == null || registry.isSpecializationOf(previous.getType(), type.getType())) {
             extensions.put(extension, type);
-            int length = extension.length();
-            minExtensionLength = Math.min(minExtensionLength, length);
-            maxExtensionLength = Math.max(maxExtensionLength, length);
+            SuffixNode node = suffixes;
+            for (int i = extension.length() - 1; i >= 0; i--) {
+                node = node.addChild(extension.charAt(i));
+            }
+            node.type = type;
         } else if (previous == type ||
                 registry.isSpecializationOf(type.getType(), previous.getType())) {
             // do nothing
@@ -116,6 +130,7 @@ class Patterns implements Serializable {
         MimeType previous = globs.get(glob);
         if (previous == null || registry.isSpecializationOf(previous.getType(), type.getType())) {
             globs.put(glob, type);
+            compiledGlobs = null;
         } else if (previous == type ||
                 registry.isSpecializationOf(type.getType(), previous.getType())) {
             // do nothing
@@ -144,27 +159,38 @@ class Patterns implements Serializable {
         }
 
         // First, try exact match of the provided resource name
-        if (names.containsKey(name)) {
-            return names.get(name);
+        MimeType type = names.get(name);
+        if (type != null) {
+            return type;
         }
 
-        // Then try "extension" (*.xxx) matching
-        int maxLength = Math.min(maxExtensionLength, name.length());
-        for (int n = maxLength; n >= minExtensionLength; n--) {
-            String extension = name.substring(name.length() - n);
-            if (extensions.containsKey(extension)) {
-                return extensions.get(extension);
+        // Then try "extension" (*.xxx) matching, keeping the longest match
+        SuffixNode node = suffixes;
+        type = node.type;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            node = node.getChild(name.charAt(i));
+            if (node == null) {
+                break;
+            } else if (node.type != null) {
+                type = node.type;
             }
         }
+        if (type != null) {
+            return type;
+        }
 
         // And finally, try complex regexp matching
-        for (Map.Entry<String, MimeType> entry : globs.entrySet()) {
-            if (name.matches(entry.getKey())) {
-                return entry.getValue();
+        CompiledGlobs compiled = compiledGlobs;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = compiledGlobs;
+                if (compiled == null) {
+                    compiled = new CompiledGlobs(globs);
+                    compiledGlobs = compiled;
+                }
             }
         }
-
-        return null;
+        return compiled.matches(name);
     }
 
     private String compile(String glob) {
@@ -187,6 +213,106 @@ class Patterns implements Serializable {
         return pattern.toString();
     }
 
+    /**
+     * Node in the trie of reversed extensions. The children are kept in
+     * arrays sorted by character, so that lookups don't need to allocate.
+     */
+    private static final class SuffixNode implements Serializable {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 3152361618946539042L;
+
+        private char[] chars = new char[0];
+
+        private SuffixNode[] children = new SuffixNode[0];
+
+        /**
+         * Type of the extension that ends at this node, if any.
+         */
+        private MimeType type = null;
+
+        SuffixNode getChild(char ch) {
+            int i = Arrays.binarySearch(chars, ch);
+            return i >= 0 ? children[i] : null;
+        }
+
+        SuffixNode addChild(char ch) {
+            int i = Arrays.binarySearch(chars, ch);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            char[] newChars = new char[chars.length + 1];
+            SuffixNode[] newChildren = new SuffixNode[children.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(chars, i, newChars, i + 1, chars.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            newChars[i] = ch;
+            newChildren[i] = new SuffixNode();
+            chars = newChars;
+            children = newChildren;
+            return newChildren[i];
+        }
+
+    }
+
+    /**
+     * The glob patterns compiled into a single alternation, in the same
+     * (longest first) order as they would be tried one by one. Each glob is
+     * wrapped in a capturing group, so that the matching glob can be found
+     * from the first group that took part in the match.
+     */
+    private static final class CompiledGlobs {
+
+        private final Pattern pattern;
+
+        /**
+         * Group number of the capturing group wrapped around each glob.
+         */
+        private final int[] groups;
+
+        private final MimeType[] types;
+
+        CompiledGlobs(SortedMap<String, MimeType> globs) {
+            StringBuilder alternation = new StringBuilder();
+            groups = new int[globs.size()];
+            types = new MimeType[globs.size()];
+            int i = 0;
+            int group = 1;
+            for (Map.Entry<String, MimeType> entry : globs.entrySet()) {
+                if (i > 0) {
+                    alternation.append('|');
+                }
+                alternation.append('(').append(entry.getKey()).append(')');
+                groups[i] = group;
+                types[i] = entry.getValue();
+                // Skip over any groups within the glob itself
+                group += 1 + Pattern.compile(entry.getKey()).matcher("").groupCount();
+                i++;
+            }
+            pattern = globs.isEmpty() ? null : Pattern.compile(alternation.toString());
+        }
+
+        MimeType matches(String name) {
+            if (pattern == null) {
+                return null;
+            }
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                for (int i = 0; i < groups.length; i++) {
+                    if (matcher.start(groups[i]) != -1) {
+                        return types[i];
+                    }
+                }
+            }
+            return null;
+        }
+
+    }
+
     private static final class LengthComparator implements Comparator<String>, Serializable {
 
         /**
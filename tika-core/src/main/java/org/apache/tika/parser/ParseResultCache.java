@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.Property;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.digest.InputStreamDigester;
+import org.apache.tika.utils.ParserUtils;
+
+/**
+ * Bounded cache of parse results, keyed by a digest of the input bytes, so that
+ * byte-identical inputs (e.g. the same attachment in thousands of emails) are only
+ * parsed once. Set this in the {@link ParseContext} to have the
+ * {@link RecursiveParserWrapper} use it for the container document and for each
+ * embedded document.
+ * <p>
+ * Results are kept in memory, least recently used first out, up to an estimated
+ * number of bytes. If a directory is given, they are also written there, up to a
+ * number of bytes on disk; the least recently used files are deleted first. Several
+ * processes may share the directory. Only the classes of a metadata list are read back
+ * from the files.
+ * <p>
+ * This class is thread safe.
+ */
+public class ParseResultCache {
+
+    /**
+     * Set on the metadata of a document whose result came from the cache.
+     */
+    public static final Property CACHE_HIT = Property.internalBoolean(
+            TikaCoreProperties.TIKA_META_PREFIX + "parse_result_cache_hit");
+
+    public static final int DEFAULT_MARK_LIMIT = 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseResultCache.class);
+
+    private static final String DIGEST_PREFIX = TikaCoreProperties.TIKA_META_PREFIX + "digest" +
+            TikaCoreProperties.NAMESPACE_PREFIX_DELIMITER;
+    private static final String SUFFIX = ".rmeta";
+    //when the disk is full, delete down to this fraction of maxDiskBytes
+    private static final double DISK_LOW_WATER = 0.9;
+    //input metadata that can change the result, e.g. through detection
+    private static final String[] HINT_KEYS = new String[]{
+            TikaCoreProperties.RESOURCE_NAME_KEY, Metadata.CONTENT_TYPE,
+            TikaCoreProperties.CONTENT_TYPE_HINT.getName(),
+            TikaCoreProperties.CONTENT_TYPE_USER_OVERRIDE.getName(),
+            TikaCoreProperties.CONTENT_TYPE_PARSER_OVERRIDE.getName()};
+
+    private final DigestingParser.Digester digester;
+    private final long maxMemoryBytes;
+    private final Path directory;
+    private final long maxDiskBytes;
+    //guarded by itself
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private final AtomicLong diskBytes = new AtomicLong(0);
+
+    private final AtomicLong memoryHits = new AtomicLong(0);
+    private final AtomicLong diskHits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * A memory-only cache that digests with SHA-256.
+     */
+    public ParseResultCache(long maxMemoryBytes) throws IOException {
+        this(null, maxMemoryBytes, null, 0);
+    }
+
+    /**
+     * @param digester       digester for the keys, e.g. the one that is configured for the
+     *                       {@link DigestingParser}; if <code>null</code>, SHA-256 is used
+     * @param maxMemoryBytes estimated bytes of results to keep in memory
+     * @param directory      directory for the results on disk, or <code>null</code>
+     * @param maxDiskBytes   bytes of results to keep on disk
+     */
+    public ParseResultCache(DigestingParser.Digester digester, long maxMemoryBytes,
+                            Path directory, long maxDiskBytes) throws IOException {
+        this.digester = digester != null ? digester :
+                new InputStreamDigester(DEFAULT_MARK_LIMIT, "SHA-256", ParseResultCache::hex);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory == null ? null : Files.createDirectories(directory);
+        this.maxDiskBytes = maxDiskBytes;
+        if (this.directory != null) {
+            diskBytes.set(sizeOnDisk());
+        }
+    }
+
+    /**
+     * Digests the stream, which is reset afterwards. The key also holds the hints in
+     * the input metadata that can change the result: the resource name and the
+     * content types that are set before the parse.
+     *
+     * @param metadata the input metadata
+     * @param variant  anything else that the result depends on, e.g. the handler type
+     *                 and write limit
+     * @return the key, or <code>null</code> if the digester didn't produce a digest
+     */
+    public String getKey(TikaInputStream tis, Metadata metadata, String variant,
+                         ParseContext context) throws IOException {
+        Metadata digests = new Metadata();
+        digester.digest(tis, digests, context);
+        String[] names = digests.names();
+        Arrays.sort(names);
+        StringBuilder sb = new StringBuilder();
+        for (String n : names) {
+            if (n.startsWith(DIGEST_PREFIX)) {
+                sb.append(n.substring(DIGEST_PREFIX.length())).append('=')
+                        .append(digests.get(n)).append(';');
+            }
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        sb.append(variant);
+        for (String n : HINT_KEYS) {
+            String[] values = metadata.getValues(n);
+            if (values.length > 0) {
+                sb.append(';').append(n).append('=').append(String.join(",", values));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a copy of the cached result, or <code>null</code>
+     */
+    public List<Metadata> get(String key) {
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            return copy(entry.metadataList);
+        }
+        List<Metadata> fromDisk = readFromDisk(key);
+        if (fromDisk != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, new Entry(copy(fromDisk)));
+            return fromDisk;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, List<Metadata> metadataList) {
+        Entry entry = new Entry(copy(metadataList));
+        putInMemory(key, entry);
+        if (directory != null) {
+            writeToDisk(key, entry);
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return hits / lookups, or <code>0</code> if there haven't been any lookups
+     */
+    public double getHitRate() {
+        long hits = memoryHits.get() + diskHits.get();
+        long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (memory) {
+            return String.format(Locale.ROOT, "ParseResultCache{hitRate=%.3f, memoryHits=%d, " +
+                            "diskHits=%d, misses=%d, memoryEntries=%d, memoryBytes=%d, " +
+                            "diskBytes=%d}", getHitRate(), memoryHits.get(), diskHits.get(),
+                    misses.get(), memory.size(), memoryBytes, diskBytes.get());
+        }
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        if (entry.estimatedBytes > maxMemoryBytes) {
+            return;
+        }
+        synchronized (memory) {
+            Entry old = memory.put(key, entry);
+            if (old != null) {
+                memoryBytes -= old.estimatedBytes;
+            }
+            memoryBytes += entry.estimatedBytes;
+            Iterator<Entry> it = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                memoryBytes -= it.next().estimatedBytes;
+                it.remove();
+            }
+        }
+    }
+
+    private List<Metadata> readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path p = getPath(key);
+        if (!Files.isRegularFile(p)) {
+            return null;
+        }
+        try (ObjectInputStream is = new MetadataListInputStream(
+                new BufferedInputStream(Files.newInputStream(p)))) {
+            @SuppressWarnings("unchecked")
+            List<Metadata> metadataList = (List<Metadata>) is.readObject();
+            //for the lru
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            return metadataList;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            //another process may have deleted it
+            LOG.debug("couldn't read cached result {}", p, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        Path p = getPath(key);
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, "tmp-", ".tmp");
+            try (OutputStream os = Files.newOutputStream(tmp);
+                    ObjectOutputStream oos = new ObjectOutputStream(
+                            new BufferedOutputStream(os))) {
+                oos.writeObject(new ArrayList<>(entry.metadataList));
+            }
+            long size = Files.size(tmp);
+            Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+            if (diskBytes.addAndGet(size) > maxDiskBytes) {
+                evictFromDisk();
+            }
+        } catch (IOException e) {
+            LOG.warn("couldn't write cached result {}", p, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    LOG.debug("couldn't delete {}", tmp, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files. Other processes that share the directory
+     * may be adding files at the same time, so this starts from the actual sizes.
+     */
+    private synchronized void evictFromDisk() throws IOException {
+        if (diskBytes.get() <= maxDiskBytes) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<Long> lastModified = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                try {
+                    long size = Files.size(p);
+                    long modified = Files.getLastModifiedTime(p).toMillis();
+                    files.add(p);
+                    sizes.add(size);
+                    lastModified.add(modified);
+                    total += size;
+                } catch (IOException e) {
+                    //deleted by another process
+                }
+            }
+        }
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastModified.get(a), lastModified.get(b)));
+        long target = (long) (maxDiskBytes * DISK_LOW_WATER);
+        for (int i = 0; i < order.length && total > target; i++) {
+            Files.deleteIfExists(files.get(order[i]));
+            total -= sizes.get(order[i]);
+        }
+        diskBytes.set(total);
+    }
+
+    private long sizeOnDisk() throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                total += Files.size(p);
+            }
+        }
+        return total;
+    }
+
+    private Path getPath(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return directory.resolve(hex(md.digest(key.getBytes(StandardCharsets.UTF_8))) +
+                    SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Metadata> copy(List<Metadata> metadataList) {
+        List<Metadata> copy = new ArrayList<>(metadataList.size());
+        for (Metadata m : metadataList) {
+            copy.add(ParserUtils.cloneMetadata(m));
+        }
+        return copy;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Only reads the classes that {@link #writeToDisk(String, Entry)} writes, so that
+     * a file that was put in the directory by someone else can't make this
+     * deserialize anything else.
+     */
+    private static class MetadataListInputStream extends ObjectInputStream {
+
+        private static final Set<String> ALLOWED = new HashSet<>(Arrays.asList(
+                ArrayList.class.getName(), Metadata.class.getName(), HashMap.class.getName(),
+                String.class.getName(), String[].class.getName(),
+                //the default write filter
+                Metadata.class.getName() + "$1"));
+
+        private MetadataListInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(),
+                        "not allowed in a cached parse result");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy classes are not allowed in a cached " +
+                    "parse result");
+        }
+    }
+
+    private static class Entry {
+        private final List<Metadata> metadataList;
+        private final long estimatedBytes;
+
+        private Entry(List<Metadata> metadataList) {
+            this.metadataList = metadataList;
+            long bytes = 0;
+            for (Metadata m : metadataList) {
+                for (String n : m.names()) {
+                    bytes += n.length() * 2L;
+                    for (String v : m.getValues(n)) {
+                        bytes += v.length() * 2L;
+                    }
+                }
+            }
+            this.estimatedBytes = bytes;
+        }
+    }
+}
@@ -18,11 +18,20 @@ package org.apache.tika.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import org.apache.tika.exception.CorruptedFileException;
 import org.apache.tika.exception.EncryptedDocumentException;
@@ -36,7 +45,9 @@ import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
+import org.apache.tika.sax.BasicContentHandlerFactory;
 import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.sax.ContentSinkRecursiveParserWrapperHandler;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
 import org.apache.tika.sax.SecureContentHandler;
 import org.apache.tika.sax.WriteLimiter;
@@ -69,6 +80,10 @@ import org.apache.tika.utils.ParserUtils;
  * Note that this wrapper holds all data in memory and is not appropriate
  * for files with content too large to be held in memory.
  * <p>
+ * If there is a {@link ParseResultCache} in the {@link ParseContext}, the results
+ * of documents that have been parsed before, including embedded documents and their
+ * children, are taken from the cache instead of being parsed again.
+ * <p>
  * The unit tests for this class are in the tika-parsers module.
  * </p>
  */
@@ -79,6 +94,15 @@ public class RecursiveParserWrapper extends ParserDecorator {
      */
     private static final long serialVersionUID = 9086536568120690938L;
 
+    //these depend on where the document is, not on its bytes
+    private static final Set<String> CACHE_VOLATILE = new HashSet<>(Arrays.asList(
+            TikaCoreProperties.EMBEDDED_RESOURCE_PATH.getName(),
+            TikaCoreProperties.EMBEDDED_ID_PATH.getName(),
+            TikaCoreProperties.EMBEDDED_ID.getName(),
+            TikaCoreProperties.EMBEDDED_DEPTH.getName(),
+            TikaCoreProperties.PARSE_TIME_MILLIS.getName(),
+            ParseResultCache.CACHE_HIT.getName()));
+
 
     private final boolean catchEmbeddedExceptions;
 
@@ -141,27 +165,41 @@ public class RecursiveParserWrapper extends ParserDecorator {
         context.set(Parser.class, decorator);
         ContentHandler localHandler =
                 parserState.recursiveParserWrapperHandler.getNewContentHandler();
+        parserState.initCache(context.get(ParseResultCache.class), writeLimitOf(
+                recursiveParserWrapperHandler), throwOnWriteLimitReachedOf(
+                recursiveParserWrapperHandler), catchEmbeddedExceptions);
         long started = System.currentTimeMillis();
         parserState.recursiveParserWrapperHandler.startDocument();
         TemporaryResources tmp = new TemporaryResources();
-        int writeLimit = -1;
-        boolean throwOnWriteLimitReached = true;
-
-        if (recursiveParserWrapperHandler instanceof AbstractRecursiveParserWrapperHandler) {
-            ContentHandlerFactory factory =
-                    ((AbstractRecursiveParserWrapperHandler)recursiveParserWrapperHandler).getContentHandlerFactory();
-            if (factory instanceof WriteLimiter) {
-                writeLimit = ((WriteLimiter)factory).getWriteLimit();
-                throwOnWriteLimitReached = ((WriteLimiter)factory).isThrowOnWriteLimitReached();
-            }
-        }
+        int writeLimit = writeLimitOf(recursiveParserWrapperHandler);
+        boolean throwOnWriteLimitReached =
+                throwOnWriteLimitReachedOf(recursiveParserWrapperHandler);
+        String cacheKey = null;
+        Metadata inputMetadata = null;
+        List<Metadata> recorded = null;
+        boolean parsed = false;
         try {
             TikaInputStream tis = TikaInputStream.get(stream, tmp, metadata);
+            if (parserState.containerVariant != null) {
+                cacheKey = parserState.cache.getKey(tis, metadata, parserState.containerVariant,
+                        context);
+                List<Metadata> cached = cacheKey == null ? null : parserState.cache.get(cacheKey);
+                if (cached != null) {
+                    //the content is already in the cached metadata
+                    localHandler = new DefaultHandler();
+                    replay(cached, metadata, "", "", parserState);
+                    return;
+                } else if (cacheKey != null) {
+                    inputMetadata = ParserUtils.cloneMetadata(metadata);
+                    recorded = parserState.startRecording();
+                }
+            }
             RecursivelySecureContentHandler secureContentHandler =
                     new RecursivelySecureContentHandler(localHandler, tis, writeLimit,
                             throwOnWriteLimitReached, context);
             context.set(RecursivelySecureContentHandler.class, secureContentHandler);
             getWrappedParser().parse(tis, secureContentHandler, metadata, context);
+            parsed = true;
         } catch (Throwable e) {
             if (e instanceof EncryptedDocumentException) {
                 metadata.set(TikaCoreProperties.IS_ENCRYPTED, "true");
@@ -179,7 +217,134 @@ public class RecursiveParserWrapper extends ParserDecorator {
             metadata.set(TikaCoreProperties.PARSE_TIME_MILLIS, Long.toString(elapsedMillis));
             parserState.recursiveParserWrapperHandler.endDocument(localHandler, metadata);
             parserState.recursiveParserWrapperHandler.endDocument();
+            if (recorded != null) {
+                parserState.stopRecording();
+                if (parsed) {
+                    store(cacheKey, inputMetadata, metadata, recorded, "", "", parserState);
+                }
+            }
+        }
+    }
+
+    private static int writeLimitOf(ContentHandler handler) {
+        ContentHandlerFactory factory =
+                ((AbstractRecursiveParserWrapperHandler) handler).getContentHandlerFactory();
+        if (factory instanceof WriteLimiter) {
+            return ((WriteLimiter) factory).getWriteLimit();
         }
+        return -1;
+    }
+
+    private static boolean throwOnWriteLimitReachedOf(ContentHandler handler) {
+        ContentHandlerFactory factory =
+                ((AbstractRecursiveParserWrapperHandler) handler).getContentHandlerFactory();
+        if (factory instanceof WriteLimiter) {
+            return ((WriteLimiter) factory).isThrowOnWriteLimitReached();
+        }
+        return true;
+    }
+
+    /**
+     * Stores a document's result: its own metadata, without what it had before it was
+     * parsed, and its descendants, with their paths relative to the document.
+     * Results that hit the write limit or the maximum number of embedded resources
+     * aren't stored.
+     */
+    private static void store(String cacheKey, Metadata inputMetadata, Metadata metadata,
+                              List<Metadata> descendants, String rootPath, String rootIdPath,
+                              ParserState parserState) {
+        if (parserState.recursiveParserWrapperHandler.hasHitMaximumEmbeddedResources() ||
+                metadata.get(TikaCoreProperties.WRITE_LIMIT_REACHED) != null) {
+            return;
+        }
+        Metadata root = new Metadata();
+        for (String n : metadata.names()) {
+            if (CACHE_VOLATILE.contains(n)) {
+                continue;
+            }
+            String[] values = metadata.getValues(n);
+            if (!Arrays.equals(values, inputMetadata.getValues(n))) {
+                for (String v : values) {
+                    root.add(n, v);
+                }
+            }
+        }
+        List<Metadata> entry = new ArrayList<>(descendants.size() + 1);
+        entry.add(root);
+        for (Metadata d : descendants) {
+            String path = d.get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH);
+            String idPath = d.get(TikaCoreProperties.EMBEDDED_ID_PATH);
+            if (d.get(TikaCoreProperties.WRITE_LIMIT_REACHED) != null || path == null ||
+                    idPath == null || !path.startsWith(rootPath) ||
+                    !idPath.startsWith(rootIdPath + "/")) {
+                return;
+            }
+            d.set(TikaCoreProperties.EMBEDDED_RESOURCE_PATH, path.substring(rootPath.length()));
+            d.set(TikaCoreProperties.EMBEDDED_ID_PATH, idPath.substring(rootIdPath.length()));
+            entry.add(d);
+        }
+        parserState.cache.put(cacheKey, entry);
+    }
+
+    /**
+     * Sets a cached result on the document's metadata and sends its descendants to the
+     * handler, with new paths and ids, in the same order as if they had been parsed.
+     */
+    private static void replay(List<Metadata> cached, Metadata metadata, String rootPath,
+                               String rootIdPath, ParserState parserState)
+            throws SAXException {
+        Metadata root = cached.get(0);
+        for (String n : root.names()) {
+            metadata.remove(n);
+            for (String v : root.getValues(n)) {
+                metadata.add(n, v);
+            }
+        }
+        metadata.set(ParseResultCache.CACHE_HIT, true);
+        List<Metadata> descendants = new ArrayList<>(cached.subList(1, cached.size()));
+        //ids were handed out in the order that the documents were started
+        descendants.sort((a, b) -> Integer.compare(lastId(a), lastId(b)));
+        Map<Integer, Integer> newIds = new HashMap<>();
+        for (Metadata d : descendants) {
+            newIds.put(lastId(d), ++parserState.embeddedCount);
+        }
+        AbstractRecursiveParserWrapperHandler handler = parserState.recursiveParserWrapperHandler;
+        Deque<Metadata> open = new ArrayDeque<>();
+        for (Metadata d : descendants) {
+            String[] oldIds = d.get(TikaCoreProperties.EMBEDDED_ID_PATH).substring(1).split("/");
+            while (open.size() >= oldIds.length) {
+                endReplayed(open.pop(), parserState);
+            }
+            if (handler.hasHitMaximumEmbeddedResources()) {
+                break;
+            }
+            StringBuilder idPath = new StringBuilder(rootIdPath);
+            for (String id : oldIds) {
+                idPath.append('/').append(newIds.get(Integer.parseInt(id)));
+            }
+            d.set(TikaCoreProperties.EMBEDDED_RESOURCE_PATH,
+                    rootPath + d.get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH));
+            d.set(TikaCoreProperties.EMBEDDED_ID_PATH, idPath.toString());
+            d.set(TikaCoreProperties.EMBEDDED_ID, newIds.get(lastId(d)));
+            d.set(ParseResultCache.CACHE_HIT, true);
+            handler.startEmbeddedDocument(new DefaultHandler(), d);
+            open.push(d);
+        }
+        while (!open.isEmpty()) {
+            endReplayed(open.pop(), parserState);
+        }
+    }
+
+    private static void endReplayed(Metadata metadata, ParserState parserState)
+            throws SAXException {
+        parserState.recursiveParserWrapperHandler.endEmbeddedDocument(new DefaultHandler(),
+                metadata);
+        parserState.record(metadata);
+    }
+
+    private static int lastId(Metadata metadata) {
+        String idPath = metadata.get(TikaCoreProperties.EMBEDDED_ID_PATH);
+        return Integer.parseInt(idPath.substring(idPath.lastIndexOf('/') + 1));
     }
 
     private String getResourceName(Metadata metadata, ParserState state) {
@@ -253,8 +418,32 @@ public class RecursiveParserWrapper extends ParserDecorator {
             //so that you can return it back to its state at the end of this parse
             ContentHandler preContextHandler = secureContentHandler.handler;
             secureContentHandler.updateContentHandler(localHandler);
+            TemporaryResources tmp = null;
+            String cacheKey = null;
+            Metadata inputMetadata = null;
+            List<Metadata> recorded = null;
+            boolean parsed = false;
             try {
+                if (parserState.embeddedVariant != null) {
+                    tmp = new TemporaryResources();
+                    TikaInputStream tis = TikaInputStream.get(stream, tmp, metadata);
+                    stream = tis;
+                    cacheKey = parserState.cache.getKey(tis, metadata,
+                            parserState.embeddedVariant, context);
+                    List<Metadata> cached =
+                            cacheKey == null ? null : parserState.cache.get(cacheKey);
+                    if (cached != null) {
+                        //the content is already in the cached metadata
+                        localHandler = new DefaultHandler();
+                        replay(cached, metadata, objectLocation, idPath, parserState);
+                        return;
+                    } else if (cacheKey != null) {
+                        inputMetadata = ParserUtils.cloneMetadata(metadata);
+                        recorded = parserState.startRecording();
+                    }
+                }
                 super.parse(stream, secureContentHandler, metadata, context);
+                parsed = true;
             } catch (SAXException e) {
                 if (WriteLimitReachedException.isWriteLimitReached(e)) {
                     metadata.add(TikaCoreProperties.WRITE_LIMIT_REACHED, "true");
@@ -287,6 +476,17 @@ public class RecursiveParserWrapper extends ParserDecorator {
                 metadata.set(TikaCoreProperties.PARSE_TIME_MILLIS, Long.toString(elapsedMillis));
                 parserState.recursiveParserWrapperHandler
                         .endEmbeddedDocument(localHandler, metadata);
+                if (recorded != null) {
+                    parserState.stopRecording();
+                    if (parsed) {
+                        store(cacheKey, inputMetadata, metadata, recorded, objectLocation,
+                                idPath, parserState);
+                    }
+                }
+                parserState.record(metadata);
+                if (tmp != null) {
+                    tmp.close();
+                }
             }
         }
     }
@@ -299,9 +499,56 @@ public class RecursiveParserWrapper extends ParserDecorator {
         private final AbstractRecursiveParserWrapperHandler recursiveParserWrapperHandler;
         private int unknownCount = 0;
         private int embeddedCount = 0;//this is effectively 1-indexed
+        private ParseResultCache cache = null;
+        //cache key variants; null if the cache isn't used at that level
+        private String containerVariant = null;
+        private String embeddedVariant = null;
+        //the descendants of the documents whose results are being recorded for the cache
+        private final List<List<Metadata>> recorders = new ArrayList<>();
         private ParserState(AbstractRecursiveParserWrapperHandler handler) {
             this.recursiveParserWrapperHandler = handler;
         }
+
+        private void initCache(ParseResultCache cache, int writeLimit,
+                               boolean throwOnWriteLimitReached, boolean catchEmbeddedExceptions) {
+            ContentHandlerFactory factory = recursiveParserWrapperHandler.getContentHandlerFactory();
+            if (cache == null || !(factory instanceof BasicContentHandlerFactory)) {
+                return;
+            }
+            //the text isn't in the metadata, so there's nothing to record
+            if (recursiveParserWrapperHandler instanceof ContentSinkRecursiveParserWrapperHandler) {
+                return;
+            }
+            int maxEmbedded = recursiveParserWrapperHandler.getMaxEmbeddedResources();
+            this.cache = cache;
+            this.containerVariant = ((BasicContentHandlerFactory) factory).getType() + "/" +
+                    writeLimit + "/" + throwOnWriteLimitReached + "/" + maxEmbedded + "/" +
+                    catchEmbeddedExceptions;
+            //the write limit and the maximum number of embedded resources are shared by
+            //the whole container, so an embedded document's result depends on its siblings
+            if (writeLimit < 0 && maxEmbedded < 0) {
+                this.embeddedVariant = containerVariant;
+            }
+        }
+
+        private List<Metadata> startRecording() {
+            List<Metadata> recorder = new ArrayList<>();
+            recorders.add(recorder);
+            return recorder;
+        }
+
+        private void stopRecording() {
+            recorders.remove(recorders.size() - 1);
+        }
+
+        private void record(Metadata metadata) {
+            if (recorders.isEmpty()) {
+                return;
+            }
+            for (List<Metadata> recorder : recorders) {
+                recorder.add(ParserUtils.cloneMetadata(metadata));
+            }
+        }
     }
 
     static class RecursivelySecureContentHandler extends SecureContentHandler {
@@ -20,6 +20,7 @@ import java.io.Serializable;
 import java.util.Objects;
 
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.fetcher.FetchKey;
 
@@ -27,6 +28,32 @@ public class FetchEmitTuple implements Serializable {
 
     public static final ON_PARSE_EXCEPTION DEFAULT_ON_PARSE_EXCEPTION = ON_PARSE_EXCEPTION.EMIT;
 
+    /**
+     * Metadata key for the size of the file in bytes, for pipes iterators that know
+     * it from their listing. It is used for scheduling, and it isn't added to the output.
+     */
+    public static final String SIZE_HINT = TikaCoreProperties.TIKA_META_PREFIX + "fetch_size_hint";
+
+    /**
+     * Metadata key for a value that changes whenever the file changes, e.g. the last
+     * modified time or the ETag, for pipes iterators that know it from their listing.
+     * It is used to skip unchanged files, and it isn't added to the output.
+     */
+    public static final String VERSION_HINT =
+            TikaCoreProperties.TIKA_META_PREFIX + "fetch_version_hint";
+
+    /**
+     * Metadata key for the tenant that submitted the tuple, for servers that queue
+     * the tuples of several tenants fairly. It isn't added to the output.
+     */
+    public static final String TENANT = TikaCoreProperties.TIKA_META_PREFIX + "fetch_tenant";
+
+    /**
+     * Metadata key for the priority class of the tuple, e.g. <code>high</code>,
+     * <code>normal</code> or <code>low</code>. It isn't added to the output.
+     */
+    public static final String PRIORITY = TikaCoreProperties.TIKA_META_PREFIX + "fetch_priority";
+
     public enum ON_PARSE_EXCEPTION {
         SKIP, EMIT
     }
@@ -78,6 +105,48 @@ public class FetchEmitTuple implements Serializable {
         return metadata;
     }
 
+    /**
+     * @return the length of the fetch key's range, or else the {@link #SIZE_HINT},
+     * or <code>-1</code> if the size isn't known
+     */
+    public long getSizeHint() {
+        if (fetchKey != null && fetchKey.hasRange()) {
+            return fetchKey.getRangeEnd() - fetchKey.getRangeStart() + 1;
+        }
+        if (metadata != null) {
+            String size = metadata.get(SIZE_HINT);
+            if (size != null) {
+                try {
+                    return Long.parseLong(size);
+                } catch (NumberFormatException e) {
+                    //fall through
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the {@link #VERSION_HINT} or <code>null</code> if it isn't known
+     */
+    public String getVersionHint() {
+        return metadata == null ? null : metadata.get(VERSION_HINT);
+    }
+
+    /**
+     * @return the {@link #TENANT} or <code>null</code> if it isn't set
+     */
+    public String getTenant() {
+        return metadata == null ? null : metadata.get(TENANT);
+    }
+
+    /**
+     * @return the {@link #PRIORITY} or <code>null</code> if it isn't set
+     */
+    public String getPriority() {
+        return metadata == null ? null : metadata.get(PRIORITY);
+    }
+
     public ON_PARSE_EXCEPTION getOnParseException() {
         return onParseException;
     }
@@ -44,10 +44,18 @@ public class HandlerConfig implements Serializable {
      * contents of embedded files and returns a single metadata object for the file no
      * matter how many embedded objects there are; this option throws away metadata from
      * embedded objects and silently skips exceptions in embedded objects.
+     *
+     * {@link PARSE_MODE#RMETA_STREAMING} is the same as {@link PARSE_MODE#RMETA}, except
+     * that in pipes, each embedded file is sent to the emitter as soon as it has been
+     * parsed rather than after the whole container has been parsed.  This bounds the
+     * memory used on very large containers.  See {@link StreamingEmitHandler}. The embedded
+     * files that have been emitted before a parse exception stay emitted, even
+     * if the container itself is not emitted because of the exception.
      */
     public enum PARSE_MODE {
         RMETA,
-        CONCATENATE;
+        CONCATENATE,
+        RMETA_STREAMING;
 
         public static PARSE_MODE parseMode(String modeString) {
             for (PARSE_MODE m : PARSE_MODE.values()) {
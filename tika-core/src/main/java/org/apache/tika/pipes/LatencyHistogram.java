@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in the style of HdrHistogram. Values are counted in
+ * buckets whose width grows with the value, so that every value up to
+ * {@link #MAX_MICROS} is kept to within about 3% in a fixed amount of memory.
+ * <p>
+ * This class is thread safe, and recording a value doesn't lock.
+ */
+public class LatencyHistogram {
+
+    //each power of two is split into this many buckets
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //values below this each have their own bucket
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    /**
+     * About twelve days; larger values are counted as this.
+     */
+    public static final long MAX_MICROS = (1L << 40) - 1;
+
+    private static final int NUM_BUCKETS = index(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        } else if (micros > MAX_MICROS) {
+            micros = MAX_MICROS;
+        }
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sum.sum();
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the highest value that is counted with the value at that percentile,
+     * or <code>0</code> if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        //shift so that the top SUB_BUCKET_BITS + 1 bits are left
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" + "count=" + getCount() + ", p50=" +
+                getValueAtPercentile(50) + "us, p99=" + getValueAtPercentile(99) +
+                "us, max=" + getMaxMicros() + "us}";
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.tika.pipes;
 import static org.apache.tika.pipes.PipesServer.STATUS.CALL;
 import static org.apache.tika.pipes.PipesServer.STATUS.PING;
 import static org.apache.tika.pipes.PipesServer.STATUS.READY;
+import static org.apache.tika.pipes.PipesServer.STATUS.STAGE_TIMINGS;
 import static org.apache.tika.pipes.PipesServer.STATUS.lookup;
 import static org.apache.tika.pipes.PipesServer.TIMEOUT_EXIT_CODE;
 
@@ -26,11 +27,14 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -39,13 +43,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.utils.ProcessUtils;
+import org.apache.tika.utils.SharedArchiveUtils;
 import org.apache.tika.utils.StringUtils;
 
 /**
@@ -53,6 +57,14 @@ import org.apache.tika.utils.StringUtils;
  * a single thread for {@link #process(FetchEmitTuple)} processing.
  * See {@link org.apache.tika.pipes.async.AsyncProcessor} for handling
  * multiple PipesClients.
+ * <p>
+ * The exception is when {@link PipesConfigBase#getConcurrentParsesPerProcess()}
+ * is greater than one. Then up to that many threads may call
+ * {@link #process(FetchEmitTuple)} at the same time, and their requests are
+ * sent to the one forked PipesServer, tagged with request ids. If a request
+ * times out or the server has to be restarted for another reason, no new
+ * requests are sent until the requests in flight have finished
+ * (or timed out), and the server is then restarted.
  */
 public class PipesClient implements Closeable {
 
@@ -66,16 +78,47 @@ public class PipesClient implements Closeable {
     private final Object[] executorServiceLock = new Object[0];
     private final PipesConfigBase pipesConfig;
     private final int pipesClientId;
+    //may be null
+    private final SpareServerPool spareServerPool;
     private volatile boolean closed = false;
     private ExecutorService executorService = Executors.newFixedThreadPool(1);
     private Process process;
     private DataOutputStream output;
     private DataInputStream input;
     private int filesProcessed = 0;
+    private SharedResultBuffer sharedResultBuffer;
+
+    //the rest of these are only used with concurrent parses,
+    //and are all guarded by multiplexLock
+    private final Object[] multiplexLock = new Object[0];
+    private final Map<Integer, InFlight> inFlight = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    //number of callers waiting on a result; excludes abandoned requests
+    private int active = 0;
+    private int nextRequestId = 0;
+    //incremented on every restart so that a stale reader thread can tell
+    private int generation = 0;
+    //if true, don't send any more requests; restart once active drops to 0
+    private boolean draining = false;
+    private boolean serverDown = true;
+    //a caller is restarting the server, without holding the lock
+    private boolean restarting = false;
 
     public PipesClient(PipesConfigBase pipesConfig) {
+        this(pipesConfig, null);
+    }
+
+    /**
+     * @param pipesConfig
+     * @param spareServerPool if not null, the client takes a ready server from this
+     *                        pool when it has to (re)start its server, and only starts
+     *                        one itself if the pool is empty. The pool is shared, and it
+     *                        is not closed by this client.
+     */
+    public PipesClient(PipesConfigBase pipesConfig, SpareServerPool spareServerPool) {
         this.pipesConfig = pipesConfig;
         this.pipesClientId = CLIENT_COUNTER.getAndIncrement();
+        this.spareServerPool = spareServerPool;
     }
 
     public int getFilesProcessed() {
@@ -114,9 +157,15 @@ public class PipesClient implements Closeable {
             }
             closed = true;
         }
+        if (sharedResultBuffer != null) {
+            sharedResultBuffer.close();
+        }
     }
 
     public PipesResult process(FetchEmitTuple t) throws IOException, InterruptedException {
+        if (pipesConfig.getConcurrentParsesPerProcess() > 1) {
+            return processConcurrently(t);
+        }
         boolean restart = false;
         if (!ping()) {
             restart = true;
@@ -145,17 +194,14 @@ public class PipesClient implements Closeable {
     private PipesResult actuallyProcess(FetchEmitTuple t) throws InterruptedException {
         long start = System.currentTimeMillis();
         FutureTask<PipesResult> futureTask = new FutureTask<>(() -> {
+            long startNanos = System.nanoTime();
 
-            UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(t);
-            }
-
-            byte[] bytes = bos.toByteArray();
+            byte[] bytes = PipesSerializer.serialize(t, pipesConfig.getSerializationFormat());
             output.write(CALL.getByte());
             output.writeInt(bytes.length);
             output.write(bytes);
             output.flush();
+            filesProcessed++;
             if (LOG.isTraceEnabled()) {
                 LOG.trace("pipesClientId={}: timer -- write tuple: {} ms",
                         pipesClientId,
@@ -165,7 +211,8 @@ public class PipesClient implements Closeable {
             if (Thread.currentThread().isInterrupted()) {
                 throw new InterruptedException("thread interrupt");
             }
-            PipesResult result = readResults(t, start);
+            PipesResult result = readResults(input, t.getId(), start);
+            setPipeTransfer(result, startNanos);
             if (LOG.isDebugEnabled()) {
                 long elapsed = System.currentTimeMillis() - readStart;
                 LOG.debug("finished reading result in {} ms", elapsed);
@@ -250,9 +297,35 @@ public class PipesClient implements Closeable {
         }
     }
 
-    private PipesResult readResults(FetchEmitTuple t, long start) throws IOException {
+    /**
+     * The time between the client and the forked process is what isn't accounted
+     * for by the process itself.
+     */
+    private static void setPipeTransfer(PipesResult result, long startNanos) {
+        StageTimings timings = result.getStageTimings();
+        if (timings != null && timings.getServerNanos() >= 0) {
+            timings.set(StageTimings.STAGE.PIPE_TRANSFER,
+                    Math.max(0, System.nanoTime() - startNanos - timings.getServerNanos()));
+        }
+    }
 
+    private PipesResult readResults(DataInputStream input, String taskId, long start)
+            throws IOException {
         int statusByte = input.read();
+        StageTimings stageTimings = null;
+        if (statusByte == STAGE_TIMINGS.getByte()) {
+            int length = input.readInt();
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            stageTimings = StageTimings.fromBytes(bytes);
+            statusByte = input.read();
+        }
+        PipesResult result = readResult(input, statusByte, taskId, start);
+        return stageTimings == null ? result : result.withStageTimings(stageTimings);
+    }
+
+    private PipesResult readResult(DataInputStream input, int statusByte, String taskId,
+                                   long start) throws IOException {
         long millis = System.currentTimeMillis() - start;
         PipesServer.STATUS status = null;
         try {
@@ -263,45 +336,49 @@ public class PipesClient implements Closeable {
 
         switch (status) {
             case OOM:
-                LOG.warn("pipesClientId={} oom: {} in {} ms", pipesClientId, t.getId(), millis);
+                LOG.warn("pipesClientId={} oom: {} in {} ms", pipesClientId, taskId, millis);
                 return PipesResult.OOM;
             case TIMEOUT:
                 LOG.warn("pipesClientId={} server response timeout: {} in {} ms", pipesClientId,
-                        t.getId(), millis);
+                        taskId, millis);
                 return PipesResult.TIMEOUT;
             case EMIT_EXCEPTION:
-                LOG.warn("pipesClientId={} emit exception: {} in {} ms", pipesClientId, t.getId(),
+                LOG.warn("pipesClientId={} emit exception: {} in {} ms", pipesClientId, taskId,
                         millis);
-                return readMessage(PipesResult.STATUS.EMIT_EXCEPTION);
+                return readMessage(input, PipesResult.STATUS.EMIT_EXCEPTION);
             case EMITTER_NOT_FOUND:
                 LOG.warn("pipesClientId={} emitter not found: {} in {} ms", pipesClientId,
-                        t.getId(), millis);
-                return readMessage(PipesResult.STATUS.NO_EMITTER_FOUND);
+                        taskId, millis);
+                return readMessage(input, PipesResult.STATUS.NO_EMITTER_FOUND);
             case FETCHER_NOT_FOUND:
                 LOG.warn("pipesClientId={} fetcher not found: {} in {} ms", pipesClientId,
-                        t.getId(), millis);
-                return readMessage(PipesResult.STATUS.NO_FETCHER_FOUND);
+                        taskId, millis);
+                return readMessage(input, PipesResult.STATUS.NO_FETCHER_FOUND);
             case FETCHER_INITIALIZATION_EXCEPTION:
                 LOG.warn("pipesClientId={} fetcher initialization exception: {} in {} ms",
-                        pipesClientId, t.getId(), millis);
-                return readMessage(PipesResult.STATUS.FETCHER_INITIALIZATION_EXCEPTION);
+                        pipesClientId, taskId, millis);
+                return readMessage(input, PipesResult.STATUS.FETCHER_INITIALIZATION_EXCEPTION);
             case FETCH_EXCEPTION:
-                LOG.warn("pipesClientId={} fetch exception: {} in {} ms", pipesClientId, t.getId(),
+                LOG.warn("pipesClientId={} fetch exception: {} in {} ms", pipesClientId, taskId,
                         millis);
-                return readMessage(PipesResult.STATUS.FETCH_EXCEPTION);
+                return readMessage(input, PipesResult.STATUS.FETCH_EXCEPTION);
             case PARSE_SUCCESS:
                 //there may have been a parse exception, but the parse didn't crash
-                LOG.debug("pipesClientId={} parse success: {} in {} ms", pipesClientId, t.getId(),
+                LOG.debug("pipesClientId={} parse success: {} in {} ms", pipesClientId, taskId,
                         millis);
-                return deserializeEmitData();
+                return deserializeEmitData(input);
+            case PARSE_SUCCESS_SHARED_MEMORY:
+                LOG.debug("pipesClientId={} parse success: {} in {} ms", pipesClientId, taskId,
+                        millis);
+                return readSharedEmitData(input);
             case PARSE_EXCEPTION_NO_EMIT:
-                return readMessage(PipesResult.STATUS.PARSE_EXCEPTION_NO_EMIT);
+                return readMessage(input, PipesResult.STATUS.PARSE_EXCEPTION_NO_EMIT);
             case EMIT_SUCCESS:
-                LOG.debug("pipesClientId={} emit success: {} in {} ms", pipesClientId, t.getId(),
+                LOG.debug("pipesClientId={} emit success: {} in {} ms", pipesClientId, taskId,
                         millis);
                 return PipesResult.EMIT_SUCCESS;
             case EMIT_SUCCESS_PARSE_EXCEPTION:
-                return readMessage(PipesResult.STATUS.EMIT_SUCCESS_PARSE_EXCEPTION);
+                return readMessage(input, PipesResult.STATUS.EMIT_SUCCESS_PARSE_EXCEPTION);
             case EMPTY_OUTPUT:
                 return PipesResult.EMPTY_OUTPUT;
             //fall through
@@ -309,6 +386,7 @@ public class PipesClient implements Closeable {
             case CALL:
             case PING:
             case FAILED_TO_START:
+            case STAGE_TIMINGS:
                 throw new IOException("Not expecting this status: " + status);
             default:
                 throw new IOException("Need to handle procesing for: " + status);
@@ -316,7 +394,8 @@ public class PipesClient implements Closeable {
 
     }
 
-    private PipesResult readMessage(PipesResult.STATUS status) throws IOException {
+    private PipesResult readMessage(DataInputStream input, PipesResult.STATUS status)
+            throws IOException {
         //readInt checks for EOF
         int length = input.readInt();
         byte[] bytes = new byte[length];
@@ -325,24 +404,257 @@ public class PipesClient implements Closeable {
         return new PipesResult(status, msg);
     }
 
-    private PipesResult deserializeEmitData() throws IOException {
+    private PipesResult deserializeEmitData(DataInputStream input) throws IOException {
         int length = input.readInt();
         byte[] bytes = new byte[length];
         input.readFully(bytes);
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                new UnsynchronizedByteArrayInputStream(bytes))) {
-            EmitData emitData = (EmitData) objectInputStream.readObject();
+        return toPipesResult(
+                PipesSerializer.deserializeEmitData(bytes, pipesConfig.getSerializationFormat()));
+    }
 
-            String stack = emitData.getContainerStackTrace();
-            if (StringUtils.isBlank(stack)) {
-                return new PipesResult(emitData);
-            } else {
-                return new PipesResult(emitData, stack);
+    private PipesResult readSharedEmitData(DataInputStream input) throws IOException {
+        int slot = input.readInt();
+        int length = input.readInt();
+        if (sharedResultBuffer == null) {
+            throw new IOException("Not expecting a shared memory result");
+        }
+        return toPipesResult(sharedResultBuffer.readEmitData(slot, length,
+                pipesConfig.getSerializationFormat()));
+    }
+
+    private PipesResult toPipesResult(EmitData emitData) {
+        String stack = emitData.getContainerStackTrace();
+        if (StringUtils.isBlank(stack)) {
+            return new PipesResult(emitData);
+        } else {
+            return new PipesResult(emitData, stack);
+        }
+    }
+
+    private PipesResult processConcurrently(FetchEmitTuple t)
+            throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long startNanos;
+        InFlight request;
+        while (waitForConcurrentSlot()) {
+            //the server is restarted without holding the lock, so that the callers
+            //that are waiting for it don't hold up the reader or each other
+            restartConcurrent();
+        }
+        synchronized (multiplexLock) {
+            request = new InFlight(nextRequestId++, t.getId(), start,
+                    freeSlots.isEmpty() ? -1 : freeSlots.poll());
+            inFlight.put(request.id, request);
+            filesProcessed++;
+            startNanos = System.nanoTime();
+            try {
+                byte[] bytes = PipesSerializer.serialize(t, pipesConfig.getSerializationFormat());
+                output.write(CALL.getByte());
+                output.writeInt(request.id);
+                output.writeInt(request.slot);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                output.flush();
+            } catch (IOException e) {
+                inFlight.remove(request.id);
+                active--;
+                serverDown = true;
+                multiplexLock.notifyAll();
+                throw e;
+            }
+        }
+        try {
+            PipesResult result =
+                    request.result.get(pipesConfig.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            setPipeTransfer(result, startNanos);
+            return result;
+        } catch (TimeoutException e) {
+            LOG.warn("pipesClientId={} client timeout: {} in {} ms", pipesClientId, t.getId(),
+                    System.currentTimeMillis() - start);
+            synchronized (multiplexLock) {
+                //the parse may still be running in the server, which therefore has to
+                //be restarted. Don't reuse the result slot until then.
+                request.abandoned = true;
+                draining = true;
+            }
+            return PipesResult.TIMEOUT;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            synchronized (multiplexLock) {
+                active--;
+                multiplexLock.notifyAll();
             }
-        } catch (ClassNotFoundException e) {
-            LOG.error("class not found exception deserializing data", e);
-            //this should be catastrophic
-            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Waits until a request may be sent, or until the server has to be restarted.
+     * On return, the caller holds the slot for its request: <code>active</code> has
+     * been incremented.
+     *
+     * @return <code>true</code> if the caller has to restart the server, with
+     * {@link #restartConcurrent()}, and then call this again
+     */
+    private boolean waitForConcurrentSlot() throws InterruptedException {
+        synchronized (multiplexLock) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalArgumentException("pipesClientId=" + pipesClientId +
+                            ": PipesClient closed");
+                }
+                if (!draining && !serverDown && pipesConfig.getMaxFilesProcessedPerProcess() > 0 &&
+                        filesProcessed >= pipesConfig.getMaxFilesProcessedPerProcess()) {
+                    LOG.info("pipesClientId={}: restarting server after hitting max files: {}",
+                            pipesClientId, filesProcessed);
+                    draining = true;
+                }
+                if (draining || serverDown) {
+                    if (active == 0 && !restarting) {
+                        restarting = true;
+                        //the old server's reader stops once it sees this
+                        generation++;
+                        return true;
+                    }
+                } else if (active < pipesConfig.getConcurrentParsesPerProcess()) {
+                    active++;
+                    return false;
+                }
+                multiplexLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Must be called without the multiplexLock, by the caller that set
+     * <code>restarting</code>, with no requests in flight
+     */
+    private void restartConcurrent() throws IOException, InterruptedException {
+        boolean restarted = false;
+        try {
+            while (true) {
+                try {
+                    restart();
+                    break;
+                } catch (TimeoutException e) {
+                    LOG.warn("pipesClientId={}: couldn't restart within {} ms " +
+                                    "(startupTimeoutMillis)", pipesClientId,
+                            pipesConfig.getStartupTimeoutMillis());
+                    Thread.sleep(pipesConfig.getSleepOnStartupTimeoutMillis());
+                }
+            }
+            restarted = true;
+        } finally {
+            synchronized (multiplexLock) {
+                restarting = false;
+                if (restarted) {
+                    startReader();
+                }
+                multiplexLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Must be called with the multiplexLock held, right after a restart
+     */
+    private void startReader() {
+        inFlight.clear();
+        freeSlots.clear();
+        if (sharedResultBuffer != null) {
+            for (int i = 0; i < sharedResultBuffer.getNumSlots(); i++) {
+                freeSlots.add(i);
+            }
+        }
+        draining = false;
+        serverDown = false;
+        final int readerGeneration = generation;
+        final DataInputStream readerInput = input;
+        final Process readerProcess = process;
+        Thread reader = new Thread(() ->
+                readConcurrentResults(readerGeneration, readerInput, readerProcess),
+                "pipes-client-reader-" + pipesClientId);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Reads the responses of the server, each prefixed by its request id, and
+     * hands them to the waiting callers until the server's stdout is closed.
+     */
+    private void readConcurrentResults(int readerGeneration, DataInputStream readerInput,
+                                       Process readerProcess) {
+        try {
+            while (true) {
+                int id = readerInput.readInt();
+                InFlight request;
+                synchronized (multiplexLock) {
+                    if (readerGeneration != generation) {
+                        return;
+                    }
+                    request = inFlight.get(id);
+                }
+                PipesResult result = readResults(readerInput,
+                        request == null ? "unknown" : request.taskId,
+                        request == null ? System.currentTimeMillis() : request.start);
+                synchronized (multiplexLock) {
+                    inFlight.remove(id);
+                    if (result.getStatus() == PipesResult.STATUS.TIMEOUT ||
+                            result.getStatus() == PipesResult.STATUS.OOM) {
+                        //the server may still be working on it; see processConcurrently
+                        draining = true;
+                    } else if (request != null && !request.abandoned && request.slot >= 0) {
+                        freeSlots.add(request.slot);
+                    }
+                    multiplexLock.notifyAll();
+                }
+                if (request != null) {
+                    request.result.complete(result);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            PipesResult crash = PipesResult.UNSPECIFIED_CRASH;
+            try {
+                if (readerProcess.waitFor(200, TimeUnit.MILLISECONDS) &&
+                        readerProcess.exitValue() == TIMEOUT_EXIT_CODE) {
+                    crash = PipesResult.TIMEOUT;
+                }
+            } catch (InterruptedException ie) {
+                //swallow
+            }
+            List<InFlight> failed;
+            synchronized (multiplexLock) {
+                if (readerGeneration != generation) {
+                    return;
+                }
+                LOG.warn("pipesClientId={}: server crash with {} requests in flight",
+                        pipesClientId, inFlight.size(), e);
+                serverDown = true;
+                failed = new ArrayList<>(inFlight.values());
+                inFlight.clear();
+                multiplexLock.notifyAll();
+            }
+            for (InFlight request : failed) {
+                request.result.complete(crash);
+            }
+        }
+    }
+
+    private static class InFlight {
+        private final int id;
+        private final String taskId;
+        private final long start;
+        //slot in the sharedResultBuffer reserved for the result, or -1
+        private final int slot;
+        private final CompletableFuture<PipesResult> result = new CompletableFuture<>();
+        //the caller timed out and has stopped waiting
+        private boolean abandoned = false;
+
+        private InFlight(int id, String taskId, long start, int slot) {
+            this.id = id;
+            this.taskId = taskId;
+            this.start = start;
+            this.slot = slot;
         }
     }
 
@@ -370,7 +682,26 @@ public class PipesClient implements Closeable {
         } else {
             LOG.info("pipesClientId={}: starting process", pipesClientId);
         }
-        ProcessBuilder pb = new ProcessBuilder(getCommandline());
+        filesProcessed = 0;
+        SpareServerPool.Spare spare = spareServerPool == null ? null : spareServerPool.take();
+        if (spare != null) {
+            LOG.info("pipesClientId={}: swapping in spare server {}", pipesClientId,
+                    spare.getProcessId());
+            if (sharedResultBuffer != null) {
+                sharedResultBuffer.close();
+            }
+            sharedResultBuffer = spare.getSharedResultBuffer();
+            process = spare.getProcess();
+            input = spare.getInput();
+            output = spare.getOutput();
+            return;
+        }
+        if (pipesConfig.getSharedMemorySlots() > 0 && sharedResultBuffer == null) {
+            sharedResultBuffer = SharedResultBuffer.create(pipesConfig.getSharedMemorySlots(),
+                    pipesConfig.getSharedMemorySlotBytes());
+        }
+        ProcessBuilder pb = new ProcessBuilder(getCommandline(pipesConfig,
+                Integer.toString(pipesClientId), sharedResultBuffer));
         pb.redirectError(ProcessBuilder.Redirect.INHERIT);
 
         try {
@@ -383,7 +714,29 @@ public class PipesClient implements Closeable {
         input = new DataInputStream(process.getInputStream());
         output = new DataOutputStream(process.getOutputStream());
 
-        //wait for ready signal
+        try {
+            waitForReady("pipesClientId=" + pipesClientId, process, input, executorService,
+                    pipesConfig.getStartupTimeoutMillis());
+        } catch (InterruptedException | TimeoutException e) {
+            destroyForcibly();
+            throw e;
+        } catch (ExecutionException e) {
+            LOG.error("pipesClientId=" + pipesClientId + ": couldn't start server", e);
+            destroyForcibly();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Waits for the forked server to write its ready byte, reading on a thread
+     * from the executorService so that a server that hangs on startup can be
+     * timed out.
+     *
+     * @param logId prefix for log and exception messages
+     */
+    static void waitForReady(String logId, Process process, DataInputStream input,
+                             ExecutorService executorService, long startupTimeoutMillis)
+            throws InterruptedException, ExecutionException, TimeoutException {
         final UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
         FutureTask<Integer> futureTask = new FutureTask<>(() -> {
             int b = input.read();
@@ -391,7 +744,7 @@ public class PipesClient implements Closeable {
             while (read < MAX_BYTES_BEFORE_READY && b != READY.getByte()) {
 
                 if (b == -1) {
-                    throw new RuntimeException(getMsg("pipesClientId=" + pipesClientId + ": " +
+                    throw new RuntimeException(getMsg(logId + ": " +
                             "Couldn't start server -- read EOF before 'ready' byte.\n" +
                             " process isAlive=" + process.isAlive(), bos));
                 }
@@ -400,35 +753,26 @@ public class PipesClient implements Closeable {
                 read++;
             }
             if (read >= MAX_BYTES_BEFORE_READY) {
-                throw new RuntimeException(getMsg("pipesClientId=" + pipesClientId + ": " +
+                throw new RuntimeException(getMsg(logId + ": " +
                         "Couldn't start server: read too many bytes before 'ready' byte.\n" +
                         " Make absolutely certain that your logger is not writing to " +
                         "stdout.\n", bos));
             }
             if (bos.size() > 0) {
-                LOG.warn("pipesClientId={}: From forked process before start byte: {}",
-                        pipesClientId, bos.toString(StandardCharsets.UTF_8));
+                LOG.warn("{}: From forked process before start byte: {}",
+                        logId, bos.toString(StandardCharsets.UTF_8));
             }
             return 1;
         });
         long start = System.currentTimeMillis();
         executorService.submit(futureTask);
         try {
-            futureTask.get(pipesConfig.getStartupTimeoutMillis(), TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            destroyForcibly();
-            throw e;
-        } catch (ExecutionException e) {
-            LOG.error("pipesClientId=" + pipesClientId + ": couldn't start server", e);
-            destroyForcibly();
-            throw new RuntimeException(e);
+            futureTask.get(startupTimeoutMillis, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
             long elapsed = System.currentTimeMillis() - start;
-            LOG.error("pipesClientId={} didn't receive ready byte from server within " +
+            LOG.error("{} didn't receive ready byte from server within " +
                             "StartupTimeoutMillis {}; ms elapsed {}; did read >{}<",
-                    pipesClientId, pipesConfig.getStartupTimeoutMillis(),
-                    elapsed, bos.toString(StandardCharsets.UTF_8));
-            destroyForcibly();
+                    logId, startupTimeoutMillis, elapsed, bos.toString(StandardCharsets.UTF_8));
             throw e;
         } finally {
             futureTask.cancel(true);
@@ -444,7 +788,12 @@ public class PipesClient implements Closeable {
         }
     }
 
-    private String[] getCommandline() {
+    /**
+     * @param processId identifies the forked process in its logs and gc log name;
+     *                  this is the pipesClientId unless the process is a spare
+     */
+    static String[] getCommandline(PipesConfigBase pipesConfig, String processId,
+                                   SharedResultBuffer sharedResultBuffer) {
         List<String> configArgs = pipesConfig.getForkedJvmArgs();
         boolean hasClassPath = false;
         boolean hasHeadless = false;
@@ -468,7 +817,7 @@ public class PipesClient implements Closeable {
             }
             if (arg.startsWith("-Xloggc:")) {
                 origGCString = arg;
-                newGCLogString = arg.replace("${pipesClientId}", "id-" + pipesClientId);
+                newGCLogString = arg.replace("${pipesClientId}", "id-" + processId);
             }
         }
 
@@ -497,8 +846,28 @@ public class PipesClient implements Closeable {
             commandLine.add(
                     "-Dlog4j.configurationFile=classpath:pipes-fork-server-default-log4j2.xml");
         }
-        commandLine.add("-DpipesClientId=" + pipesClientId);
+        commandLine.add("-DpipesClientId=" + processId);
+        if (pipesConfig.getParseResultCacheMaxBytes() > 0) {
+            commandLine.add("-D" + PipesServer.PARSE_RESULT_CACHE_MAX_BYTES_PROPERTY + "=" +
+                    pipesConfig.getParseResultCacheMaxBytes());
+            if (pipesConfig.getParseResultCacheDirectory() != null) {
+                commandLine.add(ProcessUtils.escapeCommandLine(
+                        "-D" + PipesServer.PARSE_RESULT_CACHE_DIRECTORY_PROPERTY + "=" +
+                                pipesConfig.getParseResultCacheDirectory().toAbsolutePath()));
+                commandLine.add("-D" + PipesServer.PARSE_RESULT_CACHE_MAX_DISK_BYTES_PROPERTY +
+                        "=" + pipesConfig.getParseResultCacheMaxDiskBytes());
+            }
+        }
+        if (pipesConfig.isUseContentSink()) {
+            commandLine.add("-D" + PipesServer.CONTENT_SINK_PROPERTY + "=true");
+            commandLine.add("-D" + PipesServer.CONTENT_SINK_MAX_BYTES_PROPERTY + "=" +
+                    pipesConfig.getContentSinkMaxBytes());
+        }
         commandLine.addAll(configArgs);
+        commandLine.addAll(1, SharedArchiveUtils.getJvmArgs(javaPath,
+                new ArrayList<>(commandLine.subList(1, commandLine.size())),
+                pipesConfig.getSharedArchiveFile(),
+                pipesConfig.getTikaConfig().toAbsolutePath().toString()));
         commandLine.add("org.apache.tika.pipes.PipesServer");
         commandLine.add(ProcessUtils.escapeCommandLine(
                 pipesConfig.getTikaConfig().toAbsolutePath().toString()));
@@ -506,7 +875,16 @@ public class PipesClient implements Closeable {
         commandLine.add(Long.toString(pipesConfig.getMaxForEmitBatchBytes()));
         commandLine.add(Long.toString(pipesConfig.getTimeoutMillis()));
         commandLine.add(Long.toString(pipesConfig.getShutdownClientAfterMillis()));
-        LOG.debug("pipesClientId={}: commandline: {}", pipesClientId, commandLine);
+        commandLine.add(pipesConfig.getSerializationFormat().name());
+        commandLine.add(Integer.toString(pipesConfig.getConcurrentParsesPerProcess()));
+        commandLine.add(Integer.toString(pipesConfig.getWarmUpIterations()));
+        if (sharedResultBuffer != null) {
+            commandLine.add(ProcessUtils.escapeCommandLine(
+                    sharedResultBuffer.getPath().toAbsolutePath().toString()));
+            commandLine.add(Integer.toString(sharedResultBuffer.getNumSlots()));
+            commandLine.add(Integer.toString(sharedResultBuffer.getSlotBytes()));
+        }
+        LOG.debug("pipesClientId={}: commandline: {}", processId, commandLine);
         return commandLine.toArray(new String[0]);
     }
 }
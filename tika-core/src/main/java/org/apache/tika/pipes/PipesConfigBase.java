@@ -21,11 +21,42 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.tika.config.ConfigBase;
+import org.apache.tika.sax.ContentSink;
 
 public class PipesConfigBase extends ConfigBase {
 
+    /**
+     * How {@link FetchEmitTuple}s and {@link org.apache.tika.pipes.emitter.EmitData}
+     * are encoded between the {@link PipesClient} and the forked {@link PipesServer}.
+     * {@link #BINARY} is a compact field-by-field encoding; {@link #JAVA} is
+     * plain Java serialization.
+     */
+    public enum SERIALIZATION_FORMAT {
+        BINARY,
+        JAVA;
+
+        public static SERIALIZATION_FORMAT parse(String formatString) {
+            for (SERIALIZATION_FORMAT f : SERIALIZATION_FORMAT.values()) {
+                if (f.name().equalsIgnoreCase(formatString)) {
+                    return f;
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            int i = 0;
+            for (SERIALIZATION_FORMAT f : SERIALIZATION_FORMAT.values()) {
+                if (i++ > 0) {
+                    sb.append(", ");
+                }
+                sb.append(f.name().toLowerCase(Locale.US));
+            }
+            throw new IllegalArgumentException("serialization format must be one of: (" + sb +
+                    "). I regret I do not understand: " + formatString);
+        }
+    }
+
     /**
      * default size to send back to the PipesClient for batch
      * emitting.  If an extract is larger than this, it will be emitted
@@ -43,6 +74,11 @@ public class PipesConfigBase extends ConfigBase {
 
     public static final int DEFAULT_MAX_FILES_PROCESSED_PER_PROCESS = 10000;
 
+    public static final int DEFAULT_SHARED_MEMORY_SLOT_BYTES = 16 * 1024 * 1024;
+
+    public static final long DEFAULT_PARSE_RESULT_CACHE_MAX_DISK_BYTES =
+            10L * 1024 * 1024 * 1024;
+
     //if an extract is larger than this, the forked PipesServer should
     //emit the extract directly and not send the contents back to the PipesClient
     private long maxForEmitBatchBytes = DEFAULT_MAX_FOR_EMIT_BATCH;
@@ -55,9 +91,25 @@ public class PipesConfigBase extends ConfigBase {
 
     private int maxFilesProcessedPerProcess = DEFAULT_MAX_FILES_PROCESSED_PER_PROCESS;
 
+    private SERIALIZATION_FORMAT serializationFormat = SERIALIZATION_FORMAT.BINARY;
+
+    private int concurrentParsesPerProcess = 1;
+
+    private int spareServers = 0;
+    private int warmUpIterations = 0;
+
+    private int sharedMemorySlots = 0;
+    private int sharedMemorySlotBytes = DEFAULT_SHARED_MEMORY_SLOT_BYTES;
+
     private List<String> forkedJvmArgs = new ArrayList<>();
     private Path tikaConfig;
+    private Path sharedArchiveFile = null;
+    private long parseResultCacheMaxBytes = -1;
+    private Path parseResultCacheDirectory = null;
+    private long parseResultCacheMaxDiskBytes = DEFAULT_PARSE_RESULT_CACHE_MAX_DISK_BYTES;
     private String javaPath = "java";
+    private boolean useContentSink = false;
+    private long contentSinkMaxBytes = ContentSink.DEFAULT_MAX_BYTES;
 
     public long getTimeoutMillis() {
         return timeoutMillis;
@@ -171,4 +223,208 @@ public class PipesConfigBase extends ConfigBase {
     public void setSleepOnStartupTimeoutMillis(long sleepOnStartupTimeoutMillis) {
         this.sleepOnStartupTimeoutMillis = sleepOnStartupTimeoutMillis;
     }
+
+    public SERIALIZATION_FORMAT getSerializationFormat() {
+        return serializationFormat;
+    }
+
+    /**
+     * How to encode the requests and the results sent between the PipesClient and
+     * the forked PipesServer: <code>binary</code> (the default) or <code>java</code>
+     * to fall back to Java serialization.
+     *
+     * @param serializationFormat
+     */
+    public void setSerializationFormat(String serializationFormat) {
+        this.serializationFormat = SERIALIZATION_FORMAT.parse(serializationFormat);
+    }
+
+    public int getSharedMemorySlots() {
+        return sharedMemorySlots;
+    }
+
+    /**
+     * If this is greater than <code>0</code>, each PipesClient creates a memory-mapped
+     * file with this many slots of {@link #getSharedMemorySlotBytes()} bytes, and the
+     * forked PipesServer hands back the extracts that are to be batch emitted
+     * through that file instead of through its stdout. This only matters for
+     * large extracts, so {@link #getMaxForEmitBatchBytes()} has to be raised as well.
+     * Extracts that don't fit in a slot are sent through stdout.
+     * <p>
+     * The default, <code>0</code>, turns this off.
+     *
+     * @param sharedMemorySlots
+     */
+    public void setSharedMemorySlots(int sharedMemorySlots) {
+        this.sharedMemorySlots = sharedMemorySlots;
+    }
+
+    public int getSharedMemorySlotBytes() {
+        return sharedMemorySlotBytes;
+    }
+
+    /**
+     * Size in bytes of each slot in the memory-mapped file; see
+     * {@link #setSharedMemorySlots(int)}.
+     *
+     * @param sharedMemorySlotBytes
+     */
+    public void setSharedMemorySlotBytes(int sharedMemorySlotBytes) {
+        this.sharedMemorySlotBytes = sharedMemorySlotBytes;
+    }
+
+    public int getConcurrentParsesPerProcess() {
+        return concurrentParsesPerProcess;
+    }
+
+    /**
+     * How many files each forked PipesServer parses at the same time. With the
+     * default, <code>1</code>, each client has its own forked process. With a
+     * higher value, the AsyncProcessor shares its clients so that <code>numClients</code>
+     * parses run in <code>numClients / concurrentParsesPerProcess</code> processes;
+     * the {@link PipesParser} keeps its <code>numClients</code> processes and runs
+     * <code>numClients * concurrentParsesPerProcess</code> parses. This saves a
+     * lot of memory, but a timeout, an OOM or a crash in one parse affects all the
+     * parses that share the process: after a timeout, the process is restarted once
+     * the other parses have finished; after a crash, they are all lost.
+     *
+     * @param concurrentParsesPerProcess
+     */
+    public void setConcurrentParsesPerProcess(int concurrentParsesPerProcess) {
+        this.concurrentParsesPerProcess = concurrentParsesPerProcess;
+    }
+
+    public int getSpareServers() {
+        return spareServers;
+    }
+
+    /**
+     * Number of forked PipesServers to keep started and waiting, so that a client
+     * whose server has crashed, timed out or hit {@link #getMaxFilesProcessedPerProcess()}
+     * can swap one in instead of waiting for a new JVM to start up. The spares are
+     * shared by all the clients of an {@link org.apache.tika.pipes.async.AsyncProcessor}
+     * or {@link PipesParser}, and each of them
+     * costs a full JVM's worth of memory.
+     * <p>
+     * The default, <code>0</code>, turns this off.
+     *
+     * @param spareServers
+     */
+    public void setSpareServers(int spareServers) {
+        this.spareServers = spareServers;
+    }
+
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    /**
+     * If this is greater than <code>0</code>, each forked PipesServer parses a small
+     * built-in set of documents this many times before it reports that it is ready,
+     * so that the first real files don't pay for class loading and the JIT. This
+     * is most useful together with {@link #setSpareServers(int)}, where the warm-up
+     * happens off the critical path.
+     *
+     * @param warmUpIterations
+     */
+    public void setWarmUpIterations(int warmUpIterations) {
+        this.warmUpIterations = warmUpIterations;
+    }
+
+    public Path getSharedArchiveFile() {
+        return sharedArchiveFile;
+    }
+
+    /**
+     * AppCDS archive for the forked PipesServers. If it doesn't exist yet, it is
+     * created by a training run before the first server is started; see
+     * {@link org.apache.tika.utils.SharedArchiveUtils}. This requires java 13 or later
+     * for the forked servers; with older versions, it is ignored. Default is
+     * <code>null</code>, which turns this off.
+     *
+     * @param sharedArchiveFile
+     */
+    public void setSharedArchiveFile(String sharedArchiveFile) {
+        this.sharedArchiveFile = Paths.get(sharedArchiveFile);
+    }
+
+    public long getParseResultCacheMaxBytes() {
+        return parseResultCacheMaxBytes;
+    }
+
+    /**
+     * If this is greater than <code>0</code>, each forked PipesServer keeps up to this
+     * many estimated bytes of parse results in memory, keyed by a digest of the input,
+     * and byte-identical files and embedded files aren't parsed again; see
+     * {@link org.apache.tika.parser.ParseResultCache}. The digester configured for the
+     * AutoDetectParser is used if there is one, else SHA-256. This only applies to
+     * the RMETA parse mode. Default is <code>-1</code>, which turns this off.
+     *
+     * @param parseResultCacheMaxBytes
+     */
+    public void setParseResultCacheMaxBytes(long parseResultCacheMaxBytes) {
+        this.parseResultCacheMaxBytes = parseResultCacheMaxBytes;
+    }
+
+    public Path getParseResultCacheDirectory() {
+        return parseResultCacheDirectory;
+    }
+
+    /**
+     * If this is set, the parse results are also kept in this directory, which the
+     * forked servers share and which outlives them. Default is <code>null</code>.
+     *
+     * @param parseResultCacheDirectory
+     */
+    public void setParseResultCacheDirectory(String parseResultCacheDirectory) {
+        this.parseResultCacheDirectory = Paths.get(parseResultCacheDirectory);
+    }
+
+    public long getParseResultCacheMaxDiskBytes() {
+        return parseResultCacheMaxDiskBytes;
+    }
+
+    /**
+     * When the {@link #getParseResultCacheDirectory()} holds more than this, the least
+     * recently used results are deleted. Default is 10GB.
+     *
+     * @param parseResultCacheMaxDiskBytes
+     */
+    public void setParseResultCacheMaxDiskBytes(long parseResultCacheMaxDiskBytes) {
+        this.parseResultCacheMaxDiskBytes = parseResultCacheMaxDiskBytes;
+    }
+
+    public boolean isUseContentSink() {
+        return useContentSink;
+    }
+
+    /**
+     * If <code>true</code>, in the RMETA parse mode the forked PipesServers write the
+     * text of each document as UTF-8 into an off-heap
+     * {@link org.apache.tika.sax.ContentSink} instead of building <code>String</code>s,
+     * and copy the bytes straight into the result that is sent back. The text is only
+     * decoded by the client, or by the server if it emits the result itself. This
+     * needs the {@link SERIALIZATION_FORMAT#BINARY} format and is ignored when
+     * the parse result cache is on, or when a metadata filter is configured, because
+     * the filters wouldn't see the text. Default is <code>false</code>.
+     *
+     * @param useContentSink
+     */
+    public void setUseContentSink(boolean useContentSink) {
+        this.useContentSink = useContentSink;
+    }
+
+    public long getContentSinkMaxBytes() {
+        return contentSinkMaxBytes;
+    }
+
+    /**
+     * With {@link #setUseContentSink(boolean)}, the most bytes of off-heap buffers
+     * that one parse may hold. A parse with more text fails. Default is 256MB.
+     *
+     * @param contentSinkMaxBytes
+     */
+    public void setContentSinkMaxBytes(long contentSinkMaxBytes) {
+        this.contentSinkMaxBytes = contentSinkMaxBytes;
+    }
 }
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.emitter.EmitData;
+
+/**
+ * Latency histograms for each {@link StageTimings.STAGE}, by mime type and parser,
+ * and counts of the results by status, for one {@link PipesParser} or
+ * {@link org.apache.tika.pipes.async.AsyncProcessor}.
+ * <p>
+ * This class is thread safe.
+ */
+public class PipesMetrics {
+
+    /**
+     * Once there are this many histograms, new mime type and parser combinations
+     * are counted under {@link #OTHER}.
+     */
+    public static final int DEFAULT_MAX_SERIES = 1000;
+
+    public static final String OTHER = "other";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final int maxSeries;
+    private final Map<Series, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<PipesResult.STATUS, LongAdder> results =
+            new EnumMap<>(PipesResult.STATUS.class);
+    private final long started = System.currentTimeMillis();
+
+    public PipesMetrics() {
+        this(DEFAULT_MAX_SERIES);
+    }
+
+    public PipesMetrics(int maxSeries) {
+        this.maxSeries = maxSeries;
+        for (PipesResult.STATUS status : PipesResult.STATUS.values()) {
+            results.put(status, new LongAdder());
+        }
+    }
+
+    /**
+     * Counts the result and records its stage timings, if it has any.
+     *
+     * @param queueWaitNanos how long the tuple waited for a client, or <code>-1</code>
+     *                       if unknown. This is also set on the result's timings, so that
+     *                       the {@link PipesReporter}s see it.
+     */
+    public void record(PipesResult result, long queueWaitNanos) {
+        results.get(result.getStatus()).increment();
+        StageTimings timings = result.getStageTimings();
+        if (timings == null) {
+            if (queueWaitNanos >= 0) {
+                record(StageTimings.STAGE.QUEUE_WAIT, StageTimings.UNKNOWN,
+                        StageTimings.UNKNOWN, queueWaitNanos);
+            }
+            return;
+        }
+        if (queueWaitNanos >= 0) {
+            timings.set(StageTimings.STAGE.QUEUE_WAIT, queueWaitNanos);
+        }
+        for (StageTimings.STAGE stage : StageTimings.STAGE.values()) {
+            if (timings.get(stage) >= 0) {
+                record(stage, timings.getMimeType(), timings.getParserClass(),
+                        timings.get(stage));
+            }
+        }
+    }
+
+    /**
+     * Records the time it took to emit a batch, split evenly between its documents.
+     */
+    public void recordEmit(List<? extends EmitData> batch, long nanos) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long each = nanos / batch.size();
+        for (EmitData emitData : batch) {
+            List<Metadata> metadataList = emitData.getMetadataList();
+            if (metadataList == null || metadataList.isEmpty()) {
+                record(StageTimings.STAGE.EMIT, StageTimings.UNKNOWN, StageTimings.UNKNOWN,
+                        each);
+            } else {
+                //the metadata may have been filtered by now
+                Metadata container = metadataList.get(0);
+                record(StageTimings.STAGE.EMIT, StageTimings.getMimeType(container),
+                        StageTimings.getParserClass(container), each);
+            }
+        }
+    }
+
+    public void record(StageTimings.STAGE stage, String mimeType, String parserClass,
+                       long nanos) {
+        Series series = new Series(stage, mimeType, parserClass);
+        LatencyHistogram histogram = histograms.get(series);
+        if (histogram == null) {
+            if (histograms.size() >= maxSeries) {
+                series = new Series(stage, OTHER, OTHER);
+            }
+            histogram = histograms.computeIfAbsent(series, s -> new LatencyHistogram());
+        }
+        histogram.recordNanos(nanos);
+    }
+
+    /**
+     * @return the histograms, sorted by stage, mime type and parser
+     */
+    public Map<Series, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    public Map<PipesResult.STATUS, Long> getResultCounts() {
+        Map<PipesResult.STATUS, Long> counts = new EnumMap<>(PipesResult.STATUS.class);
+        for (Map.Entry<PipesResult.STATUS, LongAdder> e : results.entrySet()) {
+            counts.put(e.getKey(), e.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of results per second since this was created
+     */
+    public double getResultsPerSecond() {
+        long total = 0;
+        for (LongAdder adder : results.values()) {
+            total += adder.sum();
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        return elapsed <= 0 ? 0 : total * 1000.0 / elapsed;
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text format, labelled by endpoint.
+     *
+     * @param metrics endpoint -> metrics
+     */
+    public static void writePrometheus(Map<String, PipesMetrics> metrics, Writer writer)
+            throws IOException {
+        writer.write("# HELP tika_pipes_stage_seconds Latency of each pipes stage.\n");
+        writer.write("# TYPE tika_pipes_stage_seconds summary\n");
+        for (Map.Entry<String, PipesMetrics> e : metrics.entrySet()) {
+            for (Map.Entry<Series, LatencyHistogram> h :
+                    e.getValue().getHistograms().entrySet()) {
+                String labels = "endpoint=\"" + escape(e.getKey()) + "\"," +
+                        h.getKey().toLabels();
+                LatencyHistogram histogram = h.getValue();
+                for (double q : QUANTILES) {
+                    writeSample(writer, "tika_pipes_stage_seconds",
+                            labels + ",quantile=\"" + q + "\"",
+                            seconds(histogram.getValueAtPercentile(q * 100)));
+                }
+                writeSample(writer, "tika_pipes_stage_seconds_sum", labels,
+                        seconds(histogram.getSumMicros()));
+                writeSample(writer, "tika_pipes_stage_seconds_count", labels,
+                        Long.toString(histogram.getCount()));
+            }
+        }
+        writer.write("# HELP tika_pipes_results_total Number of results by status.\n");
+        writer.write("# TYPE tika_pipes_results_total counter\n");
+        for (Map.Entry<String, PipesMetrics> e : metrics.entrySet()) {
+            for (Map.Entry<PipesResult.STATUS, Long> c :
+                    e.getValue().getResultCounts().entrySet()) {
+                if (c.getValue() == 0) {
+                    continue;
+                }
+                writeSample(writer, "tika_pipes_results_total",
+                        "endpoint=\"" + escape(e.getKey()) + "\",status=\"" +
+                                c.getKey().name().toLowerCase(Locale.ROOT) + "\"",
+                        Long.toString(c.getValue()));
+            }
+        }
+        writer.write("# HELP tika_pipes_results_per_second Results per second since start.\n");
+        writer.write("# TYPE tika_pipes_results_per_second gauge\n");
+        for (Map.Entry<String, PipesMetrics> e : metrics.entrySet()) {
+            writeSample(writer, "tika_pipes_results_per_second",
+                    "endpoint=\"" + escape(e.getKey()) + "\"",
+                    Double.toString(e.getValue().getResultsPerSecond()));
+        }
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, String value)
+            throws IOException {
+        writer.write(name);
+        writer.write('{');
+        writer.write(labels);
+        writer.write("} ");
+        writer.write(value);
+        writer.write('\n');
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1000000.0);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public static class Series implements Comparable<Series> {
+        private final StageTimings.STAGE stage;
+        private final String mimeType;
+        private final String parserClass;
+
+        public Series(StageTimings.STAGE stage, String mimeType, String parserClass) {
+            this.stage = stage;
+            this.mimeType = mimeType;
+            this.parserClass = parserClass;
+        }
+
+        public StageTimings.STAGE getStage() {
+            return stage;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getParserClass() {
+            return parserClass;
+        }
+
+        private String toLabels() {
+            return "stage=\"" + stage.getLabel() + "\",mime_type=\"" + escape(mimeType) +
+                    "\",parser=\"" + escape(parserClass) + "\"";
+        }
+
+        @Override
+        public int compareTo(Series o) {
+            int c = stage.compareTo(o.stage);
+            if (c == 0) {
+                c = mimeType.compareTo(o.mimeType);
+            }
+            return c == 0 ? parserClass.compareTo(o.parserClass) : c;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Series series = (Series) o;
+            return stage == series.stage && mimeType.equals(series.mimeType) &&
+                    parserClass.equals(series.parserClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stage, mimeType, parserClass);
+        }
+
+        @Override
+        public String toString() {
+            return stage.getLabel() + "/" + mimeType + "/" + parserClass;
+        }
+    }
+}
@@ -29,28 +29,52 @@ public class PipesParser implements Closeable {
     private final PipesConfig pipesConfig;
     private final List<PipesClient> clients = new ArrayList<>();
     private final ArrayBlockingQueue<PipesClient> clientQueue ;
+    //null unless spareServers > 0
+    private final SpareServerPool spareServerPool;
+    private final PipesMetrics metrics = new PipesMetrics();
 
 
     public PipesParser(PipesConfig pipesConfig) {
         this.pipesConfig = pipesConfig;
-        this.clientQueue = new ArrayBlockingQueue<>(pipesConfig.getNumClients());
+        this.clientQueue = new ArrayBlockingQueue<>(getMaxConcurrentParses(pipesConfig));
+        this.spareServerPool = pipesConfig.getSpareServers() > 0 ?
+                new SpareServerPool(pipesConfig) : null;
+        //with concurrent parses, each client is in the queue that many times
+        int concurrentParses = Math.max(1, pipesConfig.getConcurrentParsesPerProcess());
         for (int i = 0; i < pipesConfig.getNumClients(); i++) {
-            PipesClient client = new PipesClient(pipesConfig);
-            clientQueue.offer(client);
+            PipesClient client = new PipesClient(pipesConfig, spareServerPool);
             clients.add(client);
+            for (int j = 0; j < concurrentParses; j++) {
+                clientQueue.offer(client);
+            }
         }
     }
 
+    /**
+     * @return how many parses a PipesParser with this config runs at once:
+     * <code>numClients</code> forked processes, each with
+     * <code>concurrentParsesPerProcess</code> parses
+     */
+    public static int getMaxConcurrentParses(PipesConfigBase pipesConfig) {
+        return pipesConfig.getNumClients() *
+                Math.max(1, pipesConfig.getConcurrentParsesPerProcess());
+    }
+
     public PipesResult parse(FetchEmitTuple t) throws InterruptedException,
             PipesException, IOException {
         PipesClient client = null;
+        long start = System.nanoTime();
         try {
             client = clientQueue.poll(pipesConfig.getMaxWaitForClientMillis(),
                     TimeUnit.MILLISECONDS);
+            long queueWait = System.nanoTime() - start;
             if (client == null) {
+                metrics.record(PipesResult.CLIENT_UNAVAILABLE_WITHIN_MS, queueWait);
                 return PipesResult.CLIENT_UNAVAILABLE_WITHIN_MS;
             }
-            return client.process(t);
+            PipesResult result = client.process(t);
+            metrics.record(result, queueWait);
+            return result;
         } finally {
             if (client != null) {
                 clientQueue.offer(client);
@@ -58,6 +82,10 @@ public class PipesParser implements Closeable {
         }
     }
 
+    public PipesMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void close() throws IOException {
         List<IOException> exceptions = new ArrayList<>();
@@ -68,6 +96,13 @@ public class PipesParser implements Closeable {
                 exceptions.add(e);
             }
         }
+        if (spareServerPool != null) {
+            try {
+                spareServerPool.close();
+            } catch (IOException e) {
+                exceptions.add(e);
+            }
+        }
         if (exceptions.size() > 0) {
             throw exceptions.get(0);
         }
@@ -47,11 +47,18 @@ public class PipesResult {
     private final STATUS status;
     private final EmitData emitData;
     private final String message;
+    private final StageTimings stageTimings;
 
-    private PipesResult(STATUS status, EmitData emitData, String message) {
+    private PipesResult(STATUS status, EmitData emitData, String message,
+                        StageTimings stageTimings) {
         this.status = status;
         this.emitData = emitData;
         this.message = message;
+        this.stageTimings = stageTimings;
+    }
+
+    private PipesResult(STATUS status, EmitData emitData, String message) {
+        this(status, emitData, message, null);
     }
 
     public PipesResult(STATUS status) {
@@ -94,6 +101,22 @@ public class PipesResult {
         return message;
     }
 
+    /**
+     * @return how long each stage took, or <code>null</code> if the forked process
+     * didn't get as far as reporting it, e.g. after a crash
+     */
+    public StageTimings getStageTimings() {
+        return stageTimings;
+    }
+
+    /**
+     * @return a copy of this result with the timings; the shared results, e.g.
+     * {@link #EMIT_SUCCESS}, are left as they are
+     */
+    PipesResult withStageTimings(StageTimings stageTimings) {
+        return new PipesResult(status, emitData, message, stageTimings);
+    }
+
     @Override
     public String toString() {
         return "PipesResult{" + "status=" + status + ", emitData=" + emitData + ", message='" +
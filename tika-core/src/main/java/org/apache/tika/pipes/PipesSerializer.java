@@ -0,0 +1,519 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+
+import org.apache.tika.metadata.HttpHeaders;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.sax.BasicContentHandlerFactory;
+import org.apache.tika.sax.ContentSink;
+
+/**
+ * Encodes the {@link FetchEmitTuple}s that the {@link PipesClient} sends to
+ * the {@link PipesServer}, and the {@link EmitData} that is sent back.
+ * <p>
+ * With {@link PipesConfigBase.SERIALIZATION_FORMAT#BINARY}, objects are
+ * written field by field: strings as a variable length byte count followed
+ * by their UTF-8 bytes, and metadata keys as references into a table of
+ * keys. The table starts out with the keys that show up in nearly every
+ * extract (see {@link #COMMON_KEYS}), and any other key is added to it the
+ * first time it is written, so each key is only written out once per
+ * message. Messages are self-contained, so no state has to be kept in
+ * sync between the client and the server across restarts.
+ * <p>
+ * {@link PipesConfigBase.SERIALIZATION_FORMAT#JAVA} uses plain Java
+ * serialization, and is kept as a fallback.
+ * <p>
+ * The client and the forked server always run with the same jars, so the
+ * binary format is not versioned beyond a leading marker byte.
+ */
+class PipesSerializer {
+
+    private static final byte BINARY_FORMAT_MARKER = 'B';
+
+    /**
+     * Keys that are preloaded in the key table. Both sides have to agree
+     * on this list.
+     */
+    private static final String[] COMMON_KEYS = new String[]{
+            TikaCoreProperties.TIKA_CONTENT.getName(),
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.CONTENT_ENCODING,
+            TikaCoreProperties.RESOURCE_NAME_KEY,
+            TikaCoreProperties.EMBEDDED_DEPTH.getName(),
+            TikaCoreProperties.EMBEDDED_RESOURCE_PATH.getName(),
+            TikaCoreProperties.EMBEDDED_ID_PATH.getName(),
+            TikaCoreProperties.EMBEDDED_ID.getName(),
+            TikaCoreProperties.EMBEDDED_RESOURCE_TYPE_KEY,
+            TikaCoreProperties.PARSE_TIME_MILLIS.getName(),
+            TikaCoreProperties.TIKA_CONTENT_HANDLER.getName(),
+            TikaCoreProperties.TIKA_PARSED_BY.getName(),
+            TikaCoreProperties.TIKA_PARSED_BY_FULL_SET.getName(),
+            TikaCoreProperties.CONTAINER_EXCEPTION.getName(),
+            TikaCoreProperties.EMBEDDED_EXCEPTION.getName(),
+            TikaCoreProperties.EMBEDDED_WARNING.getName(),
+            TikaCoreProperties.WRITE_LIMIT_REACHED.getName(),
+            TikaCoreProperties.CREATED.getName(),
+            TikaCoreProperties.MODIFIED.getName(),
+            TikaCoreProperties.CREATOR.getName(),
+            TikaCoreProperties.TITLE.getName(),
+            TikaCoreProperties.LANGUAGE.getName()
+    };
+
+    private static final Map<String, Integer> COMMON_KEY_INDEXES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < COMMON_KEYS.length; i++) {
+            COMMON_KEY_INDEXES.put(COMMON_KEYS[i], i);
+        }
+    }
+
+    static byte[] serialize(FetchEmitTuple t, PipesConfigBase.SERIALIZATION_FORMAT format)
+            throws IOException {
+        if (format == PipesConfigBase.SERIALIZATION_FORMAT.JAVA) {
+            return javaSerialize(t);
+        }
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeString(t.getId());
+        writer.writeFetchKey(t.getFetchKey());
+        writer.writeEmitKey(t.getEmitKey());
+        writer.writeMetadata(t.getMetadata());
+        writer.writeEnum(t.getOnParseException());
+        HandlerConfig handlerConfig = t.getHandlerConfig();
+        writer.writeEnum(handlerConfig.getType());
+        writer.writeEnum(handlerConfig.getParseMode());
+        writer.writeVarInt(handlerConfig.getWriteLimit());
+        writer.writeVarInt(handlerConfig.getMaxEmbeddedResources());
+        writer.writeByte(handlerConfig.isThrowOnWriteLimitReached() ? 1 : 0);
+        return writer.toByteArray();
+    }
+
+    static FetchEmitTuple deserializeFetchEmitTuple(byte[] bytes,
+                                                    PipesConfigBase.SERIALIZATION_FORMAT format)
+            throws IOException {
+        if (format == PipesConfigBase.SERIALIZATION_FORMAT.JAVA) {
+            return (FetchEmitTuple) javaDeserialize(bytes);
+        }
+        BinaryReader reader = new BinaryReader(ByteBuffer.wrap(bytes));
+        String id = reader.readString();
+        FetchKey fetchKey = reader.readFetchKey();
+        EmitKey emitKey = reader.readEmitKey();
+        Metadata metadata = reader.readMetadata();
+        FetchEmitTuple.ON_PARSE_EXCEPTION onParseException =
+                reader.readEnum(FetchEmitTuple.ON_PARSE_EXCEPTION.values());
+        BasicContentHandlerFactory.HANDLER_TYPE type =
+                reader.readEnum(BasicContentHandlerFactory.HANDLER_TYPE.values());
+        HandlerConfig.PARSE_MODE parseMode = reader.readEnum(HandlerConfig.PARSE_MODE.values());
+        int writeLimit = reader.readVarInt();
+        int maxEmbeddedResources = reader.readVarInt();
+        boolean throwOnWriteLimitReached = reader.readByte() != 0;
+        return new FetchEmitTuple(id, fetchKey, emitKey, metadata,
+                new HandlerConfig(type, parseMode, writeLimit, maxEmbeddedResources,
+                        throwOnWriteLimitReached), onParseException);
+    }
+
+    static byte[] serialize(EmitData emitData, PipesConfigBase.SERIALIZATION_FORMAT format)
+            throws IOException {
+        return serialize(emitData, format, null);
+    }
+
+    /**
+     * @param contentSink if not <code>null</code>, the text of metadata that refers to
+     *                    the sink is copied from it as {@link TikaCoreProperties#TIKA_CONTENT},
+     *                    so the receiver can't tell the difference. This only works with
+     *                    the binary format.
+     */
+    static byte[] serialize(EmitData emitData, PipesConfigBase.SERIALIZATION_FORMAT format,
+                            ContentSink contentSink) throws IOException {
+        if (format == PipesConfigBase.SERIALIZATION_FORMAT.JAVA) {
+            if (contentSink != null) {
+                throw new IllegalArgumentException(
+                        "The content sink only works with the binary format");
+            }
+            return javaSerialize(emitData);
+        }
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeEmitKey(emitData.getEmitKey());
+        writer.writeString(emitData.getContainerStackTrace());
+        List<Metadata> metadataList = emitData.getMetadataList();
+        writer.writeVarInt(metadataList.size());
+        for (Metadata metadata : metadataList) {
+            writer.writeMetadata(metadata, contentSink);
+        }
+        return writer.toByteArray();
+    }
+
+    static EmitData deserializeEmitData(byte[] bytes,
+                                        PipesConfigBase.SERIALIZATION_FORMAT format)
+            throws IOException {
+        return deserializeEmitData(ByteBuffer.wrap(bytes), format);
+    }
+
+    /**
+     * Deserializes the remaining bytes of the buffer, e.g. a slot of a
+     * {@link SharedResultBuffer}. In the binary format, strings are decoded
+     * directly from the buffer.
+     */
+    static EmitData deserializeEmitData(ByteBuffer buffer,
+                                        PipesConfigBase.SERIALIZATION_FORMAT format)
+            throws IOException {
+        if (format == PipesConfigBase.SERIALIZATION_FORMAT.JAVA) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return (EmitData) javaDeserialize(bytes);
+        }
+        BinaryReader reader = new BinaryReader(buffer);
+        EmitKey emitKey = reader.readEmitKey();
+        String containerStackTrace = reader.readString();
+        int size = reader.readVarInt();
+        List<Metadata> metadataList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            metadataList.add(reader.readMetadata());
+        }
+        return new EmitData(emitKey, metadataList, containerStackTrace);
+    }
+
+    /**
+     * Binary encoding of a single metadata object, e.g. the metadata that a
+     * fetcher added to a file that was spooled by a {@link PrefetchSpool}.
+     */
+    static byte[] serialize(Metadata metadata) {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeMetadata(metadata);
+        return writer.toByteArray();
+    }
+
+    static Metadata deserializeMetadata(byte[] bytes) throws IOException {
+        return new BinaryReader(ByteBuffer.wrap(bytes)).readMetadata();
+    }
+
+    private static byte[] javaSerialize(Object object) throws IOException {
+        UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
+            objectOutputStream.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(
+                new UnsynchronizedByteArrayInputStream(bytes))) {
+            return objectInputStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("can't find class?!", e);
+        }
+    }
+
+    private static class BinaryWriter {
+
+        private final UnsynchronizedByteArrayOutputStream bos =
+                new UnsynchronizedByteArrayOutputStream();
+
+        /**
+         * Keys written so far in this message that aren't common keys,
+         * numbered after the common keys.
+         */
+        private final Map<String, Integer> keys = new HashMap<>();
+
+        BinaryWriter() {
+            bos.write(BINARY_FORMAT_MARKER);
+        }
+
+        void writeByte(int b) {
+            bos.write(b);
+        }
+
+        /**
+         * Writes the int in 7 bit groups, lowest first, with the high bit
+         * set on all but the last group. -1 is common enough (no limit), so
+         * ints are zigzag encoded first to keep small negative numbers short.
+         */
+        void writeVarInt(int i) {
+            int v = (i << 1) ^ (i >> 31);
+            while ((v & ~0x7F) != 0) {
+                bos.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bos.write(v);
+        }
+
+        void writeEnum(Enum<?> e) {
+            bos.write(e == null ? 0 : e.ordinal() + 1);
+        }
+
+        void writeLong(long l) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bos.write((int) (l >>> shift));
+            }
+        }
+
+        /**
+         * Strings are written as their UTF-8 byte count plus one, so that
+         * zero can stand for <code>null</code>.
+         */
+        void writeString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            bos.write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Keys are written as their index in the key table plus one, or as
+         * zero followed by the key itself when it is seen for the first time.
+         */
+        void writeKey(String key) {
+            Integer index = COMMON_KEY_INDEXES.get(key);
+            if (index == null) {
+                index = keys.get(key);
+            }
+            if (index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            keys.put(key, COMMON_KEY_INDEXES.size() + keys.size());
+            writeVarInt(0);
+            writeString(key);
+        }
+
+        void writeMetadata(Metadata metadata) {
+            if (metadata == null) {
+                writeVarInt(-1);
+                return;
+            }
+            String[] names = metadata.names();
+            writeVarInt(names.length);
+            writeFields(metadata, names, false);
+        }
+
+        /**
+         * If the metadata refers to text in the sink, the offset and length are
+         * replaced by the text, which is copied from the sink without decoding it.
+         */
+        void writeMetadata(Metadata metadata, ContentSink contentSink) throws IOException {
+            String contentOffset = contentSink == null || metadata == null ? null :
+                    metadata.get(ContentSink.CONTENT_OFFSET);
+            if (contentOffset == null) {
+                writeMetadata(metadata);
+                return;
+            }
+            long offset = Long.parseLong(contentOffset);
+            long length = Long.parseLong(metadata.get(ContentSink.CONTENT_LENGTH));
+            if (length >= Integer.MAX_VALUE) {
+                throw new IOException("Text is too long to serialize: " + length);
+            }
+            String[] names = metadata.names();
+            //the offset and the length become the text
+            writeVarInt(names.length - 1);
+            writeFields(metadata, names, true);
+            writeKey(TikaCoreProperties.TIKA_CONTENT.getName());
+            writeVarInt(1);
+            writeVarInt((int) length + 1);
+            contentSink.writeTo(offset, length, bos);
+        }
+
+        private void writeFields(Metadata metadata, String[] names, boolean skipContentSinkRefs) {
+            for (String name : names) {
+                if (skipContentSinkRefs && (name.equals(ContentSink.CONTENT_OFFSET.getName()) ||
+                        name.equals(ContentSink.CONTENT_LENGTH.getName()))) {
+                    continue;
+                }
+                writeKey(name);
+                String[] values = metadata.getValues(name);
+                writeVarInt(values.length);
+                for (String value : values) {
+                    writeString(value);
+                }
+            }
+        }
+
+        void writeFetchKey(FetchKey fetchKey) {
+            if (fetchKey == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            writeString(fetchKey.getFetcherName());
+            writeString(fetchKey.getFetchKey());
+            writeLong(fetchKey.getRangeStart());
+            writeLong(fetchKey.getRangeEnd());
+        }
+
+        void writeEmitKey(EmitKey emitKey) {
+            if (emitKey == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            writeString(emitKey.getEmitterName());
+            writeString(emitKey.getEmitKey());
+        }
+
+        byte[] toByteArray() {
+            return bos.toByteArray();
+        }
+    }
+
+    private static class BinaryReader {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * Scratch space to decode strings from buffers that aren't backed
+         * by an array.
+         */
+        private byte[] scratch;
+
+        private final List<String> keys = new ArrayList<>();
+
+        BinaryReader(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (readByte() != BINARY_FORMAT_MARKER) {
+                throw new IOException("Not in the binary pipes format; " +
+                        "do the client and server agree on the serialization format?");
+            }
+            keys.addAll(Arrays.asList(COMMON_KEYS));
+        }
+
+        int readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        int readVarInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new IOException("Malformed variable length int");
+        }
+
+        long readLong() throws IOException {
+            long l = 0;
+            for (int i = 0; i < 8; i++) {
+                l = (l << 8) | readByte();
+            }
+            return l;
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.remaining()) {
+                throw new EOFException();
+            }
+            String s;
+            if (buffer.hasArray()) {
+                s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                if (scratch == null || scratch.length < length) {
+                    scratch = new byte[Math.max(length, 1024)];
+                }
+                buffer.get(scratch, 0, length);
+                s = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            return s;
+        }
+
+        String readKey() throws IOException {
+            int index = readVarInt();
+            if (index > 0) {
+                if (index > keys.size()) {
+                    throw new IOException("Unknown metadata key index: " + index);
+                }
+                return keys.get(index - 1);
+            }
+            String key = readString();
+            keys.add(key);
+            return key;
+        }
+
+        Metadata readMetadata() throws IOException {
+            int size = readVarInt();
+            if (size < 0) {
+                return null;
+            }
+            Metadata metadata = new Metadata();
+            for (int i = 0; i < size; i++) {
+                String name = readKey();
+                int numValues = readVarInt();
+                for (int j = 0; j < numValues; j++) {
+                    metadata.add(name, readString());
+                }
+            }
+            return metadata;
+        }
+
+        FetchKey readFetchKey() throws IOException {
+            if (readByte() == 0) {
+                return null;
+            }
+            return new FetchKey(readString(), readString(), readLong(), readLong());
+        }
+
+        EmitKey readEmitKey() throws IOException {
+            if (readByte() == 0) {
+                return null;
+            }
+            return new EmitKey(readString(), readString());
+        }
+
+        <T extends Enum<T>> T readEnum(T[] values) throws IOException {
+            int ordinal = readByte() - 1;
+            if (ordinal < 0) {
+                return null;
+            }
+            if (ordinal >= values.length) {
+                throw new IOException("Unexpected value " + ordinal + " for " +
+                        values.getClass().getComponentType().getSimpleName());
+            }
+            return values[ordinal];
+        }
+    }
+}
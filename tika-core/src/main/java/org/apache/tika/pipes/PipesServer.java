@@ -20,30 +20,42 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
-import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.extractor.DocumentSelector;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.NoOpFilter;
+import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.ParseResultCache;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.parser.RecursiveParserWrapper;
 import org.apache.tika.pipes.emitter.EmitData;
@@ -55,8 +67,11 @@ import org.apache.tika.pipes.fetcher.FetchKey;
 import org.apache.tika.pipes.fetcher.Fetcher;
 import org.apache.tika.pipes.fetcher.FetcherManager;
 import org.apache.tika.pipes.fetcher.RangeFetcher;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
 import org.apache.tika.sax.BasicContentHandlerFactory;
 import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.sax.ContentSink;
+import org.apache.tika.sax.ContentSinkRecursiveParserWrapperHandler;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
 import org.apache.tika.utils.ExceptionUtils;
 import org.apache.tika.utils.StringUtils;
@@ -77,6 +92,24 @@ public class PipesServer implements Runnable {
     //it looks like the server crashes with exit value 3 on OOM, for example
     public static final int TIMEOUT_EXIT_CODE = 17;
 
+    //set by the PipesClient if the parse result cache is on
+    static final String PARSE_RESULT_CACHE_MAX_BYTES_PROPERTY =
+            "tika.pipes.parseResultCacheMaxBytes";
+    static final String PARSE_RESULT_CACHE_DIRECTORY_PROPERTY =
+            "tika.pipes.parseResultCacheDirectory";
+    static final String PARSE_RESULT_CACHE_MAX_DISK_BYTES_PROPERTY =
+            "tika.pipes.parseResultCacheMaxDiskBytes";
+    //set by the PipesClient if the text should be kept in a ContentSink
+    static final String CONTENT_SINK_PROPERTY = "tika.pipes.contentSink";
+    static final String CONTENT_SINK_MAX_BYTES_PROPERTY = "tika.pipes.contentSinkMaxBytes";
+    //log the cache's hit rate every this many parses
+    private static final long CACHE_STATS_INTERVAL = 1000;
+
+    //user metadata that is only used for scheduling and isn't added to the output
+    private static final Set<String> SCHEDULING_KEYS = new HashSet<>(Arrays.asList(
+            FetchEmitTuple.SIZE_HINT, FetchEmitTuple.VERSION_HINT, FetchEmitTuple.TENANT,
+            FetchEmitTuple.PRIORITY));
+
     public enum STATUS {
         READY,
         CALL,
@@ -93,7 +126,10 @@ public class PipesServer implements Runnable {
         EMIT_EXCEPTION,
         OOM,
         TIMEOUT,
-        EMPTY_OUTPUT;
+        EMPTY_OUTPUT,
+        PARSE_SUCCESS_SHARED_MEMORY,
+        //written before the status of a request's result, followed by its StageTimings
+        STAGE_TIMINGS;
 
         byte getByte() {
             return (byte) (ordinal() + 1);
@@ -114,6 +150,19 @@ public class PipesServer implements Runnable {
         }
     }
 
+    //parsed by the warm-up; anything that the configured parsers can't handle is skipped
+    private static final String[] WARM_UP_DOCS = {
+            "The quick brown fox jumps over the lazy dog.\n",
+            "<html><head><title>warm up</title></head>" +
+                    "<body><p>The quick brown fox</p></body></html>",
+            "<?xml version=\"1.0\"?><root><item>The quick brown fox</item></root>",
+            "{\"text\": \"The quick brown fox\"}",
+            "a,b,c\n1,2,3\n",
+            "{\\rtf1\\ansi The quick brown fox\\par}",
+            "From: a@example.com\r\nTo: b@example.com\r\nSubject: warm up\r\n\r\n" +
+                    "The quick brown fox\r\n"
+    };
+
     private final Object[] lock = new Object[0];
     private long checkForTimeoutMs = 1000;
     private final Path tikaConfigPath;
@@ -125,25 +174,63 @@ public class PipesServer implements Runnable {
     private final long maxForEmitBatchBytes;
     private final long serverParseTimeoutMillis;
     private final long serverWaitTimeoutMillis;
+    private final PipesConfigBase.SERIALIZATION_FORMAT serializationFormat;
+    //if not null, results are handed back through this instead of stdout when they fit
+    private SharedResultBuffer sharedResultBuffer;
+    //if > 1, requests are tagged with ids and run concurrently on parseExecutor
+    private int concurrentParses = 1;
+    //number of times to parse WARM_UP_DOCS before reporting READY
+    private int warmUpIterations = 0;
+    //set once by the main thread before the first request; read by the watchdog
+    private volatile ExecutorService parseExecutor;
+    //start times of the requests currently being parsed, by request id
+    private final Map<Integer, Long> requestStarts = new ConcurrentHashMap<>();
+    //the parses of the requests in requestStarts, so that they can be cancelled on a timeout
+    private final Map<Integer, Future<?>> requestFutures = new ConcurrentHashMap<>();
+    //the request that the current parse thread is working on
+    private final ThreadLocal<Request> currentRequest = new ThreadLocal<>();
+    //the timings of the current parse thread's request, until its result is written
+    private final ThreadLocal<CurrentTimings> currentTimings = new ThreadLocal<>();
+    //the text of the current parse thread's request, if the content sink is on
+    private final ThreadLocal<ContentSink> currentContentSink = new ThreadLocal<>();
     private Parser autoDetectParser;
     private Parser rMetaParser;
     private TikaConfig tikaConfig;
     private FetcherManager fetcherManager;
+    //null unless the client spools prefetched files
+    private final Fetcher spoolFetcher = PrefetchSpool.getSpoolFetcher();
     private EmitterManager emitterManager;
     private volatile boolean parsing;
+    //the server isn't idle while it starts up and warms up
+    private volatile boolean ready = false;
     private volatile long since;
+    //null unless the client turned it on
+    private ParseResultCache parseResultCache;
+    private final AtomicLong cachedParses = new AtomicLong(0);
+    private boolean useContentSink = false;
+    private long contentSinkMaxBytes = ContentSink.DEFAULT_MAX_BYTES;
 
 
     public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
                        long maxForEmitBatchBytes,
                        long serverParseTimeoutMillis, long serverWaitTimeoutMillis)
             throws IOException, TikaException, SAXException {
+        this(tikaConfigPath, in, out, maxForEmitBatchBytes, serverParseTimeoutMillis,
+                serverWaitTimeoutMillis, PipesConfigBase.SERIALIZATION_FORMAT.JAVA);
+    }
+
+    public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
+                       long maxForEmitBatchBytes,
+                       long serverParseTimeoutMillis, long serverWaitTimeoutMillis,
+                       PipesConfigBase.SERIALIZATION_FORMAT serializationFormat)
+            throws IOException, TikaException, SAXException {
         this.tikaConfigPath = tikaConfigPath;
         this.input = new DataInputStream(in);
         this.output = new DataOutputStream(out);
         this.maxForEmitBatchBytes = maxForEmitBatchBytes;
         this.serverParseTimeoutMillis = serverParseTimeoutMillis;
         this.serverWaitTimeoutMillis = serverWaitTimeoutMillis;
+        this.serializationFormat = serializationFormat;
         this.parsing = false;
         this.since = System.currentTimeMillis();
     }
@@ -155,10 +242,24 @@ public class PipesServer implements Runnable {
             long maxForEmitBatchBytes = Long.parseLong(args[1]);
             long serverParseTimeoutMillis = Long.parseLong(args[2]);
             long serverWaitTimeoutMillis = Long.parseLong(args[3]);
+            PipesConfigBase.SERIALIZATION_FORMAT serializationFormat = args.length > 4 ?
+                    PipesConfigBase.SERIALIZATION_FORMAT.parse(args[4]) :
+                    PipesConfigBase.SERIALIZATION_FORMAT.JAVA;
 
             PipesServer server =
                     new PipesServer(tikaConfig, System.in, System.out, maxForEmitBatchBytes,
-                            serverParseTimeoutMillis, serverWaitTimeoutMillis);
+                            serverParseTimeoutMillis, serverWaitTimeoutMillis,
+                            serializationFormat);
+            if (args.length > 5) {
+                server.concurrentParses = Integer.parseInt(args[5]);
+            }
+            if (args.length > 6) {
+                server.warmUpIterations = Integer.parseInt(args[6]);
+            }
+            if (args.length > 9) {
+                server.sharedResultBuffer = SharedResultBuffer.open(Paths.get(args[7]),
+                        Integer.parseInt(args[8]), Integer.parseInt(args[9]));
+            }
             System.setIn(new UnsynchronizedByteArrayInputStream(new byte[0]));
             System.setOut(System.err);
             Thread watchdog = new Thread(server, "Tika Watchdog");
@@ -175,12 +276,17 @@ public class PipesServer implements Runnable {
     public void run() {
         try {
             while (true) {
+                if (parseExecutor != null) {
+                    checkRequestTimeouts();
+                    Thread.sleep(checkForTimeoutMs);
+                    continue;
+                }
                 synchronized (lock) {
                     long elapsed = System.currentTimeMillis() - since;
                     if (parsing && elapsed > serverParseTimeoutMillis) {
                         LOG.warn("timeout server; elapsed {}  with {}", elapsed, serverParseTimeoutMillis);
                         exit(TIMEOUT_EXIT_CODE);
-                    } else if (!parsing && serverWaitTimeoutMillis > 0 &&
+                    } else if (!parsing && ready && serverWaitTimeoutMillis > 0 &&
                             elapsed > serverWaitTimeoutMillis) {
                         LOG.info("closing down from inactivity");
                         exit(0);
@@ -193,6 +299,46 @@ public class PipesServer implements Runnable {
         }
     }
 
+    /**
+     * When parsing several requests concurrently, a request that times out is
+     * reported back to the client instead of shutting the server down, so that
+     * the other requests can finish. Its parse is cancelled, which interrupts it
+     * if the parser checks for that. The client then stops sending requests and
+     * restarts the server once the others have finished.
+     */
+    private void checkRequestTimeouts() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, Long> e : requestStarts.entrySet()) {
+            long elapsed = now - e.getValue();
+            //only report each timeout once
+            if (elapsed > serverParseTimeoutMillis && requestStarts.remove(e.getKey()) != null) {
+                LOG.warn("timeout request {}; elapsed {}  with {}", e.getKey(), elapsed,
+                        serverParseTimeoutMillis);
+                Future<?> future = requestFutures.remove(e.getKey());
+                if (future != null) {
+                    future.cancel(true);
+                }
+                try {
+                    synchronized (output) {
+                        output.writeInt(e.getKey());
+                        output.write(STATUS.TIMEOUT.getByte());
+                        output.flush();
+                    }
+                } catch (IOException ex) {
+                    LOG.error("problem writing data (forking process shutdown?)", ex);
+                    exit(1);
+                }
+            }
+        }
+        synchronized (lock) {
+            if (requestStarts.isEmpty() && serverWaitTimeoutMillis > 0 &&
+                    now - since > serverWaitTimeoutMillis) {
+                LOG.info("closing down from inactivity");
+                exit(0);
+            }
+        }
+    }
+
     public void processRequests() {
         LOG.debug("processing requests {}");
         //initialize
@@ -213,8 +359,18 @@ public class PipesServer implements Runnable {
             }
             return;
         }
+        if (warmUpIterations > 0) {
+            warmUp();
+        }
+        if (concurrentParses > 1) {
+            parseExecutor = Executors.newFixedThreadPool(concurrentParses);
+        }
         //main loop
         try {
+            synchronized (lock) {
+                since = System.currentTimeMillis();
+                ready = true;
+            }
             write(STATUS.READY);
             long start = System.currentTimeMillis();
             while (true) {
@@ -228,6 +384,12 @@ public class PipesServer implements Runnable {
                     }
                     write(STATUS.PING);
                     start = System.currentTimeMillis();
+                    //a ping counts as activity, so that an idle spare server stays up
+                    synchronized (lock) {
+                        since = start;
+                    }
+                } else if (request == STATUS.CALL.getByte() && parseExecutor != null) {
+                    submitOne();
                 } else if (request == STATUS.CALL.getByte()) {
                     parseOne();
                     if (LOG.isTraceEnabled()) {
@@ -277,8 +439,10 @@ public class PipesServer implements Runnable {
             write(STATUS.EMITTER_NOT_FOUND, noEmitterMsg);
             return;
         }
+        long start = System.nanoTime();
         try {
             emitter.emit(emitData.getEmitKey().getEmitKey(), emitData.getMetadataList());
+            timeStage(StageTimings.STAGE.EMIT, start);
         } catch (IOException | TikaEmitterException e) {
             LOG.warn("emit exception", e);
             String msg = ExceptionUtils.getStackTrace(e);
@@ -322,7 +486,53 @@ public class PipesServer implements Runnable {
         }
     }
 
+    private void submitOne() throws IOException {
+        final Request request = new Request(input.readInt(), input.readInt());
+        final FetchEmitTuple t = readFetchEmitTuple();
+        requestStarts.put(request.id, System.currentTimeMillis());
+        Future<?> future = parseExecutor.submit(() -> {
+            currentRequest.set(request);
+            try {
+                actuallyParse(t);
+            } catch (OutOfMemoryError e) {
+                handleOOM(t.getId(), e);
+            } catch (RuntimeException e) {
+                //submit() would swallow this
+                LOG.error("parse of request {} failed", request.id, e);
+                throw e;
+            } finally {
+                requestStarts.remove(request.id);
+                requestFutures.remove(request.id);
+                currentRequest.remove();
+                synchronized (lock) {
+                    since = System.currentTimeMillis();
+                }
+            }
+        });
+        //unless it has already finished
+        if (requestStarts.containsKey(request.id)) {
+            requestFutures.put(request.id, future);
+            if (!requestStarts.containsKey(request.id)) {
+                requestFutures.remove(request.id);
+            }
+        }
+    }
+
     private void actuallyParse(FetchEmitTuple t) {
+        currentTimings.set(new CurrentTimings());
+        try {
+            timeAndParse(t);
+        } finally {
+            currentTimings.remove();
+            ContentSink contentSink = currentContentSink.get();
+            if (contentSink != null) {
+                contentSink.close();
+                currentContentSink.remove();
+            }
+        }
+    }
+
+    private void timeAndParse(FetchEmitTuple t) {
 
         long start = System.currentTimeMillis();
         Fetcher fetcher = getFetcher(t);
@@ -336,12 +546,32 @@ public class PipesServer implements Runnable {
             LOG.trace("timer -- got fetcher: {}ms", elapsed);
         }
 
+        StreamingEmitHandler streamingHandler = null;
+        if (t.getHandlerConfig().getParseMode() == HandlerConfig.PARSE_MODE.RMETA_STREAMING) {
+            streamingHandler = getStreamingHandler(t);
+            if (streamingHandler == null) {
+                //rely on proper logging/exception handling in getStreamingHandler
+                return;
+            }
+        }
+
         start = System.currentTimeMillis();
-        List<Metadata> metadataList = parseIt(t, fetcher);
+        List<Metadata> metadataList = parseIt(t, fetcher, streamingHandler);
 
         if (LOG.isTraceEnabled()) {
             LOG.trace("timer -- to parse: {} ms", System.currentTimeMillis() - start);
         }
+        if (!metadataIsEmpty(metadataList) && currentTimings.get() != null) {
+            //before the metadata is filtered
+            currentTimings.get().timings.setLabels(metadataList.get(0));
+        }
+
+        if (streamingHandler != null && streamingHandler.getEmitException() != null) {
+            LOG.warn("emit exception", streamingHandler.getEmitException());
+            write(STATUS.EMIT_EXCEPTION,
+                    ExceptionUtils.getStackTrace(streamingHandler.getEmitException()));
+            return;
+        }
 
         if (metadataIsEmpty(metadataList)) {
             write(STATUS.EMPTY_OUTPUT);
@@ -358,13 +588,14 @@ public class PipesServer implements Runnable {
         filterMetadata(metadataList);
         if (StringUtils.isBlank(stack) || t.getOnParseException() == FetchEmitTuple.ON_PARSE_EXCEPTION.EMIT) {
             injectUserMetadata(t.getMetadata(), metadataList);
-            EmitKey emitKey = t.getEmitKey();
-            if (StringUtils.isBlank(emitKey.getEmitKey())) {
-                emitKey = new EmitKey(emitKey.getEmitterName(), t.getFetchKey().getFetchKey());
-                t.setEmitKey(emitKey);
-            }
-            EmitData emitData = new EmitData(t.getEmitKey(), metadataList, stack);
-            if (maxForEmitBatchBytes >= 0 && emitData.getEstimatedSizeBytes() >= maxForEmitBatchBytes) {
+            EmitData emitData = new EmitData(getEmitKey(t), metadataList, stack);
+            ContentSink contentSink = currentContentSink.get();
+            long estimatedSizeBytes = emitData.getEstimatedSizeBytes() +
+                    (contentSink == null ? 0 : contentSink.getLength() * 2);
+            if (maxForEmitBatchBytes >= 0 && estimatedSizeBytes >= maxForEmitBatchBytes) {
+                if (contentSink != null && !inlineContent(metadataList, contentSink)) {
+                    return;
+                }
                 emit(t.getId(), emitData, stack);
                 if (LOG.isTraceEnabled()) {
                     LOG.trace("timer -- emitted: {} ms", System.currentTimeMillis() - start);
@@ -380,17 +611,77 @@ public class PipesServer implements Runnable {
         }
     }
 
+    private EmitKey getEmitKey(FetchEmitTuple t) {
+        EmitKey emitKey = t.getEmitKey();
+        if (StringUtils.isBlank(emitKey.getEmitKey())) {
+            emitKey = new EmitKey(emitKey.getEmitterName(), t.getFetchKey().getFetchKey());
+            t.setEmitKey(emitKey);
+        }
+        return emitKey;
+    }
+
+    private StreamingEmitHandler getStreamingHandler(FetchEmitTuple t) {
+        EmitKey emitKey = getEmitKey(t);
+        Emitter emitter;
+        try {
+            emitter = emitterManager.getEmitter(emitKey.getEmitterName());
+        } catch (IllegalArgumentException e) {
+            String noEmitterMsg = getNoEmitterMsg(emitKey.getEmitterName());
+            LOG.warn(noEmitterMsg);
+            write(STATUS.EMITTER_NOT_FOUND, noEmitterMsg);
+            return null;
+        }
+        HandlerConfig handlerConfig = t.getHandlerConfig();
+        return new StreamingEmitHandler(
+                new BasicContentHandlerFactory(handlerConfig.getType(),
+                        handlerConfig.getWriteLimit()),
+                handlerConfig.getMaxEmbeddedResources(), emitter, emitKey, t.getId(),
+                tikaConfig.getMetadataFilter(), maxForEmitBatchBytes >= 0 ?
+                        maxForEmitBatchBytes : PipesConfigBase.DEFAULT_MAX_FOR_EMIT_BATCH);
+    }
+
     private void filterMetadata(List<Metadata> metadataList) {
         for (Metadata m : metadataList) {
+            //keep the references into the content sink away from the filter
+            String contentOffset = m.get(ContentSink.CONTENT_OFFSET);
+            String contentLength = m.get(ContentSink.CONTENT_LENGTH);
+            if (contentOffset != null) {
+                m.remove(ContentSink.CONTENT_OFFSET.getName());
+                m.remove(ContentSink.CONTENT_LENGTH.getName());
+            }
             try {
                 tikaConfig.getMetadataFilter().filter(m);
             } catch (TikaException e) {
                 LOG.warn("failed to filter metadata", e);
             }
+            if (contentOffset != null) {
+                m.set(ContentSink.CONTENT_OFFSET, contentOffset);
+                m.set(ContentSink.CONTENT_LENGTH, contentLength);
+            }
+        }
+    }
+
+    /**
+     * Puts the text from the content sink into the metadata, for the emitters.
+     *
+     * @return false if that failed and the failure has been written to the client
+     */
+    private boolean inlineContent(List<Metadata> metadataList, ContentSink contentSink) {
+        try {
+            ContentSinkRecursiveParserWrapperHandler.inlineContent(metadataList, contentSink);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("failed to read from the content sink", e);
+            write(STATUS.EMIT_EXCEPTION, ExceptionUtils.getStackTrace(e));
+            return false;
         }
     }
 
     private Fetcher getFetcher(FetchEmitTuple t) {
+        if (spoolFetcher != null &&
+                PrefetchSpool.FETCHER_NAME.equals(t.getFetchKey().getFetcherName())) {
+            return spoolFetcher;
+        }
         try {
             return fetcherManager.getFetcher(t.getFetchKey().getFetcherName());
         } catch (IllegalArgumentException e) {
@@ -407,7 +698,8 @@ public class PipesServer implements Runnable {
         }
     }
 
-    private List<Metadata> parseIt(FetchEmitTuple t, Fetcher fetcher) {
+    private List<Metadata> parseIt(FetchEmitTuple t, Fetcher fetcher,
+                                   StreamingEmitHandler streamingHandler) {
         FetchKey fetchKey = t.getFetchKey();
         if (fetchKey.hasRange()) {
             if (! (fetcher instanceof RangeFetcher)) {
@@ -415,9 +707,11 @@ public class PipesServer implements Runnable {
                         "fetch key has a range, but the fetcher is not a range fetcher");
             }
             Metadata metadata = new Metadata();
+            long start = System.nanoTime();
             try (InputStream stream = ((RangeFetcher)fetcher).fetch(fetchKey.getFetchKey(),
                     fetchKey.getRangeStart(), fetchKey.getRangeEnd(), metadata)) {
-                return parse(t, stream, metadata);
+                timeStage(StageTimings.STAGE.FETCH, start);
+                return parse(t, stream, metadata, streamingHandler);
             } catch (SecurityException e) {
                 LOG.error("security exception " + t.getId(), e);
                 throw e;
@@ -427,8 +721,10 @@ public class PipesServer implements Runnable {
             }
         } else {
             Metadata metadata = new Metadata();
+            long start = System.nanoTime();
             try (InputStream stream = fetcher.fetch(t.getFetchKey().getFetchKey(), metadata)) {
-                return parse(t, stream, metadata);
+                timeStage(StageTimings.STAGE.FETCH, start);
+                return parse(t, stream, metadata, streamingHandler);
             } catch (SecurityException e) {
                 LOG.error("security exception " + t.getId(), e);
                 throw e;
@@ -478,9 +774,30 @@ public class PipesServer implements Runnable {
     }
 
     private List<Metadata> parse(FetchEmitTuple fetchEmitTuple, InputStream stream,
-                                 Metadata metadata) {
+                                 Metadata metadata, StreamingEmitHandler streamingHandler) {
+        long start = System.nanoTime();
+        try {
+            return parseInMode(fetchEmitTuple, stream, metadata, streamingHandler);
+        } finally {
+            CurrentTimings current = currentTimings.get();
+            if (current != null) {
+                //detection happens during the parse; see TimedDetector
+                long detect = Math.max(0, current.timings.get(StageTimings.STAGE.DETECT));
+                current.timings.set(StageTimings.STAGE.PARSE,
+                        Math.max(0, System.nanoTime() - start - detect));
+            }
+        }
+    }
+
+    private List<Metadata> parseInMode(FetchEmitTuple fetchEmitTuple, InputStream stream,
+                                       Metadata metadata,
+                                       StreamingEmitHandler streamingHandler) {
         HandlerConfig handlerConfig = fetchEmitTuple.getHandlerConfig();
-        if (handlerConfig.getParseMode() == HandlerConfig.PARSE_MODE.RMETA) {
+        if (streamingHandler != null) {
+            //the embedded documents have been emitted; this is just the container
+            parseRecursive(fetchEmitTuple, streamingHandler, stream, metadata);
+            return streamingHandler.getMetadataList();
+        } else if (handlerConfig.getParseMode() == HandlerConfig.PARSE_MODE.RMETA) {
             return parseRecursive(fetchEmitTuple, handlerConfig, stream, metadata);
         } else {
             return parseConcatenated(fetchEmitTuple, handlerConfig, stream, metadata);
@@ -539,10 +856,32 @@ public class PipesServer implements Runnable {
                                           Metadata metadata) {
         //Intentionally do not add the metadata filter here!
         //We need to let stacktraces percolate
+        if (useContentSink) {
+            ContentSinkRecursiveParserWrapperHandler handler =
+                    new ContentSinkRecursiveParserWrapperHandler(
+                            new BasicContentHandlerFactory(handlerConfig.getType(),
+                                    handlerConfig.getWriteLimit()),
+                            handlerConfig.getMaxEmbeddedResources(), NoOpFilter.NOOP_FILTER,
+                            new ContentSink(contentSinkMaxBytes));
+            currentContentSink.set(handler.getContentSink());
+            parseRecursive(fetchEmitTuple, handler, stream, metadata);
+            return handler.getMetadataList();
+        }
         RecursiveParserWrapperHandler handler = new RecursiveParserWrapperHandler(
                 new BasicContentHandlerFactory(handlerConfig.getType(), handlerConfig.getWriteLimit()),
                 handlerConfig.getMaxEmbeddedResources());
+        parseRecursive(fetchEmitTuple, handler, stream, metadata);
+        return handler.getMetadataList();
+    }
+
+    private void parseRecursive(FetchEmitTuple fetchEmitTuple,
+                                AbstractRecursiveParserWrapperHandler handler,
+                                InputStream stream, Metadata metadata) {
         ParseContext parseContext = new ParseContext();
+        //when streaming, the cache would have to hold on to the whole result
+        if (parseResultCache != null && !(handler instanceof StreamingEmitHandler)) {
+            parseContext.set(ParseResultCache.class, parseResultCache);
+        }
         long start = System.currentTimeMillis();
         try {
             rMetaParser.parse(stream, handler, metadata, parseContext);
@@ -559,12 +898,18 @@ public class PipesServer implements Runnable {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("timer -- parse only time: {} ms", System.currentTimeMillis() - start);
             }
+            if (parseResultCache != null &&
+                    cachedParses.incrementAndGet() % CACHE_STATS_INTERVAL == 0) {
+                LOG.info("{}", parseResultCache);
+            }
         }
-        return handler.getMetadataList();
     }
 
     private void injectUserMetadata(Metadata userMetadata, List<Metadata> metadataList) {
         for (String n : userMetadata.names()) {
+            if (SCHEDULING_KEYS.contains(n)) {
+                continue;
+            }
             //overwrite whatever was there
             metadataList.get(0).set(n, null);
             for (String val : userMetadata.getValues(n)) {
@@ -588,38 +933,106 @@ public class PipesServer implements Runnable {
             int length = input.readInt();
             byte[] bytes = new byte[length];
             input.readFully(bytes);
-            try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                    new UnsynchronizedByteArrayInputStream(bytes))) {
-                return (FetchEmitTuple) objectInputStream.readObject();
-            }
+            return PipesSerializer.deserializeFetchEmitTuple(bytes, serializationFormat);
         } catch (IOException e) {
             LOG.error("problem reading tuple", e);
             exit(1);
-        } catch (ClassNotFoundException e) {
-            LOG.error("can't find class?!", e);
-            exit(1);
         }
         //unreachable, no?!
         return null;
     }
 
+    /**
+     * Parses a handful of small in-memory documents and serializes the results,
+     * so that the first real requests don't pay for class loading and the JIT.
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < warmUpIterations; i++) {
+            for (String doc : WARM_UP_DOCS) {
+                RecursiveParserWrapperHandler handler = new RecursiveParserWrapperHandler(
+                        new BasicContentHandlerFactory(
+                                BasicContentHandlerFactory.HANDLER_TYPE.TEXT, -1), -1);
+                try (InputStream stream =
+                             TikaInputStream.get(doc.getBytes(StandardCharsets.UTF_8))) {
+                    rMetaParser.parse(stream, handler, new Metadata(), new ParseContext());
+                    PipesSerializer.serialize(new EmitData(new EmitKey("warm-up", "warm-up"),
+                            handler.getMetadataList()), serializationFormat);
+                } catch (Exception e) {
+                    LOG.debug("warm-up parse failed", e);
+                }
+            }
+        }
+        LOG.info("warm-up took {} ms", System.currentTimeMillis() - start);
+    }
+
     private void initializeParser() throws TikaException, IOException, SAXException {
         //TODO allowed named configurations in tika config
         this.tikaConfig = new TikaConfig(tikaConfigPath);
         this.fetcherManager = FetcherManager.load(tikaConfigPath);
         this.emitterManager = EmitterManager.load(tikaConfigPath);
-        this.autoDetectParser = new AutoDetectParser(this.tikaConfig);
+        AutoDetectParser parser = new AutoDetectParser(this.tikaConfig);
+        parser.setDetector(new TimedDetector(parser.getDetector()));
+        this.autoDetectParser = parser;
         this.rMetaParser = new RecursiveParserWrapper(autoDetectParser);
+        this.parseResultCache = initParseResultCache();
+        if (Boolean.getBoolean(CONTENT_SINK_PROPERTY)) {
+            if (serializationFormat != PipesConfigBase.SERIALIZATION_FORMAT.BINARY ||
+                    parseResultCache != null) {
+                LOG.warn("The content sink needs the binary serialization format and " +
+                        "doesn't work with the parse result cache; ignoring it");
+            } else if (!(tikaConfig.getMetadataFilter() instanceof NoOpFilter)) {
+                //the text is only added after the filters have run
+                LOG.warn("The content sink doesn't work with metadata filters; ignoring it");
+            } else {
+                this.useContentSink = true;
+                this.contentSinkMaxBytes = Long.getLong(CONTENT_SINK_MAX_BYTES_PROPERTY,
+                        ContentSink.DEFAULT_MAX_BYTES);
+            }
+        }
+    }
+
+    private ParseResultCache initParseResultCache() throws IOException {
+        String maxBytes = System.getProperty(PARSE_RESULT_CACHE_MAX_BYTES_PROPERTY);
+        if (StringUtils.isBlank(maxBytes)) {
+            return null;
+        }
+        //reuse the digester that is configured for the DigestingParser, if there is one
+        DigestingParser.DigesterFactory digesterFactory =
+                tikaConfig.getAutoDetectParserConfig().getDigesterFactory();
+        String dir = System.getProperty(PARSE_RESULT_CACHE_DIRECTORY_PROPERTY);
+        String maxDiskBytes = System.getProperty(PARSE_RESULT_CACHE_MAX_DISK_BYTES_PROPERTY);
+        return new ParseResultCache(digesterFactory == null ? null : digesterFactory.build(),
+                Long.parseLong(maxBytes), StringUtils.isBlank(dir) ? null : Paths.get(dir),
+                StringUtils.isBlank(maxDiskBytes) ?
+                        PipesConfigBase.DEFAULT_PARSE_RESULT_CACHE_MAX_DISK_BYTES :
+                        Long.parseLong(maxDiskBytes));
     }
 
 
     private void write(EmitData emitData) {
         try {
-            UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(emitData);
+            long start = System.nanoTime();
+            byte[] bytes = PipesSerializer.serialize(emitData, serializationFormat,
+                    currentContentSink.get());
+            timeStage(StageTimings.STAGE.SERIALIZE, start);
+            synchronized (output) {
+                int slot = -1;
+                if (sharedResultBuffer != null) {
+                    Request request = currentRequest.get();
+                    slot = request == null ? sharedResultBuffer.write(bytes) :
+                            sharedResultBuffer.write(request.slot, bytes);
+                }
+                if (slot < 0) {
+                    write(STATUS.PARSE_SUCCESS, bytes);
+                    return;
+                }
+                writeResponseHeader();
+                output.write(STATUS.PARSE_SUCCESS_SHARED_MEMORY.getByte());
+                output.writeInt(slot);
+                output.writeInt(bytes.length);
+                output.flush();
             }
-            write(STATUS.PARSE_SUCCESS, bos.toByteArray());
         } catch (IOException e) {
             LOG.error("problem writing emit data (forking process shutdown?)", e);
             exit(1);
@@ -634,10 +1047,13 @@ public class PipesServer implements Runnable {
     private void write(STATUS status, byte[] bytes) {
         try {
             int len = bytes.length;
-            output.write(status.getByte());
-            output.writeInt(len);
-            output.write(bytes);
-            output.flush();
+            synchronized (output) {
+                writeResponseHeader();
+                output.write(status.getByte());
+                output.writeInt(len);
+                output.write(bytes);
+                output.flush();
+            }
         } catch (IOException e) {
             LOG.error("problem writing data (forking process shutdown?)", e);
             exit(1);
@@ -646,11 +1062,84 @@ public class PipesServer implements Runnable {
 
     private void write(STATUS status) {
         try {
-            output.write(status.getByte());
-            output.flush();
+            synchronized (output) {
+                writeResponseHeader();
+                output.write(status.getByte());
+                output.flush();
+            }
         } catch (IOException e) {
             LOG.error("problem writing data (forking process shutdown?)", e);
             exit(1);
         }
     }
+
+    /**
+     * When parsing concurrently, each response to a request starts with
+     * the request's id. Then, if the request's stages were timed, the
+     * {@link STATUS#STAGE_TIMINGS} follow, before the status of the result.
+     */
+    private void writeResponseHeader() throws IOException {
+        Request request = currentRequest.get();
+        if (request != null) {
+            output.writeInt(request.id);
+        }
+        CurrentTimings current = currentTimings.get();
+        if (current != null) {
+            //only the first response for a request carries them
+            currentTimings.remove();
+            current.timings.setServerNanos(System.nanoTime() - current.start);
+            byte[] bytes = current.timings.toBytes();
+            output.write(STATUS.STAGE_TIMINGS.getByte());
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private void timeStage(StageTimings.STAGE stage, long startNanos) {
+        CurrentTimings current = currentTimings.get();
+        if (current != null) {
+            current.timings.set(stage, System.nanoTime() - startNanos);
+        }
+    }
+
+    private static class CurrentTimings {
+        private final StageTimings timings = new StageTimings();
+        private final long start = System.nanoTime();
+    }
+
+    /**
+     * Adds the time spent detecting to the current request's timings, so that it
+     * can be told apart from the parse time. This covers the embedded documents too.
+     */
+    private class TimedDetector implements Detector {
+        private final Detector detector;
+
+        private TimedDetector(Detector detector) {
+            this.detector = detector;
+        }
+
+        @Override
+        public MediaType detect(InputStream input, Metadata metadata) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return detector.detect(input, metadata);
+            } finally {
+                CurrentTimings current = currentTimings.get();
+                if (current != null) {
+                    current.timings.add(StageTimings.STAGE.DETECT, System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    private static class Request {
+        private final int id;
+        //slot in the sharedResultBuffer reserved for this request's result, or -1
+        private final int slot;
+
+        private Request(int id, int slot) {
+            this.id = id;
+            this.slot = slot;
+        }
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.fetcher.Fetcher;
+import org.apache.tika.pipes.fetcher.FetcherManager;
+import org.apache.tika.pipes.fetcher.RangeFetcher;
+import org.apache.tika.utils.StringUtils;
+
+/**
+ * Local spool for files that the {@link org.apache.tika.pipes.async.AsyncProcessor}
+ * fetches ahead of the forked PipesServers, so that the network I/O for the next
+ * files overlaps with parsing the current ones.
+ * <p>
+ * A spooled tuple's fetch key is rewritten to point to the local copy under the
+ * reserved fetcher name {@link #FETCHER_NAME}. A forked server only resolves that
+ * fetcher if it was started with {@link #getJvmArg()}, and then only for files
+ * in the spool directory. The metadata that the original fetcher added is spooled
+ * next to the file and handed to the parser as before.
+ * <p>
+ * If a file can't be fetched or is larger than <code>maxBytes</code>, the original
+ * tuple is returned, and the server fetches the file itself and reports any problem
+ * as it always has.
+ */
+public class PrefetchSpool implements Closeable {
+
+    public static final String FETCHER_NAME = "tika-prefetch-spool";
+
+    static final String DIRECTORY_PROPERTY = "tika.pipes.prefetchDirectory";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchSpool.class);
+
+    private static final String METADATA_SUFFIX = ".metadata";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final FetcherManager fetcherManager;
+    //spooled file name -> the tuple that was spooled
+    private final Map<String, FetchEmitTuple> originals = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory      spool directory; it is created if it doesn't exist
+     * @param maxBytes       files that are larger than this aren't spooled
+     * @param fetcherManager the same fetchers that the forked servers use
+     */
+    public PrefetchSpool(Path directory, long maxBytes, FetcherManager fetcherManager)
+            throws IOException {
+        this.directory = Files.createDirectories(directory).toRealPath();
+        this.maxBytes = maxBytes;
+        this.fetcherManager = fetcherManager;
+    }
+
+    /**
+     * @return the system property that enables the spool fetcher in a forked server
+     */
+    public String getJvmArg() {
+        return "-D" + DIRECTORY_PROPERTY + "=" + directory;
+    }
+
+    /**
+     * Fetches the tuple's file into the spool.
+     *
+     * @return a copy of the tuple that points to the spooled file, or the tuple
+     * itself if the file wasn't spooled
+     */
+    public FetchEmitTuple spool(FetchEmitTuple t) throws InterruptedException {
+        FetchKey fetchKey = t.getFetchKey();
+        Path file = null;
+        try {
+            Fetcher fetcher = fetcherManager.getFetcher(fetchKey.getFetcherName());
+            if (fetchKey.hasRange() && !(fetcher instanceof RangeFetcher)) {
+                return t;
+            }
+            file = Files.createTempFile(directory, "prefetch-", "");
+            Metadata metadata = new Metadata();
+            long copied;
+            try (InputStream is = fetchKey.hasRange() ?
+                    ((RangeFetcher) fetcher).fetch(fetchKey.getFetchKey(),
+                            fetchKey.getRangeStart(), fetchKey.getRangeEnd(), metadata) :
+                    fetcher.fetch(fetchKey.getFetchKey(), metadata);
+                    OutputStream os = Files.newOutputStream(file)) {
+                copied = IOUtils.copyLarge(is, os, 0, maxBytes + 1);
+            }
+            if (copied > maxBytes) {
+                LOG.debug("{} is too large to spool", t.getId());
+                delete(file);
+                return t;
+            }
+            Files.write(metadataPath(file), PipesSerializer.serialize(metadata));
+        } catch (IOException | TikaException | IllegalArgumentException e) {
+            //the server will try again and report the exception
+            LOG.debug("couldn't prefetch " + t.getId(), e);
+            if (file != null) {
+                delete(file);
+            }
+            return t;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            delete(file);
+            throw new InterruptedException();
+        }
+        EmitKey emitKey = t.getEmitKey();
+        if (emitKey != null && StringUtils.isBlank(emitKey.getEmitKey())) {
+            //the server would default to the fetch key, which is about to change
+            emitKey = new EmitKey(emitKey.getEmitterName(), fetchKey.getFetchKey());
+        }
+        String name = file.getFileName().toString();
+        FetchEmitTuple spooled = new FetchEmitTuple(t.getId(), new FetchKey(FETCHER_NAME, name),
+                emitKey, t.getMetadata(), t.getHandlerConfig(), t.getOnParseException());
+        originals.put(name, t);
+        return spooled;
+    }
+
+    /**
+     * Deletes the spooled file, if any.
+     *
+     * @return the tuple that was passed to {@link #spool(FetchEmitTuple)}
+     */
+    public FetchEmitTuple release(FetchEmitTuple t) {
+        if (!FETCHER_NAME.equals(t.getFetchKey().getFetcherName())) {
+            return t;
+        }
+        String name = t.getFetchKey().getFetchKey();
+        FetchEmitTuple original = originals.remove(name);
+        if (original == null) {
+            return t;
+        }
+        delete(directory.resolve(name));
+        return original;
+    }
+
+    /**
+     * Deletes anything that is still spooled. The directory itself is left in place.
+     */
+    @Override
+    public void close() throws IOException {
+        originals.clear();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "prefetch-*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(metadataPath(file));
+        } catch (IOException e) {
+            LOG.warn("couldn't delete " + file, e);
+        }
+    }
+
+    private static Path metadataPath(Path file) {
+        return file.resolveSibling(file.getFileName() + METADATA_SUFFIX);
+    }
+
+    /**
+     * This is called by the forked server.
+     *
+     * @return the fetcher for spooled files, or <code>null</code> if the server wasn't
+     * started with {@link #getJvmArg()}
+     */
+    static Fetcher getSpoolFetcher() {
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        if (StringUtils.isBlank(dir)) {
+            return null;
+        }
+        return new SpoolFetcher(Paths.get(dir));
+    }
+
+    private static class SpoolFetcher implements Fetcher {
+
+        private final Path directory;
+
+        private SpoolFetcher(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public String getName() {
+            return FETCHER_NAME;
+        }
+
+        @Override
+        public InputStream fetch(String fetchKey, Metadata metadata) throws IOException {
+            Path file = directory.resolve(fetchKey);
+            if (!Files.isRegularFile(file)) {
+                throw new FileNotFoundException(file.toString());
+            }
+            //only files that the spool put there
+            if (!file.toRealPath().getParent().equals(directory.toRealPath()) ||
+                    !file.getFileName().toString().startsWith("prefetch-")) {
+                throw new IllegalArgumentException(
+                        "fetchKey must be a file in the prefetch directory");
+            }
+            Metadata spooled = PipesSerializer.deserializeMetadata(
+                    Files.readAllBytes(metadataPath(file)));
+            for (String n : spooled.names()) {
+                for (String v : spooled.getValues(n)) {
+                    metadata.add(n, v);
+                }
+            }
+            return TikaInputStream.get(file);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.tika.io.MappedBufferCleaner;
+import org.apache.tika.pipes.emitter.EmitData;
+
+/**
+ * Memory-mapped file shared between a {@link PipesClient} and its forked
+ * {@link PipesServer}, used to hand back serialized results without pushing
+ * them through the server's stdout.
+ * <p>
+ * The file is split into a ring of fixed size slots. The server copies each
+ * result into the next slot and only sends the slot number and length over
+ * the pipe; the client then deserializes the result straight from the mapped
+ * slot. Results that don't fit in a slot are sent over the pipe as before.
+ * <p>
+ * The client creates the file, and deletes it when it is closed. Closing also
+ * unmaps the buffer, rather than leaving that to the garbage collector, so that
+ * the mappings of replaced servers don't pile up and the file can be deleted
+ * on all platforms. Slots aren't read or written once the buffer is closed.
+ */
+class SharedResultBuffer implements Closeable {
+
+    private final Path path;
+
+    private final int numSlots;
+
+    private final int slotBytes;
+
+    private final MappedByteBuffer buffer;
+
+    private final boolean owner;
+
+    //reads and writes hold the read lock, so that the buffer isn't unmapped under them
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private boolean closed = false;
+
+    private int nextSlot = 0;
+
+    private SharedResultBuffer(Path path, int numSlots, int slotBytes, boolean owner)
+            throws IOException {
+        if (numSlots < 1 || slotBytes < 1) {
+            throw new IllegalArgumentException("numSlots and slotBytes must be > 0");
+        }
+        if ((long) numSlots * slotBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("numSlots * slotBytes must be < 2GB");
+        }
+        this.path = path;
+        this.numSlots = numSlots;
+        this.slotBytes = slotBytes;
+        this.owner = owner;
+        try (FileChannel channel = owner ?
+                FileChannel.open(path, StandardOpenOption.READ) :
+                FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.buffer = channel.map(owner ? FileChannel.MapMode.READ_ONLY :
+                    FileChannel.MapMode.READ_WRITE, 0, (long) numSlots * slotBytes);
+        }
+    }
+
+    /**
+     * Creates a new, empty file and maps it read-only. This is called by the
+     * client, which is responsible for deleting the file via {@link #close()}.
+     */
+    static SharedResultBuffer create(int numSlots, int slotBytes) throws IOException {
+        Path path = Files.createTempFile("tika-pipes-results-", ".bin");
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                //write the last byte to size the file
+                channel.write(ByteBuffer.wrap(new byte[1]), (long) numSlots * slotBytes - 1);
+            }
+            return new SharedResultBuffer(path, numSlots, slotBytes, true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps an existing file read-write. This is called by the forked server.
+     */
+    static SharedResultBuffer open(Path path, int numSlots, int slotBytes) throws IOException {
+        return new SharedResultBuffer(path, numSlots, slotBytes, false);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getNumSlots() {
+        return numSlots;
+    }
+
+    int getSlotBytes() {
+        return slotBytes;
+    }
+
+    /**
+     * Copies the bytes into the next slot.
+     *
+     * @return the slot that the bytes were written to, or <code>-1</code>
+     * if they don't fit in a slot
+     */
+    int write(byte[] bytes) {
+        if (bytes.length > slotBytes) {
+            return -1;
+        }
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % numSlots;
+        return write(slot, bytes);
+    }
+
+    /**
+     * Copies the bytes into the given slot. This is used when the client
+     * hands out the slots itself, because it has several requests in flight.
+     *
+     * @return the slot, or <code>-1</code> if the slot is <code>-1</code> or
+     * the bytes don't fit in a slot
+     */
+    int write(int slot, byte[] bytes) {
+        if (slot < 0 || slot >= numSlots || bytes.length > slotBytes) {
+            return -1;
+        }
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return -1;
+            }
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(slot * slotBytes);
+            dup.put(bytes);
+            return slot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deserializes the result in the first <code>length</code> bytes of a slot.
+     */
+    EmitData readEmitData(int slot, int length, PipesConfigBase.SERIALIZATION_FORMAT format)
+            throws IOException {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IOException("Shared result buffer is closed");
+            }
+            return PipesSerializer.deserializeEmitData(read(slot, length), format);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only view of the first <code>length</code> bytes of
+     * a slot. The view must not be used once this buffer is closed; see
+     * {@link #readEmitData(int, int, PipesConfigBase.SERIALIZATION_FORMAT)}.
+     */
+    ByteBuffer read(int slot, int length) throws IOException {
+        if (slot < 0 || slot >= numSlots || length < 0 || length > slotBytes) {
+            throw new IOException("Bad slot descriptor: slot=" + slot + " length=" + length);
+        }
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(slot * slotBytes);
+        dup.limit(slot * slotBytes + length);
+        return dup.slice();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            MappedBufferCleaner.freeBuffer(buffer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (owner) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                //some platforms won't delete a file that is still mapped
+                path.toFile().deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.apache.tika.pipes.PipesServer.STATUS.PING;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps {@link PipesConfigBase#getSpareServers()} forked PipesServers started
+ * and waiting, so that a {@link PipesClient} that has to restart its server can
+ * swap in a ready one instead of waiting on JVM startup, parser initialization
+ * and (optionally) the warm-up. Every spare that is taken is replaced in the
+ * background.
+ * <p>
+ * The pool is meant to be shared by all the clients of one
+ * {@link org.apache.tika.pipes.async.AsyncProcessor} or {@link PipesParser},
+ * and it has to be closed by whoever created it.
+ * <p>
+ * Spares are pinged every quarter of
+ * {@link PipesConfigBase#getShutdownClientAfterMillis()}, which counts as
+ * activity, so that they don't shut themselves down for being idle. A spare
+ * that doesn't answer a ping in time is dropped and replaced.
+ *
+ * @since 2.8.0
+ */
+public class SpareServerPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpareServerPool.class);
+
+    private static final AtomicInteger SPARE_COUNTER = new AtomicInteger(0);
+
+    //a live server answers a ping right away
+    static final long PING_TIMEOUT_MILLIS = 10000;
+
+    private final PipesConfigBase pipesConfig;
+    private final int size;
+    //starts the spares, and reads their ready bytes and pings
+    private final ExecutorService executorService;
+    //pings the idle spares; null if they never shut down
+    private final ScheduledExecutorService keepAliveService;
+    //guarded by this
+    private final Deque<Spare> spares = new ArrayDeque<>();
+    private int starting = 0;
+    //spares that have been taken out of the deque to be pinged
+    private int checking = 0;
+    private boolean closed = false;
+
+    public SpareServerPool(PipesConfigBase pipesConfig) {
+        this.pipesConfig = pipesConfig;
+        this.size = pipesConfig.getSpareServers();
+        this.executorService = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "spare-server-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        long idleMillis = pipesConfig.getShutdownClientAfterMillis();
+        if (idleMillis > 0) {
+            long keepAliveMillis = Math.max(1, idleMillis / 4);
+            keepAliveService = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "spare-server-keep-alive");
+                t.setDaemon(true);
+                return t;
+            });
+            keepAliveService.scheduleWithFixedDelay(this::keepAlive, keepAliveMillis,
+                    keepAliveMillis, TimeUnit.MILLISECONDS);
+        } else {
+            keepAliveService = null;
+        }
+        synchronized (this) {
+            fill();
+        }
+    }
+
+    /**
+     * @return a ready spare that is now owned by the caller, or <code>null</code>
+     * if none is ready
+     */
+    Spare take() {
+        while (true) {
+            Spare candidate;
+            synchronized (this) {
+                candidate = spares.poll();
+                if (candidate == null) {
+                    fill();
+                    return null;
+                }
+                checking++;
+            }
+            //don't hold the lock while waiting on the process
+            boolean alive = candidate.ping(executorService, PING_TIMEOUT_MILLIS);
+            synchronized (this) {
+                checking--;
+                fill();
+            }
+            if (alive) {
+                return candidate;
+            }
+            LOG.debug("dropping spare server {}", candidate.getProcessId());
+            candidate.close();
+        }
+    }
+
+    /**
+     * @return the number of spares that are ready to be taken
+     */
+    public synchronized int getReady() {
+        return spares.size();
+    }
+
+    //pings each idle spare once, so that it doesn't shut down from inactivity
+    private void keepAlive() {
+        int toCheck;
+        synchronized (this) {
+            toCheck = spares.size();
+        }
+        for (int i = 0; i < toCheck; i++) {
+            Spare spare;
+            synchronized (this) {
+                spare = spares.poll();
+                if (spare == null) {
+                    //taken in the meantime, or the pool was closed
+                    return;
+                }
+                checking++;
+            }
+            boolean alive = spare.ping(executorService, PING_TIMEOUT_MILLIS);
+            synchronized (this) {
+                checking--;
+                if (alive && !closed) {
+                    spares.addLast(spare);
+                    spare = null;
+                }
+                fill();
+            }
+            if (spare != null) {
+                LOG.debug("dropping spare server {}", spare.getProcessId());
+                spare.close();
+            }
+        }
+    }
+
+    //must hold the lock
+    private void fill() {
+        while (!closed && spares.size() + starting + checking < size) {
+            starting++;
+            executorService.execute(this::startSpare);
+        }
+    }
+
+    private void startSpare() {
+        Spare spare = null;
+        try {
+            spare = Spare.start(pipesConfig, "spare-" + SPARE_COUNTER.getAndIncrement(),
+                    executorService);
+        } catch (Exception e) {
+            //this is retried on the next take()
+            LOG.warn("couldn't start spare server", e);
+        } finally {
+            synchronized (this) {
+                starting--;
+                if (spare != null && !closed) {
+                    spares.add(spare);
+                    spare = null;
+                }
+            }
+            if (spare != null) {
+                spare.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<Spare> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(spares);
+            spares.clear();
+        }
+        if (keepAliveService != null) {
+            keepAliveService.shutdownNow();
+        }
+        for (Spare spare : toClose) {
+            spare.close();
+        }
+        executorService.shutdownNow();
+    }
+
+    /**
+     * A forked server that has written its ready byte, along with the streams
+     * and the shared result buffer (if any) that it was started with.
+     */
+    static class Spare {
+        private final String processId;
+        private final Process process;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+        private final SharedResultBuffer sharedResultBuffer;
+
+        private Spare(String processId, Process process, SharedResultBuffer sharedResultBuffer) {
+            this.processId = processId;
+            this.process = process;
+            this.input = new DataInputStream(process.getInputStream());
+            this.output = new DataOutputStream(process.getOutputStream());
+            this.sharedResultBuffer = sharedResultBuffer;
+        }
+
+        static Spare start(PipesConfigBase pipesConfig, String processId,
+                           ExecutorService executorService) throws Exception {
+            SharedResultBuffer buffer = null;
+            if (pipesConfig.getSharedMemorySlots() > 0) {
+                buffer = SharedResultBuffer.create(pipesConfig.getSharedMemorySlots(),
+                        pipesConfig.getSharedMemorySlotBytes());
+            }
+            Spare spare = null;
+            try {
+                ProcessBuilder pb = new ProcessBuilder(
+                        PipesClient.getCommandline(pipesConfig, processId, buffer));
+                pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+                spare = new Spare(processId, pb.start(), buffer);
+                PipesClient.waitForReady(processId, spare.process, spare.input,
+                        executorService, pipesConfig.getStartupTimeoutMillis());
+                return spare;
+            } catch (Exception e) {
+                if (spare != null) {
+                    spare.close();
+                } else if (buffer != null) {
+                    buffer.close();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the answer on a thread from the executorService, like
+         * {@link PipesClient#waitForReady}, so that a server that hangs can't
+         * block the caller for longer than the timeout.
+         */
+        boolean ping(ExecutorService executorService, long timeoutMillis) {
+            if (!process.isAlive()) {
+                return false;
+            }
+            FutureTask<Boolean> futureTask = new FutureTask<>(() -> {
+                output.write(PING.getByte());
+                output.flush();
+                return input.read() == PING.getByte();
+            });
+            try {
+                executorService.execute(futureTask);
+                return futureTask.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+                return false;
+            } finally {
+                //if the read is still blocked, it ends when the caller closes the spare
+                futureTask.cancel(true);
+            }
+        }
+
+        String getProcessId() {
+            return processId;
+        }
+
+        Process getProcess() {
+            return process;
+        }
+
+        DataInputStream getInput() {
+            return input;
+        }
+
+        DataOutputStream getOutput() {
+            return output;
+        }
+
+        SharedResultBuffer getSharedResultBuffer() {
+            return sharedResultBuffer;
+        }
+
+        void close() {
+            process.destroyForcibly();
+            try {
+                process.waitFor(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                input.close();
+                output.close();
+            } catch (IOException e) {
+                //swallow
+            }
+            if (sharedResultBuffer != null) {
+                try {
+                    sharedResultBuffer.close();
+                } catch (IOException e) {
+                    LOG.warn("couldn't delete {}", sharedResultBuffer.getPath(), e);
+                }
+            }
+        }
+    }
+}
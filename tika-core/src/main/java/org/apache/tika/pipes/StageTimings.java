@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.utils.StringUtils;
+
+/**
+ * How long each stage of processing one {@link FetchEmitTuple} took, along with
+ * the detected mime type and the parser of the container document. Most of the
+ * stages are timed in the forked {@link PipesServer}; the rest are added by the
+ * {@link PipesClient} and by the {@link PipesParser} or
+ * {@link org.apache.tika.pipes.async.AsyncProcessor}.
+ * <p>
+ * Reporters can get these with {@link PipesResult#getStageTimings()}; they
+ * are <code>null</code> if the forked process crashed or timed out.
+ */
+public class StageTimings {
+
+    public static final String UNKNOWN = "unknown";
+
+    public enum STAGE {
+        /**
+         * Waiting for a client
+         */
+        QUEUE_WAIT,
+        /**
+         * Opening the fetcher's stream. Reading from the stream happens while parsing.
+         */
+        FETCH,
+        /**
+         * Detecting the container and the embedded documents
+         */
+        DETECT,
+        /**
+         * Parsing, without the detection
+         */
+        PARSE,
+        /**
+         * Serializing the result in the forked process
+         */
+        SERIALIZE,
+        /**
+         * Everything between the client and the forked process, including sending
+         * the tuple and reading and deserializing the result
+         */
+        PIPE_TRANSFER,
+        /**
+         * Emitting, in the forked process or, for batches, from the
+         * AsyncProcessor; a batch's time is split evenly between its documents
+         */
+        EMIT;
+
+        public String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final long[] nanos = new long[STAGE.values().length];
+    private long serverNanos = -1;
+    private String mimeType = UNKNOWN;
+    private String parserClass = UNKNOWN;
+
+    public StageTimings() {
+        Arrays.fill(nanos, -1);
+    }
+
+    /**
+     * @return the nanoseconds that the stage took, or <code>-1</code> if it wasn't timed
+     */
+    public long get(STAGE stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    public void set(STAGE stage, long nanos) {
+        this.nanos[stage.ordinal()] = nanos;
+    }
+
+    /**
+     * Adds to the time of a stage that happens more than once, e.g. detection
+     */
+    public void add(STAGE stage, long nanos) {
+        this.nanos[stage.ordinal()] = Math.max(0, get(stage)) + nanos;
+    }
+
+    /**
+     * @return the nanoseconds from when the forked process had read the tuple until
+     * it wrote the result, or <code>-1</code> if unknown
+     */
+    public long getServerNanos() {
+        return serverNanos;
+    }
+
+    public void setServerNanos(long serverNanos) {
+        this.serverNanos = serverNanos;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getParserClass() {
+        return parserClass;
+    }
+
+    /**
+     * Sets the mime type and parser from the container document's metadata.
+     * This has to be called before the metadata is filtered.
+     */
+    public void setLabels(Metadata containerMetadata) {
+        this.mimeType = getMimeType(containerMetadata);
+        this.parserClass = getParserClass(containerMetadata);
+    }
+
+    /**
+     * @return the detected mime type, without parameters, or {@link #UNKNOWN}
+     */
+    public static String getMimeType(Metadata metadata) {
+        MediaType mediaType = MediaType.parse(metadata.get(Metadata.CONTENT_TYPE));
+        return mediaType == null ? UNKNOWN : mediaType.getBaseType().toString();
+    }
+
+    /**
+     * @return the innermost parser that parsed the document, or {@link #UNKNOWN}
+     */
+    public static String getParserClass(Metadata metadata) {
+        String[] parsedBy = metadata.getValues(TikaCoreProperties.TIKA_PARSED_BY);
+        if (parsedBy.length == 0 || StringUtils.isBlank(parsedBy[parsedBy.length - 1])) {
+            return UNKNOWN;
+        }
+        return parsedBy[parsedBy.length - 1];
+    }
+
+    byte[] toBytes() throws IOException {
+        UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(bos)) {
+            dos.writeUTF(mimeType);
+            dos.writeUTF(parserClass);
+            dos.writeLong(serverNanos);
+            dos.writeInt(nanos.length);
+            for (long n : nanos) {
+                dos.writeLong(n);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    static StageTimings fromBytes(byte[] bytes) throws IOException {
+        StageTimings timings = new StageTimings();
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            timings.mimeType = dis.readUTF();
+            timings.parserClass = dis.readUTF();
+            timings.serverNanos = dis.readLong();
+            int numStages = dis.readInt();
+            for (int i = 0; i < numStages; i++) {
+                long n = dis.readLong();
+                //ignore stages that this side doesn't know about
+                if (i < timings.nanos.length) {
+                    timings.nanos[i] = n;
+                }
+            }
+        }
+        return timings;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StageTimings{mimeType='").append(mimeType)
+                .append("', parserClass='").append(parserClass).append('\'');
+        for (STAGE stage : STAGE.values()) {
+            if (get(stage) >= 0) {
+                sb.append(", ").append(stage.getLabel()).append('=')
+                        .append(get(stage) / 1000000).append("ms");
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
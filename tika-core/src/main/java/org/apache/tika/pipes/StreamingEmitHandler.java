@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.Property;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.MetadataFilter;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.emitter.Emitter;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
+import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.utils.ParserUtils;
+
+/**
+ * Handler for {@link HandlerConfig.PARSE_MODE#RMETA_STREAMING}. Instead of collecting
+ * the metadata of every embedded document until the end of the parse, this sends
+ * each embedded document to the emitter as soon as it has been parsed, in batches
+ * of up to a number of bytes, so that memory use doesn't grow with the number of
+ * embedded documents.
+ * <p>
+ * Embedded documents are emitted with the emit key <code>&lt;emitKey&gt;-&lt;sequence&gt;</code>.
+ * The container document is completed last; it is not emitted here but kept for
+ * the usual emit path, with {@link #DOCUMENT_COUNT} set, so that a consumer can tell
+ * when it has all of a container's documents.
+ */
+public class StreamingEmitHandler extends AbstractRecursiveParserWrapperHandler {
+
+    /**
+     * The id of the {@link FetchEmitTuple} that the document came from.
+     */
+    public static final Property CONTAINER_ID = Property.internalText(
+            TikaCoreProperties.TIKA_META_PREFIX + "stream_container_id");
+
+    /**
+     * The order in which the documents of a container were emitted, starting at
+     * <code>0</code>; the container document comes last.
+     */
+    public static final Property SEQUENCE = Property.internalInteger(
+            TikaCoreProperties.TIKA_META_PREFIX + "stream_sequence");
+
+    /**
+     * Set on the container document: the number of documents, including the container.
+     */
+    public static final Property DOCUMENT_COUNT = Property.internalInteger(
+            TikaCoreProperties.TIKA_META_PREFIX + "stream_document_count");
+
+    private final Emitter emitter;
+    private final EmitKey emitKey;
+    private final String containerId;
+    private final MetadataFilter metadataFilter;
+    private final long maxBatchBytes;
+
+    private final List<EmitData> batch = new ArrayList<>();
+    private long batchBytes = 0;
+    private int sequence = 0;
+    private Metadata containerMetadata;
+    private Exception emitException;
+
+    /**
+     * @param maxBatchBytes embedded documents are emitted once their estimated size
+     *                      reaches this
+     */
+    public StreamingEmitHandler(ContentHandlerFactory contentHandlerFactory,
+                                int maxEmbeddedResources, Emitter emitter, EmitKey emitKey,
+                                String containerId, MetadataFilter metadataFilter,
+                                long maxBatchBytes) {
+        super(contentHandlerFactory, maxEmbeddedResources);
+        this.emitter = emitter;
+        this.emitKey = emitKey;
+        this.containerId = containerId;
+        this.metadataFilter = metadataFilter;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    @Override
+    public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata)
+            throws SAXException {
+        super.endEmbeddedDocument(contentHandler, metadata);
+        if (emitException != null) {
+            //a parser caught the first one; keep trying to stop the parse
+            throw new SAXException(emitException);
+        }
+        addContent(contentHandler, metadata);
+        try {
+            metadataFilter.filter(metadata);
+        } catch (TikaException e) {
+            throw new SAXException(e);
+        }
+        if (metadata.size() == 0) {
+            return;
+        }
+        Metadata copy = ParserUtils.cloneMetadata(metadata);
+        copy.set(CONTAINER_ID, containerId);
+        copy.set(SEQUENCE, sequence);
+        EmitData emitData = new EmitData(new EmitKey(emitKey.getEmitterName(),
+                emitKey.getEmitKey() + "-" + sequence), Collections.singletonList(copy));
+        sequence++;
+        batch.add(emitData);
+        batchBytes += emitData.getEstimatedSizeBytes();
+        if (batchBytes >= maxBatchBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * The container's metadata is not filtered here, so that the container
+     * exception can still be read from it.
+     */
+    @Override
+    public void endDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+        super.endDocument(contentHandler, metadata);
+        addContent(contentHandler, metadata);
+        //everything else has to be out before the container
+        flush();
+        containerMetadata = ParserUtils.cloneMetadata(metadata);
+        containerMetadata.set(CONTAINER_ID, containerId);
+        containerMetadata.set(SEQUENCE, sequence);
+        containerMetadata.set(DOCUMENT_COUNT, sequence + 1);
+    }
+
+    /**
+     * @return the container document's metadata, or an empty list if the parse
+     * didn't get that far
+     */
+    public List<Metadata> getMetadataList() {
+        if (containerMetadata == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(containerMetadata);
+    }
+
+    /**
+     * @return the exception from the emitter if emitting an embedded document failed;
+     * the parse is stopped at that point
+     */
+    public Exception getEmitException() {
+        return emitException;
+    }
+
+    private void flush() throws SAXException {
+        if (batch.isEmpty() || emitException != null) {
+            return;
+        }
+        try {
+            emitter.emit(batch);
+        } catch (IOException | TikaEmitterException e) {
+            emitException = e;
+            throw new SAXException(e);
+        }
+        batch.clear();
+        batchBytes = 0;
+    }
+}
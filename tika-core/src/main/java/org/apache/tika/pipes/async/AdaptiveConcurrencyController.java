@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.emitter.EmitData;
+
+/**
+ * Grows and shrinks the number of parsers that take work, between
+ * {@link AsyncConfig#getMinClients()} and {@link AsyncConfig#getNumClients()}.
+ * All the parsers are started; the ones above the current limit are parked.
+ * A parked parser's server shuts itself down after
+ * {@link AsyncConfig#getShutdownClientAfterMillis()}, which gives its memory back.
+ * <p>
+ * This is AIMD-style. Every {@link AsyncConfig#getAdaptiveIntervalMillis()}:
+ * <ul>
+ *     <li>if the host is overloaded (load average per cpu above
+ *     {@link AsyncConfig#getAdaptiveMaxLoadPerCpu()}), short on memory (less than
+ *     {@link AsyncConfig#getAdaptiveMinAvailableMemoryBytes()} available) or the
+ *     emitters can't keep up (the emit queue is mostly full), the limit is halved;</li>
+ *     <li>if the last increase didn't improve throughput, it is undone, and there are
+ *     no more increases for a few intervals;</li>
+ *     <li>otherwise, if there is work waiting, the limit is raised by one.</li>
+ * </ul>
+ */
+class AdaptiveConcurrencyController implements Callable<Integer> {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(AdaptiveConcurrencyController.class);
+
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+
+    //the emitters can't keep up when the emit queue is fuller than this
+    private static final double MAX_EMIT_QUEUE_FILL = 0.8;
+
+    //an increase has to improve throughput by at least this much to be kept
+    private static final double MIN_IMPROVEMENT = 1.05;
+
+    //intervals without increases after an increase didn't help
+    private static final int HOLD_INTERVALS = 3;
+
+    private final AsyncConfig asyncConfig;
+    private final int min;
+    private final int max;
+    private final AtomicLong totalProcessed;
+    private final ArrayBlockingQueue<FetchEmitTuple> parseQueue;
+    private final ArrayBlockingQueue<EmitData> emitData;
+
+    private volatile int active;
+    private double lastThroughput = -1;
+    private boolean lastIncreased = false;
+    private int hold = 0;
+
+    AdaptiveConcurrencyController(AsyncConfig asyncConfig, int max, AtomicLong totalProcessed,
+                                  ArrayBlockingQueue<FetchEmitTuple> parseQueue,
+                                  ArrayBlockingQueue<EmitData> emitData) {
+        this.asyncConfig = asyncConfig;
+        this.min = Math.min(asyncConfig.getMinClients(), max);
+        this.max = max;
+        this.totalProcessed = totalProcessed;
+        this.parseQueue = parseQueue;
+        this.emitData = emitData;
+        this.active = min;
+    }
+
+    /**
+     * @param parserIndex 0-based index of the parser
+     * @return whether the parser should take work
+     */
+    boolean isActive(int parserIndex) {
+        return parserIndex < active;
+    }
+
+    int getActive() {
+        return active;
+    }
+
+    @Override
+    public Integer call() {
+        long interval = asyncConfig.getAdaptiveIntervalMillis();
+        long lastProcessed = totalProcessed.get();
+        while (true) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return AsyncProcessor.CONTROLLER_FUTURE_CODE;
+            }
+            long processed = totalProcessed.get();
+            double throughput = (processed - lastProcessed) * 1000.0 / interval;
+            lastProcessed = processed;
+            boolean overloaded = isOverloaded(getLoadPerCpu(), getAvailableMemory(),
+                    (double) emitData.size() / (emitData.size() + emitData.remainingCapacity()));
+            adjust(throughput, overloaded, !parseQueue.isEmpty());
+        }
+    }
+
+    /**
+     * @return the new limit
+     */
+    int adjust(double throughput, boolean overloaded, boolean hasWork) {
+        int next = active;
+        if (overloaded) {
+            next = Math.max(min, active / 2);
+            hold = 0;
+        } else if (lastIncreased && throughput < lastThroughput * MIN_IMPROVEMENT) {
+            next = Math.max(min, active - 1);
+            hold = HOLD_INTERVALS;
+        } else if (hold > 0) {
+            hold--;
+        } else if (hasWork && active < max) {
+            next = active + 1;
+        }
+        lastIncreased = next > active;
+        lastThroughput = throughput;
+        if (next != active) {
+            LOG.info("changing active clients from {} to {} (throughput {}/s, overloaded {})",
+                    active, next, String.format(Locale.ROOT, "%.1f", throughput),
+                    overloaded);
+            active = next;
+        }
+        return active;
+    }
+
+    boolean isOverloaded(double loadPerCpu, long availableMemory, double emitQueueFill) {
+        if (asyncConfig.getAdaptiveMaxLoadPerCpu() > 0 &&
+                loadPerCpu > asyncConfig.getAdaptiveMaxLoadPerCpu()) {
+            LOG.debug("load per cpu {} is too high", loadPerCpu);
+            return true;
+        }
+        if (asyncConfig.getAdaptiveMinAvailableMemoryBytes() > 0 && availableMemory > -1 &&
+                availableMemory < asyncConfig.getAdaptiveMinAvailableMemoryBytes()) {
+            LOG.debug("available memory {} is too low", availableMemory);
+            return true;
+        }
+        if (emitQueueFill > MAX_EMIT_QUEUE_FILL) {
+            LOG.debug("emit queue is {} full", emitQueueFill);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the system load average per cpu, or -1 if it isn't available
+     */
+    private static double getLoadPerCpu() {
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        if (load < 0) {
+            return -1;
+        }
+        return load / Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * This includes what the forked servers use, but it is only available on linux.
+     *
+     * @return MemAvailable in bytes, or -1 if it isn't available
+     */
+    private static long getAvailableMemory() {
+        if (!Files.isReadable(MEMINFO)) {
+            return -1;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(MEMINFO, StandardCharsets.UTF_8)) {
+            return parseAvailableMemory(reader);
+        } catch (IOException | NumberFormatException e) {
+            LOG.debug("couldn't read " + MEMINFO, e);
+            return -1;
+        }
+    }
+
+    static long parseAvailableMemory(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        while (line != null) {
+            if (line.startsWith("MemAvailable:")) {
+                String[] parts = line.substring("MemAvailable:".length()).trim().split("\\s+");
+                return Long.parseLong(parts[0]) * 1024;
+            }
+            line = reader.readLine();
+        }
+        return -1;
+    }
+}
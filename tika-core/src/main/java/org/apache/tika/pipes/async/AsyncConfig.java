@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.pipes.PipesConfigBase;
@@ -32,6 +33,29 @@ public class AsyncConfig extends PipesConfigBase {
 
     private int queueSize = 10000;
     private int numEmitters = 1;
+    private int emitQueueSize = 100;
+    private int emitMaxDocs = -1;
+    private boolean emitLanes = false;
+    private int emitMaxQueuedBatches = 2;
+
+    private int prefetchPerClient = 0;
+    private long prefetchMaxBytes = 100 * 1024 * 1024;
+    private Path prefetchDirectory = null;
+
+    private long largeFileThresholdBytes = -1;
+    private int numLargeFileClients = 1;
+    private long largeFileTimeoutMillis = -1;
+
+    private int minClients = -1;
+    private long adaptiveIntervalMillis = 10000;
+    private double adaptiveMaxLoadPerCpu = 1.0;
+    private long adaptiveMinAvailableMemoryBytes = -1;
+
+    private Path checkpointDirectory = null;
+    private long checkpointSyncMillis = 1000;
+    private int checkpointRunSize = 1000000;
+
+    private Path changeTrackingDirectory = null;
 
     private PipesReporter pipesReporter = PipesReporter.NO_OP_REPORTER;
 
@@ -79,6 +103,66 @@ public class AsyncConfig extends PipesConfigBase {
         this.numEmitters = numEmitters;
     }
 
+    public int getEmitQueueSize() {
+        return emitQueueSize;
+    }
+
+    /**
+     * Size of the queue between the parsers and the emitters. When it is full,
+     * the parsers wait. Default is <code>100</code>.
+     *
+     * @param emitQueueSize
+     */
+    public void setEmitQueueSize(int emitQueueSize) {
+        this.emitQueueSize = emitQueueSize;
+    }
+
+    public int getEmitMaxDocs() {
+        return emitMaxDocs;
+    }
+
+    /**
+     * When a batch has this many extracts, emit it, even if
+     * {@link #getEmitMaxEstimatedBytes()} hasn't been reached.
+     * Default is <code>-1</code>, which means no limit.
+     *
+     * @param emitMaxDocs
+     */
+    public void setEmitMaxDocs(int emitMaxDocs) {
+        this.emitMaxDocs = emitMaxDocs;
+    }
+
+    public boolean isEmitLanes() {
+        return emitLanes;
+    }
+
+    /**
+     * If <code>true</code>, each emitter gets its own batches and its own thread,
+     * so that a slow emitter doesn't hold up the others. In this case,
+     * {@link #getEmitWithinMillis()} is how long the first extract in a batch
+     * may wait. Default is <code>false</code>.
+     *
+     * @param emitLanes
+     */
+    public void setEmitLanes(boolean emitLanes) {
+        this.emitLanes = emitLanes;
+    }
+
+    public int getEmitMaxQueuedBatches() {
+        return emitMaxQueuedBatches;
+    }
+
+    /**
+     * With {@link #isEmitLanes()}, how many batches may wait per emitter while
+     * the emitter is busy. When these are used up, the emit queue backs up.
+     * Default is <code>2</code>.
+     *
+     * @param emitMaxQueuedBatches
+     */
+    public void setEmitMaxQueuedBatches(int emitMaxQueuedBatches) {
+        this.emitMaxQueuedBatches = emitMaxQueuedBatches;
+    }
+
     /**
      * FetchEmitTuple queue size
      * @return
@@ -107,4 +191,216 @@ public class AsyncConfig extends PipesConfigBase {
     public void setPipesReporter(PipesReporter pipesReporter) {
         this.pipesReporter = pipesReporter;
     }
+
+    public int getPrefetchPerClient() {
+        return prefetchPerClient;
+    }
+
+    /**
+     * If this is greater than <code>0</code>, files are fetched ahead of the parsers
+     * into a local spool, up to this many files per client, so that fetching from
+     * slow sources overlaps with parsing. The forked servers then read the spooled
+     * copies. Default is <code>0</code>, which turns this off.
+     *
+     * @param prefetchPerClient
+     */
+    public void setPrefetchPerClient(int prefetchPerClient) {
+        this.prefetchPerClient = prefetchPerClient;
+    }
+
+    public long getPrefetchMaxBytes() {
+        return prefetchMaxBytes;
+    }
+
+    /**
+     * Files that are larger than this aren't spooled; the forked server fetches
+     * them itself.
+     *
+     * @param prefetchMaxBytes
+     */
+    public void setPrefetchMaxBytes(long prefetchMaxBytes) {
+        this.prefetchMaxBytes = prefetchMaxBytes;
+    }
+
+    public Path getPrefetchDirectory() {
+        return prefetchDirectory;
+    }
+
+    /**
+     * Directory for the prefetch spool. By default, a temporary directory is
+     * created and deleted on close.
+     *
+     * @param prefetchDirectory
+     */
+    public void setPrefetchDirectory(String prefetchDirectory) {
+        this.prefetchDirectory = Paths.get(prefetchDirectory);
+    }
+
+    public long getLargeFileThresholdBytes() {
+        return largeFileThresholdBytes;
+    }
+
+    /**
+     * If this is greater than <code>0</code>, files whose size is known to be at
+     * least this many bytes are parsed by their own {@link #getNumLargeFileClients()}
+     * clients, so that they can't hold up the smaller files. The size is known if the
+     * fetch key has a range or the pipes iterator sets
+     * {@link org.apache.tika.pipes.FetchEmitTuple#SIZE_HINT}.
+     * Default is <code>-1</code>, which turns this off.
+     *
+     * @param largeFileThresholdBytes
+     */
+    public void setLargeFileThresholdBytes(long largeFileThresholdBytes) {
+        this.largeFileThresholdBytes = largeFileThresholdBytes;
+    }
+
+    public int getNumLargeFileClients() {
+        return numLargeFileClients;
+    }
+
+    /**
+     * How many of the {@link #getNumClients()} clients are for large files;
+     * see {@link #setLargeFileThresholdBytes(long)}. This must be less than
+     * numClients.
+     *
+     * @param numLargeFileClients
+     */
+    public void setNumLargeFileClients(int numLargeFileClients) {
+        this.numLargeFileClients = numLargeFileClients;
+    }
+
+    public long getLargeFileTimeoutMillis() {
+        return largeFileTimeoutMillis;
+    }
+
+    /**
+     * Timeout for the clients for large files. With a longer timeout than
+     * {@link #getTimeoutMillis()}, the clients for large files also parse small
+     * files when there are no large files to parse, but not the other way around.
+     * Default is <code>-1</code>, which means {@link #getTimeoutMillis()}.
+     *
+     * @param largeFileTimeoutMillis
+     */
+    public void setLargeFileTimeoutMillis(long largeFileTimeoutMillis) {
+        this.largeFileTimeoutMillis = largeFileTimeoutMillis;
+    }
+
+    public int getMinClients() {
+        return minClients;
+    }
+
+    /**
+     * If this is greater than <code>0</code>, the number of clients that take work
+     * is adjusted while running, between this and {@link #getNumClients()}, based on
+     * throughput, host load, available memory and whether the emitters keep up.
+     * Default is <code>-1</code>, which means that all numClients always take work.
+     *
+     * @param minClients
+     */
+    public void setMinClients(int minClients) {
+        this.minClients = minClients;
+    }
+
+    public long getAdaptiveIntervalMillis() {
+        return adaptiveIntervalMillis;
+    }
+
+    /**
+     * How often the number of clients is adjusted if {@link #getMinClients()} is set.
+     *
+     * @param adaptiveIntervalMillis
+     */
+    public void setAdaptiveIntervalMillis(long adaptiveIntervalMillis) {
+        this.adaptiveIntervalMillis = adaptiveIntervalMillis;
+    }
+
+    public double getAdaptiveMaxLoadPerCpu() {
+        return adaptiveMaxLoadPerCpu;
+    }
+
+    /**
+     * If the system load average per cpu is above this, the number of clients is
+     * halved. Set this to <code>-1</code> to ignore the load. Default is <code>1.0</code>.
+     *
+     * @param adaptiveMaxLoadPerCpu
+     */
+    public void setAdaptiveMaxLoadPerCpu(double adaptiveMaxLoadPerCpu) {
+        this.adaptiveMaxLoadPerCpu = adaptiveMaxLoadPerCpu;
+    }
+
+    public long getAdaptiveMinAvailableMemoryBytes() {
+        return adaptiveMinAvailableMemoryBytes;
+    }
+
+    /**
+     * If the host has less memory available than this, the number of clients is
+     * halved. This is only checked on linux. Default is <code>-1</code>, which turns
+     * this off.
+     *
+     * @param adaptiveMinAvailableMemoryBytes
+     */
+    public void setAdaptiveMinAvailableMemoryBytes(long adaptiveMinAvailableMemoryBytes) {
+        this.adaptiveMinAvailableMemoryBytes = adaptiveMinAvailableMemoryBytes;
+    }
+
+    public Path getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    /**
+     * If this is set, the ids of the {@link org.apache.tika.pipes.FetchEmitTuple}s
+     * that have been processed are recorded in this directory, and tuples with
+     * those ids are skipped when they are offered again, e.g. after a crash.
+     * The ids must be unique. Files whose emit data was still waiting to be
+     * emitted are parsed again. Default is <code>null</code>, which turns this off.
+     *
+     * @param checkpointDirectory
+     */
+    public void setCheckpointDirectory(String checkpointDirectory) {
+        this.checkpointDirectory = Paths.get(checkpointDirectory);
+    }
+
+    public long getCheckpointSyncMillis() {
+        return checkpointSyncMillis;
+    }
+
+    /**
+     * How often the checkpoint is synced to disk. After a crash, the files
+     * processed since the last sync are processed again. Default is <code>1000</code>.
+     *
+     * @param checkpointSyncMillis
+     */
+    public void setCheckpointSyncMillis(long checkpointSyncMillis) {
+        this.checkpointSyncMillis = checkpointSyncMillis;
+    }
+
+    public int getCheckpointRunSize() {
+        return checkpointRunSize;
+    }
+
+    /**
+     * How many ids are appended to the checkpoint log before they are written
+     * out as a sorted run. Default is <code>1000000</code>.
+     *
+     * @param checkpointRunSize
+     */
+    public void setCheckpointRunSize(int checkpointRunSize) {
+        this.checkpointRunSize = checkpointRunSize;
+    }
+
+    public Path getChangeTrackingDirectory() {
+        return changeTrackingDirectory;
+    }
+
+    /**
+     * If this is set, the size and {@link org.apache.tika.pipes.FetchEmitTuple#VERSION_HINT}
+     * (e.g. the last modified time or ETag) of each fetch key that has been processed are
+     * stored in this directory, and tuples whose file hasn't changed since are skipped when
+     * they are offered. Default is <code>null</code>, which turns this off.
+     *
+     * @param changeTrackingDirectory
+     */
+    public void setChangeTrackingDirectory(String changeTrackingDirectory) {
+        this.changeTrackingDirectory = Paths.get(changeTrackingDirectory);
+    }
 }
@@ -30,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.tika.pipes.PipesMetrics;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.Emitter;
 import org.apache.tika.pipes.emitter.EmitterManager;
@@ -50,18 +51,36 @@ public class AsyncEmitter implements Callable<Integer> {
     private final AsyncConfig asyncConfig;
     private final EmitterManager emitterManager;
     private final ArrayBlockingQueue<EmitData> emitDataQueue;
+    //null unless emitLanes
+    private final EmitLanes emitLanes;
+    //null unless something needs to know which tuples are finished
+    private final FinishedTracker finishedTracker;
+    //may be null
+    private final PipesMetrics metrics;
 
     Instant lastEmitted = Instant.now();
 
     public AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
                         EmitterManager emitterManager) {
+        this(asyncConfig, emitData, emitterManager, null, null, null);
+    }
+
+    AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
+                 EmitterManager emitterManager, EmitLanes emitLanes,
+                 FinishedTracker finishedTracker, PipesMetrics metrics) {
         this.asyncConfig = asyncConfig;
         this.emitDataQueue = emitData;
         this.emitterManager = emitterManager;
+        this.emitLanes = emitLanes;
+        this.finishedTracker = finishedTracker;
+        this.metrics = metrics;
     }
 
     @Override
     public Integer call() throws Exception {
+        if (emitLanes != null) {
+            return callWithLanes();
+        }
         EmitDataCache cache = new EmitDataCache(asyncConfig.getEmitMaxEstimatedBytes());
 
         while (true) {
@@ -87,6 +106,27 @@ public class AsyncEmitter implements Callable<Integer> {
         }
     }
 
+    /**
+     * Hands the emit data to the emitters' lanes; the batching and emitting
+     * happen on the lanes' threads.
+     */
+    private Integer callWithLanes() throws Exception {
+        while (true) {
+            EmitData emitData = emitDataQueue.poll(500, TimeUnit.MILLISECONDS);
+            if (emitData == EMIT_DATA_STOP_SEMAPHORE) {
+                emitLanes.finish();
+                return EMITTER_FUTURE_CODE;
+            }
+            if (emitData != null) {
+                //this blocks if the emitter's lane is full
+                emitLanes.add(emitData);
+            } else {
+                LOG.trace("Nothing on the async queue");
+            }
+            emitLanes.sealLingering();
+        }
+    }
+
     private class EmitDataCache {
         private final long maxBytes;
 
@@ -113,6 +153,11 @@ public class AsyncEmitter implements Callable<Integer> {
             List<EmitData> cached = map.computeIfAbsent(data.getEmitKey().getEmitterName(), k -> new ArrayList<>());
             updateEstimatedSize(sz);
             cached.add(data);
+            if (asyncConfig.getEmitMaxDocs() > 0 && size >= asyncConfig.getEmitMaxDocs()) {
+                LOG.debug("size ({}) >= maxDocs({}), going to emitAll", size,
+                        asyncConfig.getEmitMaxDocs());
+                emitAll();
+            }
         }
 
         private void emitAll() {
@@ -133,12 +178,25 @@ public class AsyncEmitter implements Callable<Integer> {
 
         private void tryToEmit(Emitter emitter, List<EmitData> cachedEmitData) {
 
+            boolean success = false;
+            long start = System.nanoTime();
             try {
                 emitter.emit(cachedEmitData);
+                success = true;
+                if (metrics != null) {
+                    metrics.recordEmit(cachedEmitData, System.nanoTime() - start);
+                }
             } catch (IOException | TikaEmitterException e) {
                 LOG.warn("emitter class ({}): {}", emitter.getClass(),
                         ExceptionUtils.getStackTrace(e));
             }
+            if (finishedTracker != null) {
+                try {
+                    finishedTracker.emitted(cachedEmitData, success);
+                } catch (IOException e) {
+                    LOG.warn("problem writing checkpoint", e);
+                }
+            }
         }
     }
 }
@@ -18,29 +18,41 @@ package org.apache.tika.pipes.async;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.PipesClient;
 import org.apache.tika.pipes.PipesException;
+import org.apache.tika.pipes.PipesMetrics;
 import org.apache.tika.pipes.PipesReporter;
 import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.PrefetchSpool;
+import org.apache.tika.pipes.SpareServerPool;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitterManager;
+import org.apache.tika.pipes.fetcher.FetcherManager;
 import org.apache.tika.pipes.pipesiterator.PipesIterator;
 import org.apache.tika.pipes.pipesiterator.TotalCountResult;
 import org.apache.tika.pipes.pipesiterator.TotalCounter;
@@ -54,15 +66,50 @@ public class AsyncProcessor implements Closeable {
 
     static final int PARSER_FUTURE_CODE = 1;
     static final int WATCHER_FUTURE_CODE = 3;
+    static final int PREFETCHER_FUTURE_CODE = 4;
+    static final int SCHEDULER_FUTURE_CODE = 5;
+    static final int CONTROLLER_FUTURE_CODE = 6;
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncProcessor.class);
 
     private final ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples;
     private final ArrayBlockingQueue<EmitData> emitData;
+    //the parsers take tuples from here; this is fetchEmitTuples unless prefetching
+    private final ArrayBlockingQueue<FetchEmitTuple> parseQueue;
+    //null unless prefetching
+    private final PrefetchSpool prefetchSpool;
+    //null unless large files have their own clients
+    private final LaneScheduler laneScheduler;
+    //null unless large files have their own clients
+    private final AsyncConfig largeFileConfig;
+    //null unless minClients > 0
+    private final AdaptiveConcurrencyController concurrencyController;
+    //null unless emitLanes
+    private EmitLanes emitLanes = null;
+    //null unless checkpointDirectory is set
+    private final CheckpointLog checkpointLog;
+    //null unless changeTrackingDirectory is set
+    private final ChangeTracker changeTracker;
+    //null unless checkpointing or tracking changes
+    private final FinishedTracker finishedTracker;
+    //the spool directory if it was created by this processor, so that it can be deleted
+    private Path prefetchTmpDirectory = null;
     private final ExecutorCompletionService<Integer> executorCompletionService;
+    //the emit lanes run in their own threads, but their futures are delivered here, too
+    private final BlockingQueue<Future<Integer>> completionQueue = new LinkedBlockingQueue<>();
     private final ExecutorService executorService;
     private final AsyncConfig asyncConfig;
     private final AtomicLong totalProcessed = new AtomicLong(0);
+    private final AtomicLong totalSkipped = new AtomicLong(0);
+    private final AtomicLong totalUnchanged = new AtomicLong(0);
+    private final PipesMetrics metrics = new PipesMetrics();
+    //when each offered tuple was queued, for the queue wait; by identity
+    //because a tuple's metadata may change
+    private final Map<FetchEmitTuple, Long> queuedAt =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+    private final List<PipesClient> pipesClients = new ArrayList<>();
+    //null unless spareServers > 0
+    private final SpareServerPool spareServerPool;
     private static long MAX_OFFER_WAIT_MS = 120000;
     private volatile int numParserThreadsFinished = 0;
     private volatile int numEmitterThreadsFinished = 0;
@@ -76,12 +123,65 @@ public class AsyncProcessor implements Closeable {
     public AsyncProcessor(Path tikaConfigPath, PipesIterator pipesIterator) throws TikaException, IOException {
         this.asyncConfig = AsyncConfig.load(tikaConfigPath);
         this.fetchEmitTuples = new ArrayBlockingQueue<>(asyncConfig.getQueueSize());
-        this.emitData = new ArrayBlockingQueue<>(100);
+        this.emitData = new ArrayBlockingQueue<>(asyncConfig.getEmitQueueSize());
+        this.checkpointLog = asyncConfig.getCheckpointDirectory() == null ? null :
+                new CheckpointLog(asyncConfig.getCheckpointDirectory(),
+                        asyncConfig.getCheckpointSyncMillis(),
+                        asyncConfig.getCheckpointRunSize());
+        this.changeTracker = asyncConfig.getChangeTrackingDirectory() == null ? null :
+                new ChangeTracker(asyncConfig.getChangeTrackingDirectory());
+        List<FinishedTracker.Listener> finishedListeners = new ArrayList<>();
+        if (checkpointLog != null) {
+            finishedListeners.add(checkpointLog);
+        }
+        if (changeTracker != null) {
+            finishedListeners.add(changeTracker);
+        }
+        this.finishedTracker = finishedListeners.isEmpty() ? null :
+                new FinishedTracker(finishedListeners);
+        int numPrefetchers = 0;
+        if (asyncConfig.getPrefetchPerClient() > 0) {
+            //this has to happen before any server is started
+            this.prefetchSpool = initPrefetchSpool();
+            this.parseQueue = new ArrayBlockingQueue<>(
+                    asyncConfig.getNumClients() * asyncConfig.getPrefetchPerClient());
+            numPrefetchers = asyncConfig.getNumClients();
+        } else {
+            this.prefetchSpool = null;
+            this.parseQueue = fetchEmitTuples;
+        }
+        if (asyncConfig.getLargeFileThresholdBytes() > 0) {
+            if (asyncConfig.getNumLargeFileClients() < 1 ||
+                    asyncConfig.getNumLargeFileClients() >= asyncConfig.getNumClients()) {
+                throw new TikaConfigException("numLargeFileClients must be > 0 and " +
+                        "< numClients");
+            }
+            this.largeFileConfig = loadLargeFileConfig(tikaConfigPath);
+            this.laneScheduler = new LaneScheduler(parseQueue, asyncConfig.getNumClients(),
+                    asyncConfig.getLargeFileThresholdBytes(), asyncConfig.getQueueSize(),
+                    asyncConfig.getTimeoutMillis(), largeFileConfig.getTimeoutMillis());
+        } else {
+            this.largeFileConfig = null;
+            this.laneScheduler = null;
+        }
+        if (asyncConfig.getMinClients() > 0) {
+            //the clients for large files are left alone
+            int numSmall = asyncConfig.getNumClients() -
+                    (laneScheduler == null ? 0 : asyncConfig.getNumLargeFileClients());
+            this.concurrencyController = new AdaptiveConcurrencyController(asyncConfig,
+                    numSmall, totalProcessed, parseQueue, emitData);
+        } else {
+            this.concurrencyController = null;
+        }
         //+1 is the watcher thread
         this.executorService = Executors.newFixedThreadPool(
-                asyncConfig.getNumClients() + asyncConfig.getNumEmitters() + 1);
+                asyncConfig.getNumClients() + asyncConfig.getNumEmitters() +
+                        numPrefetchers + (laneScheduler == null ? 0 : 1) +
+                        (concurrencyController == null ? 0 : 1) + 1);
         this.executorCompletionService =
-                new ExecutorCompletionService<>(executorService);
+                new ExecutorCompletionService<>(executorService, completionQueue);
+        this.spareServerPool = asyncConfig.getSpareServers() > 0 ?
+                new SpareServerPool(asyncConfig) : null;
         try {
             if (!tikaConfigPath.toAbsolutePath().equals(asyncConfig.getTikaConfig().toAbsolutePath())) {
                 LOG.warn("TikaConfig for AsyncProcessor ({}) is different " +
@@ -94,6 +194,9 @@ public class AsyncProcessor implements Closeable {
                     try {
                         Thread.sleep(500);
                         checkActive();
+                        if (checkpointLog != null) {
+                            checkpointLog.syncIfDue();
+                        }
                     } catch (InterruptedException e) {
                         return WATCHER_FUTURE_CODE;
                     }
@@ -105,24 +208,98 @@ public class AsyncProcessor implements Closeable {
                 startCounter((TotalCounter) pipesIterator);
             }
 
-            for (int i = 0; i < asyncConfig.getNumClients(); i++) {
-                executorCompletionService.submit(
-                        new FetchEmitWorker(asyncConfig, fetchEmitTuples, emitData));
+            for (int i = 0; i < numPrefetchers; i++) {
+                executorCompletionService.submit(new Prefetcher());
+            }
+            if (concurrencyController != null) {
+                executorCompletionService.submit(concurrencyController);
+            }
+
+            if (laneScheduler == null) {
+                startParsers(asyncConfig, spareServerPool, asyncConfig.getNumClients(),
+                        LaneScheduler.SMALL);
+            } else {
+                executorCompletionService.submit(laneScheduler);
+                int numLarge = asyncConfig.getNumLargeFileClients();
+                startParsers(asyncConfig, spareServerPool, asyncConfig.getNumClients() - numLarge,
+                        LaneScheduler.SMALL);
+                //the spares are started with the default timeout
+                startParsers(largeFileConfig, null, numLarge, LaneScheduler.LARGE);
             }
 
             EmitterManager emitterManager = EmitterManager.load(asyncConfig.getTikaConfig());
+            if (asyncConfig.isEmitLanes()) {
+                emitLanes = new EmitLanes(asyncConfig, emitterManager, finishedTracker,
+                        metrics, completionQueue);
+            }
             for (int i = 0; i < asyncConfig.getNumEmitters(); i++) {
                 executorCompletionService.submit(
-                        new AsyncEmitter(asyncConfig, emitData, emitterManager));
+                        new AsyncEmitter(asyncConfig, emitData, emitterManager, emitLanes,
+                                finishedTracker, metrics));
             }
         } catch (Exception e) {
             LOG.error("problem initializing AsyncProcessor", e);
             executorService.shutdownNow();
+            for (Closeable closeable : new Closeable[]{checkpointLog, changeTracker}) {
+                if (closeable == null) {
+                    continue;
+                }
+                try {
+                    closeable.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
             asyncConfig.getPipesReporter().error(e);
             throw e;
         }
     }
 
+    private void startParsers(AsyncConfig config, SpareServerPool pool, int numParsers,
+                              int lane) {
+        //with concurrent parses, several workers share each client
+        int concurrentParses = Math.max(1, config.getConcurrentParsesPerProcess());
+        PipesClient pipesClient = null;
+        for (int i = 0; i < numParsers; i++) {
+            if (i % concurrentParses == 0) {
+                pipesClient = new PipesClient(config, pool);
+                pipesClients.add(pipesClient);
+            }
+            executorCompletionService.submit(
+                    new FetchEmitWorker(asyncConfig, pipesClient, parseQueue, emitData, lane, i));
+        }
+    }
+
+    /**
+     * The clients for large files get their own copy of the config,
+     * with the timeout for large files.
+     */
+    private AsyncConfig loadLargeFileConfig(Path tikaConfigPath)
+            throws IOException, TikaException {
+        AsyncConfig config = AsyncConfig.load(tikaConfigPath);
+        //this may have been changed for the prefetch spool
+        config.setForkedJvmArgs(asyncConfig.getForkedJvmArgs());
+        if (asyncConfig.getLargeFileTimeoutMillis() > 0) {
+            config.setTimeoutMillis(asyncConfig.getLargeFileTimeoutMillis());
+        }
+        return config;
+    }
+
+    private PrefetchSpool initPrefetchSpool() throws IOException, TikaException {
+        Path dir = asyncConfig.getPrefetchDirectory();
+        if (dir == null) {
+            dir = Files.createTempDirectory("tika-prefetch-");
+            prefetchTmpDirectory = dir;
+        }
+        PrefetchSpool spool = new PrefetchSpool(dir, asyncConfig.getPrefetchMaxBytes(),
+                FetcherManager.load(asyncConfig.getTikaConfig()));
+        //the forked servers need to know where to find the spooled files
+        List<String> jvmArgs = asyncConfig.getForkedJvmArgs();
+        jvmArgs.add(spool.getJvmArg());
+        asyncConfig.setForkedJvmArgs(jvmArgs);
+        return spool;
+    }
+
     private void startCounter(TotalCounter totalCounter) {
         Thread counterThread = new Thread(() -> {
             totalCounter.startTotalCount();
@@ -155,17 +332,39 @@ public class AsyncProcessor implements Closeable {
             throw new OfferLargerThanQueueSize(newFetchEmitTuples.size(),
                     asyncConfig.getQueueSize());
         }
+        if (finishedTracker != null) {
+            List<FetchEmitTuple> toProcess = new ArrayList<>(newFetchEmitTuples.size());
+            for (FetchEmitTuple t : newFetchEmitTuples) {
+                if (!shouldSkip(t)) {
+                    toProcess.add(t);
+                }
+            }
+            if (toProcess.isEmpty()) {
+                return true;
+            }
+            newFetchEmitTuples = toProcess;
+        }
         long start = System.currentTimeMillis();
         long elapsed = System.currentTimeMillis() - start;
         while (elapsed < offerMs) {
             if (fetchEmitTuples.remainingCapacity() > newFetchEmitTuples.size()) {
+                //before adding them, because a client may take them right away
+                markQueued(newFetchEmitTuples);
+                boolean added = false;
                 try {
                     fetchEmitTuples.addAll(newFetchEmitTuples);
+                    added = true;
                     return true;
                 } catch (IllegalStateException e) {
                     //this means that the add all failed because the queue couldn't
                     //take the full list
                     LOG.debug("couldn't add full list", e);
+                } finally {
+                    if (!added) {
+                        //the tuples that did make it into the queue just don't get
+                        //a queue wait
+                        unmarkQueued(newFetchEmitTuples);
+                    }
                 }
             }
             Thread.sleep(100);
@@ -187,7 +386,46 @@ public class AsyncProcessor implements Closeable {
                     "Can't call offer after calling close() or " + "shutdownNow()");
         }
         checkActive();
-        return fetchEmitTuples.offer(t, offerMs, TimeUnit.MILLISECONDS);
+        if (shouldSkip(t)) {
+            return true;
+        }
+        queuedAt.put(t, System.nanoTime());
+        boolean offered = fetchEmitTuples.offer(t, offerMs, TimeUnit.MILLISECONDS);
+        if (!offered) {
+            queuedAt.remove(t);
+        }
+        return offered;
+    }
+
+    private void markQueued(List<FetchEmitTuple> tuples) {
+        long now = System.nanoTime();
+        for (FetchEmitTuple t : tuples) {
+            queuedAt.put(t, now);
+        }
+    }
+
+    private void unmarkQueued(List<FetchEmitTuple> tuples) {
+        for (FetchEmitTuple t : tuples) {
+            queuedAt.remove(t);
+        }
+    }
+
+    /**
+     * @return whether the tuple was processed in an earlier run, according to the
+     * checkpoint, or its file hasn't changed since it was last processed
+     */
+    private boolean shouldSkip(FetchEmitTuple t) {
+        if (checkpointLog != null && checkpointLog.contains(t.getId())) {
+            LOG.debug("skipping {}; it was processed in an earlier run", t.getId());
+            totalSkipped.incrementAndGet();
+            return true;
+        }
+        if (changeTracker != null && changeTracker.isUnchanged(t)) {
+            LOG.debug("skipping {}; it hasn't changed since it was last processed", t.getId());
+            totalUnchanged.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     public void finished() throws InterruptedException {
@@ -219,6 +457,18 @@ public class AsyncProcessor implements Closeable {
                     case WATCHER_FUTURE_CODE :
                         LOG.debug("watcher thread finished");
                         break;
+                    case PREFETCHER_FUTURE_CODE :
+                        LOG.debug("prefetcher finished");
+                        break;
+                    case SCHEDULER_FUTURE_CODE :
+                        LOG.debug("lane scheduler finished");
+                        break;
+                    case CONTROLLER_FUTURE_CODE :
+                        LOG.debug("concurrency controller finished");
+                        break;
+                    case EmitLanes.LANE_FUTURE_CODE :
+                        LOG.debug("emit lane finished");
+                        break;
                     default :
                         throw new IllegalArgumentException("Don't recognize this future code: " + i);
                 }
@@ -229,6 +479,7 @@ public class AsyncProcessor implements Closeable {
             }
         }
         if (numParserThreadsFinished == asyncConfig.getNumClients() && ! addedEmitterSemaphores) {
+            closePipesClients();
             for (int i = 0; i < asyncConfig.getNumEmitters(); i++) {
                 try {
                     boolean offered = emitData.offer(AsyncEmitter.EMIT_DATA_STOP_SEMAPHORE,
@@ -248,9 +499,42 @@ public class AsyncProcessor implements Closeable {
                 numEmitterThreadsFinished == asyncConfig.getNumEmitters());
     }
 
+    private void closePipesClients() {
+        for (PipesClient pipesClient : pipesClients) {
+            try {
+                pipesClient.close();
+            } catch (IOException e) {
+                LOG.warn("problem closing pipes client", e);
+            }
+        }
+        if (spareServerPool != null) {
+            try {
+                spareServerPool.close();
+            } catch (IOException e) {
+                LOG.warn("problem closing spare server pool", e);
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         executorService.shutdownNow();
+        closePipesClients();
+        if (emitLanes != null) {
+            emitLanes.close();
+        }
+        if (prefetchSpool != null) {
+            prefetchSpool.close();
+            if (prefetchTmpDirectory != null) {
+                Files.deleteIfExists(prefetchTmpDirectory);
+            }
+        }
+        if (checkpointLog != null) {
+            checkpointLog.close();
+        }
+        if (changeTracker != null) {
+            changeTracker.close();
+        }
         asyncConfig.getPipesReporter().close();
     }
 
@@ -258,68 +542,195 @@ public class AsyncProcessor implements Closeable {
         return totalProcessed.get();
     }
 
+    /**
+     * @return the latencies of the stages and the counts of the results so far
+     */
+    public PipesMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of offered tuples that weren't processed because the checkpoint
+     * shows that they were processed in an earlier run
+     */
+    public long getTotalSkipped() {
+        return totalSkipped.get();
+    }
+
+    /**
+     * @return the number of offered tuples that weren't processed because their file
+     * hasn't changed since it was last processed; see
+     * {@link AsyncConfig#getChangeTrackingDirectory()}
+     */
+    public long getTotalUnchanged() {
+        return totalUnchanged.get();
+    }
+
+    /**
+     * @return the number of clients that currently take work; this only changes
+     * if {@link AsyncConfig#getMinClients()} is set
+     */
+    public int getNumActiveClients() {
+        if (concurrencyController == null) {
+            return asyncConfig.getNumClients();
+        }
+        int numLarge = laneScheduler == null ? 0 : asyncConfig.getNumLargeFileClients();
+        return concurrencyController.getActive() + numLarge;
+    }
+
     private class FetchEmitWorker implements Callable<Integer> {
 
         private final AsyncConfig asyncConfig;
+        private final PipesClient pipesClient;
         private final ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples;
         private final ArrayBlockingQueue<EmitData> emitDataQueue;
+        //only used with the laneScheduler
+        private final int lane;
+        //index within the lane; only used with the concurrencyController
+        private final int parserIndex;
 
-        private FetchEmitWorker(AsyncConfig asyncConfig,
+        private FetchEmitWorker(AsyncConfig asyncConfig, PipesClient pipesClient,
                                 ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples,
-                                ArrayBlockingQueue<EmitData> emitDataQueue) {
+                                ArrayBlockingQueue<EmitData> emitDataQueue, int lane,
+                                int parserIndex) {
             this.asyncConfig = asyncConfig;
+            this.pipesClient = pipesClient;
             this.fetchEmitTuples = fetchEmitTuples;
             this.emitDataQueue = emitDataQueue;
+            this.lane = lane;
+            this.parserIndex = parserIndex;
         }
 
         @Override
         public Integer call() throws Exception {
 
-            try (PipesClient pipesClient = new PipesClient(asyncConfig)) {
-                while (true) {
-                    FetchEmitTuple t = fetchEmitTuples.poll(1, TimeUnit.SECONDS);
-                    if (t == null) {
-                        //skip
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("null fetch emit tuple");
-                        }
-                    } else if (t == PipesIterator.COMPLETED_SEMAPHORE) {
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("hit completed semaphore");
-                        }
-                        return PARSER_FUTURE_CODE;
-                    } else {
-                        PipesResult result = null;
-                        long start = System.currentTimeMillis();
-                        try {
-                            result = pipesClient.process(t);
-                        } catch (IOException e) {
-                            LOG.warn("pipesClient crash", e);
-                            result = PipesResult.UNSPECIFIED_CRASH;
-                        }
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("timer -- pipes client process: {} ms",
-                                    System.currentTimeMillis() - start);
+            //the pipesClient may be shared; it is closed by the AsyncProcessor
+            while (true) {
+                FetchEmitTuple t;
+                if (isParked()) {
+                    t = pollParked();
+                } else {
+                    t = laneScheduler == null ?
+                            fetchEmitTuples.poll(1, TimeUnit.SECONDS) :
+                            laneScheduler.poll(lane, 1000);
+                }
+                if (t == null) {
+                    //skip
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("null fetch emit tuple");
+                    }
+                } else if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("hit completed semaphore");
+                    }
+                    return PARSER_FUTURE_CODE;
+                } else {
+                    PipesResult result = null;
+                    long start = System.currentTimeMillis();
+                    long startNanos = System.nanoTime();
+                    try {
+                        result = pipesClient.process(t);
+                    } catch (IOException e) {
+                        LOG.warn("pipesClient crash", e);
+                        result = PipesResult.UNSPECIFIED_CRASH;
+                    } finally {
+                        if (prefetchSpool != null) {
+                            //report the tuple as it was offered
+                            t = prefetchSpool.release(t);
                         }
-                        long offerStart = System.currentTimeMillis();
-                        if (result.getStatus() == PipesResult.STATUS.PARSE_SUCCESS ||
-                                result.getStatus() == PipesResult.STATUS.PARSE_SUCCESS_WITH_EXCEPTION) {
-                            boolean offered = emitDataQueue.offer(result.getEmitData(),
-                                    MAX_OFFER_WAIT_MS,
-                                    TimeUnit.MILLISECONDS);
-                            if (! offered) {
-                                throw new RuntimeException("Couldn't offer emit data to queue " +
-                                        "within " + MAX_OFFER_WAIT_MS + " ms");
-                            }
+                    }
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("timer -- pipes client process: {} ms",
+                                System.currentTimeMillis() - start);
+                    }
+                    //this is the tuple as it was offered
+                    Long queued = queuedAt.remove(t);
+                    metrics.record(result, queued == null ? -1 : startNanos - queued);
+                    long offerStart = System.currentTimeMillis();
+                    if (result.getStatus() == PipesResult.STATUS.PARSE_SUCCESS ||
+                            result.getStatus() == PipesResult.STATUS.PARSE_SUCCESS_WITH_EXCEPTION) {
+                        if (finishedTracker != null) {
+                            //this has to happen before an emitter can see the emit data
+                            finishedTracker.finishAfterEmit(result.getEmitData(), t);
                         }
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("timer -- offered: {} ms",
-                                    System.currentTimeMillis() - offerStart);
+                        boolean offered = emitDataQueue.offer(result.getEmitData(),
+                                MAX_OFFER_WAIT_MS,
+                                TimeUnit.MILLISECONDS);
+                        if (! offered) {
+                            throw new RuntimeException("Couldn't offer emit data to queue " +
+                                    "within " + MAX_OFFER_WAIT_MS + " ms");
                         }
-                        long elapsed = System.currentTimeMillis() - start;
-                        asyncConfig.getPipesReporter().report(t, result, elapsed);
-                        totalProcessed.incrementAndGet();
+                    } else if (finishedTracker != null &&
+                            FinishedTracker.isFinished(result.getStatus())) {
+                        finishedTracker.finish(t, result.getStatus());
+                    }
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("timer -- offered: {} ms",
+                                System.currentTimeMillis() - offerStart);
                     }
+                    long elapsed = System.currentTimeMillis() - start;
+                    asyncConfig.getPipesReporter().report(t, result, elapsed);
+                    totalProcessed.incrementAndGet();
+                }
+            }
+        }
+
+        private boolean isParked() {
+            return concurrencyController != null && lane == LaneScheduler.SMALL &&
+                    !concurrencyController.isActive(parserIndex);
+        }
+
+        /**
+         * A parked parser doesn't take work, but it still has to take
+         * its completed semaphore once everything else is done.
+         */
+        private FetchEmitTuple pollParked() throws InterruptedException {
+            FetchEmitTuple t = null;
+            if (laneScheduler == null) {
+                if (fetchEmitTuples.peek() == PipesIterator.COMPLETED_SEMAPHORE) {
+                    //if another parser got there first, this is
+                    //the rare case where a parked parser takes work
+                    t = fetchEmitTuples.poll();
+                }
+            } else if (laneScheduler.isFinished()) {
+                t = laneScheduler.poll(lane, 0);
+            }
+            if (t == null) {
+                Thread.sleep(1000);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Moves tuples from the fetchEmitTuples queue to the parseQueue, fetching
+     * each file into the prefetch spool on the way.
+     */
+    private class Prefetcher implements Callable<Integer> {
+
+        @Override
+        public Integer call() throws Exception {
+            while (true) {
+                FetchEmitTuple t = fetchEmitTuples.poll(1, TimeUnit.SECONDS);
+                if (t == null) {
+                    continue;
+                }
+                if (t != PipesIterator.COMPLETED_SEMAPHORE) {
+                    long start = System.currentTimeMillis();
+                    t = prefetchSpool.spool(t);
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("timer -- prefetch: {} ms", System.currentTimeMillis() - start);
+                    }
+                }
+                boolean offered = parseQueue.offer(t, MAX_OFFER_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (!offered) {
+                    prefetchSpool.release(t);
+                    throw new RuntimeException("Couldn't offer prefetched tuple to queue " +
+                            "within " + MAX_OFFER_WAIT_MS + " ms");
+                }
+                //each prefetcher forwards one semaphore, so each parser gets one
+                if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                    return PREFETCHER_FUTURE_CODE;
                 }
             }
         }
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+/**
+ * Remembers the size and {@link FetchEmitTuple#VERSION_HINT} of each fetch key
+ * that an {@link AsyncProcessor} has processed successfully, so that recurring crawls can skip
+ * the files that haven't changed since. Tuples without a version hint are
+ * always processed.
+ * <p>
+ * Only 64-bit hashes of the fetch key and of the size and version are kept, in an
+ * open addressing table. On close, the table is written to <code>fingerprints.bin</code>;
+ * while running, new fingerprints are appended to <code>fingerprints.log</code>,
+ * which is replayed on open if the last run didn't close cleanly.
+ */
+class ChangeTracker implements FinishedTracker.Listener, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeTracker.class);
+
+    static final String TABLE_FILE = "fingerprints.bin";
+    static final String LOG_FILE = "fingerprints.log";
+
+    private static final int TABLE_MAGIC = 0x544b4654;
+
+    private final Path directory;
+    private final LongLongTable table;
+    private final DataOutputStream logStream;
+
+    ChangeTracker(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.table = readTable(directory.resolve(TABLE_FILE));
+        int replayed = replayLog(directory.resolve(LOG_FILE), table);
+        if (replayed > 0) {
+            LOG.info("replayed {} fingerprints from an unclean shutdown", replayed);
+        }
+        this.logStream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)));
+        LOG.info("opened change tracker {} with {} fingerprints", directory, table.size());
+    }
+
+    /**
+     * @return whether the tuple's file had the same size and version when it was
+     * last finished
+     */
+    boolean isUnchanged(FetchEmitTuple t) {
+        long fingerprint = fingerprint(t);
+        if (fingerprint == 0) {
+            return false;
+        }
+        synchronized (this) {
+            return table.get(keyHash(t.getFetchKey())) == fingerprint;
+        }
+    }
+
+    @Override
+    public synchronized void finished(FetchEmitTuple t, PipesResult.STATUS status)
+            throws IOException {
+        if (!isSuccess(status)) {
+            return;
+        }
+        long fingerprint = fingerprint(t);
+        if (fingerprint == 0) {
+            return;
+        }
+        long key = keyHash(t.getFetchKey());
+        if (table.put(key, fingerprint)) {
+            logStream.writeLong(key);
+            logStream.writeLong(fingerprint);
+        }
+    }
+
+    /**
+     * @return whether a tuple with this result is remembered. Crashes, timeouts
+     * and parse exceptions aren't, so that those files are tried again on the
+     * next run, even if they haven't changed; a crash may have been caused by
+     * something else in the process, or by the process being killed.
+     */
+    static boolean isSuccess(PipesResult.STATUS status) {
+        switch (status) {
+            case PARSE_SUCCESS:
+            case PARSE_SUCCESS_WITH_EXCEPTION:
+            case EMIT_SUCCESS:
+            case EMPTY_OUTPUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        logStream.close();
+        Path tmp = Files.createTempFile(directory, "fingerprints-", ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+                dos.writeInt(TABLE_MAGIC);
+                dos.writeInt(table.size());
+                table.write(dos);
+                dos.flush();
+            }
+            Files.move(tmp, directory.resolve(TABLE_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        //everything in the log is now in the table
+        Files.deleteIfExists(directory.resolve(LOG_FILE));
+    }
+
+    private static LongLongTable readTable(Path p) throws IOException {
+        if (!Files.isRegularFile(p)) {
+            return new LongLongTable(1024);
+        }
+        try (DataInputStream is = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(p)))) {
+            if (is.readInt() != TABLE_MAGIC) {
+                throw new IOException("not a fingerprint table: " + p);
+            }
+            int size = is.readInt();
+            LongLongTable table = new LongLongTable(size);
+            for (int i = 0; i < size; i++) {
+                table.put(is.readLong(), is.readLong());
+            }
+            return table;
+        }
+    }
+
+    private static int replayLog(Path p, LongLongTable table) throws IOException {
+        if (!Files.isRegularFile(p)) {
+            return 0;
+        }
+        int replayed = 0;
+        try (DataInputStream is = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(p)))) {
+            while (true) {
+                long key;
+                long fingerprint;
+                try {
+                    key = is.readLong();
+                    fingerprint = is.readLong();
+                } catch (EOFException e) {
+                    //a record that was cut off is ignored
+                    break;
+                }
+                table.put(key, fingerprint);
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * @return a hash of the size and version hints, or <code>0</code> if there's no
+     * version hint
+     */
+    static long fingerprint(FetchEmitTuple t) {
+        String version = t.getVersionHint();
+        if (version == null) {
+            return 0;
+        }
+        return nonZero(hash(t.getSizeHint() + "\u0000" + version));
+    }
+
+    static long keyHash(FetchKey fetchKey) {
+        String key = fetchKey.getFetcherName() + "\u0000" + fetchKey.getFetchKey();
+        if (fetchKey.hasRange()) {
+            key += "\u0000" + fetchKey.getRangeStart() + "-" + fetchKey.getRangeEnd();
+        }
+        return nonZero(hash(key));
+    }
+
+    //0 marks empty slots and missing fingerprints
+    private static long nonZero(long h) {
+        return h == 0 ? 1 : h;
+    }
+
+    private static long hash(String s) {
+        //64-bit fnv-1a with the final mix from murmur3
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Open addressing hash table from non-zero longs to longs, with linear probing.
+     * This takes 16 bytes per slot, instead of ~80 bytes per entry for a HashMap.
+     */
+    static class LongLongTable {
+        private long[] keys;
+        private long[] values;
+        private int size = 0;
+
+        LongLongTable(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2L && capacity < (1 << 30)) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            values = new long[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the value, or <code>0</code> if the key isn't there
+         */
+        long get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return whether the value changed
+         */
+        boolean put(long key, long value) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            for (; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    if (values[i] == value) {
+                        return false;
+                    }
+                    values[i] = value;
+                    return true;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            //keep the load factor at or under 3/4
+            if (++size * 4L > keys.length * 3L) {
+                grow();
+            }
+            return true;
+        }
+
+        void write(DataOutputStream os) throws IOException {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    os.writeLong(keys[i]);
+                    os.writeLong(values[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            return (int) (key ^ (key >>> 32));
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.io.MappedBufferCleaner;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+
+/**
+ * Durable record of the {@link org.apache.tika.pipes.FetchEmitTuple} ids that an
+ * {@link AsyncProcessor} has finished, so that a run that was interrupted can be
+ * restarted without parsing those files again.
+ * <p>
+ * Finished ids are appended to <code>checkpoint.log</code>, which is synced to disk
+ * at most every {@link AsyncConfig#getCheckpointSyncMillis()}; a crash loses at most
+ * that much, and those files are parsed again. Every
+ * {@link AsyncConfig#getCheckpointRunSize()} ids, and when the log is opened, the ids
+ * in the log are written to an immutable sorted run file and the log is truncated.
+ * <p>
+ * To look up an id, a Bloom filter over all the runs is checked first, and then
+ * only the runs whose id range covers the id are binary searched. Runs are memory
+ * mapped, so the ids are not held on the heap, and are unmapped on {@link #close()}.
+ * Iterators that list ids in order (e.g. S3 keys) produce runs that hardly overlap.
+ */
+class CheckpointLog implements FinishedTracker.Listener, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointLog.class);
+
+    static final String LOG_FILE = "checkpoint.log";
+
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_SUFFIX = ".sorted";
+    private static final int RUN_MAGIC = 0x544b4350;
+    //keep the offsets within an int and the runs mappable
+    private static final long MAX_RUN_BYTES = 256 * 1024 * 1024;
+
+    private final Path directory;
+    private final long syncMillis;
+    private final int runSize;
+    //runs that existed when this was opened; this run's ids aren't looked up
+    private final List<Run> runs = new ArrayList<>();
+    //lookups hold the read lock, so that the runs aren't unmapped under them
+    private final ReadWriteLock runsLock = new ReentrantReadWriteLock();
+    private boolean runsClosed = false;
+    private final BloomFilter bloomFilter;
+    private final FileChannel logChannel;
+    private final DataOutputStream logStream;
+    //ids in the log, which become the next run
+    private final List<byte[]> logged = new ArrayList<>();
+    private long loggedBytes = 0;
+    private long lastSync = System.currentTimeMillis();
+    private boolean dirty = false;
+    private int nextRun;
+
+    CheckpointLog(Path directory, long syncMillis, int runSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.syncMillis = syncMillis;
+        this.runSize = runSize;
+        List<Path> runFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(directory, RUN_PREFIX + "*" + RUN_SUFFIX)) {
+            for (Path p : files) {
+                runFiles.add(p);
+            }
+        }
+        Collections.sort(runFiles);
+        nextRun = runFiles.size();
+        Path logFile = directory.resolve(LOG_FILE);
+        try {
+            for (Path p : runFiles) {
+                runs.add(Run.open(p));
+            }
+            this.logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException | RuntimeException e) {
+            closeRuns();
+            throw e;
+        }
+        try {
+            List<byte[]> recovered = readLog(logChannel);
+            if (!recovered.isEmpty()) {
+                //the run is complete before the log is truncated
+                Path runFile = writeRun(recovered);
+                runs.add(Run.open(runFile));
+            }
+            logChannel.truncate(0);
+            logChannel.position(0);
+        } catch (IOException | RuntimeException e) {
+            try {
+                logChannel.close();
+            } finally {
+                closeRuns();
+            }
+            throw e;
+        }
+        long total = 0;
+        for (Run run : runs) {
+            total += run.size();
+        }
+        this.bloomFilter = new BloomFilter(total);
+        for (Run run : runs) {
+            for (int i = 0; i < run.size(); i++) {
+                bloomFilter.add(run.get(i));
+            }
+        }
+        this.logStream = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(logChannel)));
+        LOG.info("opened checkpoint {} with {} finished ids in {} runs", directory, total,
+                runs.size());
+    }
+
+    /**
+     * @return whether the id was finished in an earlier run
+     */
+    boolean contains(String id) {
+        if (runs.isEmpty()) {
+            return false;
+        }
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (!bloomFilter.mightContain(bytes)) {
+            return false;
+        }
+        runsLock.readLock().lock();
+        try {
+            if (runsClosed) {
+                throw new IllegalStateException("checkpoint log is closed");
+            }
+            for (Run run : runs) {
+                if (run.contains(bytes)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            runsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the id as finished. It is on disk after the next sync.
+     */
+    synchronized void record(String id) throws IOException {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        logStream.writeInt(bytes.length);
+        logStream.write(bytes);
+        dirty = true;
+        logged.add(bytes);
+        loggedBytes += bytes.length + 4;
+        if (logged.size() >= runSize || loggedBytes >= MAX_RUN_BYTES) {
+            sync();
+            writeRun(logged);
+            logged.clear();
+            loggedBytes = 0;
+            logChannel.truncate(0);
+            logChannel.position(0);
+        } else {
+            syncIfDue();
+        }
+    }
+
+    @Override
+    public void finished(FetchEmitTuple t, PipesResult.STATUS status) throws IOException {
+        record(t.getId());
+    }
+
+    synchronized void syncIfDue() throws IOException {
+        if (dirty && System.currentTimeMillis() - lastSync >= syncMillis) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        logStream.flush();
+        logChannel.force(false);
+        lastSync = System.currentTimeMillis();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            try {
+                logStream.close();
+            } finally {
+                closeRuns();
+            }
+        }
+    }
+
+    private void closeRuns() throws IOException {
+        runsLock.writeLock().lock();
+        try {
+            if (runsClosed) {
+                return;
+            }
+            runsClosed = true;
+            IOException ex = null;
+            for (Run run : runs) {
+                try {
+                    run.close();
+                } catch (IOException e) {
+                    if (ex == null) {
+                        ex = e;
+                    } else {
+                        ex.addSuppressed(e);
+                    }
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        } finally {
+            runsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the ids from the log. A record that was cut off by a crash is ignored.
+     */
+    private static List<byte[]> readLog(FileChannel channel) throws IOException {
+        List<byte[]> ids = new ArrayList<>();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        long position = 0;
+        long size = channel.size();
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length < 0 || position + 4 + length > size) {
+                break;
+            }
+            ByteBuffer id = ByteBuffer.allocate(length);
+            readFully(channel, id, position + 4);
+            ids.add(id.array());
+            position += 4 + length;
+        }
+        if (position < size) {
+            LOG.warn("ignoring {} bytes at the end of the checkpoint log", size - position);
+        }
+        return ids;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private Path writeRun(List<byte[]> ids) throws IOException {
+        List<byte[]> sorted = new ArrayList<>(ids);
+        sorted.sort(CheckpointLog::compare);
+        List<byte[]> unique = new ArrayList<>(sorted.size());
+        for (byte[] id : sorted) {
+            if (unique.isEmpty() || compare(unique.get(unique.size() - 1), id) != 0) {
+                unique.add(id);
+            }
+        }
+        Path tmp = Files.createTempFile(directory, "run-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                DataOutputStream os = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)));
+                os.writeInt(RUN_MAGIC);
+                os.writeInt(unique.size());
+                int offset = 0;
+                for (byte[] id : unique) {
+                    os.writeInt(offset);
+                    offset += id.length;
+                }
+                os.writeInt(offset);
+                for (byte[] id : unique) {
+                    os.write(id);
+                }
+                os.flush();
+                channel.force(true);
+            }
+            Path run = directory.resolve(String.format(Locale.ROOT, "%s%08d%s",
+                    RUN_PREFIX, nextRun++, RUN_SUFFIX));
+            Files.move(tmp, run, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("wrote checkpoint run {} with {} ids", run, unique.size());
+            return run;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    //unsigned lexicographic order, which is code point order for utf-8
+    static int compare(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * A memory mapped run: magic, count, count + 1 offsets into the data, the data.
+     * The buffer is unmapped on {@link #close()}, rather than whenever it is
+     * garbage collected, so that the file isn't held open after the log is closed.
+     */
+    private static class Run implements Closeable {
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private final int dataStart;
+        private final byte[] min;
+        private final byte[] max;
+
+        private Run(MappedByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.limit() < 8 || buffer.getInt(0) != RUN_MAGIC) {
+                throw new IOException("not a checkpoint run");
+            }
+            this.size = buffer.getInt(4);
+            this.dataStart = 8 + (size + 1) * 4;
+            this.min = size > 0 ? get(0) : null;
+            this.max = size > 0 ? get(size - 1) : null;
+        }
+
+        static Run open(Path p) throws IOException {
+            try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+                return new Run(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] get(int i) {
+            int start = buffer.getInt(8 + i * 4);
+            int end = buffer.getInt(8 + (i + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(dataStart + start + j);
+            }
+            return bytes;
+        }
+
+        //same order as CheckpointLog.compare(get(i), id), without copying the i-th id
+        int compareTo(int i, byte[] id) {
+            int start = dataStart + buffer.getInt(8 + i * 4);
+            int length = dataStart + buffer.getInt(8 + (i + 1) * 4) - start;
+            int len = Math.min(length, id.length);
+            for (int j = 0; j < len; j++) {
+                int c = (buffer.get(start + j) & 0xff) - (id[j] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return length - id.length;
+        }
+
+        boolean contains(byte[] id) {
+            if (size == 0 || compare(id, min) < 0 || compare(id, max) > 0) {
+                return false;
+            }
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compareTo(mid, id);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            MappedBufferCleaner.freeBuffer(buffer);
+        }
+    }
+
+    /**
+     * Bloom filter with a 1% false positive rate at the expected size.
+     */
+    static class BloomFilter {
+        private final long[] bits;
+        private final long numBits;
+        private final int numHashes;
+
+        BloomFilter(long expected) {
+            long n = Math.max(1, expected);
+            //m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+            long m = Math.max(64, (long) Math.ceil(-n * Math.log(0.01) /
+                    (Math.log(2) * Math.log(2))));
+            this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64)];
+            this.numBits = bits.length * 64L;
+            this.numHashes = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        }
+
+        void add(byte[] bytes) {
+            long h1 = hash(bytes, 0x9e3779b97f4a7c15L);
+            long h2 = hash(bytes, 0xc2b2ae3d27d4eb4fL);
+            for (int i = 0; i < numHashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, numBits);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(byte[] bytes) {
+            long h1 = hash(bytes, 0x9e3779b97f4a7c15L);
+            long h2 = hash(bytes, 0xc2b2ae3d27d4eb4fL);
+            for (int i = 0; i < numHashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, numBits);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long hash(byte[] bytes, long seed) {
+            long h = seed ^ bytes.length;
+            for (byte b : bytes) {
+                h ^= b & 0xff;
+                h *= 0x100000001b3L;
+            }
+            //final mix from murmur3
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.PipesMetrics;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.Emitter;
+import org.apache.tika.pipes.emitter.EmitterManager;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.utils.ExceptionUtils;
+
+/**
+ * One emit lane per emitter, each with its own thread, so that a slow emitter
+ * only holds up its own batches. The {@link AsyncEmitter}s add emit data to the
+ * lanes; each lane seals a batch when it reaches
+ * {@link AsyncConfig#getEmitMaxEstimatedBytes()} or {@link AsyncConfig#getEmitMaxDocs()},
+ * or when its first document has waited {@link AsyncConfig#getEmitWithinMillis()}.
+ * <p>
+ * At most {@link AsyncConfig#getEmitMaxQueuedBatches()} sealed batches wait per lane.
+ * When a lane is full, adding to it blocks, which backs up the emit queue and, in
+ * turn, the parsers.
+ * <p>
+ * The lanes' futures are delivered to the completion queue that is passed in, so
+ * that the {@link AsyncProcessor} notices if a lane's thread dies.
+ */
+class EmitLanes implements Closeable {
+
+    static final int LANE_FUTURE_CODE = 7;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmitLanes.class);
+
+    //tells a lane's thread that there won't be any more batches
+    private static final List<EmitData> END = new ArrayList<>();
+
+    private final AsyncConfig asyncConfig;
+    private final EmitterManager emitterManager;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final ExecutorService executorService;
+    private final ExecutorCompletionService<Integer> executorCompletionService;
+    //AsyncEmitters that haven't finished yet
+    private final AtomicInteger running;
+    //null unless something needs to know which tuples are finished
+    private final FinishedTracker finishedTracker;
+    //may be null
+    private final PipesMetrics metrics;
+
+    EmitLanes(AsyncConfig asyncConfig, EmitterManager emitterManager) {
+        this(asyncConfig, emitterManager, null);
+    }
+
+    EmitLanes(AsyncConfig asyncConfig, EmitterManager emitterManager,
+              FinishedTracker finishedTracker) {
+        this(asyncConfig, emitterManager, finishedTracker, null);
+    }
+
+    EmitLanes(AsyncConfig asyncConfig, EmitterManager emitterManager,
+              FinishedTracker finishedTracker, PipesMetrics metrics) {
+        this(asyncConfig, emitterManager, finishedTracker, metrics, new LinkedBlockingQueue<>());
+    }
+
+    EmitLanes(AsyncConfig asyncConfig, EmitterManager emitterManager,
+              FinishedTracker finishedTracker, PipesMetrics metrics,
+              BlockingQueue<Future<Integer>> completionQueue) {
+        this.asyncConfig = asyncConfig;
+        this.emitterManager = emitterManager;
+        this.finishedTracker = finishedTracker;
+        this.metrics = metrics;
+        this.running = new AtomicInteger(asyncConfig.getNumEmitters());
+        this.executorService = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "emit-lane");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executorCompletionService =
+                new ExecutorCompletionService<>(executorService, completionQueue);
+    }
+
+    void add(EmitData emitData) throws InterruptedException {
+        getLane(emitData.getEmitKey().getEmitterName()).add(emitData);
+    }
+
+    /**
+     * Seals the batches whose first document has waited long enough.
+     */
+    void sealLingering() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (Lane lane : lanes.values()) {
+            lane.sealIfOlder(now - asyncConfig.getEmitWithinMillis());
+        }
+    }
+
+    /**
+     * Called by each AsyncEmitter when it gets its stop semaphore. The last one
+     * seals what is left and waits for the lanes to emit it.
+     */
+    void finish() throws InterruptedException, ExecutionException {
+        if (running.decrementAndGet() > 0) {
+            return;
+        }
+        for (Lane lane : lanes.values()) {
+            lane.end();
+        }
+        List<Future<?>> toWait;
+        synchronized (futures) {
+            toWait = new ArrayList<>(futures);
+        }
+        for (Future<?> future : toWait) {
+            future.get();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executorService.shutdownNow();
+    }
+
+    private Lane getLane(String emitterName) {
+        return lanes.computeIfAbsent(emitterName, name -> {
+            Lane lane = new Lane(emitterManager.getEmitter(name));
+            synchronized (futures) {
+                futures.add(executorCompletionService.submit(lane));
+            }
+            return lane;
+        });
+    }
+
+    private class Lane implements Callable<Integer> {
+
+        private final Emitter emitter;
+        private final ArrayBlockingQueue<List<EmitData>> batches;
+        //guarded by this
+        private List<EmitData> batch = new ArrayList<>();
+        private long estimatedSize = 0;
+        private long batchStarted = 0;
+        //set when the lane's thread stops, so that adding to a dead lane doesn't block forever
+        private volatile boolean stopped = false;
+
+        private Lane(Emitter emitter) {
+            this.emitter = emitter;
+            this.batches = new ArrayBlockingQueue<>(
+                    Math.max(1, asyncConfig.getEmitMaxQueuedBatches()));
+        }
+
+        synchronized void add(EmitData emitData) throws InterruptedException {
+            long sz = emitData.getEstimatedSizeBytes();
+            if (!batch.isEmpty() && estimatedSize + sz > asyncConfig.getEmitMaxEstimatedBytes()) {
+                LOG.debug("{}: estimated size ({}) > maxBytes({}), going to seal",
+                        emitter.getName(), estimatedSize + sz,
+                        asyncConfig.getEmitMaxEstimatedBytes());
+                seal();
+            }
+            if (batch.isEmpty()) {
+                batchStarted = System.currentTimeMillis();
+            }
+            batch.add(emitData);
+            estimatedSize += sz;
+            if (asyncConfig.getEmitMaxDocs() > 0 && batch.size() >= asyncConfig.getEmitMaxDocs()) {
+                seal();
+            }
+        }
+
+        synchronized void sealIfOlder(long millis) throws InterruptedException {
+            if (!batch.isEmpty() && batchStarted < millis) {
+                seal();
+            }
+        }
+
+        synchronized void end() throws InterruptedException {
+            if (!batch.isEmpty()) {
+                seal();
+            }
+            put(END);
+        }
+
+        //must hold the lock; this blocks if the lane is full
+        private void seal() throws InterruptedException {
+            put(batch);
+            batch = new ArrayList<>();
+            estimatedSize = 0;
+        }
+
+        private void put(List<EmitData> next) throws InterruptedException {
+            while (!batches.offer(next, 1, TimeUnit.SECONDS)) {
+                if (stopped) {
+                    throw new IllegalStateException(
+                            "emit lane for " + emitter.getName() + " has stopped");
+                }
+            }
+        }
+
+        @Override
+        public Integer call() {
+            try {
+                emitBatches();
+            } finally {
+                stopped = true;
+            }
+            return LANE_FUTURE_CODE;
+        }
+
+        private void emitBatches() {
+            while (true) {
+                List<EmitData> next;
+                try {
+                    next = batches.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (next == END) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                long startNanos = System.nanoTime();
+                boolean success = false;
+                try {
+                    emitter.emit(next);
+                    success = true;
+                    if (metrics != null) {
+                        metrics.recordEmit(next, System.nanoTime() - startNanos);
+                    }
+                } catch (IOException | TikaEmitterException | RuntimeException e) {
+                    //a bad batch mustn't take the lane down with it
+                    LOG.warn("emitter class ({}): {}", emitter.getClass(),
+                            ExceptionUtils.getStackTrace(e));
+                }
+                if (finishedTracker != null) {
+                    try {
+                        finishedTracker.emitted(next, success);
+                    } catch (IOException e) {
+                        LOG.warn("problem writing checkpoint", e);
+                    }
+                }
+                LOG.debug("{}: emitted {} files in {} ms", emitter.getName(), next.size(),
+                        System.currentTimeMillis() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.emitter.EmitData;
+
+/**
+ * Tells its {@link Listener}s which tuples an {@link AsyncProcessor} has finished.
+ * A tuple whose emit data goes through the {@link AsyncEmitter}s is only finished
+ * once that emit data has been emitted.
+ */
+class FinishedTracker {
+
+    interface Listener {
+        /**
+         * @param status the tuple's result; {@link PipesResult.STATUS#EMIT_SUCCESS}
+         *               if its emit data has been emitted by the emitters
+         */
+        void finished(FetchEmitTuple t, PipesResult.STATUS status) throws IOException;
+    }
+
+    private final List<Listener> listeners;
+    //emit data that has been handed to the emitters -> tuple
+    private final Map<EmitData, FetchEmitTuple> awaitingEmit = new IdentityHashMap<>();
+
+    FinishedTracker(List<Listener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * The tuple is finished once the emit data has been emitted;
+     * see {@link #emitted(List, boolean)}. This has to be called before
+     * the emit data is handed to the emitters.
+     */
+    synchronized void finishAfterEmit(EmitData emitData, FetchEmitTuple t) {
+        awaitingEmit.put(emitData, t);
+    }
+
+    void finish(FetchEmitTuple t, PipesResult.STATUS status) throws IOException {
+        for (Listener listener : listeners) {
+            listener.finished(t, status);
+        }
+    }
+
+    /**
+     * Called by the emitters.
+     *
+     * @param success if <code>false</code>, the tuples aren't finished
+     */
+    void emitted(List<? extends EmitData> emitData, boolean success) throws IOException {
+        for (EmitData d : emitData) {
+            FetchEmitTuple t;
+            synchronized (this) {
+                t = awaitingEmit.remove(d);
+            }
+            if (t != null && success) {
+                finish(t, PipesResult.STATUS.EMIT_SUCCESS);
+            }
+        }
+    }
+
+    /**
+     * @return whether a tuple with this result is finished, i.e. whether a resumed
+     * run shouldn't process it again; configuration problems, fetch and emit
+     * exceptions are retried. Listeners can be stricter; see
+     * {@link ChangeTracker#isSuccess(PipesResult.STATUS)}.
+     */
+    static boolean isFinished(PipesResult.STATUS status) {
+        switch (status) {
+            case EMPTY_OUTPUT:
+            case PARSE_EXCEPTION_NO_EMIT:
+            case PARSE_EXCEPTION_EMIT:
+            case PARSE_SUCCESS:
+            case PARSE_SUCCESS_WITH_EXCEPTION:
+            case OOM:
+            case TIMEOUT:
+            case UNSPECIFIED_CRASH:
+            case EMIT_SUCCESS:
+            case EMIT_SUCCESS_PARSE_EXCEPTION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
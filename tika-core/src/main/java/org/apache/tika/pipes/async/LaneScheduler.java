@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+
+/**
+ * Routes tuples from the parse queue to a lane for small files and a lane for
+ * large files, by {@link FetchEmitTuple#getSizeHint()}, so that a few very large
+ * files can't hold up all the parsers. Files of unknown size go to the small lane.
+ * <p>
+ * Each lane has its own parsers. A parser whose own lane is empty steals from the
+ * other lane, but only if that lane's timeout is no longer than its own; with
+ * a longer timeout for large files, parsers for large files can help out with
+ * small files, but not the other way around.
+ * <p>
+ * This runs as a single routing thread, which finishes once it has read one
+ * {@link PipesIterator#COMPLETED_SEMAPHORE} per parser. The parsers then drain
+ * their lanes and get a semaphore from {@link #poll(int, long)}.
+ */
+class LaneScheduler implements Callable<Integer> {
+
+    static final int SMALL = 0;
+    static final int LARGE = 1;
+
+    private static final Logger LOG = LoggerFactory.getLogger(LaneScheduler.class);
+
+    private final ArrayBlockingQueue<FetchEmitTuple> input;
+    private final int numParsers;
+    private final long largeFileThresholdBytes;
+    private final BlockingQueue<FetchEmitTuple>[] lanes;
+    //canSteal[a][b] is true if a parser in lane a may take tuples from lane b
+    private final boolean[][] canSteal = new boolean[2][2];
+    private volatile boolean finished = false;
+
+    @SuppressWarnings("unchecked")
+    LaneScheduler(ArrayBlockingQueue<FetchEmitTuple> input, int numParsers,
+                  long largeFileThresholdBytes, int laneSize,
+                  long smallTimeoutMillis, long largeTimeoutMillis) {
+        this.input = input;
+        this.numParsers = numParsers;
+        this.largeFileThresholdBytes = largeFileThresholdBytes;
+        this.lanes = new BlockingQueue[]{
+                new ArrayBlockingQueue<>(laneSize), new ArrayBlockingQueue<>(laneSize)};
+        canSteal[SMALL][LARGE] = largeTimeoutMillis <= smallTimeoutMillis;
+        canSteal[LARGE][SMALL] = smallTimeoutMillis <= largeTimeoutMillis;
+    }
+
+    int getLane(FetchEmitTuple t) {
+        long size = t.getSizeHint();
+        return size >= largeFileThresholdBytes ? LARGE : SMALL;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        int semaphores = 0;
+        while (semaphores < numParsers) {
+            FetchEmitTuple t = input.poll(1, TimeUnit.SECONDS);
+            if (t == null) {
+                continue;
+            }
+            if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                semaphores++;
+                continue;
+            }
+            int lane = getLane(t);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("routing {} with size {} to lane {}", t.getId(), t.getSizeHint(), lane);
+            }
+            //blocks if the lane is full, which holds up the other lane too;
+            //the lanes are as large as the input queue to make this rare
+            lanes[lane].put(t);
+        }
+        finished = true;
+        return AsyncProcessor.SCHEDULER_FUTURE_CODE;
+    }
+
+    /**
+     * @return whether all the tuples have been routed to the lanes
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the next tuple for a parser in the given lane,
+     * {@link PipesIterator#COMPLETED_SEMAPHORE} if there won't be any more,
+     * or <code>null</code> if there is nothing yet
+     */
+    FetchEmitTuple poll(int lane, long timeoutMillis) throws InterruptedException {
+        int other = lane == SMALL ? LARGE : SMALL;
+        FetchEmitTuple t = lanes[lane].poll();
+        if (t != null) {
+            return t;
+        }
+        if (canSteal[lane][other]) {
+            t = lanes[other].poll();
+            if (t != null) {
+                return t;
+            }
+        }
+        //read this before the last poll, so that a tuple
+        //routed in the meantime can't be missed
+        boolean done = finished;
+        t = lanes[lane].poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (t != null) {
+            return t;
+        }
+        if (done && lanes[lane].isEmpty() &&
+                (!canSteal[lane][other] || lanes[other].isEmpty())) {
+            return PipesIterator.COMPLETED_SEMAPHORE;
+        }
+        return null;
+    }
+}
@@ -39,6 +39,7 @@ import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.exception.TikaTimeoutException;
+import org.apache.tika.metadata.Metadata;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.HandlerConfig;
 import org.apache.tika.sax.BasicContentHandlerFactory;
@@ -173,6 +174,27 @@ public abstract class PipesIterator extends ConfigBase
 
     protected abstract void enqueue() throws IOException, TimeoutException, InterruptedException;
 
+    /**
+     * @return new metadata with the {@link FetchEmitTuple#SIZE_HINT} set
+     */
+    protected static Metadata metadataWithSizeHint(long size) {
+        Metadata metadata = new Metadata();
+        metadata.set(FetchEmitTuple.SIZE_HINT, Long.toString(size));
+        return metadata;
+    }
+
+    /**
+     * @return new metadata with the {@link FetchEmitTuple#SIZE_HINT} and
+     * the {@link FetchEmitTuple#VERSION_HINT} set
+     */
+    protected static Metadata metadataWithHints(long size, String version) {
+        Metadata metadata = metadataWithSizeHint(size);
+        if (version != null) {
+            metadata.set(FetchEmitTuple.VERSION_HINT, version);
+        }
+        return metadata;
+    }
+
     protected void tryToAdd(FetchEmitTuple p) throws InterruptedException, TimeoutException {
         added++;
         boolean offered = queue.offer(p, maxWaitMs, TimeUnit.MILLISECONDS);
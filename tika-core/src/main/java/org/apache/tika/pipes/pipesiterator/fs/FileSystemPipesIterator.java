@@ -37,7 +37,6 @@ import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaConfigException;
-import org.apache.tika.metadata.Metadata;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.async.AsyncProcessor;
 import org.apache.tika.pipes.emitter.EmitKey;
@@ -153,7 +152,10 @@ public class FileSystemPipesIterator extends PipesIterator
 
             try {
                 tryToAdd(new FetchEmitTuple(relPath, new FetchKey(fetcherName, relPath),
-                        new EmitKey(emitterName, relPath), new Metadata(), getHandlerConfig(),
+                        new EmitKey(emitterName, relPath),
+                        metadataWithHints(attrs.size(),
+                                Long.toString(attrs.lastModifiedTime().toMillis())),
+                        getHandlerConfig(),
                         getOnParseException()));
             } catch (TimeoutException e) {
                 throw new IOException(e);
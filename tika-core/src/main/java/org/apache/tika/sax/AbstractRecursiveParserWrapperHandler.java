@@ -118,7 +118,37 @@ public abstract class AbstractRecursiveParserWrapperHandler extends DefaultHandl
         return maxEmbeddedResources > -1 && embeddedResources >= maxEmbeddedResources;
     }
 
+    /**
+     * Adds the text that the handler collected, if any, to the metadata as
+     * {@link TikaCoreProperties#TIKA_CONTENT}, along with the name of the handler's class.
+     *
+     * @param handler  content handler that was used on the document
+     * @param metadata the document's metadata
+     */
+    protected void addContent(ContentHandler handler, Metadata metadata) {
+
+        if (handler.getClass().equals(DefaultHandler.class)) {
+            //no-op: we can't rely on just testing for
+            //empty content because DefaultHandler's toString()
+            //returns e.g. "org.xml.sax.helpers.DefaultHandler@6c8b1edd"
+        } else {
+            String content = handler.toString();
+            if (content != null && content.trim().length() > 0) {
+                metadata.add(TikaCoreProperties.TIKA_CONTENT, content);
+                metadata.add(TikaCoreProperties.TIKA_CONTENT_HANDLER,
+                        handler.getClass().getSimpleName());
+            }
+        }
+    }
+
     public ContentHandlerFactory getContentHandlerFactory() {
         return contentHandlerFactory;
     }
+
+    /**
+     * @return the maximum number of embedded resources, or <code>-1</code> for no limit
+     */
+    public int getMaxEmbeddedResources() {
+        return maxEmbeddedResources;
+    }
 }
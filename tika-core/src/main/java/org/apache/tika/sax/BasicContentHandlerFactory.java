@@ -18,7 +18,6 @@ package org.apache.tika.sax;
 
 
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.Locale;
@@ -154,7 +153,8 @@ public class BasicContentHandlerFactory implements ContentHandlerFactory, WriteL
                 switch (type) {
                     case BODY:
                         return new WriteOutContentHandler(
-                                new BodyContentHandler(new OutputStreamWriter(os, charset)),
+                                new BodyContentHandler(
+                                        new ToTextContentHandler(os, charset.name())),
                                 writeLimit);
                     case TEXT:
                         return new WriteOutContentHandler(
@@ -172,7 +172,8 @@ public class BasicContentHandlerFactory implements ContentHandlerFactory, WriteL
             } else {
                 switch (type) {
                     case BODY:
-                        return new BodyContentHandler(new OutputStreamWriter(os, charset));
+                        return new BodyContentHandler(
+                                new ToTextContentHandler(os, charset.name()));
                     case TEXT:
                         return new ToTextContentHandler(os, charset.name());
                     case HTML:
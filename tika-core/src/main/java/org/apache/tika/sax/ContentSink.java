@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.sax;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.Property;
+import org.apache.tika.metadata.TikaCoreProperties;
+
+/**
+ * Holds the extracted text of every document in one parse as UTF-8 bytes,
+ * outside of the heap, so that the text doesn't have to be turned into
+ * <code>String</code>s to be stored in the metadata. Instead, the metadata of
+ * each document records where its text is with {@link #CONTENT_OFFSET} and
+ * {@link #CONTENT_LENGTH}, and writers copy the bytes straight from here; see
+ * {@link ContentSinkRecursiveParserWrapperHandler}.
+ * <p>
+ * The bytes are kept in fixed size direct buffers. Buffers that are given back
+ * are pooled, up to a limit, and shared by all sinks. Each sink holds at most
+ * <code>maxBytes</code> of buffers at once, counting the segments that are still
+ * being written; a write that needs more fails with an {@link IOException}.
+ * <p>
+ * A sink is used by one parse at a time, and is not thread safe. Close it when
+ * its content has been written out.
+ */
+public class ContentSink implements Closeable {
+
+    /**
+     * Offset of the document's text in the sink
+     */
+    public static final Property CONTENT_OFFSET =
+            Property.internalReal(TikaCoreProperties.TIKA_META_PREFIX + "content_offset");
+
+    /**
+     * Number of bytes of the document's text in the sink
+     */
+    public static final Property CONTENT_LENGTH =
+            Property.internalReal(TikaCoreProperties.TIKA_META_PREFIX + "content_length");
+
+    /**
+     * Default for the most bytes of buffers that one sink may hold
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    //what ToXMLContentHandler writes first when it writes bytes; the handlers that
+    //build Strings leave it out
+    private static final byte[] XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicLong POOLED_BYTES = new AtomicLong();
+
+    private final long maxBytes;
+
+    //bytes of buffers held by this sink's segments
+    private long allocatedBytes = 0;
+
+    private final Segment content = new Segment(this);
+
+    //segments for the documents that are being parsed, by their content handler
+    private final Map<ContentHandler, Segment> open = new IdentityHashMap<>();
+
+    public ContentSink() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the most bytes of buffers that this sink may hold at once,
+     *                 or <code>-1</code> for no limit
+     */
+    public ContentSink(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a content handler from the factory that writes the text of one
+     * document into a new segment of this sink. Documents may be nested, so
+     * each one is written to its own segment until {@link #finish(ContentHandler)}.
+     */
+    public ContentHandler newContentHandler(ContentHandlerFactory factory) {
+        Segment segment = new Segment(this);
+        segment.hasXmlDeclaration = factory instanceof BasicContentHandlerFactory &&
+                ((BasicContentHandlerFactory) factory).getType() ==
+                        BasicContentHandlerFactory.HANDLER_TYPE.XML;
+        ContentHandler handler = factory.getNewContentHandler(segment, StandardCharsets.UTF_8);
+        open.put(handler, segment);
+        return handler;
+    }
+
+    /**
+     * Flushes the content handler and returns the segment that it wrote to.
+     * The caller owns the segment and has to {@link #append(Segment)} or
+     * {@link Segment#release()} it.
+     *
+     * @return the segment, or <code>null</code> if the handler didn't come
+     * from {@link #newContentHandler(ContentHandlerFactory)}
+     */
+    public Segment finish(ContentHandler handler) throws SAXException {
+        Segment segment = open.remove(handler);
+        if (segment == null) {
+            return null;
+        }
+        //the parser may have stopped before the end of the document, so make
+        //sure that whatever the serializer has buffered is written
+        handler.endDocument();
+        if (segment.hasXmlDeclaration) {
+            segment.skipPrefix(XML_DECLARATION);
+        }
+        return segment;
+    }
+
+    /**
+     * Moves the bytes of the segment to the end of this sink and releases it.
+     *
+     * @return the offset of the segment's bytes in this sink
+     * @throws IOException if this sink would hold more than its maximum
+     */
+    public long append(Segment segment) throws IOException {
+        long offset = content.getLength();
+        segment.copyTo(content);
+        segment.release();
+        return offset;
+    }
+
+    /**
+     * @return the number of bytes that have been appended
+     */
+    public long getLength() {
+        return content.getLength();
+    }
+
+    public InputStream newInputStream(long offset, long length) {
+        return content.newInputStream(offset, length);
+    }
+
+    public Reader newReader(long offset, long length) {
+        return new InputStreamReader(newInputStream(offset, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a reader over the text of the document with this metadata, or
+     * <code>null</code> if its text isn't in this sink
+     */
+    public Reader newReader(Metadata metadata) {
+        if (metadata.get(CONTENT_OFFSET) == null) {
+            return null;
+        }
+        return newReader(Long.parseLong(metadata.get(CONTENT_OFFSET)),
+                Long.parseLong(metadata.get(CONTENT_LENGTH)));
+    }
+
+    public void writeTo(long offset, long length, OutputStream os) throws IOException {
+        content.writeTo(offset, length, os);
+    }
+
+    /**
+     * Gives back the buffers of this sink and of any segments that weren't
+     * finished, e.g. because the parse failed.
+     */
+    @Override
+    public void close() {
+        content.release();
+        for (Segment segment : open.values()) {
+            segment.release();
+        }
+        open.clear();
+    }
+
+    private void reserve() throws IOException {
+        if (maxBytes > -1 && allocatedBytes + CHUNK_SIZE > maxBytes) {
+            throw new IOException("The content sink would hold more than its maximum of " +
+                    maxBytes + " bytes");
+        }
+        allocatedBytes += CHUNK_SIZE;
+    }
+
+    private static ByteBuffer allocate() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        POOLED_BYTES.addAndGet(-CHUNK_SIZE);
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (POOLED_BYTES.addAndGet(CHUNK_SIZE) <= MAX_POOLED_BYTES) {
+            POOL.offer(buffer);
+        } else {
+            POOLED_BYTES.addAndGet(-CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Bytes in a list of chunks. Every chunk but the last one is full, so the
+     * chunk of an offset is <code>offset / CHUNK_SIZE</code>.
+     */
+    public static class Segment extends OutputStream {
+
+        //null unless the buffers count against a sink's maximum
+        private final ContentSink sink;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private long length = 0;
+        //bytes at the front that aren't part of the content
+        private long start = 0;
+        private boolean hasXmlDeclaration = false;
+
+        public Segment() {
+            this(null);
+        }
+
+        private Segment(ContentSink sink) {
+            this.sink = sink;
+        }
+
+        public long getLength() {
+            return length - start;
+        }
+
+        /**
+         * @return whether all of the bytes are whitespace or control characters,
+         * like {@link String#trim()}. Those are all single bytes in UTF-8, and
+         * every byte of a longer character is larger than a space.
+         */
+        public boolean isBlank() {
+            for (long i = start; i < length; i++) {
+                if ((byteAt(i) & 0xFF) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte byteAt(long position) {
+            return chunks.get((int) (position / CHUNK_SIZE)).get((int) (position % CHUNK_SIZE));
+        }
+
+        private void skipPrefix(byte[] prefix) {
+            if (length - start < prefix.length) {
+                return;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (byteAt(start + i) != prefix[i]) {
+                    return;
+                }
+            }
+            start += prefix.length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                ByteBuffer chunk = current();
+                int n = Math.min(len, chunk.remaining());
+                chunk.put(b, off, n);
+                off += n;
+                len -= n;
+                length += n;
+            }
+        }
+
+        private void write(ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) {
+                ByteBuffer chunk = current();
+                int n = Math.min(src.remaining(), chunk.remaining());
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + n);
+                chunk.put(slice);
+                src.position(src.position() + n);
+                length += n;
+            }
+        }
+
+        private ByteBuffer current() throws IOException {
+            if (chunks.isEmpty() || !chunks.get(chunks.size() - 1).hasRemaining()) {
+                if (sink != null) {
+                    sink.reserve();
+                }
+                chunks.add(allocate());
+            }
+            return chunks.get(chunks.size() - 1);
+        }
+
+        void copyTo(Segment target) throws IOException {
+            for (int i = 0; i < chunks.size(); i++) {
+                ByteBuffer src = chunks.get(i).duplicate();
+                src.flip();
+                long chunkStart = (long) i * CHUNK_SIZE;
+                if (chunkStart + src.limit() <= start) {
+                    continue;
+                }
+                src.position((int) Math.max(0, start - chunkStart));
+                target.write(src);
+            }
+        }
+
+        public InputStream newInputStream() {
+            return newInputStream(start, getLength());
+        }
+
+        public Reader newReader() {
+            return new InputStreamReader(newInputStream(), StandardCharsets.UTF_8);
+        }
+
+        public void writeTo(OutputStream os) throws IOException {
+            writeTo(start, getLength(), os);
+        }
+
+        InputStream newInputStream(long offset, long length) {
+            if (offset < 0 || length < 0 || offset + length > this.length) {
+                throw new IndexOutOfBoundsException(
+                        "offset " + offset + " and length " + length + " are outside of " +
+                                this.length + " bytes");
+            }
+            return new ChunkInputStream(offset, offset + length);
+        }
+
+        void writeTo(long offset, long length, OutputStream os) throws IOException {
+            byte[] bytes = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1, length))];
+            try (InputStream is = newInputStream(offset, length)) {
+                int n = is.read(bytes);
+                while (n > -1) {
+                    os.write(bytes, 0, n);
+                    n = is.read(bytes);
+                }
+            }
+        }
+
+        /**
+         * Gives the chunks back to the pool. The segment is empty afterwards.
+         */
+        public void release() {
+            for (ByteBuffer chunk : chunks) {
+                free(chunk);
+            }
+            if (sink != null) {
+                sink.allocatedBytes -= (long) chunks.size() * CHUNK_SIZE;
+            }
+            chunks.clear();
+            length = 0;
+            start = 0;
+        }
+
+        private class ChunkInputStream extends InputStream {
+            private long position;
+            private final long end;
+
+            ChunkInputStream(long position, long end) {
+                this.position = position;
+                this.end = end;
+            }
+
+            @Override
+            public int read() {
+                if (position >= end) {
+                    return -1;
+                }
+                return byteAt(position++) & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (position >= end) {
+                    return -1;
+                }
+                ByteBuffer chunk = chunks.get((int) (position / CHUNK_SIZE)).duplicate();
+                int start = (int) (position % CHUNK_SIZE);
+                int n = (int) Math.min(Math.min(len, CHUNK_SIZE - start), end - position);
+                chunk.position(start);
+                chunk.get(b, off, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, end - position);
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, end - position));
+                position += skipped;
+                return skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.sax;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.MetadataFilter;
+import org.apache.tika.metadata.filter.NoOpFilter;
+import org.apache.tika.utils.ParserUtils;
+
+/**
+ * Alternative to {@link RecursiveParserWrapperHandler} that writes the text of
+ * each document into a {@link ContentSink} as UTF-8, rather than building a
+ * <code>String</code> and storing it in {@link TikaCoreProperties#TIKA_CONTENT}.
+ * The metadata of a document with text gets {@link ContentSink#CONTENT_OFFSET}
+ * and {@link ContentSink#CONTENT_LENGTH} instead, and writers copy the bytes from
+ * the sink, e.g. with {@link ContentSink#newReader(Metadata)}.
+ * <p>
+ * The metadata filter is applied before the text is added, so filters don't see
+ * {@link TikaCoreProperties#TIKA_CONTENT}.
+ * <p>
+ * Close the handler, or its sink, once the metadata list has been written.
+ * <p>
+ * <b>NOTE: This handler must only be used with the {@link
+ * org.apache.tika.parser.RecursiveParserWrapper}</b>
+ * </p>
+ */
+public class ContentSinkRecursiveParserWrapperHandler extends AbstractRecursiveParserWrapperHandler
+        implements AutoCloseable {
+
+    protected final List<Metadata> metadataList = new LinkedList<>();
+    private final MetadataFilter metadataFilter;
+    private final ContentSink contentSink;
+
+    public ContentSinkRecursiveParserWrapperHandler(ContentHandlerFactory contentHandlerFactory,
+                                                    int maxEmbeddedResources) {
+        this(contentHandlerFactory, maxEmbeddedResources, NoOpFilter.NOOP_FILTER,
+                new ContentSink());
+    }
+
+    public ContentSinkRecursiveParserWrapperHandler(ContentHandlerFactory contentHandlerFactory,
+                                                    int maxEmbeddedResources,
+                                                    MetadataFilter metadataFilter,
+                                                    ContentSink contentSink) {
+        super(contentHandlerFactory, maxEmbeddedResources);
+        this.metadataFilter = metadataFilter;
+        this.contentSink = contentSink;
+    }
+
+    @Override
+    public ContentHandler getNewContentHandler() {
+        return contentSink.newContentHandler(getContentHandlerFactory());
+    }
+
+    @Override
+    public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata)
+            throws SAXException {
+        super.endEmbeddedDocument(contentHandler, metadata);
+        handleDocument(metadata, finish(contentHandler, metadata), false);
+    }
+
+    @Override
+    public void endDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+        super.endDocument(contentHandler, metadata);
+        handleDocument(metadata, finish(contentHandler, metadata), true);
+    }
+
+    /**
+     * Called for each document once it has been parsed and its metadata has been
+     * filtered; the embedded documents come before the container document. This
+     * appends the text to the sink, records where it is in a copy of the metadata
+     * and adds the copy to the metadata list.
+     *
+     * @param content the document's text, or <code>null</code> if it has none.
+     *                The implementation has to append or release it.
+     */
+    protected void handleDocument(Metadata metadata, ContentSink.Segment content,
+                                  boolean isContainer) throws SAXException {
+        if (content == null && metadata.size() == 0) {
+            return;
+        }
+        Metadata copy = ParserUtils.cloneMetadata(metadata);
+        if (content != null) {
+            long length = content.getLength();
+            try {
+                copy.set(ContentSink.CONTENT_OFFSET, contentSink.append(content));
+            } catch (IOException e) {
+                content.release();
+                throw new SAXException(e);
+            }
+            copy.set(ContentSink.CONTENT_LENGTH, length);
+        }
+        if (isContainer) {
+            metadataList.add(0, copy);
+        } else {
+            metadataList.add(copy);
+        }
+    }
+
+    /**
+     * @return a list of Metadata objects, one for the main document and one for each embedded
+     * document. Their text is in {@link #getContentSink()}.
+     */
+    public List<Metadata> getMetadataList() {
+        return metadataList;
+    }
+
+    public ContentSink getContentSink() {
+        return contentSink;
+    }
+
+    /**
+     * Gives back the sink's buffers. Subclasses that write out the documents as
+     * they go may also have to finish the output, which can fail.
+     */
+    @Override
+    public void close() throws IOException {
+        contentSink.close();
+    }
+
+    /**
+     * Replaces the references into the sink with the text itself, for consumers
+     * that need it in {@link TikaCoreProperties#TIKA_CONTENT}.
+     */
+    public static void inlineContent(List<Metadata> metadataList, ContentSink contentSink)
+            throws IOException {
+        for (Metadata metadata : metadataList) {
+            try (Reader reader = contentSink.newReader(metadata)) {
+                if (reader == null) {
+                    continue;
+                }
+                metadata.set(TikaCoreProperties.TIKA_CONTENT, IOUtils.toString(reader));
+            }
+            metadata.remove(ContentSink.CONTENT_OFFSET.getName());
+            metadata.remove(ContentSink.CONTENT_LENGTH.getName());
+        }
+    }
+
+    private ContentSink.Segment finish(ContentHandler contentHandler, Metadata metadata)
+            throws SAXException {
+        //DefaultHandler, e.g. once the maximum number of embedded documents is reached,
+        //isn't from the sink and means that there isn't any content
+        ContentSink.Segment content = contentSink.finish(contentHandler);
+        if (content != null && content.isBlank()) {
+            content.release();
+            content = null;
+        }
+        if (content != null) {
+            metadata.add(TikaCoreProperties.TIKA_CONTENT_HANDLER,
+                    contentHandler.getClass().getSimpleName());
+        }
+        try {
+            metadataFilter.filter(metadata);
+        } catch (TikaException e) {
+            if (content != null) {
+                content.release();
+            }
+            throw new SAXException(e);
+        }
+        return content;
+    }
+}
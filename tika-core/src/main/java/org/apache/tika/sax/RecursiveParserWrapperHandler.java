@@ -21,7 +21,6 @@ import java.util.List;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
@@ -136,20 +135,4 @@ public class RecursiveParserWrapperHandler extends AbstractRecursiveParserWrappe
     public List<Metadata> getMetadataList() {
         return metadataList;
     }
-
-    void addContent(ContentHandler handler, Metadata metadata) {
-
-        if (handler.getClass().equals(DefaultHandler.class)) {
-            //no-op: we can't rely on just testing for
-            //empty content because DefaultHandler's toString()
-            //returns e.g. "org.xml.sax.helpers.DefaultHandler@6c8b1edd"
-        } else {
-            String content = handler.toString();
-            if (content != null && content.trim().length() > 0) {
-                metadata.add(TikaCoreProperties.TIKA_CONTENT, content);
-                metadata.add(TikaCoreProperties.TIKA_CONTENT_HANDLER,
-                        handler.getClass().getSimpleName());
-            }
-        }
-    }
 }
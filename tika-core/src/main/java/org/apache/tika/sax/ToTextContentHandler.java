@@ -25,6 +25,7 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Locale;
 
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -44,10 +45,18 @@ public class ToTextContentHandler extends DefaultHandler {
 
     private static final String STYLE = "STYLE";
     private static final String SCRIPT = "SCRIPT";
+    private static final int BUFFER_SIZE = 8192;
     /**
      * The character stream.
      */
     private final Writer writer;
+    /**
+     * Only used when this handler wraps an output stream itself: characters
+     * are collected here and handed to the encoder in bulk, instead of
+     * encoding every small write on its own.
+     */
+    private final char[] buffer;
+    private int buffered = 0;
     private int styleDepth = 0;
     private int scriptDepth = 0;
 
@@ -58,7 +67,12 @@ public class ToTextContentHandler extends DefaultHandler {
      * @param writer writer
      */
     public ToTextContentHandler(Writer writer) {
+        this(writer, false);
+    }
+
+    private ToTextContentHandler(Writer writer, boolean buffer) {
         this.writer = writer;
+        this.buffer = buffer ? new char[BUFFER_SIZE] : null;
     }
 
     /**
@@ -69,7 +83,7 @@ public class ToTextContentHandler extends DefaultHandler {
      * @deprecated use {@link ToTextContentHandler#ToTextContentHandler(Writer)}
      */
     public ToTextContentHandler(OutputStream stream) {
-        this(new OutputStreamWriter(stream, Charset.defaultCharset()));
+        this(new OutputStreamWriter(stream, Charset.defaultCharset()), true);
     }
 
     /**
@@ -82,7 +96,7 @@ public class ToTextContentHandler extends DefaultHandler {
      */
     public ToTextContentHandler(OutputStream stream, String encoding)
             throws UnsupportedEncodingException {
-        this(new OutputStreamWriter(stream, encoding));
+        this(new OutputStreamWriter(stream, encoding), true);
     }
 
     /**
@@ -91,7 +105,7 @@ public class ToTextContentHandler extends DefaultHandler {
      * method to access the collected character content.
      */
     public ToTextContentHandler() {
-        this(new StringWriter());
+        this(new StringBuilderWriter(), false);
     }
 
     /**
@@ -103,14 +117,91 @@ public class ToTextContentHandler extends DefaultHandler {
         if (styleDepth + scriptDepth != 0) {
             return;
         }
+        writeRaw(ch, start, length);
+    }
 
+    /**
+     * Writes the given characters to the character stream as-is, even
+     * within &lt;script&gt; and &lt;style&gt; tags. Subclasses that write
+     * markup use this.
+     *
+     * @throws SAXException if the characters could not be written
+     */
+    protected void writeRaw(char[] ch, int start, int length) throws SAXException {
         try {
-            writer.write(ch, start, length);
+            if (buffer == null) {
+                writer.write(ch, start, length);
+            } else if (length > buffer.length - buffered) {
+                flushBuffer();
+                if (length >= buffer.length) {
+                    writer.write(ch, start, length);
+                } else {
+                    System.arraycopy(ch, start, buffer, 0, length);
+                    buffered = length;
+                }
+            } else {
+                System.arraycopy(ch, start, buffer, buffered, length);
+                buffered += length;
+            }
         } catch (IOException e) {
             throw new SAXException("Error writing: " + new String(ch, start, length), e);
         }
     }
 
+    /**
+     * Writes the given string to the character stream as-is.
+     *
+     * @see #writeRaw(char[], int, int)
+     */
+    protected void writeRaw(String string, int start, int length) throws SAXException {
+        try {
+            if (buffer == null) {
+                writer.write(string, start, length);
+            } else if (length > buffer.length - buffered) {
+                flushBuffer();
+                if (length >= buffer.length) {
+                    writer.write(string, start, length);
+                } else {
+                    string.getChars(start, start + length, buffer, 0);
+                    buffered = length;
+                }
+            } else {
+                string.getChars(start, start + length, buffer, buffered);
+                buffered += length;
+            }
+        } catch (IOException e) {
+            throw new SAXException("Error writing: " +
+                    string.substring(start, start + length), e);
+        }
+    }
+
+    /**
+     * Writes the given character to the character stream as-is.
+     *
+     * @see #writeRaw(char[], int, int)
+     */
+    protected void writeRaw(char ch) throws SAXException {
+        try {
+            if (buffer == null) {
+                writer.write(ch);
+            } else {
+                if (buffered == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[buffered++] = ch;
+            }
+        } catch (IOException e) {
+            throw new SAXException("Error writing: " + ch, e);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffered > 0) {
+            writer.write(buffer, 0, buffered);
+            buffered = 0;
+        }
+    }
+
 
     /**
      * Writes the given ignorable characters to the given character stream.
@@ -132,6 +223,9 @@ public class ToTextContentHandler extends DefaultHandler {
     @Override
     public void endDocument() throws SAXException {
         try {
+            if (buffer != null) {
+                flushBuffer();
+            }
             writer.flush();
         } catch (IOException e) {
             throw new SAXException("Error flushing character output", e);
@@ -99,33 +99,30 @@ public class ToXMLContentHandler extends ToTextContentHandler {
         currentElement = new ElementInfo(currentElement, namespaces);
 
         write('<');
-        write(currentElement.getQName(uri, localName));
+        writeQName(uri, localName);
 
         for (int i = 0; i < atts.getLength(); i++) {
             write(' ');
-            write(currentElement.getQName(atts.getURI(i), atts.getLocalName(i)));
-            write('=');
-            write('"');
-            char[] ch = atts.getValue(i).toCharArray();
-            writeEscaped(ch, 0, ch.length, true);
+            writeQName(atts.getURI(i), atts.getLocalName(i));
+            write("=\"");
+            writeEscaped(atts.getValue(i), true);
             write('"');
         }
 
-        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
-            write(' ');
-            write("xmlns");
-            String prefix = entry.getValue();
-            if (prefix.length() > 0) {
-                write(':');
-                write(prefix);
+        if (!namespaces.isEmpty()) {
+            for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+                write(" xmlns");
+                String prefix = entry.getValue();
+                if (prefix.length() > 0) {
+                    write(':');
+                    write(prefix);
+                }
+                write("=\"");
+                writeEscaped(entry.getKey(), true);
+                write('"');
             }
-            write('=');
-            write('"');
-            char[] ch = entry.getKey().toCharArray();
-            writeEscaped(ch, 0, ch.length, true);
-            write('"');
+            namespaces.clear();
         }
-        namespaces.clear();
 
         inStartElement = true;
     }
@@ -168,7 +165,7 @@ public class ToXMLContentHandler extends ToTextContentHandler {
      * @throws SAXException if the character could not be written
      */
     protected void write(char ch) throws SAXException {
-        super.characters(new char[]{ch}, 0, 1);
+        writeRaw(ch);
     }
 
     /**
@@ -178,31 +175,41 @@ public class ToXMLContentHandler extends ToTextContentHandler {
      * @throws SAXException if the character string could not be written
      */
     protected void write(String string) throws SAXException {
-        super.characters(string.toCharArray(), 0, string.length());
+        writeRaw(string, 0, string.length());
+    }
+
+    private void writeQName(String uri, String localName) throws SAXException {
+        String prefix = currentElement.getPrefix(uri);
+        if (prefix.length() > 0) {
+            write(prefix);
+            write(':');
+        }
+        write(localName);
     }
 
     /**
-     * Writes the given characters as-is followed by the given entity.
-     *
-     * @param ch     character array
-     * @param from   start position in the array
-     * @param to     end position in the array
-     * @param entity entity code
-     * @return next position in the array,
-     * after the characters plus one entity
-     * @throws SAXException if the characters could not be written
+     * @return the entity for an XML meta character, or <code>null</code> if the
+     * character doesn't need to be escaped
      */
-    private int writeCharsAndEntity(char[] ch, int from, int to, String entity)
-            throws SAXException {
-        super.characters(ch, from, to - from);
-        write('&');
-        write(entity);
-        write(';');
-        return to + 1;
+    private static String getEntity(char ch, boolean attribute) {
+        switch (ch) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '"':
+                return attribute ? "&quot;" : null;
+            default:
+                return null;
+        }
     }
 
     /**
      * Writes the given characters with XML meta characters escaped.
+     * Runs of characters that don't need escaping are written straight
+     * from the array.
      *
      * @param ch        character array
      * @param from      start position in the array
@@ -212,21 +219,33 @@ public class ToXMLContentHandler extends ToTextContentHandler {
      * @throws SAXException if the characters could not be written
      */
     private void writeEscaped(char[] ch, int from, int to, boolean attribute) throws SAXException {
-        int pos = from;
-        while (pos < to) {
-            if (ch[pos] == '<') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "lt");
-            } else if (ch[pos] == '>') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "gt");
-            } else if (ch[pos] == '&') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "amp");
-            } else if (attribute && ch[pos] == '"') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "quot");
-            } else {
-                pos++;
+        for (int pos = from; pos < to; pos++) {
+            String entity = getEntity(ch[pos], attribute);
+            if (entity != null) {
+                writeRaw(ch, from, pos - from);
+                write(entity);
+                from = pos + 1;
             }
         }
-        super.characters(ch, from, to - from);
+        writeRaw(ch, from, to - from);
+    }
+
+    /**
+     * Same as {@link #writeEscaped(char[], int, int, boolean)}, for a string
+     * such as an attribute value, without copying it to an array first.
+     */
+    private void writeEscaped(String string, boolean attribute) throws SAXException {
+        int from = 0;
+        int to = string.length();
+        for (int pos = 0; pos < to; pos++) {
+            String entity = getEntity(string.charAt(pos), attribute);
+            if (entity != null) {
+                writeRaw(string, from, pos - from);
+                write(entity);
+                from = pos + 1;
+            }
+        }
+        writeRaw(string, from, to - from);
     }
 
     private static class ElementInfo {
@@ -257,15 +276,6 @@ public class ToXMLContentHandler extends ToTextContentHandler {
             }
         }
 
-        public String getQName(String uri, String localName) throws SAXException {
-            String prefix = getPrefix(uri);
-            if (prefix.length() > 0) {
-                return prefix + ":" + localName;
-            } else {
-                return localName;
-            }
-        }
-
     }
 
 }
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+
+/**
+ * Utilities for starting forked JVMs with an AppCDS (application class data
+ * sharing) archive, so that they map the already parsed and verified Tika
+ * classes instead of loading them from the jars. This cuts startup time and,
+ * because the archive is shared, per-process metaspace.
+ * <p>
+ * If the archive doesn't exist yet, it is created once by a training run in
+ * the background: a JVM with the same arguments that loads the forked JVM's
+ * configuration, detects and parses a few small documents, and dumps the classes
+ * it loaded at exit (<code>-XX:ArchiveClassesAtExit</code>). The JVMs that are
+ * forked before the archive is ready start without it. This requires java 13 or
+ * later in the forked JVM; with older versions, nothing is added to the command line.
+ * <p>
+ * The archive is only valid for the java version and the classpath it was
+ * created with. The JVM silently falls back to not using it if either has
+ * changed, so the archive file should be deleted after an upgrade.
+ */
+public class SharedArchiveUtils {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedArchiveUtils.class);
+
+    //-XX:ArchiveClassesAtExit was added in java 13
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private static final long TRAINING_TIMEOUT_MILLIS = 120000;
+
+    private static final long VERSION_TIMEOUT_MILLIS = 30000;
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("version \"([^\"]+)\"");
+
+    private static final String[] TRAINING_DOCS = {
+            "The quick brown fox jumps over the lazy dog.\n",
+            "<html><head><title>training</title></head>" +
+                    "<body><p>The quick brown fox</p></body></html>",
+            "<?xml version=\"1.0\"?><root><item>The quick brown fox</item></root>"
+    };
+
+    //java major version by java path; -1 if it couldn't be determined
+    private static final Map<String, Integer> JAVA_VERSIONS = new ConcurrentHashMap<>();
+
+    //archives that couldn't be created; these aren't retried
+    private static final Set<Path> FAILED = ConcurrentHashMap.newKeySet();
+
+    //archives whose training run hasn't finished yet
+    private static final Set<Path> TRAINING = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Same as {@link #getJvmArgs(String, List, Path, String)}, with a training run
+     * that uses the default configuration.
+     */
+    public static List<String> getJvmArgs(String javaPath, List<String> jvmArgs, Path archive) {
+        return getJvmArgs(javaPath, jvmArgs, archive, null);
+    }
+
+    /**
+     * Returns the arguments that make a forked JVM use the archive. If the archive
+     * doesn't exist yet, a training run is started in the background to create it,
+     * and no arguments are returned until it is ready. The arguments should be put
+     * in front of the other JVM arguments.
+     *
+     * @param javaPath   java executable of the forked JVM
+     * @param jvmArgs    the other arguments for the forked JVM, including the classpath,
+     *                   but not the main class; these are also used for the training run
+     * @param archive    the archive; may be <code>null</code>
+     * @param tikaConfig the tika config file of the forked JVM, for the training run;
+     *                   may be <code>null</code> to train with the default configuration
+     * @return the arguments, or an empty list if archive is <code>null</code>, if
+     * jvmArgs already configure class data sharing, if the java version is too old or
+     * if the archive isn't ready
+     */
+    public static List<String> getJvmArgs(String javaPath, List<String> jvmArgs, Path archive,
+                                          String tikaConfig) {
+        if (archive == null) {
+            return Collections.emptyList();
+        }
+        for (String arg : jvmArgs) {
+            if (arg.startsWith("-Xshare") || arg.startsWith("-XX:SharedArchiveFile") ||
+                    arg.startsWith("-XX:ArchiveClassesAtExit")) {
+                return Collections.emptyList();
+            }
+        }
+        int version = getJavaMajorVersion(javaPath);
+        if (version < MIN_JAVA_VERSION) {
+            LOG.debug("not using {}: java version {} < {}", archive, version, MIN_JAVA_VERSION);
+            return Collections.emptyList();
+        }
+        if (!Files.isRegularFile(archive)) {
+            startTraining(javaPath, jvmArgs, archive, tikaConfig);
+            return Collections.emptyList();
+        }
+        return Arrays.asList(ProcessUtils.escapeCommandLine(
+                "-XX:SharedArchiveFile=" + archive.toAbsolutePath()), "-Xshare:auto");
+    }
+
+    private static void startTraining(String javaPath, List<String> jvmArgs, Path archive,
+                                      String tikaConfig) {
+        if (FAILED.contains(archive) || !TRAINING.add(archive)) {
+            return;
+        }
+        List<String> args = new ArrayList<>(jvmArgs);
+        Thread t = new Thread(() -> {
+            try {
+                if (!create(javaPath, args, archive, tikaConfig)) {
+                    FAILED.add(archive);
+                }
+            } finally {
+                TRAINING.remove(archive);
+            }
+        }, "tika-cds-training");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static boolean create(String javaPath, List<String> jvmArgs, Path archive,
+                                  String tikaConfig) {
+        Path tmp = null;
+        try {
+            Path dir = archive.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            //the archive is written at exit; only move it into place once it's complete
+            tmp = Files.createTempFile(dir, "tika-cds-", ".tmp");
+            Files.delete(tmp);
+            List<String> command = new ArrayList<>();
+            command.add(javaPath);
+            command.add(ProcessUtils.escapeCommandLine(
+                    "-XX:ArchiveClassesAtExit=" + tmp.toAbsolutePath()));
+            command.addAll(jvmArgs);
+            command.add(SharedArchiveUtils.class.getName());
+            if (tikaConfig != null) {
+                command.add(ProcessUtils.escapeCommandLine(tikaConfig));
+            }
+            LOG.info("creating class data sharing archive {}", archive);
+            long start = System.currentTimeMillis();
+            FileProcessResult result = ProcessUtils.execute(new ProcessBuilder(command),
+                    TRAINING_TIMEOUT_MILLIS, 10000, 10000);
+            if (result.isTimeout() || result.getExitValue() != 0 || !Files.isRegularFile(tmp)) {
+                LOG.warn("couldn't create class data sharing archive {}: {}", archive, result);
+                return false;
+            }
+            Files.move(tmp, archive, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("created class data sharing archive {} in {} ms", archive,
+                    System.currentTimeMillis() - start);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("couldn't create class data sharing archive " + archive, e);
+            return false;
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    //swallow
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the major version of the java executable, e.g. <code>8</code> for
+     * <code>1.8.0_292</code>, or <code>-1</code> if it couldn't be determined
+     */
+    public static int getJavaMajorVersion(String javaPath) {
+        return JAVA_VERSIONS.computeIfAbsent(javaPath, p -> {
+            try {
+                ProcessBuilder pb = new ProcessBuilder(p, "-version");
+                FileProcessResult result =
+                        ProcessUtils.execute(pb, VERSION_TIMEOUT_MILLIS, 10000, 10000);
+                //java -version writes to stderr
+                return parseJavaMajorVersion(result.getStderr());
+            } catch (IOException e) {
+                LOG.warn("couldn't run " + p + " -version", e);
+                return -1;
+            }
+        });
+    }
+
+    static int parseJavaMajorVersion(String versionOutput) {
+        if (versionOutput == null) {
+            return -1;
+        }
+        Matcher m = VERSION_PATTERN.matcher(versionOutput);
+        if (!m.find()) {
+            return -1;
+        }
+        String version = m.group(1);
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        Matcher digits = Pattern.compile("^\\d+").matcher(version);
+        return digits.find() ? Integer.parseInt(digits.group()) : -1;
+    }
+
+    /**
+     * The training run for {@link #getJvmArgs(String, List, Path, String)}. It loads
+     * the configuration, if one is given as the first argument, or else the default
+     * configuration, and exercises detection and parsing, so that those classes end up
+     * in the archive that the JVM writes at exit.
+     */
+    public static void main(String[] args) throws Exception {
+        TikaConfig tikaConfig = args.length > 0 ? new TikaConfig(Paths.get(args[0])) :
+                TikaConfig.getDefaultConfig();
+        AutoDetectParser parser = new AutoDetectParser(tikaConfig);
+        //loads every parser
+        parser.getSupportedTypes(new ParseContext());
+        for (String doc : TRAINING_DOCS) {
+            try (InputStream stream = TikaInputStream.get(doc.getBytes(StandardCharsets.UTF_8))) {
+                parser.parse(stream, new BodyContentHandler(-1), new Metadata(),
+                        new ParseContext());
+            } catch (Exception e) {
+                //not every parser needs to be there
+                LOG.debug("training parse failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.tika.exception.TikaException;
+
+/**
+ * One generation of the SAX or DOM parser pool in {@link XMLReaderUtils}.
+ * <p>
+ * Idle parsers are kept in a fixed number of slots. A thread starts looking
+ * for an idle parser at a slot that depends on the thread, and gives its parser
+ * back to the first empty slot from there, so threads mostly use their own slot
+ * and don't contend with each other. Nothing here locks or waits: if there
+ * isn't an idle parser, a new one is built, and if there isn't an empty slot
+ * when it is given back, it is dropped. The pool therefore fills up lazily,
+ * and the number of slots is the most parsers that are kept, not the most that
+ * can be in use at once.
+ * <p>
+ * To change the size or the settings of the parsers, {@link XMLReaderUtils}
+ * replaces the pool with one of a new generation; parsers from an older
+ * generation are dropped when they are given back.
+ */
+class XMLParserPool<T> {
+
+    interface Factory<T> {
+        T create(int generation) throws TikaException;
+    }
+
+    private final int generation;
+    private final Factory<T> factory;
+    private final XMLReaderUtils.PoolStats stats;
+    private final AtomicReferenceArray<T> idle;
+
+    XMLParserPool(int generation, int size, Factory<T> factory,
+                  XMLReaderUtils.PoolStats stats) {
+        this.generation = generation;
+        this.factory = factory;
+        this.stats = stats;
+        this.idle = new AtomicReferenceArray<>(size);
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    int getSize() {
+        return idle.length();
+    }
+
+    T acquire() throws TikaException {
+        long start = System.nanoTime();
+        int size = idle.length();
+        int first = firstSlot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (first + i) % size;
+            //read before writing so that threads don't fight over empty slots
+            if (idle.get(slot) != null) {
+                T t = idle.getAndSet(slot, null);
+                if (t != null) {
+                    stats.acquired(System.nanoTime() - start, false);
+                    return t;
+                }
+            }
+        }
+        T t = factory.create(generation);
+        stats.acquired(System.nanoTime() - start, true);
+        return t;
+    }
+
+    /**
+     * @param t a parser from this generation that has already been reset
+     */
+    void release(T t) {
+        int size = idle.length();
+        int first = firstSlot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (first + i) % size;
+            if (idle.get(slot) == null && idle.compareAndSet(slot, null, t)) {
+                return;
+            }
+        }
+        //more parsers were in use at once than there are slots
+        stats.dropped();
+    }
+
+    private static int firstSlot(int size) {
+        if (size == 0) {
+            return 0;
+        }
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 32)) & Integer.MAX_VALUE) % size;
+    }
+}
@@ -25,11 +25,11 @@ import java.io.StringReader;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -68,8 +68,9 @@ import org.apache.tika.sax.OfflineContentHandler;
 public class XMLReaderUtils implements Serializable {
 
     /**
-     * Default size for the pool of SAX Parsers
-     * and the pool of DOM builders
+     * Smallest default size for the pool of SAX Parsers
+     * and the pool of DOM builders; the default is the larger
+     * of this and the number of processors
      */
     public static final int DEFAULT_POOL_SIZE = 10;
     public static final int DEFAULT_MAX_ENTITY_EXPANSIONS = 20;
@@ -114,10 +115,9 @@ public class XMLReaderUtils implements Serializable {
         }
     };
     private static final String JAXP_ENTITY_EXPANSION_LIMIT_KEY = "jdk.xml.entityExpansionLimit";
-    //TODO: figure out if the rw lock is any better than a simple lock
-    private static final ReentrantReadWriteLock SAX_READ_WRITE_LOCK = new ReentrantReadWriteLock();
-    private static final ReentrantReadWriteLock DOM_READ_WRITE_LOCK = new ReentrantReadWriteLock();
     private static final AtomicInteger POOL_GENERATION = new AtomicInteger();
+    private static final PoolStats SAX_POOL_STATS = new PoolStats();
+    private static final PoolStats DOM_POOL_STATS = new PoolStats();
     private static final EntityResolver IGNORING_SAX_ENTITY_RESOLVER =
             (publicId, systemId) -> new InputSource(new StringReader(""));
     private static final XMLResolver IGNORING_STAX_ENTITY_RESOLVER =
@@ -125,13 +125,12 @@ public class XMLReaderUtils implements Serializable {
     /**
      * Parser pool size
      */
-    private static int POOL_SIZE = DEFAULT_POOL_SIZE;
+    private static int POOL_SIZE =
+            Math.max(DEFAULT_POOL_SIZE, Runtime.getRuntime().availableProcessors());
     private static long LAST_LOG = -1;
     private static volatile int MAX_ENTITY_EXPANSIONS = determineMaxEntityExpansions();
-    private static ArrayBlockingQueue<PoolSAXParser> SAX_PARSERS =
-            new ArrayBlockingQueue<>(POOL_SIZE);
-    private static ArrayBlockingQueue<PoolDOMBuilder> DOM_BUILDERS =
-            new ArrayBlockingQueue<>(POOL_SIZE);
+    private static volatile XMLParserPool<PoolSAXParser> SAX_PARSERS;
+    private static volatile XMLParserPool<PoolDOMBuilder> DOM_BUILDERS;
 
     static {
         try {
@@ -551,7 +550,7 @@ public class XMLReaderUtils implements Serializable {
     }
 
     /**
-     * Acquire a SAXParser from the pool.  Make sure to
+     * Acquire a DocumentBuilder from the pool.  Make sure to
      * {@link #releaseDOMBuilder(PoolDOMBuilder)} in
      * a <code>finally</code> block every time you call this.
      *
@@ -559,40 +558,7 @@ public class XMLReaderUtils implements Serializable {
      * @throws TikaException
      */
     private static PoolDOMBuilder acquireDOMBuilder() throws TikaException {
-        int waiting = 0;
-        long lastWarn = -1;
-        while (true) {
-            PoolDOMBuilder builder = null;
-            DOM_READ_WRITE_LOCK.readLock().lock();
-            try {
-                builder = DOM_BUILDERS.poll(100, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                throw new TikaException("interrupted while waiting for DOMBuilder", e);
-            } finally {
-                DOM_READ_WRITE_LOCK.readLock().unlock();
-            }
-            if (builder != null) {
-                return builder;
-            }
-            if (lastWarn < 0 || System.currentTimeMillis() - lastWarn > 1000) {
-                //avoid spamming logs
-                LOG.warn("Contention waiting for a DOMParser. " +
-                        "Consider increasing the XMLReaderUtils.POOL_SIZE");
-                lastWarn = System.currentTimeMillis();
-            }
-            waiting++;
-
-            if (waiting > 3000) {
-                //freshen the pool.  Something went very wrong...
-                setPoolSize(POOL_SIZE);
-                //better to get an exception than have permahang by a bug in one of our parsers
-                throw new TikaException("Waited more than 5 minutes for a DocumentBuilder; " +
-                        "This could indicate that a parser has not correctly released its " +
-                        "DocumentBuilder. " +
-                        "Please report this to the Tika team: dev@tika.apache.org");
-
-            }
-        }
+        return DOM_BUILDERS.acquire();
     }
 
     /**
@@ -601,7 +567,10 @@ public class XMLReaderUtils implements Serializable {
      * @param builder builder to return
      */
     private static void releaseDOMBuilder(PoolDOMBuilder builder) {
-        if (builder.getPoolGeneration() != POOL_GENERATION.get()) {
+        XMLParserPool<PoolDOMBuilder> pool = DOM_BUILDERS;
+        //if this is a different generation, don't put it back
+        //in the pool
+        if (builder.getPoolGeneration() != pool.getGeneration()) {
             return;
         }
         try {
@@ -609,20 +578,7 @@ public class XMLReaderUtils implements Serializable {
         } catch (UnsupportedOperationException e) {
             //ignore
         }
-        DOM_READ_WRITE_LOCK.readLock().lock();
-        try {
-            //if there are extra parsers (e.g. after a reset of the pool to a smaller size),
-            // this parser will not be added and will then be gc'd
-            boolean success = DOM_BUILDERS.offer(builder);
-            if (!success) {
-                LOG.warn(
-                        "DocumentBuilder not taken back into pool.  If you haven't resized the " +
-                                "pool, this could be a sign that there are more calls to " +
-                                "'acquire' than to 'release'");
-            }
-        } finally {
-            DOM_READ_WRITE_LOCK.readLock().unlock();
-        }
+        pool.release(builder);
     }
 
     /**
@@ -634,38 +590,7 @@ public class XMLReaderUtils implements Serializable {
      * @throws TikaException
      */
     private static PoolSAXParser acquireSAXParser() throws TikaException {
-        int waiting = 0;
-        long lastWarn = -1;
-        while (true) {
-            PoolSAXParser parser = null;
-            SAX_READ_WRITE_LOCK.readLock().lock();
-            try {
-                parser = SAX_PARSERS.poll(100, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                throw new TikaException("interrupted while waiting for SAXParser", e);
-            } finally {
-                SAX_READ_WRITE_LOCK.readLock().unlock();
-            }
-            if (parser != null) {
-                return parser;
-            }
-            if (lastWarn < 0 || System.currentTimeMillis() - lastWarn > 1000) {
-                //avoid spamming logs
-                LOG.warn("Contention waiting for a SAXParser. " +
-                        "Consider increasing the XMLReaderUtils.POOL_SIZE");
-                lastWarn = System.currentTimeMillis();
-            }
-            waiting++;
-            if (waiting > 3000) {
-                //freshen the pool.  Something went very wrong...
-                setPoolSize(POOL_SIZE);
-                //better to get an exception than have permahang by a bug in one of our parsers
-                throw new TikaException("Waited more than 5 minutes for a SAXParser; " +
-                        "This could indicate that a parser has not correctly released its " +
-                        "SAXParser. Please report this to the Tika team: dev@tika.apache.org");
-
-            }
-        }
+        return SAX_PARSERS.acquire();
     }
 
     /**
@@ -679,25 +604,13 @@ public class XMLReaderUtils implements Serializable {
         } catch (UnsupportedOperationException e) {
             //TIKA-3009 -- we really shouldn't have to do this... :(
         }
+        XMLParserPool<PoolSAXParser> pool = SAX_PARSERS;
         //if this is a different generation, don't put it back
         //in the pool
-        if (parser.getGeneration() != POOL_GENERATION.get()) {
+        if (parser.getGeneration() != pool.getGeneration()) {
             return;
         }
-        SAX_READ_WRITE_LOCK.readLock().lock();
-        try {
-            //if there are extra parsers (e.g. after a reset of the pool to a smaller size),
-            // this parser will not be added and will then be gc'd
-            boolean success = SAX_PARSERS.offer(parser);
-            if (!success) {
-                LOG.warn(
-                        "SAXParser not taken back into pool.  If you haven't resized the pool " +
-                                "this could be a sign that there are more calls to 'acquire' " +
-                                "than to 'release'");
-            }
-        } finally {
-            SAX_READ_WRITE_LOCK.readLock().unlock();
-        }
+        pool.release(parser);
     }
 
     private static void trySetXercesSecurityManager(DocumentBuilderFactory factory) {
@@ -809,53 +722,52 @@ public class XMLReaderUtils implements Serializable {
 
     /**
      * Set the pool size for cached XML parsers.  This has a side
-     * effect of locking the pool, and rebuilding the pool from
-     * scratch with the most recent settings, such as {@link #MAX_ENTITY_EXPANSIONS}
+     * effect of starting a new generation of the pool, so that
+     * parsers are built again with the most recent settings, such
+     * as {@link #MAX_ENTITY_EXPANSIONS}
+     * <p>
+     * This is the number of idle parsers that are kept for reuse.  It does not
+     * limit how many parsers can be in use at once: when all of the cached
+     * parsers are in use, a new one is built, and it is dropped afterwards if
+     * the pool is full.  Parsers are built as they are needed rather than up front.
      *
      * @param poolSize
      * @since Apache Tika 1.19
      */
-    public static void setPoolSize(int poolSize) throws TikaException {
-        //stop the world with a write lock.
-        //parsers that are currently in use will be offered later (once the lock is released),
-        //but not accepted and will be gc'd.  We have to do this locking and
-        //the read locking in case one thread resizes the pool when the
-        //parsers have already started.  We could have an NPE on SAX_PARSERS
-        //if we didn't lock.
-        SAX_READ_WRITE_LOCK.writeLock().lock();
-        try {
-            //free up any resources before emptying SAX_PARSERS
-            for (PoolSAXParser parser : SAX_PARSERS) {
-                parser.reset();
-            }
-            SAX_PARSERS.clear();
-            SAX_PARSERS = new ArrayBlockingQueue<>(poolSize);
-            int generation = POOL_GENERATION.incrementAndGet();
-            for (int i = 0; i < poolSize; i++) {
-                try {
-                    SAX_PARSERS.offer(buildPoolParser(generation,
-                            getSAXParserFactory().newSAXParser()));
-                } catch (SAXException | ParserConfigurationException e) {
-                    throw new TikaException("problem creating sax parser", e);
-                }
-            }
-        } finally {
-            SAX_READ_WRITE_LOCK.writeLock().unlock();
+    public static synchronized void setPoolSize(int poolSize) throws TikaException {
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("poolSize must be >= 0: " + poolSize);
         }
-
-        DOM_READ_WRITE_LOCK.writeLock().lock();
-        try {
-            DOM_BUILDERS.clear();
-            DOM_BUILDERS = new ArrayBlockingQueue<>(poolSize);
-            for (int i = 0; i < poolSize; i++) {
-                DOM_BUILDERS.offer(new PoolDOMBuilder(POOL_GENERATION.get(), getDocumentBuilder()));
+        //parsers that are currently in use will be released to the pool later,
+        //but they're from an older generation, so they won't be taken back
+        //and will be gc'd.
+        int generation = POOL_GENERATION.incrementAndGet();
+        SAX_PARSERS = new XMLParserPool<>(generation, poolSize, g -> {
+            try {
+                return buildPoolParser(g, getSAXParserFactory().newSAXParser());
+            } catch (SAXException | ParserConfigurationException e) {
+                throw new TikaException("problem creating sax parser", e);
             }
-        } finally {
-            DOM_READ_WRITE_LOCK.writeLock().unlock();
-        }
+        }, SAX_POOL_STATS);
+        DOM_BUILDERS = new XMLParserPool<>(generation, poolSize,
+                g -> new PoolDOMBuilder(g, getDocumentBuilder()), DOM_POOL_STATS);
         POOL_SIZE = poolSize;
     }
 
+    /**
+     * @return statistics for the pool of SAX parsers, across all generations
+     */
+    public static PoolStats getSAXPoolStats() {
+        return SAX_POOL_STATS;
+    }
+
+    /**
+     * @return statistics for the pool of DocumentBuilders, across all generations
+     */
+    public static PoolStats getDOMPoolStats() {
+        return DOM_POOL_STATS;
+    }
+
     public static int getMaxEntityExpansions() {
         return MAX_ENTITY_EXPANSIONS;
     }
@@ -964,6 +876,71 @@ public class XMLReaderUtils implements Serializable {
         reader.setErrorHandler(IGNORING_ERROR_HANDLER);
     }
 
+    /**
+     * How long it took to get parsers from one of the pools and how often a new
+     * parser had to be built because none was idle.  If parsers are often built
+     * or dropped, the pool is too small for the number of threads that parse XML.
+     */
+    public static class PoolStats {
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder created = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder acquireNanos = new LongAdder();
+        private final AtomicLong maxAcquireNanos = new AtomicLong();
+
+        void acquired(long nanos, boolean wasCreated) {
+            acquired.increment();
+            if (wasCreated) {
+                created.increment();
+            }
+            acquireNanos.add(nanos);
+            maxAcquireNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void dropped() {
+            dropped.increment();
+        }
+
+        /**
+         * @return the number of times a parser was taken from the pool
+         */
+        public long getAcquired() {
+            return acquired.sum();
+        }
+
+        /**
+         * @return the number of those times that a new parser was built
+         */
+        public long getCreated() {
+            return created.sum();
+        }
+
+        /**
+         * @return the number of parsers that weren't kept because the pool was full
+         */
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        /**
+         * @return the total time spent getting parsers, including building new ones
+         */
+        public long getTotalAcquireNanos() {
+            return acquireNanos.sum();
+        }
+
+        public long getMaxAcquireNanos() {
+            return maxAcquireNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats{" + "acquired=" + getAcquired() + ", created=" + getCreated() +
+                    ", dropped=" + getDropped() + ", totalAcquireNanos=" +
+                    getTotalAcquireNanos() + ", maxAcquireNanos=" + getMaxAcquireNanos() + '}';
+        }
+    }
+
     private static class PoolDOMBuilder {
         private final int poolGeneration;
         private final DocumentBuilder documentBuilder;
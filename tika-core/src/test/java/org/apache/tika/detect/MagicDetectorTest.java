@@ -16,21 +16,30 @@
  */
 package org.apache.tika.detect;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_16BE;
 import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 
@@ -205,6 +214,143 @@ public class MagicDetectorTest {
         assertDetect(detector, testMT, data.getBytes(US_ASCII));
     }
 
+    /**
+     * The regex magics are compiled once and run over the bytes without
+     * decoding them; check that they match exactly what compiling the
+     * pattern and decoding the window as ISO_8859_1 on each call did.
+     */
+    @Test
+    public void testDetectRegExSameAsDecoded() throws Exception {
+        byte[] alphabet = "%PDF-1.4<htmlHTMLab \n".getBytes(US_ASCII);
+        assertSameAsReference("%PDF-1\\.[0-7]", null, true, false, 0, 0, "%PDF-1.4",
+                alphabet);
+        assertSameAsReference("%PDF-1\\.[0-7]", null, true, false, 0, 20, "%PDF-1.7",
+                alphabet);
+        assertSameAsReference("<html", null, true, true, 3, 30, "<HtMl", alphabet);
+        //chars above 0x7f must be seen as the byte of the same value
+        assertSameAsReference("[\\x80-\\xff]{2}ab", null, true, false, 0, 40,
+                "\u00e9\u0080ab", alphabet);
+    }
+
+    /**
+     * The offset range scans skip the windows whose first exactly compared
+     * byte doesn't match; check that they give the same result as comparing
+     * every window.
+     */
+    @Test
+    public void testDetectOffsetRangeSameAsFullCompare() throws Exception {
+        byte[] alphabet = "PK\u0003\u0004BCDbcd".getBytes(ISO_8859_1);
+        assertSameAsReference("PK\u0003\u0004", null, false, false, 0, 0, null, alphabet);
+        assertSameAsReference("PK\u0003\u0004", null, false, false, 0, 64, null, alphabet);
+        assertSameAsReference("PK\u0003", "\u00ff\u0000\u00ff", false, false, 2, 50, null,
+                alphabet);
+        //the first byte is masked out, so the scan checks the second one
+        assertSameAsReference("\u0000KP", "\u0000\u00ff\u00ff", false, false, 0, 50, null,
+                alphabet);
+        //no byte is compared exactly, so every window is compared in full
+        assertSameAsReference("\u0040\u0003", "\u00f0\u000f", false, false, 0, 50, null,
+                alphabet);
+        assertSameAsReference("bcd", null, false, true, 0, 20, null, alphabet);
+    }
+
+    private void assertSameAsReference(String pattern, String mask, boolean isRegex,
+                                       boolean isStringIgnoreCase, int offsetRangeBegin,
+                                       int offsetRangeEnd, String sample, byte[] alphabet)
+            throws IOException {
+        MediaType type = MediaType.application("x-test");
+        byte[] patternBytes = pattern.getBytes(ISO_8859_1);
+        byte[] maskBytes = mask == null ? null : mask.getBytes(ISO_8859_1);
+        MagicDetector detector = new MagicDetector(type, patternBytes, maskBytes, isRegex,
+                isStringIgnoreCase, offsetRangeBegin, offsetRangeEnd);
+        Random random = new Random(pattern.hashCode() + offsetRangeEnd);
+        int matches = 0;
+        for (int i = 0; i < 2000; i++) {
+            byte[] data = new byte[random.nextInt(offsetRangeEnd + 80)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = random.nextInt(8) == 0 ? (byte) random.nextInt(256) :
+                        alphabet[random.nextInt(alphabet.length)];
+            }
+            if (data.length > 0 && random.nextBoolean()) {
+                //plant a match somewhere in or near the range
+                byte[] planted = sample == null ? patternBytes : sample.getBytes(ISO_8859_1);
+                int at = random.nextInt(Math.min(data.length, offsetRangeEnd + 4));
+                System.arraycopy(planted, 0, data, at, Math.min(planted.length, data.length - at));
+            }
+            boolean expected = isRegex ?
+                    referenceMatchesRegex(patternBytes, isStringIgnoreCase, offsetRangeBegin,
+                            offsetRangeEnd, data) :
+                    referenceMatchesBytes(patternBytes, maskBytes, isStringIgnoreCase,
+                            offsetRangeBegin, offsetRangeEnd, data);
+            if (expected) {
+                matches++;
+            }
+            MediaType expectedType = expected ? type : MediaType.OCTET_STREAM;
+            String message = pattern + " on " + Arrays.toString(data);
+            assertEquals(expected, detector.matches(data), message);
+            assertEquals(expectedType,
+                    detector.detect(new ByteArrayInputStream(data), new Metadata()), message);
+            try (TikaInputStream tis = TikaInputStream.get(data)) {
+                assertEquals(expectedType, detector.detect(tis, new Metadata()), message);
+            }
+        }
+        //make sure that both outcomes were covered
+        assertTrue(matches > 0 && matches < 2000, pattern + ": " + matches);
+    }
+
+    /**
+     * What regex matching did before the patterns were precompiled.
+     */
+    private static boolean referenceMatchesRegex(byte[] pattern, boolean isStringIgnoreCase,
+                                                 int offsetRangeBegin, int offsetRangeEnd,
+                                                 byte[] data) {
+        if (data.length < offsetRangeBegin) {
+            return false;
+        }
+        int length = 8 * 1024;
+        byte[] buffer = new byte[length + (offsetRangeEnd - offsetRangeBegin)];
+        System.arraycopy(data, offsetRangeBegin, buffer, 0,
+                Math.min(buffer.length, data.length - offsetRangeBegin));
+        Pattern p = Pattern.compile(new String(pattern, UTF_8),
+                isStringIgnoreCase ? Pattern.CASE_INSENSITIVE : 0);
+        Matcher m = p.matcher(ISO_8859_1.decode(ByteBuffer.wrap(buffer)));
+        for (int i = 0; i <= offsetRangeEnd - offsetRangeBegin; i++) {
+            m.region(i, length + i);
+            if (m.lookingAt()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * What byte matching did before the scans skipped windows.
+     */
+    private static boolean referenceMatchesBytes(byte[] pattern, byte[] mask,
+                                                 boolean isStringIgnoreCase,
+                                                 int offsetRangeBegin, int offsetRangeEnd,
+                                                 byte[] data) {
+        int length = Math.max(pattern.length, mask == null ? 0 : mask.length);
+        if (data.length < offsetRangeBegin + length) {
+            return false;
+        }
+        for (int i = offsetRangeBegin; i <= offsetRangeEnd; i++) {
+            boolean match = true;
+            for (int j = 0; match && j < length; j++) {
+                int m = mask != null && j < mask.length ? mask[j] : -1;
+                int expected = j < pattern.length ? (pattern[j] & m) : 0;
+                int masked = i + j < data.length ? (data[i + j] & m) : 0;
+                if (isStringIgnoreCase) {
+                    masked = Character.toLowerCase(masked);
+                }
+                match = masked == (byte) expected;
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void assertDetect(Detector detector, MediaType type, String data) {
         byte[] bytes = data.getBytes(US_ASCII);
         assertDetect(detector, type, bytes);
@@ -220,6 +366,12 @@ public class MagicDetectorTest {
                 assertEquals(aByte, (byte) stream.read());
             }
             assertEquals(-1, stream.read());
+
+            // Test that matching directly on the bytes gives the same result
+            if (detector instanceof MagicDetector) {
+                assertEquals(!MediaType.OCTET_STREAM.equals(type),
+                        ((MagicDetector) detector).matches(bytes));
+            }
         } catch (IOException e) {
             fail("Unexpected exception from MagicDetector");
         }
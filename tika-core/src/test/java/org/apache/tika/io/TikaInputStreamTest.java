@@ -21,14 +21,20 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
@@ -105,6 +111,97 @@ public class TikaInputStreamTest {
         stream.close();
     }
 
+    @Test
+    public void testPeekPrefix() throws IOException {
+        try (TikaInputStream stream =
+                     TikaInputStream.get(IOUtils.toInputStream("Hello, World!", UTF_8))) {
+            byte[] prefix = stream.peekPrefix(5);
+            assertEquals("Hello", new String(prefix, 0, 5, UTF_8));
+            assertEquals(0, stream.getPosition());
+
+            // Shorter peeks at the same position share the same buffer
+            assertSame(prefix, stream.peekPrefix(2));
+
+            // Longer peeks read further ahead, but stop at the end of stream
+            prefix = stream.peekPrefix(1024);
+            assertEquals("Hello, World!", new String(prefix, UTF_8));
+            assertSame(prefix, stream.peekPrefix(2048));
+
+            assertEquals(7, stream.skip(7));
+            assertEquals("World", new String(stream.peekPrefix(5), 0, 5, UTF_8));
+
+            assertEquals("World!", readStream(stream),
+                    "Peeking should not change the contents of the TikaInputStream");
+        }
+    }
+
+    @Test
+    public void testSpoolToMemory() throws IOException {
+        try (TikaInputStream stream =
+                     TikaInputStream.get(IOUtils.toInputStream("Hello, World!", UTF_8))) {
+            assertTrue(stream.spoolToMemory(13));
+            assertFalse(stream.hasFile());
+            assertEquals(13, stream.getLength());
+
+            try (SeekableByteChannel channel = stream.getSeekableByteChannel()) {
+                assertEquals(13, channel.size());
+                ByteBuffer buffer = ByteBuffer.allocate(5);
+                channel.position(7);
+                assertEquals(5, channel.read(buffer));
+                assertEquals("World", new String(buffer.array(), UTF_8));
+            }
+
+            assertEquals("Hello, World!", readStream(stream),
+                    "Spooling to memory should not change the contents of the TikaInputStream");
+        }
+
+        try (TikaInputStream stream =
+                     TikaInputStream.get(IOUtils.toInputStream("Hello, World!", UTF_8))) {
+            assertFalse(stream.spoolToMemory(12), "The stream is longer than the limit");
+            //the bytes that were read are put back rather than thrown away,
+            //and the rest of the stream isn't read
+            assertFalse(stream.hasFile());
+            assertEquals("Hello, World!", readStream(stream));
+        }
+
+        //a stream that is longer than both the memory limit and the mark limit
+        byte[] bytes = new byte[64 * 1024];
+        Arrays.fill(bytes, (byte) 'a');
+        ByteArrayInputStream source = new ByteArrayInputStream(bytes);
+        try (TikaInputStream stream = TikaInputStream.get(source)) {
+            assertFalse(stream.spoolToMemory(100));
+            assertNull(stream.getPath(1000), "The mark limit still applies");
+            assertFalse(stream.hasFile());
+            assertTrue(source.available() > 0, "The rest of the stream wasn't read");
+            assertEquals(new String(bytes, UTF_8), readStream(stream));
+        }
+
+        try (TikaInputStream stream =
+                     TikaInputStream.get(IOUtils.toInputStream("Hello, World!", UTF_8))) {
+            assertFalse(stream.spoolToMemory(12));
+            //the stream can still be spooled to a file
+            assertNotNull(stream.getPath(1000));
+            assertTrue(stream.hasFile());
+            assertEquals(13, stream.getLength());
+            assertEquals("Hello, World!", readStream(stream));
+        }
+
+        try (TikaInputStream stream =
+                     TikaInputStream.get(IOUtils.toInputStream("Hello, World!", UTF_8))) {
+            assertEquals('H', stream.read());
+            assertFalse(stream.spoolToMemory(1024), "Streams that are being read are not spooled");
+            assertEquals("ello, World!", readStream(stream));
+        }
+
+        Path path = createTempFile("Hello, World!");
+        try (TikaInputStream stream = TikaInputStream.get(path)) {
+            assertFalse(stream.spoolToMemory(1024), "File based streams are not spooled");
+            try (SeekableByteChannel channel = stream.getSeekableByteChannel()) {
+                assertTrue(channel instanceof FileChannel);
+            }
+        }
+    }
+
     private Path createTempFile(String data) throws IOException {
         Path file = Files.createTempFile(tempDir, "tika-", ".tmp");
         Files.write(file, data.getBytes(UTF_8));
@@ -17,6 +17,7 @@
 package org.apache.tika.mime;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -77,6 +78,42 @@ public class PatternsTest {
         }
     }
 
+    @Test
+    public void testLongestExtensionMatch() throws MimeTypeException {
+        MimeType gzip = types.forName("application/gzip");
+        MimeType tgz = types.forName("application/x-gtar");
+        patterns.add("*.gz", gzip);
+        patterns.add("*.tar.gz", tgz);
+
+        assertEquals(gzip, patterns.matches("data.gz"));
+        assertEquals(tgz, patterns.matches("data.tar.gz"));
+        assertEquals(gzip, patterns.matches("data.star.gz.gz"));
+        assertNull(patterns.matches("data.gzip"));
+        assertNull(patterns.matches("gz"));
+    }
+
+    @Test
+    public void testGlobs() throws MimeTypeException {
+        MimeType rdf = types.forName("application/rdf+xml");
+        MimeType isatab = types.forName("application/x-isatab");
+        patterns.add("*.txt", text);
+        patterns.add("i_*.tsv", isatab);
+        patterns.add("^rdf$", true, rdf);
+        patterns.add("^(r|R)(d|D)fs$", true, rdf);
+
+        assertEquals(text, patterns.matches("i_investigation.txt"));
+        assertEquals(isatab, patterns.matches("i_investigation.tsv"));
+        assertNull(patterns.matches("x_investigation.tsv"));
+        assertEquals(rdf, patterns.matches("rdf"));
+        assertEquals(rdf, patterns.matches("RDfs"));
+        assertNull(patterns.matches("rdfx"));
+
+        // Globs added after a match must be picked up too
+        MimeType makefile = types.forName("text/x-makefile");
+        patterns.add("Makefile.*", makefile);
+        assertEquals(makefile, patterns.matches("Makefile.am"));
+    }
+
     @Test
     public void testExtension() throws MimeTypeException {
         MimeType doc = types.forName("application/vnd.ms-word");
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.TikaTest;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+
+public class ParseResultCacheTest extends TikaTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void testKey() throws Exception {
+        ParseResultCache cache = new ParseResultCache(1000);
+        String a = getKey(cache, "abc", "xml");
+        assertEquals(a, getKey(cache, "abc", "xml"));
+        assertNotEquals(a, getKey(cache, "abd", "xml"));
+        assertNotEquals(a, getKey(cache, "abc", "text"));
+
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "abc.txt");
+        String named = getKey(cache, "abc", metadata, "xml");
+        assertNotEquals(a, named);
+        assertEquals(named, getKey(cache, "abc", metadata, "xml"));
+        metadata.set(TikaCoreProperties.CONTENT_TYPE_USER_OVERRIDE, "text/html");
+        assertNotEquals(named, getKey(cache, "abc", metadata, "xml"));
+    }
+
+    @Test
+    public void testOnlyMetadataIsReadFromDisk() throws Exception {
+        ParseResultCache cache = new ParseResultCache(null, 1000, dir, 1000000);
+        cache.put("a", result("from disk"));
+        Path file;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.rmeta")) {
+            file = ds.iterator().next();
+        }
+        //something that isn't a metadata list
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(file))) {
+            oos.writeObject(new ArrayList<>(Collections.singletonList(new Date())));
+        }
+        ParseResultCache other = new ParseResultCache(null, 1000, dir, 1000000);
+        assertNull(other.get("a"));
+        assertEquals(1, other.getMisses());
+    }
+
+    @Test
+    public void testMemoryEviction() throws Exception {
+        ParseResultCache cache = new ParseResultCache(100);
+        cache.put("a", result("0123456789"));
+        cache.put("b", result("0123456789"));
+        assertEquals("0123456789", cache.get("a").get(0).get(TikaCoreProperties.TIKA_CONTENT));
+        //b is now the least recently used
+        cache.put("c", result("0123456789"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a").size());
+        assertEquals(1, cache.get("c").size());
+        assertEquals(3, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.75, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testDisk() throws Exception {
+        ParseResultCache cache = new ParseResultCache(null, 1000, dir, 1000000);
+        cache.put("a", result("from disk"));
+
+        ParseResultCache other = new ParseResultCache(null, 1000, dir, 1000000);
+        List<Metadata> fromDisk = other.get("a");
+        assertEquals("from disk", fromDisk.get(0).get(TikaCoreProperties.TIKA_CONTENT));
+        assertEquals(1, other.getDiskHits());
+        other.get("a");
+        assertEquals(1, other.getMemoryHits());
+    }
+
+    @Test
+    public void testRecursiveParserWrapper() throws Exception {
+        ParseContext context = new ParseContext();
+        ParseResultCache cache = new ParseResultCache(1000000);
+        context.set(ParseResultCache.class, cache);
+
+        List<Metadata> parsed = getRecursiveMetadata("basic_embedded.xml", new Metadata(),
+                context);
+        List<Metadata> cached = getRecursiveMetadata("basic_embedded.xml", new Metadata(),
+                context);
+        assertTrue(cache.getMemoryHits() > 0);
+        assertEquals(parsed.size(), cached.size());
+        assertTrue(cached.get(0).get(ParseResultCache.CACHE_HIT) != null);
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.get(i).get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH),
+                    cached.get(i).get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH));
+            assertEquals(parsed.get(i).get(TikaCoreProperties.TIKA_CONTENT),
+                    cached.get(i).get(TikaCoreProperties.TIKA_CONTENT));
+            assertEquals(parsed.get(i).get("dc:creator"), cached.get(i).get("dc:creator"));
+        }
+    }
+
+    private static String getKey(ParseResultCache cache, String content, String variant)
+            throws Exception {
+        return getKey(cache, content, new Metadata(), variant);
+    }
+
+    private static String getKey(ParseResultCache cache, String content, Metadata metadata,
+                                 String variant) throws Exception {
+        try (TikaInputStream tis = TikaInputStream.get(
+                content.getBytes(StandardCharsets.UTF_8))) {
+            return cache.getKey(tis, metadata, variant, new ParseContext());
+        }
+    }
+
+    private static List<Metadata> result(String content) {
+        Metadata m = new Metadata();
+        m.set(TikaCoreProperties.TIKA_CONTENT, content);
+        return Collections.singletonList(m);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+
+public class PipesMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordMicros(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMaxMicros());
+        assertWithin(500000, histogram.getValueAtPercentile(50));
+        assertWithin(990000, histogram.getValueAtPercentile(99));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+        //small values are exact
+        LatencyHistogram small = new LatencyHistogram();
+        small.recordMicros(7);
+        assertEquals(7, small.getValueAtPercentile(50));
+        //larger values are counted as the max
+        small.recordMicros(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_MICROS, small.getMaxMicros());
+    }
+
+    @Test
+    public void testBuckets() {
+        for (long v : new long[]{0, 63, 64, 65, 127, 128, 1000, 123456789,
+                LatencyHistogram.MAX_MICROS}) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(LatencyHistogram.highestEquivalent(index) >= v);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestEquivalent(index - 1) < v);
+            }
+        }
+    }
+
+    @Test
+    public void testStageTimingsRoundTrip() throws Exception {
+        StageTimings timings = new StageTimings();
+        Metadata m = new Metadata();
+        m.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        m.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.DefaultParser");
+        m.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.csv.TextAndCSVParser");
+        timings.setLabels(m);
+        timings.set(StageTimings.STAGE.PARSE, 1234);
+        timings.add(StageTimings.STAGE.DETECT, 10);
+        timings.add(StageTimings.STAGE.DETECT, 5);
+        timings.setServerNanos(5000);
+
+        StageTimings copy = StageTimings.fromBytes(timings.toBytes());
+        assertEquals("text/plain", copy.getMimeType());
+        assertEquals("org.apache.tika.parser.csv.TextAndCSVParser", copy.getParserClass());
+        assertEquals(1234, copy.get(StageTimings.STAGE.PARSE));
+        assertEquals(15, copy.get(StageTimings.STAGE.DETECT));
+        assertEquals(-1, copy.get(StageTimings.STAGE.FETCH));
+        assertEquals(5000, copy.getServerNanos());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        PipesMetrics metrics = new PipesMetrics();
+        StageTimings timings = new StageTimings();
+        timings.set(StageTimings.STAGE.PARSE, 2000000);
+        PipesResult result = PipesResult.EMIT_SUCCESS.withStageTimings(timings);
+        metrics.record(result, 1000000);
+        //the shared result is left alone
+        assertNull(PipesResult.EMIT_SUCCESS.getStageTimings());
+        assertEquals(1000000, timings.get(StageTimings.STAGE.QUEUE_WAIT));
+        metrics.record(PipesResult.TIMEOUT, -1);
+
+        Metadata m = new Metadata();
+        m.set(Metadata.CONTENT_TYPE, "application/pdf");
+        metrics.recordEmit(Collections.singletonList(
+                new EmitData(new EmitKey("e", "k"), Collections.singletonList(m))), 3000000);
+
+        Map<PipesMetrics.Series, LatencyHistogram> histograms = metrics.getHistograms();
+        assertEquals(3, histograms.size());
+        assertEquals(1, histograms.get(new PipesMetrics.Series(StageTimings.STAGE.EMIT,
+                "application/pdf", StageTimings.UNKNOWN)).getCount());
+        assertEquals(1, (long) metrics.getResultCounts().get(PipesResult.STATUS.TIMEOUT));
+
+        StringWriter writer = new StringWriter();
+        PipesMetrics.writePrometheus(Collections.singletonMap("async", metrics), writer);
+        String prometheus = writer.toString();
+        assertTrue(prometheus.contains("tika_pipes_stage_seconds_count{endpoint=\"async\"," +
+                "stage=\"parse\",mime_type=\"unknown\",parser=\"unknown\"} 1"));
+        assertTrue(prometheus.contains(
+                "tika_pipes_results_total{endpoint=\"async\",status=\"timeout\"} 1"));
+    }
+
+    @Test
+    public void testMaxSeries() {
+        PipesMetrics metrics = new PipesMetrics(2);
+        for (int i = 0; i < 10; i++) {
+            metrics.record(StageTimings.STAGE.PARSE, "type/" + i, "parser", 1000);
+        }
+        Map<PipesMetrics.Series, LatencyHistogram> histograms = metrics.getHistograms();
+        assertEquals(3, histograms.size());
+        assertEquals(8, histograms.get(new PipesMetrics.Series(StageTimings.STAGE.PARSE,
+                PipesMetrics.OTHER, PipesMetrics.OTHER)).getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        //buckets are about 3% wide
+        assertTrue(Math.abs(expected - actual) <= expected * 0.04,
+                "expected about " + expected + ", but got " + actual);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.sax.BasicContentHandlerFactory;
+import org.apache.tika.sax.ContentSink;
+
+public class PipesSerializerTest {
+
+    @Test
+    public void testFetchEmitTuple() throws Exception {
+        Metadata userMetadata = new Metadata();
+        userMetadata.set("project", "tika");
+        userMetadata.add("tags", "a");
+        userMetadata.add("tags", "b");
+        FetchEmitTuple t = new FetchEmitTuple("id-é", new FetchKey("fs", "a/b.pdf", 10, 1000),
+                new EmitKey("es", null), userMetadata,
+                new HandlerConfig(BasicContentHandlerFactory.HANDLER_TYPE.XML,
+                        HandlerConfig.PARSE_MODE.CONCATENATE, 10000, -1, false),
+                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP);
+
+        for (PipesConfigBase.SERIALIZATION_FORMAT format :
+                PipesConfigBase.SERIALIZATION_FORMAT.values()) {
+            byte[] bytes = PipesSerializer.serialize(t, format);
+            assertEquals(t, PipesSerializer.deserializeFetchEmitTuple(bytes, format));
+        }
+    }
+
+    @Test
+    public void testEmitData() throws Exception {
+        List<Metadata> metadataList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.TIKA_CONTENT, "content " + i + " 日本");
+            m.set(Metadata.CONTENT_TYPE, "text/plain");
+            m.add("custom:key", "x");
+            m.add("custom:key", "y");
+            m.set("custom:" + i, "");
+            metadataList.add(m);
+        }
+        EmitData emitData = new EmitData(new EmitKey("fs", "out.json"), metadataList, "stack");
+
+        for (PipesConfigBase.SERIALIZATION_FORMAT format :
+                PipesConfigBase.SERIALIZATION_FORMAT.values()) {
+            EmitData copy = PipesSerializer.deserializeEmitData(
+                    PipesSerializer.serialize(emitData, format), format);
+            assertEquals(emitData.getEmitKey(), copy.getEmitKey());
+            assertEquals("stack", copy.getContainerStackTrace());
+            assertEquals(metadataList, copy.getMetadataList());
+            assertArrayEquals(new String[]{"x", "y"},
+                    copy.getMetadataList().get(2).getValues("custom:key"));
+        }
+    }
+
+    @Test
+    public void testContentSink() throws Exception {
+        try (ContentSink contentSink = new ContentSink()) {
+            List<Metadata> metadataList = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                ContentSink.Segment segment = new ContentSink.Segment();
+                byte[] bytes = ("content " + i + " 日本").getBytes(StandardCharsets.UTF_8);
+                segment.write(bytes);
+                Metadata m = new Metadata();
+                m.set(Metadata.CONTENT_TYPE, "text/plain");
+                m.set(ContentSink.CONTENT_OFFSET, contentSink.append(segment));
+                m.set(ContentSink.CONTENT_LENGTH, (long) bytes.length);
+                metadataList.add(m);
+            }
+            metadataList.add(new Metadata());
+            EmitData emitData = new EmitData(new EmitKey("fs", "out.json"), metadataList, "");
+            EmitData copy = PipesSerializer.deserializeEmitData(
+                    PipesSerializer.serialize(emitData,
+                            PipesConfigBase.SERIALIZATION_FORMAT.BINARY, contentSink),
+                    PipesConfigBase.SERIALIZATION_FORMAT.BINARY);
+            Metadata second = copy.getMetadataList().get(1);
+            assertEquals("content 1 日本", second.get(TikaCoreProperties.TIKA_CONTENT));
+            assertEquals("text/plain", second.get(Metadata.CONTENT_TYPE));
+            assertNull(second.get(ContentSink.CONTENT_OFFSET));
+            assertEquals(2, second.names().length);
+            assertEquals(0, copy.getMetadataList().get(2).size());
+        }
+    }
+
+    @Test
+    public void testNullsAndDefaults() throws Exception {
+        FetchEmitTuple t = new FetchEmitTuple(null, new FetchKey("fs", "a"), null);
+        FetchEmitTuple copy = PipesSerializer.deserializeFetchEmitTuple(
+                PipesSerializer.serialize(t, PipesConfigBase.SERIALIZATION_FORMAT.BINARY),
+                PipesConfigBase.SERIALIZATION_FORMAT.BINARY);
+        assertEquals(t, copy);
+        assertNull(copy.getEmitKey());
+        assertEquals(HandlerConfig.DEFAULT_HANDLER_CONFIG, copy.getHandlerConfig());
+    }
+
+    @Test
+    public void testBinaryIsSmaller() throws Exception {
+        List<Metadata> metadataList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.TIKA_CONTENT, "content");
+            m.set(Metadata.CONTENT_TYPE, "text/plain");
+            m.set("some:uncommon-key", "value");
+            metadataList.add(m);
+        }
+        EmitData emitData = new EmitData(new EmitKey("fs", "out.json"), metadataList);
+        int binary = PipesSerializer.serialize(emitData,
+                PipesConfigBase.SERIALIZATION_FORMAT.BINARY).length;
+        int java = PipesSerializer.serialize(emitData,
+                PipesConfigBase.SERIALIZATION_FORMAT.JAVA).length;
+        assertTrue(binary < java, binary + " should be less than " + java);
+    }
+
+    @Test
+    public void testFormatMismatch() throws Exception {
+        byte[] bytes = PipesSerializer.serialize(new FetchEmitTuple("id", new FetchKey("fs", "a"),
+                new EmitKey("fs", "b")), PipesConfigBase.SERIALIZATION_FORMAT.JAVA);
+        assertThrows(IOException.class, () -> PipesSerializer.deserializeFetchEmitTuple(bytes,
+                PipesConfigBase.SERIALIZATION_FORMAT.BINARY));
+    }
+
+    @Test
+    public void testParseFormat() {
+        assertEquals(PipesConfigBase.SERIALIZATION_FORMAT.JAVA,
+                PipesConfigBase.SERIALIZATION_FORMAT.parse("java"));
+        assertThrows(IllegalArgumentException.class,
+                () -> PipesConfigBase.SERIALIZATION_FORMAT.parse("xml"));
+    }
+}
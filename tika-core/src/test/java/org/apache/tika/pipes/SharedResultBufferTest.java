@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+
+public class SharedResultBufferTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path path;
+        SharedResultBuffer client = SharedResultBuffer.create(2, 1024);
+        SharedResultBuffer server;
+        try {
+            path = client.getPath();
+            server = SharedResultBuffer.open(path, 2, 1024);
+            for (int i = 0; i < 3; i++) {
+                Metadata m = new Metadata();
+                m.set(TikaCoreProperties.TIKA_CONTENT, "content " + i);
+                EmitData emitData =
+                        new EmitData(new EmitKey("fs", "key" + i), Collections.singletonList(m));
+                for (PipesConfigBase.SERIALIZATION_FORMAT format :
+                        PipesConfigBase.SERIALIZATION_FORMAT.values()) {
+                    byte[] bytes = PipesSerializer.serialize(emitData, format);
+                    int slot = server.write(bytes);
+                    EmitData copy = client.readEmitData(slot, bytes.length, format);
+                    assertEquals(emitData.getEmitKey(), copy.getEmitKey());
+                    assertEquals(emitData.getMetadataList(), copy.getMetadataList());
+                }
+            }
+            //too big for a slot
+            assertEquals(-1, server.write(new byte[1025]));
+            assertThrows(IOException.class, () -> client.read(2, 10));
+        } finally {
+            client.close();
+        }
+        assertFalse(Files.exists(path));
+        //the buffers are unmapped, so slots can't be used any more
+        assertThrows(IOException.class, () -> client.readEmitData(0, 10,
+                PipesConfigBase.SERIALIZATION_FORMAT.BINARY));
+        server.close();
+        assertEquals(-1, server.write(new byte[10]));
+    }
+}
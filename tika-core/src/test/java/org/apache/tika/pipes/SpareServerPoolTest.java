@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.utils.ProcessUtils;
+
+public class SpareServerPoolTest {
+
+    @TempDir
+    private Path configDir;
+
+    @Test
+    public void testIdleSpareStaysUp() throws Exception {
+        long idleMillis = 2000;
+        PipesConfig pipesConfig = PipesConfig.load(writeConfig(idleMillis));
+        try (SpareServerPool pool = new SpareServerPool(pipesConfig)) {
+            long deadline = System.currentTimeMillis() + 60000;
+            while (pool.getReady() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, pool.getReady());
+            //without the keep-alive, the spare would have shut itself down by now
+            Thread.sleep(idleMillis * 3);
+            SpareServerPool.Spare spare = pool.take();
+            assertNotNull(spare);
+            try {
+                assertTrue(spare.getProcess().isAlive());
+                assertTrue(spare.ping(ForkJoinPool.commonPool(),
+                        SpareServerPool.PING_TIMEOUT_MILLIS));
+            } finally {
+                spare.close();
+            }
+        }
+    }
+
+    private Path writeConfig(long idleMillis) throws Exception {
+        Path tikaConfigPath = Files.createTempFile(configDir, "tika-config-", ".xml");
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?><properties>" +
+                "<emitters><emitter class=\"org.apache.tika.pipes.async.MockEmitter\">" +
+                "<name>mock</name></emitter></emitters>" +
+                "<fetchers><fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
+                "<name>mock</name><basePath>" +
+                ProcessUtils.escapeCommandLine(configDir.toAbsolutePath().toString()) +
+                "</basePath></fetcher></fetchers>" +
+                "<pipes><tikaConfig>" +
+                ProcessUtils.escapeCommandLine(tikaConfigPath.toAbsolutePath().toString()) +
+                "</tikaConfig>" +
+                "<forkedJvmArgs><arg>-Xmx256m</arg></forkedJvmArgs>" +
+                "<spareServers>1</spareServers>" +
+                "<shutdownClientAfterMillis>" + idleMillis + "</shutdownClientAfterMillis>" +
+                "</pipes></properties>";
+        Files.write(tikaConfigPath, xml.getBytes(StandardCharsets.UTF_8));
+        return tikaConfigPath;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.TikaTest;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.NoOpFilter;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.RecursiveParserWrapper;
+import org.apache.tika.pipes.emitter.AbstractEmitter;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.sax.BasicContentHandlerFactory;
+
+public class StreamingEmitHandlerTest extends TikaTest {
+
+    @Test
+    public void testStreaming() throws Exception {
+        CapturingEmitter emitter = new CapturingEmitter(false);
+        StreamingEmitHandler handler = parse(emitter);
+        assertNull(handler.getEmitException());
+
+        assertEquals(1, emitter.emitted.size());
+        EmitData embedded = emitter.emitted.get(0);
+        assertEquals("out-0", embedded.getEmitKey().getEmitKey());
+        Metadata m = embedded.getMetadataList().get(0);
+        assertEquals("id", m.get(StreamingEmitHandler.CONTAINER_ID));
+        assertEquals(0, m.getInt(StreamingEmitHandler.SEQUENCE));
+        assertEquals("embeddedAuthor", m.get("dc:creator"));
+        assertTrue(m.get(TikaCoreProperties.TIKA_CONTENT).contains("some_embedded_content"));
+
+        List<Metadata> container = handler.getMetadataList();
+        assertEquals(1, container.size());
+        assertEquals(1, container.get(0).getInt(StreamingEmitHandler.SEQUENCE));
+        assertEquals(2, container.get(0).getInt(StreamingEmitHandler.DOCUMENT_COUNT));
+        assertEquals("Nikolai Lobachevsky", container.get(0).get("dc:creator"));
+    }
+
+    @Test
+    public void testEmitException() throws Exception {
+        CapturingEmitter emitter = new CapturingEmitter(true);
+        StreamingEmitHandler handler = parseWithEmitException(emitter);
+        assertNotNull(handler.getEmitException());
+        assertEquals(0, emitter.emitted.size());
+    }
+
+    private StreamingEmitHandler parseWithEmitException(CapturingEmitter emitter)
+            throws Exception {
+        StreamingEmitHandler handler = newHandler(emitter);
+        try (InputStream is = getResourceAsStream("/test-documents/basic_embedded.xml")) {
+            //the MockParser wraps the handler's SAXException
+            assertThrows(TikaException.class, () -> new RecursiveParserWrapper(
+                    new AutoDetectParser()).parse(is, handler, new Metadata(),
+                    new ParseContext()));
+        }
+        return handler;
+    }
+
+    private StreamingEmitHandler parse(CapturingEmitter emitter) throws Exception {
+        StreamingEmitHandler handler = newHandler(emitter);
+        try (InputStream is = getResourceAsStream("/test-documents/basic_embedded.xml")) {
+            new RecursiveParserWrapper(new AutoDetectParser()).parse(is, handler, new Metadata(),
+                    new ParseContext());
+        }
+        return handler;
+    }
+
+    private static StreamingEmitHandler newHandler(CapturingEmitter emitter) {
+        //emit each embedded document on its own
+        return new StreamingEmitHandler(
+                new BasicContentHandlerFactory(BasicContentHandlerFactory.HANDLER_TYPE.TEXT, -1),
+                -1, emitter, new EmitKey("mock", "out"), "id", NoOpFilter.NOOP_FILTER, 0);
+    }
+
+    private static class CapturingEmitter extends AbstractEmitter {
+        private final boolean throwOnEmit;
+        private final List<EmitData> emitted = new ArrayList<>();
+
+        CapturingEmitter(boolean throwOnEmit) {
+            this.throwOnEmit = throwOnEmit;
+        }
+
+        @Override
+        public void emit(String emitKey, List<Metadata> metadataList) {
+        }
+
+        @Override
+        public void emit(List<? extends EmitData> emitData)
+                throws IOException, TikaEmitterException {
+            if (throwOnEmit) {
+                throw new TikaEmitterException("couldn't emit");
+            }
+            emitted.addAll(emitData);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyControllerTest {
+
+    @Test
+    public void testAdjust() {
+        AdaptiveConcurrencyController controller = newController(2, 8);
+        assertEquals(2, controller.getActive());
+        assertTrue(controller.isActive(1));
+        assertFalse(controller.isActive(2));
+        //additive increase while it helps
+        assertEquals(3, controller.adjust(10, false, true));
+        assertEquals(4, controller.adjust(15, false, true));
+        //this increase didn't help; undo it and hold
+        assertEquals(3, controller.adjust(15, false, true));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(3, controller.adjust(15, false, true));
+        }
+        assertEquals(4, controller.adjust(15, false, true));
+        //multiplicative decrease, but not below min
+        assertEquals(2, controller.adjust(20, true, true));
+        assertEquals(2, controller.adjust(20, true, true));
+        //no growth without waiting work
+        assertEquals(2, controller.adjust(20, false, false));
+    }
+
+    @Test
+    public void testMax() {
+        AdaptiveConcurrencyController controller = newController(1, 2);
+        assertEquals(2, controller.adjust(10, false, true));
+        assertEquals(2, controller.adjust(20, false, true));
+        assertEquals(2, controller.adjust(30, false, true));
+    }
+
+    @Test
+    public void testOverloaded() {
+        AsyncConfig config = new AsyncConfig();
+        config.setMinClients(1);
+        config.setAdaptiveMaxLoadPerCpu(2.0);
+        config.setAdaptiveMinAvailableMemoryBytes(1000);
+        AdaptiveConcurrencyController controller = newController(config, 4);
+        assertFalse(controller.isOverloaded(1.0, 2000, 0.1));
+        //not available
+        assertFalse(controller.isOverloaded(-1, -1, 0.1));
+        assertTrue(controller.isOverloaded(3.0, 2000, 0.1));
+        assertTrue(controller.isOverloaded(1.0, 500, 0.1));
+        assertTrue(controller.isOverloaded(1.0, 2000, 0.9));
+    }
+
+    @Test
+    public void testParseAvailableMemory() throws Exception {
+        String meminfo = "MemTotal:       16318412 kB\n" +
+                "MemFree:         1037220 kB\n" +
+                "MemAvailable:    9876543 kB\n";
+        assertEquals(9876543L * 1024, AdaptiveConcurrencyController.parseAvailableMemory(
+                new BufferedReader(new StringReader(meminfo))));
+        assertEquals(-1, AdaptiveConcurrencyController.parseAvailableMemory(
+                new BufferedReader(new StringReader("MemTotal: 1 kB\n"))));
+    }
+
+    private static AdaptiveConcurrencyController newController(int min, int max) {
+        AsyncConfig config = new AsyncConfig();
+        config.setMinClients(min);
+        return newController(config, max);
+    }
+
+    private static AdaptiveConcurrencyController newController(AsyncConfig config, int max) {
+        return new AdaptiveConcurrencyController(config, max, new AtomicLong(),
+                new ArrayBlockingQueue<>(10), new ArrayBlockingQueue<>(10));
+    }
+}
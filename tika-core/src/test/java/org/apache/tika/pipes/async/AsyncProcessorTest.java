@@ -17,6 +17,8 @@
 package org.apache.tika.pipes.async;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -26,12 +28,14 @@ import java.sql.SQLException;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitKey;
@@ -76,24 +80,8 @@ public class AsyncProcessorTest {
 
     @BeforeEach
     public void setUp() throws SQLException, IOException {
-        tikaConfigPath = Files.createTempFile(configDir, "tika-config-", ".xml");
-        String xml =
-                "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" + "<properties>" + "  <emitters>" +
-                "  <emitter class=\"org.apache.tika.pipes.async.MockEmitter\">\n" +
-                "         <name>mock</name>\n" + "  </emitter>" +
-                "  </emitters>" + "  <fetchers>" +
-                "    <fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
-                "      <name>mock</name>\n" + "      <basePath>" +
-                ProcessUtils.escapeCommandLine(inputDir.toAbsolutePath().toString()) +
-                "</basePath>\n" + "    </fetcher>" + "  </fetchers>" +
-                        "<async><tikaConfig>" +
-                        ProcessUtils.escapeCommandLine(tikaConfigPath.toAbsolutePath().toString()) +
-                        "</tikaConfig><forkedJvmArgs><arg>-Xmx512m</arg" +
-                        "></forkedJvmArgs><maxForEmitBatchBytes>1000000</maxForEmitBatchBytes>" +
-                        "<timeoutMillis>5000</timeoutMillis>" +
-                        "<numClients>4</numClients></async>" +
-                        "</properties>";
-        Files.write(tikaConfigPath, xml.getBytes(StandardCharsets.UTF_8));
+        MockEmitter.EMIT_DATA.clear();
+        tikaConfigPath = writeConfig("");
         Random r = new Random();
         for (int i = 0; i < totalFiles; i++) {
             float f = r.nextFloat();
@@ -113,6 +101,28 @@ public class AsyncProcessorTest {
         }
     }
 
+    private Path writeConfig(String extraAsyncConfig) throws IOException {
+        Path tikaConfigPath = Files.createTempFile(configDir, "tika-config-", ".xml");
+        String xml =
+                "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" + "<properties>" + "  <emitters>" +
+                "  <emitter class=\"org.apache.tika.pipes.async.MockEmitter\">\n" +
+                "         <name>mock</name>\n" + "  </emitter>" +
+                "  </emitters>" + "  <fetchers>" +
+                "    <fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
+                "      <name>mock</name>\n" + "      <basePath>" +
+                ProcessUtils.escapeCommandLine(inputDir.toAbsolutePath().toString()) +
+                "</basePath>\n" + "    </fetcher>" + "  </fetchers>" +
+                        "<async><tikaConfig>" +
+                        ProcessUtils.escapeCommandLine(tikaConfigPath.toAbsolutePath().toString()) +
+                        "</tikaConfig><forkedJvmArgs><arg>-Xmx512m</arg" +
+                        "></forkedJvmArgs><maxForEmitBatchBytes>1000000</maxForEmitBatchBytes>" +
+                        "<timeoutMillis>5000</timeoutMillis>" +
+                        "<numClients>4</numClients>" + extraAsyncConfig + "</async>" +
+                        "</properties>";
+        Files.write(tikaConfigPath, xml.getBytes(StandardCharsets.UTF_8));
+        return tikaConfigPath;
+    }
+
 /*
     private void writeLarge(Path resolve) throws IOException {
         try (BufferedWriter writer = Files.newBufferedWriter(resolve, StandardCharsets.UTF_8)) {
@@ -149,4 +159,260 @@ public class AsyncProcessorTest {
         }
         assertEquals(ok, emitKeys.size());
     }
+
+    @Test
+    public void testChangeTrackingRetriesFailures() throws Exception {
+        Path config = writeConfig("<changeTrackingDirectory>" +
+                ProcessUtils.escapeCommandLine(
+                        configDir.resolve("changes").toAbsolutePath().toString()) +
+                "</changeTrackingDirectory>");
+        int numOk = 10;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("tracked-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(inputDir.resolve("tracked-crash.xml"),
+                SYSTEM_EXIT.getBytes(StandardCharsets.UTF_8));
+        Files.write(inputDir.resolve("tracked-timeout.xml"),
+                TIMEOUT.getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, runTracked(config, numOk));
+        //only the files that were processed successfully are skipped on the next run
+        assertEquals(numOk, runTracked(config, numOk));
+    }
+
+    private long runTracked(Path config, int numOk) throws Exception {
+        AsyncProcessor processor = new AsyncProcessor(config);
+        for (int i = 0; i < numOk; i++) {
+            processor.offer(trackedTuple("tracked-" + i), 1000);
+        }
+        processor.offer(trackedTuple("tracked-crash"), 1000);
+        processor.offer(trackedTuple("tracked-timeout"), 1000);
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        return processor.getTotalUnchanged();
+    }
+
+    private FetchEmitTuple trackedTuple(String name) {
+        Metadata metadata = new Metadata();
+        metadata.set(FetchEmitTuple.SIZE_HINT, "100");
+        metadata.set(FetchEmitTuple.VERSION_HINT, "v1");
+        return new FetchEmitTuple(name, new FetchKey("mock", name + ".xml"),
+                new EmitKey("mock", name), metadata);
+    }
+
+    @Test
+    public void testConcurrentParses() throws Exception {
+        Path config = writeConfig(
+                "<concurrentParsesPerProcess>2</concurrentParsesPerProcess>" +
+                "<sharedMemorySlots>2</sharedMemorySlots>" +
+                "<sharedMemorySlotBytes>65536</sharedMemorySlotBytes>");
+        int numOk = 40;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("concurrent-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        //a timeout should only cost a restart after the other parses have finished
+        Files.write(inputDir.resolve("concurrent-timeout.xml"),
+                TIMEOUT.getBytes(StandardCharsets.UTF_8));
+
+        AsyncProcessor processor = new AsyncProcessor(config);
+        for (int i = 0; i < numOk; i++) {
+            if (i == numOk / 2) {
+                processor.offer(new FetchEmitTuple("timeout",
+                        new FetchKey("mock", "concurrent-timeout.xml"),
+                        new EmitKey("mock", "concurrent-timeout"), new Metadata()), 1000);
+            }
+            processor.offer(new FetchEmitTuple("id-" + i,
+                    new FetchKey("mock", "concurrent-" + i + ".xml"),
+                    new EmitKey("mock", "concurrent-" + i), new Metadata()), 1000);
+        }
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+        }
+        assertEquals(numOk, emitKeys.size());
+    }
+
+    @Test
+    public void testSpareServers() throws Exception {
+        //restart after every few files so that the spares get used
+        Path config = writeConfig(
+                "<spareServers>1</spareServers>" +
+                "<warmUpIterations>1</warmUpIterations>" +
+                "<maxFilesProcessedPerProcess>3</maxFilesProcessedPerProcess>" +
+                "<sharedMemorySlots>1</sharedMemorySlots>" +
+                "<sharedMemorySlotBytes>65536</sharedMemorySlotBytes>");
+        int numOk = 30;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("spare-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        AsyncProcessor processor = new AsyncProcessor(config);
+        for (int i = 0; i < numOk; i++) {
+            processor.offer(new FetchEmitTuple("id-" + i,
+                    new FetchKey("mock", "spare-" + i + ".xml"),
+                    new EmitKey("mock", "spare-" + i), new Metadata()), 1000);
+        }
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+        }
+        assertEquals(numOk, emitKeys.size());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        Path spool = Files.createTempDirectory(configDir, "spool-");
+        Path config = writeConfig(
+                "<prefetchPerClient>2</prefetchPerClient>" +
+                "<prefetchDirectory>" +
+                ProcessUtils.escapeCommandLine(spool.toAbsolutePath().toString()) +
+                "</prefetchDirectory>");
+        int numOk = 20;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("prefetch-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        AsyncProcessor processor = new AsyncProcessor(config);
+        for (int i = 0; i < numOk; i++) {
+            //leave the emit key blank; it should still default to the original fetch key
+            processor.offer(new FetchEmitTuple("id-" + i,
+                    new FetchKey("mock", "prefetch-" + i + ".xml"),
+                    new EmitKey("mock", ""), new Metadata()), 1000);
+        }
+        //this one isn't there; the server should still report a fetch exception
+        processor.offer(new FetchEmitTuple("missing", new FetchKey("mock", "missing.xml"),
+                new EmitKey("mock", ""), new Metadata()), 1000);
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+            //this is set by the original fetcher
+            assertEquals(d.getEmitKey().getEmitKey(),
+                    d.getMetadataList().get(0).get(TikaCoreProperties.SOURCE_PATH));
+        }
+        assertEquals(numOk, emitKeys.size());
+        assertTrue(emitKeys.contains("prefetch-0.xml"));
+        //nothing is left in the spool
+        try (Stream<Path> files = Files.list(spool)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testAdaptiveConcurrency() throws Exception {
+        Path config = writeConfig(
+                "<minClients>1</minClients>" +
+                "<adaptiveIntervalMillis>200</adaptiveIntervalMillis>" +
+                "<adaptiveMaxLoadPerCpu>-1</adaptiveMaxLoadPerCpu>");
+        int numOk = 30;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("adaptive-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        AsyncProcessor processor = new AsyncProcessor(config);
+        assertEquals(1, processor.getNumActiveClients());
+        for (int i = 0; i < numOk; i++) {
+            processor.offer(new FetchEmitTuple("id-" + i,
+                    new FetchKey("mock", "adaptive-" + i + ".xml"),
+                    new EmitKey("mock", "adaptive-" + i), new Metadata()), 1000);
+        }
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+            int active = processor.getNumActiveClients();
+            assertTrue(active >= 1 && active <= 4, "active clients: " + active);
+        }
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+        }
+        assertEquals(numOk, emitKeys.size());
+    }
+
+    @Test
+    public void testEmitLanes() throws Exception {
+        Path config = writeConfig(
+                "<emitLanes>true</emitLanes>" +
+                "<emitMaxDocs>3</emitMaxDocs>" +
+                "<emitQueueSize>5</emitQueueSize>" +
+                "<numEmitters>2</numEmitters>");
+        int numOk = 20;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("lanes-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        AsyncProcessor processor = new AsyncProcessor(config);
+        for (int i = 0; i < numOk; i++) {
+            processor.offer(new FetchEmitTuple("id-" + i,
+                    new FetchKey("mock", "lanes-" + i + ".xml"),
+                    new EmitKey("mock", "lanes-" + i), new Metadata()), 1000);
+        }
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+        }
+        assertEquals(numOk, emitKeys.size());
+    }
+
+    @Test
+    public void testLargeFileLane() throws Exception {
+        Path config = writeConfig(
+                "<largeFileThresholdBytes>1000</largeFileThresholdBytes>" +
+                "<numLargeFileClients>1</numLargeFileClients>" +
+                "<largeFileTimeoutMillis>10000</largeFileTimeoutMillis>");
+        int numOk = 20;
+        for (int i = 0; i < numOk; i++) {
+            Files.write(inputDir.resolve("lane-" + i + ".xml"),
+                    OK.getBytes(StandardCharsets.UTF_8));
+        }
+        AsyncProcessor processor = new AsyncProcessor(config);
+        for (int i = 0; i < numOk; i++) {
+            //every third file claims to be large; some have no hint at all
+            Metadata metadata = new Metadata();
+            if (i % 3 == 0) {
+                metadata.set(FetchEmitTuple.SIZE_HINT, "1000000");
+            } else if (i % 3 == 1) {
+                metadata.set(FetchEmitTuple.SIZE_HINT, "10");
+            }
+            processor.offer(new FetchEmitTuple("id-" + i,
+                    new FetchKey("mock", "lane-" + i + ".xml"),
+                    new EmitKey("mock", "lane-" + i), metadata), 1000);
+        }
+        processor.finished();
+        while (processor.checkActive()) {
+            Thread.sleep(100);
+        }
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+            //the hint isn't passed on to the parser's metadata
+            assertNull(d.getMetadataList().get(0).get(FetchEmitTuple.SIZE_HINT));
+        }
+        assertEquals(numOk, emitKeys.size());
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+public class ChangeTrackerTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void testUnchanged() throws Exception {
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            assertFalse(tracker.isUnchanged(tuple("a", 10, "v1")));
+            tracker.finished(tuple("a", 10, "v1"), PipesResult.STATUS.EMIT_SUCCESS);
+            tracker.finished(tuple("b", 10, "v1"), PipesResult.STATUS.EMIT_SUCCESS);
+            //no version, so it can't be tracked
+            tracker.finished(tuple("c", 10, null), PipesResult.STATUS.EMIT_SUCCESS);
+            assertTrue(tracker.isUnchanged(tuple("a", 10, "v1")));
+        }
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            assertTrue(tracker.isUnchanged(tuple("a", 10, "v1")));
+            assertFalse(tracker.isUnchanged(tuple("a", 10, "v2")));
+            assertFalse(tracker.isUnchanged(tuple("b", 11, "v1")));
+            assertFalse(tracker.isUnchanged(tuple("c", 10, null)));
+            assertFalse(tracker.isUnchanged(tuple("d", 10, "v1")));
+            tracker.finished(tuple("a", 10, "v2"), PipesResult.STATUS.EMIT_SUCCESS);
+        }
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            assertFalse(tracker.isUnchanged(tuple("a", 10, "v1")));
+            assertTrue(tracker.isUnchanged(tuple("a", 10, "v2")));
+        }
+        assertFalse(Files.exists(dir.resolve(ChangeTracker.LOG_FILE)));
+    }
+
+    @Test
+    public void testFailuresRetried() throws Exception {
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            tracker.finished(tuple("timeout", 10, "v1"), PipesResult.STATUS.TIMEOUT);
+            tracker.finished(tuple("crash", 10, "v1"), PipesResult.STATUS.UNSPECIFIED_CRASH);
+            tracker.finished(tuple("oom", 10, "v1"), PipesResult.STATUS.OOM);
+            tracker.finished(tuple("parse", 10, "v1"),
+                    PipesResult.STATUS.EMIT_SUCCESS_PARSE_EXCEPTION);
+            tracker.finished(tuple("empty", 10, "v1"), PipesResult.STATUS.EMPTY_OUTPUT);
+            tracker.finished(tuple("ok", 10, "v1"), PipesResult.STATUS.PARSE_SUCCESS);
+        }
+        //the next run
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            assertFalse(tracker.isUnchanged(tuple("timeout", 10, "v1")));
+            assertFalse(tracker.isUnchanged(tuple("crash", 10, "v1")));
+            assertFalse(tracker.isUnchanged(tuple("oom", 10, "v1")));
+            assertFalse(tracker.isUnchanged(tuple("parse", 10, "v1")));
+            assertTrue(tracker.isUnchanged(tuple("empty", 10, "v1")));
+            assertTrue(tracker.isUnchanged(tuple("ok", 10, "v1")));
+        }
+    }
+
+    @Test
+    public void testReplayLog() throws Exception {
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            tracker.finished(tuple("a", 10, "v1"), PipesResult.STATUS.EMIT_SUCCESS);
+        }
+        //the log left behind by a crash, with a record that was cut off
+        FetchEmitTuple b = tuple("b", 10, "v1");
+        try (DataOutputStream os = new DataOutputStream(
+                Files.newOutputStream(dir.resolve(ChangeTracker.LOG_FILE)))) {
+            os.writeLong(ChangeTracker.keyHash(b.getFetchKey()));
+            os.writeLong(ChangeTracker.fingerprint(b));
+            os.writeLong(ChangeTracker.keyHash(tuple("c", 10, "v1").getFetchKey()));
+        }
+        try (ChangeTracker tracker = new ChangeTracker(dir)) {
+            assertTrue(tracker.isUnchanged(tuple("a", 10, "v1")));
+            assertTrue(tracker.isUnchanged(b));
+            assertFalse(tracker.isUnchanged(tuple("c", 10, "v1")));
+        }
+    }
+
+    @Test
+    public void testTable() {
+        ChangeTracker.LongLongTable table = new ChangeTracker.LongLongTable(4);
+        for (long i = 1; i <= 1000; i++) {
+            assertTrue(table.put(i * 31, i));
+        }
+        assertFalse(table.put(31, 1));
+        assertTrue(table.put(31, 2));
+        assertEquals(1000, table.size());
+        assertEquals(2, table.get(31));
+        assertEquals(1000, table.get(31000));
+        assertEquals(0, table.get(7));
+    }
+
+    private static FetchEmitTuple tuple(String key, long size, String version) {
+        Metadata metadata = new Metadata();
+        metadata.set(FetchEmitTuple.SIZE_HINT, Long.toString(size));
+        if (version != null) {
+            metadata.set(FetchEmitTuple.VERSION_HINT, version);
+        }
+        return new FetchEmitTuple(key, new FetchKey("f", key), new EmitKey("e", key), metadata);
+    }
+}
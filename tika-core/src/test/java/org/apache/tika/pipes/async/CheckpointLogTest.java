@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CheckpointLogTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void testResume() throws Exception {
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            log.record("b");
+            log.record("a");
+            //ids recorded in this run aren't looked up
+            assertFalse(log.contains("a"));
+        }
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            assertTrue(log.contains("a"));
+            assertTrue(log.contains("b"));
+            assertFalse(log.contains("c"));
+            log.record("c");
+        }
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            for (String id : new String[]{"a", "b", "c"}) {
+                assertTrue(log.contains(id), id);
+            }
+            assertFalse(log.contains("d"));
+        }
+    }
+
+    @Test
+    public void testRuns() throws Exception {
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 10)) {
+            for (int i = 0; i < 95; i++) {
+                log.record("id-" + i);
+            }
+        }
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 10)) {
+            for (int i = 0; i < 95; i++) {
+                assertTrue(log.contains("id-" + i), "id-" + i);
+            }
+            assertFalse(log.contains("id-95"));
+        }
+        assertEquals(0, Files.size(dir.resolve(CheckpointLog.LOG_FILE)));
+    }
+
+    @Test
+    public void testPrefixes() throws Exception {
+        String[] ids = new String[]{"ab", "a", "abc", "b", "\u00e9", "ab\u00e9", "z"};
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            for (String id : ids) {
+                log.record(id);
+            }
+        }
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            for (String id : ids) {
+                assertTrue(log.contains(id), id);
+            }
+            for (String id : new String[]{"aa", "abcd", "abd", "\u00e8", "y"}) {
+                assertFalse(log.contains(id), id);
+            }
+        }
+    }
+
+    @Test
+    public void testCloseReleasesRuns() throws Exception {
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            log.record("a");
+        }
+        CheckpointLog log = new CheckpointLog(dir, 1000, 1000);
+        assertTrue(log.contains("a"));
+        log.close();
+        //the runs are unmapped, so they mustn't be read any more
+        assertThrows(IllegalStateException.class, () -> log.contains("a"));
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Exception {
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            log.record("a");
+        }
+        //a crash in the middle of writing the next record, after the whole of "a"
+        Files.write(dir.resolve(CheckpointLog.LOG_FILE), new byte[]{0, 0, 0, 5, 'b'},
+                StandardOpenOption.APPEND);
+        try (CheckpointLog log = new CheckpointLog(dir, 1000, 1000)) {
+            assertTrue(log.contains("a"));
+            assertFalse(log.contains("b"));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.emitter.AbstractEmitter;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.emitter.EmitterManager;
+
+public class EmitLanesTest {
+
+    @Test
+    public void testSlowEmitterDoesNotBlockOthers() throws Exception {
+        AsyncConfig config = new AsyncConfig();
+        config.setEmitMaxDocs(2);
+        config.setEmitMaxQueuedBatches(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter("slow", release);
+        RecordingEmitter fast = new RecordingEmitter("fast", null);
+        try (EmitLanes lanes = new EmitLanes(config,
+                new EmitterManager(Arrays.asList(slow, fast)))) {
+            //one batch is being emitted, and one is queued
+            for (int i = 0; i < 4; i++) {
+                lanes.add(emitData("slow", i));
+            }
+            for (int i = 0; i < 6; i++) {
+                lanes.add(emitData("fast", i));
+            }
+            assertTrue(fast.await(3, 10000));
+            assertEquals(0, slow.getEmitted().size());
+            release.countDown();
+            lanes.finish();
+            assertEquals(4, slow.getEmitted().size());
+            assertEquals(6, fast.getEmitted().size());
+        }
+    }
+
+    @Test
+    public void testLinger() throws Exception {
+        AsyncConfig config = new AsyncConfig();
+        config.setEmitWithinMillis(10);
+        RecordingEmitter emitter = new RecordingEmitter("e", null);
+        try (EmitLanes lanes = new EmitLanes(config,
+                new EmitterManager(Collections.singletonList(emitter)))) {
+            lanes.add(emitData("e", 0));
+            lanes.sealLingering();
+            assertEquals(0, emitter.getEmitted().size());
+            Thread.sleep(50);
+            lanes.sealLingering();
+            assertTrue(emitter.await(1, 10000));
+            lanes.finish();
+            assertEquals(1, emitter.getEmitted().size());
+        }
+    }
+
+    @Test
+    public void testRuntimeExceptionDoesNotKillLane() throws Exception {
+        AsyncConfig config = new AsyncConfig();
+        config.setEmitMaxDocs(1);
+        RecordingEmitter emitter = new RecordingEmitter("e", null) {
+            private boolean thrown = false;
+
+            @Override
+            public void emit(List<? extends EmitData> emitData) {
+                if (!thrown) {
+                    thrown = true;
+                    throw new IllegalStateException("bad batch");
+                }
+                super.emit(emitData);
+            }
+        };
+        try (EmitLanes lanes = new EmitLanes(config,
+                new EmitterManager(Collections.singletonList(emitter)))) {
+            for (int i = 0; i < 3; i++) {
+                lanes.add(emitData("e", i));
+            }
+            lanes.finish();
+            assertEquals(2, emitter.getEmitted().size());
+        }
+    }
+
+    @Test
+    public void testDeadLaneIsReported() throws Exception {
+        AsyncConfig config = new AsyncConfig();
+        config.setEmitMaxDocs(1);
+        config.setEmitMaxQueuedBatches(1);
+        RecordingEmitter emitter = new RecordingEmitter("e", null) {
+            @Override
+            public void emit(List<? extends EmitData> emitData) {
+                throw new AssertionError("lane dies");
+            }
+        };
+        BlockingQueue<Future<Integer>> completed = new LinkedBlockingQueue<>();
+        try (EmitLanes lanes = new EmitLanes(config,
+                new EmitterManager(Collections.singletonList(emitter)), null, null,
+                completed)) {
+            lanes.add(emitData("e", 0));
+            Future<Integer> future = completed.poll(10, TimeUnit.SECONDS);
+            assertTrue(future != null);
+            assertThrows(ExecutionException.class, future::get);
+            //adding to the dead lane fails instead of blocking forever
+            assertThrows(IllegalStateException.class, () -> {
+                for (int i = 1; i < 4; i++) {
+                    lanes.add(emitData("e", i));
+                }
+            });
+        }
+    }
+
+    private static EmitData emitData(String emitterName, int i) {
+        return new EmitData(new EmitKey(emitterName, "key-" + i),
+                Collections.singletonList(new Metadata()));
+    }
+
+    private static class RecordingEmitter extends AbstractEmitter {
+
+        private final CountDownLatch release;
+        private final List<EmitData> emitted = new ArrayList<>();
+        private int batches = 0;
+
+        RecordingEmitter(String name, CountDownLatch release) {
+            setName(name);
+            this.release = release;
+        }
+
+        @Override
+        public void emit(String emitKey, List<Metadata> metadataList) {
+            emit(Collections.singletonList(new EmitData(new EmitKey(getName(), emitKey),
+                    metadataList)));
+        }
+
+        @Override
+        public void emit(List<? extends EmitData> emitData) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                emitted.addAll(emitData);
+                batches++;
+                notifyAll();
+            }
+        }
+
+        synchronized List<EmitData> getEmitted() {
+            return new ArrayList<>(emitted);
+        }
+
+        //waits until this many batches have been emitted
+        synchronized boolean await(int numBatches, long millis) throws InterruptedException {
+            long end = System.currentTimeMillis() + millis;
+            while (batches < numBatches && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            return batches >= numBatches;
+        }
+    }
+}
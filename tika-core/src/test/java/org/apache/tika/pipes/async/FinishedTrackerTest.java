@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+public class FinishedTrackerTest {
+
+    @Test
+    public void testEmitted() throws Exception {
+        List<String> finished = new ArrayList<>();
+        List<PipesResult.STATUS> statuses = new ArrayList<>();
+        FinishedTracker tracker = new FinishedTracker(
+                Collections.singletonList((t, status) -> {
+                    finished.add(t.getId());
+                    statuses.add(status);
+                }));
+        EmitData emitted = emitData("emitted");
+        EmitData failed = emitData("failed");
+        tracker.finishAfterEmit(emitted, tuple("emitted"));
+        tracker.finishAfterEmit(failed, tuple("failed"));
+        tracker.finishAfterEmit(emitData("pending"), tuple("pending"));
+        tracker.finish(tuple("no-emit"), PipesResult.STATUS.TIMEOUT);
+        tracker.emitted(Collections.singletonList(emitted), true);
+        tracker.emitted(Collections.singletonList(failed), false);
+        //each emit data is only reported once
+        tracker.emitted(Collections.singletonList(emitted), true);
+        assertEquals(2, finished.size());
+        assertEquals("no-emit", finished.get(0));
+        assertEquals("emitted", finished.get(1));
+        assertEquals(PipesResult.STATUS.TIMEOUT, statuses.get(0));
+        assertEquals(PipesResult.STATUS.EMIT_SUCCESS, statuses.get(1));
+    }
+
+    @Test
+    public void testIsFinished() {
+        assertTrue(FinishedTracker.isFinished(PipesResult.STATUS.PARSE_SUCCESS));
+        assertTrue(FinishedTracker.isFinished(PipesResult.STATUS.TIMEOUT));
+        assertFalse(FinishedTracker.isFinished(PipesResult.STATUS.FETCH_EXCEPTION));
+        assertFalse(FinishedTracker.isFinished(PipesResult.STATUS.EMIT_EXCEPTION));
+    }
+
+    private static EmitData emitData(String key) {
+        return new EmitData(new EmitKey("e", key), Collections.singletonList(new Metadata()));
+    }
+
+    private static FetchEmitTuple tuple(String id) {
+        return new FetchEmitTuple(id, new FetchKey("f", id), new EmitKey("e", id));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+
+public class LaneSchedulerTest {
+
+    @Test
+    public void testRouting() throws Exception {
+        ArrayBlockingQueue<FetchEmitTuple> input = new ArrayBlockingQueue<>(10);
+        //large files have the longer timeout
+        LaneScheduler scheduler = new LaneScheduler(input, 2, 100, 10, 1000, 5000);
+        assertEquals(LaneScheduler.SMALL, scheduler.getLane(tuple("unknown", -1)));
+        assertEquals(LaneScheduler.SMALL, scheduler.getLane(tuple("small", 99)));
+        assertEquals(LaneScheduler.LARGE, scheduler.getLane(tuple("large", 100)));
+        assertEquals(LaneScheduler.LARGE,
+                scheduler.getLane(new FetchEmitTuple("range", new FetchKey("f", "k", 0, 199),
+                        new EmitKey("e", "k"))));
+
+        input.put(tuple("large", 1000));
+        input.put(PipesIterator.COMPLETED_SEMAPHORE);
+        input.put(PipesIterator.COMPLETED_SEMAPHORE);
+        assertEquals(AsyncProcessor.SCHEDULER_FUTURE_CODE, (int) scheduler.call());
+
+        //the small lane may not steal from the large lane, so it's done
+        assertEquals(PipesIterator.COMPLETED_SEMAPHORE, scheduler.poll(LaneScheduler.SMALL, 10));
+        assertEquals("large", scheduler.poll(LaneScheduler.LARGE, 10).getId());
+        assertEquals(PipesIterator.COMPLETED_SEMAPHORE, scheduler.poll(LaneScheduler.LARGE, 10));
+    }
+
+    @Test
+    public void testNothingYet() throws Exception {
+        ArrayBlockingQueue<FetchEmitTuple> input = new ArrayBlockingQueue<>(10);
+        LaneScheduler scheduler = new LaneScheduler(input, 1, 100, 10, 1000, 1000);
+        assertNull(scheduler.poll(LaneScheduler.SMALL, 10));
+        assertNull(scheduler.poll(LaneScheduler.LARGE, 10));
+    }
+
+    @Test
+    public void testStealing() throws Exception {
+        ArrayBlockingQueue<FetchEmitTuple> input = new ArrayBlockingQueue<>(10);
+        LaneScheduler scheduler = new LaneScheduler(input, 1, 100, 10, 1000, 5000);
+        input.put(tuple("small", 1));
+        input.put(PipesIterator.COMPLETED_SEMAPHORE);
+        scheduler.call();
+        //the large lane may steal from the small lane
+        assertEquals("small", scheduler.poll(LaneScheduler.LARGE, 10).getId());
+        assertEquals(PipesIterator.COMPLETED_SEMAPHORE, scheduler.poll(LaneScheduler.SMALL, 10));
+    }
+
+    private static FetchEmitTuple tuple(String id, long size) {
+        Metadata metadata = new Metadata();
+        if (size > -1) {
+            metadata.set(FetchEmitTuple.SIZE_HINT, Long.toString(size));
+        }
+        return new FetchEmitTuple(id, new FetchKey("f", id), new EmitKey("e", id), metadata);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.sax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.TikaTest;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.RecursiveParserWrapper;
+
+public class ContentSinkTest extends TikaTest {
+
+    @Test
+    public void testSegments() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < ContentSink.CHUNK_SIZE * 2) {
+            sb.append("abc 日本 ");
+        }
+        String text = sb.toString();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try (ContentSink sink = new ContentSink()) {
+            ContentSink.Segment blank = new ContentSink.Segment();
+            blank.write(" \n\t".getBytes(StandardCharsets.UTF_8));
+            assertTrue(blank.isBlank());
+            blank.release();
+
+            ContentSink.Segment segment = new ContentSink.Segment();
+            segment.write(bytes, 0, bytes.length);
+            assertFalse(segment.isBlank());
+            assertEquals(bytes.length, segment.getLength());
+            long first = sink.append(segment);
+            assertEquals(0, segment.getLength());
+
+            segment = new ContentSink.Segment();
+            segment.write('x');
+            long second = sink.append(segment);
+            assertEquals(0, first);
+            assertEquals(bytes.length, second);
+            assertEquals(bytes.length + 1, sink.getLength());
+
+            try (Reader reader = sink.newReader(first, bytes.length)) {
+                assertEquals(text, IOUtils.toString(reader));
+            }
+            try (InputStream is = sink.newInputStream(second, 1)) {
+                assertEquals('x', is.read());
+                assertEquals(-1, is.read());
+            }
+            UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
+            sink.writeTo(ContentSink.CHUNK_SIZE - 1, 2, bos);
+            assertEquals(2, bos.size());
+            assertEquals(bytes[ContentSink.CHUNK_SIZE - 1], bos.toByteArray()[0]);
+            assertEquals(bytes[ContentSink.CHUNK_SIZE], bos.toByteArray()[1]);
+        }
+    }
+
+    @Test
+    public void testMaxBytes() throws Exception {
+        byte[] bytes = new byte[ContentSink.CHUNK_SIZE + 1];
+        try (ContentSink sink = new ContentSink(2 * ContentSink.CHUNK_SIZE)) {
+            ContentSink.Segment segment = sink.finish(sink.newContentHandler(
+                    new BasicContentHandlerFactory(BasicContentHandlerFactory.HANDLER_TYPE.TEXT,
+                            -1)));
+            //two chunks for the segment, and none left for the sink's copy
+            segment.write(bytes, 0, bytes.length);
+            assertThrows(IOException.class, () -> sink.append(segment));
+            segment.release();
+
+            //released buffers don't count
+            ContentSink.Segment small = new ContentSink.Segment();
+            small.write('x');
+            assertEquals(0, sink.append(small));
+            assertEquals(1, sink.getLength());
+        }
+    }
+
+    @Test
+    public void testRecursiveParserWrapper() throws Exception {
+        List<Metadata> expected = getRecursiveMetadata("basic_embedded.xml", AUTO_DETECT_PARSER,
+                BasicContentHandlerFactory.HANDLER_TYPE.XML);
+
+        RecursiveParserWrapper wrapper = new RecursiveParserWrapper(AUTO_DETECT_PARSER);
+        try (ContentSinkRecursiveParserWrapperHandler handler =
+                     new ContentSinkRecursiveParserWrapperHandler(
+                             new BasicContentHandlerFactory(
+                                     BasicContentHandlerFactory.HANDLER_TYPE.XML, -1), -1);
+             InputStream is = getResourceAsStream("/test-documents/basic_embedded.xml")) {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "basic_embedded.xml");
+            wrapper.parse(is, handler, metadata, new ParseContext());
+            List<Metadata> metadataList = handler.getMetadataList();
+            assertEquals(expected.size(), metadataList.size());
+            for (Metadata m : metadataList) {
+                //the text is only in the sink
+                assertNull(m.get(TikaCoreProperties.TIKA_CONTENT));
+            }
+            ContentSinkRecursiveParserWrapperHandler.inlineContent(metadataList,
+                    handler.getContentSink());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH),
+                        metadataList.get(i).get(TikaCoreProperties.EMBEDDED_RESOURCE_PATH));
+                assertEquals(expected.get(i).get(TikaCoreProperties.TIKA_CONTENT),
+                        metadataList.get(i).get(TikaCoreProperties.TIKA_CONTENT));
+                assertNull(metadataList.get(i).get(ContentSink.CONTENT_OFFSET));
+            }
+        }
+    }
+}
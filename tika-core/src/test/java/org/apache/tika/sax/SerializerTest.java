@@ -16,7 +16,11 @@
  */
 package org.apache.tika.sax;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
 
 import org.junit.jupiter.api.Test;
 import org.xml.sax.ContentHandler;
@@ -69,6 +73,58 @@ public class SerializerTest {
         assertElementWithAttributes("<p class=\"test\">content</p>", new ToHTMLContentHandler());
     }
 
+    @Test
+    public void testNamespaces() throws Exception {
+        ToXMLContentHandler handler = new ToXMLContentHandler();
+        handler.startDocument();
+        handler.startPrefixMapping("", XHTMLContentHandler.XHTML);
+        handler.startPrefixMapping("x", "urn:x");
+        handler.startElement(XHTMLContentHandler.XHTML, "html", "html", new AttributesImpl());
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("urn:x", "a", "x:a", "CDATA", "1 < 2");
+        handler.startElement("urn:x", "p", "x:p", attributes);
+        handler.endElement("urn:x", "p", "x:p");
+        handler.endElement(XHTMLContentHandler.XHTML, "html", "html");
+        handler.endDocument();
+        String xml = handler.toString();
+        assertTrue(xml.startsWith("<html xmlns"));
+        assertTrue(xml.contains(" xmlns=\"" + XHTMLContentHandler.XHTML + "\""));
+        assertTrue(xml.contains(" xmlns:x=\"urn:x\""));
+        assertTrue(xml.endsWith("><x:p x:a=\"1 &lt; 2\" /></html>"));
+    }
+
+    @Test
+    public void testOutputStream() throws Exception {
+        //longer than the buffer, with runs that are escaped and multibyte characters
+        StringBuilder sb = new StringBuilder();
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("\u00e9<").append(i);
+            escaped.append("\u00e9&lt;").append(i);
+        }
+        char[] ch = sb.toString().toCharArray();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ToXMLContentHandler handler = new ToXMLContentHandler(bos, UTF_8.name());
+        handler.startDocument();
+        handler.startElement("", "p", "p", new AttributesImpl());
+        for (int i = 0; i < ch.length; i += 7) {
+            handler.characters(ch, i, Math.min(7, ch.length - i));
+        }
+        handler.characters(ch, 0, ch.length);
+        handler.endElement("", "p", "p");
+        handler.endDocument();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<p>" + escaped + escaped +
+                "</p>", new String(bos.toByteArray(), UTF_8));
+
+        bos = new ByteArrayOutputStream();
+        ToTextContentHandler textHandler = new ToTextContentHandler(bos, UTF_8.name());
+        textHandler.characters(ch, 0, ch.length);
+        //nothing is lost in the buffer
+        textHandler.endDocument();
+        assertEquals(sb.toString(), new String(bos.toByteArray(), UTF_8));
+    }
+
     private void assertStartDocument(String expected, ContentHandler handler) throws Exception {
         handler.startDocument();
         assertEquals(expected, handler.toString());
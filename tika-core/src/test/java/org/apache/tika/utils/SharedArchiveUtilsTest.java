@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SharedArchiveUtilsTest {
+
+    @Test
+    public void testParseJavaVersion() {
+        assertEquals(8, SharedArchiveUtils.parseJavaMajorVersion(
+                "openjdk version \"1.8.0_292\"\nOpenJDK Runtime Environment"));
+        assertEquals(17, SharedArchiveUtils.parseJavaMajorVersion(
+                "openjdk version \"17.0.2\" 2022-01-18"));
+        assertEquals(21, SharedArchiveUtils.parseJavaMajorVersion(
+                "openjdk version \"21-ea\" 2023-09-19"));
+        assertEquals(-1, SharedArchiveUtils.parseJavaMajorVersion("not java"));
+        assertEquals(-1, SharedArchiveUtils.parseJavaMajorVersion(null));
+    }
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void testMissingArchiveDoesNotWait() {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Path archive = dir.resolve("tika.jsa");
+        //the archive is created in the background, and the fork starts without it
+        assertTrue(SharedArchiveUtils.getJvmArgs(java,
+                Arrays.asList("-cp", dir.toAbsolutePath().toString()), archive).isEmpty());
+        assertFalse(Files.exists(archive));
+    }
+
+    @Test
+    public void testNoArgs() {
+        assertTrue(SharedArchiveUtils.getJvmArgs("java", Collections.emptyList(), null).isEmpty());
+        //the user's own settings win
+        assertTrue(SharedArchiveUtils.getJvmArgs("java", Arrays.asList("-Xshare:off"),
+                Paths.get("tika.jsa")).isEmpty());
+    }
+}
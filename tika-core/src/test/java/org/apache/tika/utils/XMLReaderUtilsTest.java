@@ -16,11 +16,18 @@
  */
 package org.apache.tika.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
 import java.net.ConnectException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 
@@ -52,4 +59,64 @@ public class XMLReaderUtilsTest {
             fail("Parser tried to access the external DTD:" + e);
         }
     }
+
+    @Test
+    public void testPoolReuse() throws Exception {
+        XMLReaderUtils.setPoolSize(2);
+        try {
+            XMLReaderUtils.PoolStats stats = XMLReaderUtils.getSAXPoolStats();
+            long created = stats.getCreated();
+            long acquired = stats.getAcquired();
+            for (int i = 0; i < 10; i++) {
+                parse("<foo>bar</foo>");
+            }
+            //built lazily, once, and then reused
+            assertEquals(1, stats.getCreated() - created);
+            assertEquals(10, stats.getAcquired() - acquired);
+
+            //a new generation builds new parsers
+            XMLReaderUtils.setPoolSize(2);
+            parse("<foo>bar</foo>");
+            assertEquals(2, stats.getCreated() - created);
+        } finally {
+            XMLReaderUtils.setPoolSize(XMLReaderUtils.DEFAULT_POOL_SIZE);
+        }
+    }
+
+    @Test
+    public void testMoreThreadsThanPoolSize() throws Exception {
+        XMLReaderUtils.setPoolSize(2);
+        XMLReaderUtils.PoolStats stats = XMLReaderUtils.getSAXPoolStats();
+        long created = stats.getCreated();
+        long dropped = stats.getDropped();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                futures.add(executorService.submit(() -> {
+                    ToTextContentHandler handler = new ToTextContentHandler();
+                    XMLReaderUtils.parseSAX(new ByteArrayInputStream(
+                                    ("<foo>" + n + "</foo>").getBytes(StandardCharsets.UTF_8)),
+                            handler, new ParseContext());
+                    return handler.toString();
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.toString(i), futures.get(i).get());
+            }
+            //the threads didn't wait for each other, but no more parsers were
+            //kept than fit in the pool
+            assertTrue(stats.getCreated() - created > 0);
+            assertTrue((stats.getCreated() - created) - (stats.getDropped() - dropped) <= 2);
+        } finally {
+            executorService.shutdownNow();
+            XMLReaderUtils.setPoolSize(XMLReaderUtils.DEFAULT_POOL_SIZE);
+        }
+    }
+
+    private static void parse(String xml) throws Exception {
+        XMLReaderUtils.parseSAX(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                new ToTextContentHandler(), new ParseContext());
+    }
 }
@@ -99,18 +99,31 @@ public class BPListDetector implements Detector {
         if (input == null) {
             return MediaType.OCTET_STREAM;
         }
-        input.mark(8);
-        byte[] bytes = new byte[8];
+        byte[] bytes;
+        if (input instanceof TikaInputStream) {
+            // Use the read-ahead buffer shared with the other detectors
+            try {
+                bytes = ((TikaInputStream) input).peekPrefix(8);
+            } catch (IOException e) {
+                return MediaType.OCTET_STREAM;
+            }
+            if (bytes.length < 6) {
+                return MediaType.OCTET_STREAM;
+            }
+        } else {
+            input.mark(8);
+            bytes = new byte[8];
 
-        try {
-            int read = IOUtils.read(input, bytes);
-            if (read < 6) {
+            try {
+                int read = IOUtils.read(input, bytes);
+                if (read < 6) {
+                    return MediaType.OCTET_STREAM;
+                }
+            } catch (IOException e) {
                 return MediaType.OCTET_STREAM;
+            } finally {
+                input.reset();
             }
-        } catch (IOException e) {
-            return MediaType.OCTET_STREAM;
-        } finally {
-            input.reset();
         }
 
         int i = 0;
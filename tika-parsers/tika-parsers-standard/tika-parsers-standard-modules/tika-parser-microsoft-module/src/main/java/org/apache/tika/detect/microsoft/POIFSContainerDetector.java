@@ -21,6 +21,7 @@ import static org.apache.tika.mime.MediaType.image;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Collections;
@@ -183,6 +184,9 @@ public class POIFSContainerDetector implements Detector {
     @Field
     private int markLimit = 128 * 1024 * 1024;
 
+    @Field
+    private int spoolToMemoryLimit = -1;
+
     /**
      * Internal detection of the specific kind of OLE2 document, based on the
      * names of the top level streams within the file.
@@ -459,7 +463,40 @@ public class POIFSContainerDetector implements Detector {
         this.markLimit = markLimit;
     }
 
+    /**
+     * If a TikaInputStream without an underlying file is passed in to
+     * {@link #detect(InputStream, Metadata)}, and it is no longer than this
+     * limit, then it will be read into memory instead of being spooled to
+     * a temporary file. The file system is then opened from memory. Longer
+     * streams are spooled to a temporary file as before, up to the
+     * {@link #setMarkLimit(int) mark limit}. This is disabled by default (-1).
+     *
+     * @param spoolToMemoryLimit maximum length of streams to read into memory
+     * @see TikaInputStream#spoolToMemory(int)
+     */
+    public void setSpoolToMemoryLimit(int spoolToMemoryLimit) {
+        this.spoolToMemoryLimit = spoolToMemoryLimit;
+    }
+
+    public int getSpoolToMemoryLimit() {
+        return spoolToMemoryLimit;
+    }
+
     private Set<String> getTopLevelNames(TikaInputStream stream) throws IOException {
+        if (stream.spoolToMemory(spoolToMemoryLimit)) {
+            // Small enough to open from memory, without a temporary file
+            try {
+                return getTopLevelNames(stream,
+                        new POIFSFileSystem(Channels.newInputStream(stream.getSeekableByteChannel())));
+            } catch (IOException e) {
+                // Parse error in POI, so we don't know the file type
+                return Collections.emptySet();
+            } catch (RuntimeException e) {
+                // Another problem in POI
+                return Collections.emptySet();
+            }
+        }
+
         // Force the document stream to a (possibly temporary) file
         // so we don't modify the current position of the stream.
         //If the markLimit is < 0, this will spool the entire file
@@ -472,13 +509,7 @@ public class POIFSContainerDetector implements Detector {
         }
 
         try {
-            POIFSFileSystem fs = new POIFSFileSystem(file.toFile(), true);
-
-            // Optimize a possible later parsing process by keeping
-            // a reference to the already opened POI file system
-            stream.setOpenContainer(fs);
-
-            return getTopLevelNames(fs.getRoot());
+            return getTopLevelNames(stream, new POIFSFileSystem(file.toFile(), true));
         } catch (IOException e) {
             // Parse error in POI, so we don't know the file type
             return Collections.emptySet();
@@ -488,6 +519,14 @@ public class POIFSContainerDetector implements Detector {
         }
     }
 
+    private Set<String> getTopLevelNames(TikaInputStream stream, POIFSFileSystem fs) {
+        // Optimize a possible later parsing process by keeping
+        // a reference to the already opened POI file system
+        stream.setOpenContainer(fs);
+
+        return getTopLevelNames(fs.getRoot());
+    }
+
     public MediaType detect(InputStream input, Metadata metadata) throws IOException {
         // Check if we have access to the document
         if (input == null) {
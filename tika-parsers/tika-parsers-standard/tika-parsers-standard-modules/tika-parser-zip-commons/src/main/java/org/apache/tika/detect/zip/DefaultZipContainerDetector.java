@@ -162,13 +162,20 @@ public class DefaultZipContainerDetector implements Detector {
             return MediaType.OCTET_STREAM;
         }
 
-        byte[] prefix = new byte[1024]; // enough for all known archive formats
-        input.mark(1024);
+        byte[] prefix;
         int length = -1;
-        try {
-            length = IOUtils.read(input, prefix, 0, 1024);
-        } finally {
-            input.reset();
+        if (input instanceof TikaInputStream) {
+            // Use the read-ahead buffer shared with the other detectors
+            prefix = ((TikaInputStream) input).peekPrefix(1024);
+            length = Math.min(prefix.length, 1024);
+        } else {
+            prefix = new byte[1024]; // enough for all known archive formats
+            input.mark(1024);
+            try {
+                length = IOUtils.read(input, prefix, 0, 1024);
+            } finally {
+                input.reset();
+            }
         }
 
         MediaType type = detectArchiveFormat(prefix, length);
@@ -53,8 +53,11 @@ public class TikaAsyncCLI {
                 }
             }
             long elapsed = System.currentTimeMillis() - start;
-            LOG.info("Successfully finished processing {} files in {} ms",
-                    processor.getTotalProcessed(), elapsed);
+            LOG.info("Successfully finished processing {} files in {} ms; " +
+                            "skipped {} files that were processed in an earlier run " +
+                            "and {} unchanged files",
+                    processor.getTotalProcessed(), elapsed, processor.getTotalSkipped(),
+                    processor.getTotalUnchanged());
         }
     }
 }
@@ -39,7 +39,6 @@ import org.apache.tika.config.Initializable;
 import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.exception.TikaConfigException;
-import org.apache.tika.metadata.Metadata;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.HandlerConfig;
 import org.apache.tika.pipes.emitter.EmitKey;
@@ -124,10 +123,12 @@ public class AZBlobPipesIterator extends PipesIterator implements Initializable
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("adding ({}) {} in {} ms", count, blob.getName(), elapsed);
             }
-            //TODO -- extract metadata about content length etc from properties
+            //TODO -- extract other metadata from properties
             tryToAdd(new FetchEmitTuple(blob.getName(), new FetchKey(fetcherName,
                     blob.getName()),
-                    new EmitKey(emitterName, blob.getName()), new Metadata(), handlerConfig,
+                    new EmitKey(emitterName, blob.getName()),
+                    metadataWithHints(blob.getProperties().getContentLength(),
+                            blob.getProperties().getETag()), handlerConfig,
                     getOnParseException()));
             count++;
         }
@@ -34,7 +34,6 @@ import org.apache.tika.config.Initializable;
 import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.exception.TikaConfigException;
-import org.apache.tika.metadata.Metadata;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.HandlerConfig;
 import org.apache.tika.pipes.emitter.EmitKey;
@@ -113,7 +112,8 @@ public class GCSPipesIterator extends PipesIterator implements Initializable {
             //TODO -- allow user specified metadata as the "id"?
             tryToAdd(new FetchEmitTuple(blob.getName(), new FetchKey(fetcherName,
                     blob.getName()),
-                    new EmitKey(emitterName, blob.getName()), new Metadata(), handlerConfig,
+                    new EmitKey(emitterName, blob.getName()),
+                    metadataWithHints(blob.getSize(), blob.getEtag()), handlerConfig,
                     getOnParseException()));
             count++;
         }
@@ -45,7 +45,6 @@ import org.apache.tika.config.InitializableProblemHandler;
 import org.apache.tika.config.Param;
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.io.FilenameUtils;
-import org.apache.tika.metadata.Metadata;
 import org.apache.tika.pipes.FetchEmitTuple;
 import org.apache.tika.pipes.HandlerConfig;
 import org.apache.tika.pipes.emitter.EmitKey;
@@ -205,7 +204,8 @@ public class S3PipesIterator extends PipesIterator implements Initializable {
             //TODO -- allow user specified metadata as the "id"?
             tryToAdd(new FetchEmitTuple(summary.getKey(), new FetchKey(fetcherName,
                     summary.getKey()),
-                    new EmitKey(emitterName, summary.getKey()), new Metadata(), handlerConfig,
+                    new EmitKey(emitterName, summary.getKey()),
+                    metadataWithHints(summary.getSize(), summary.getETag()), handlerConfig,
                     getOnParseException()));
             count++;
         }
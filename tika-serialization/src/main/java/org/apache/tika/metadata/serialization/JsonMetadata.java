@@ -31,6 +31,8 @@ import org.apache.commons.io.output.CloseShieldWriter;
 
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.sax.ContentSink;
 
 public class JsonMetadata {
 
@@ -59,12 +61,39 @@ public class JsonMetadata {
 
     static void writeMetadataObject(Metadata metadata, JsonGenerator jsonGenerator,
                                     boolean prettyPrint) throws IOException {
+        writeMetadataObject(metadata, jsonGenerator, prettyPrint, (Reader) null);
+    }
+
+    /**
+     * Writes the metadata with its text read from the sink, if the metadata
+     * refers to text in the sink; see
+     * {@link org.apache.tika.sax.ContentSinkRecursiveParserWrapperHandler}.
+     */
+    static void writeMetadataObject(Metadata metadata, JsonGenerator jsonGenerator,
+                                    boolean prettyPrint, ContentSink contentSink)
+            throws IOException {
+        try (Reader content = contentSink == null ? null : contentSink.newReader(metadata)) {
+            writeMetadataObject(metadata, jsonGenerator, prettyPrint, content);
+        }
+    }
+
+    /**
+     * @param content if not <code>null</code>, this is streamed into the json as
+     *                {@link TikaCoreProperties#TIKA_CONTENT}, after the other fields,
+     *                and the references into a {@link ContentSink} are left out
+     */
+    static void writeMetadataObject(Metadata metadata, JsonGenerator jsonGenerator,
+                                    boolean prettyPrint, Reader content) throws IOException {
         jsonGenerator.writeStartObject();
         String[] names = metadata.names();
         if (prettyPrint) {
             Arrays.sort(names, new PrettyMetadataKeyComparator());
         }
         for (String n : names) {
+            if (content != null && (n.equals(ContentSink.CONTENT_OFFSET.getName()) ||
+                    n.equals(ContentSink.CONTENT_LENGTH.getName()))) {
+                continue;
+            }
             String[] vals = metadata.getValues(n);
             if (vals.length == 0) {
                 continue;
@@ -78,6 +107,10 @@ public class JsonMetadata {
                 jsonGenerator.writeEndArray();
             }
         }
+        if (content != null) {
+            jsonGenerator.writeFieldName(TikaCoreProperties.TIKA_CONTENT.getName());
+            jsonGenerator.writeString(content, -1);
+        }
         jsonGenerator.writeEndObject();
     }
 
@@ -31,6 +31,7 @@ import org.apache.commons.io.output.CloseShieldWriter;
 
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.sax.ContentSink;
 
 public class JsonMetadataList {
     static volatile boolean PRETTY_PRINT = false;
@@ -43,6 +44,19 @@ public class JsonMetadataList {
      * @throws org.apache.tika.exception.TikaException if there is an IOException during writing
      */
     public static void toJson(List<Metadata> metadataList, Writer writer) throws IOException {
+        toJson(metadataList, null, writer);
+    }
+
+    /**
+     * Serializes a metadata list whose text is in a {@link ContentSink}, e.g. from
+     * {@link org.apache.tika.sax.ContentSinkRecursiveParserWrapperHandler}. The text
+     * is copied from the sink to the writer. This does not flush or close the writer.
+     *
+     * @param contentSink sink with the text of the documents, or <code>null</code>
+     *                    if the text is in the metadata
+     */
+    public static void toJson(List<Metadata> metadataList, ContentSink contentSink,
+                              Writer writer) throws IOException {
         if (metadataList == null) {
             writer.write("null");
             return;
@@ -54,7 +68,7 @@ public class JsonMetadataList {
             }
             jsonGenerator.writeStartArray();
             for (Metadata m : metadataList) {
-                JsonMetadata.writeMetadataObject(m, jsonGenerator, PRETTY_PRINT);
+                JsonMetadata.writeMetadataObject(m, jsonGenerator, PRETTY_PRINT, contentSink);
             }
             jsonGenerator.writeEndArray();
         }
@@ -18,6 +18,7 @@ package org.apache.tika.metadata.serialization;
 
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Writer;
 import java.util.Arrays;
 
@@ -38,20 +39,47 @@ public class JsonStreamingSerializer implements AutoCloseable {
     }
 
     public void add(Metadata metadata) throws IOException {
-        if (!hasStartedArray) {
-            jsonGenerator = new JsonFactory().createGenerator(writer);
-            jsonGenerator.writeStartArray();
-            hasStartedArray = true;
-        }
+        startArray();
         String[] names = metadata.names();
         Arrays.sort(names);
         JsonMetadata.writeMetadataObject(metadata, jsonGenerator, false);
     }
 
+    /**
+     * Adds the metadata with the text from the reader as
+     * {@link org.apache.tika.metadata.TikaCoreProperties#TIKA_CONTENT}. The text is
+     * copied to the writer without being read into a <code>String</code>.
+     * This does not close the reader.
+     */
+    public void add(Metadata metadata, Reader content) throws IOException {
+        startArray();
+        JsonMetadata.writeMetadataObject(metadata, jsonGenerator, false, content);
+    }
+
+    /**
+     * Pushes everything that has been added so far through to the writer
+     * and flushes the writer.
+     */
+    public void flush() throws IOException {
+        if (jsonGenerator != null) {
+            jsonGenerator.flush();
+        }
+    }
+
     @Override
     public void close() throws IOException {
+        //write an empty array if nothing was added
+        startArray();
         jsonGenerator.writeEndArray();
         jsonGenerator.flush();
         jsonGenerator.close();
     }
+
+    private void startArray() throws IOException {
+        if (!hasStartedArray) {
+            jsonGenerator = new JsonFactory().createGenerator(writer);
+            jsonGenerator.writeStartArray();
+            hasStartedArray = true;
+        }
+    }
 }
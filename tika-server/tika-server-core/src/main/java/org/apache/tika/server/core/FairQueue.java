@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.apache.tika.utils.StringUtils;
+
+/**
+ * Queue for work from several tenants, e.g. the tuples posted to /async, so
+ * that a tenant with a very large batch can't starve the others.
+ * <p>
+ * Items are taken by {@link PRIORITY}: nothing is taken from a priority class while
+ * a higher class has items. Within a class, tenants are served in proportion to their
+ * weights (stride scheduling): each tenant has a pass that advances by
+ * <code>1/weight</code> for each item taken, and the tenant with the lowest pass goes next.
+ * A tenant that had nothing queued starts at the pass of the last item taken, so that
+ * it can't save up credit while idle.
+ * <p>
+ * Each tenant may have at most <code>maxQueuedPerTenant</code> items queued.
+ * <p>
+ * Counters are kept for at most {@link #MAX_TENANT_STATS} tenants; beyond that, the
+ * counters of the tenants that were least recently offered or taken from, and have
+ * nothing queued, are dropped. The tenant usually comes from a request header, so
+ * this keeps clients from growing the counters without bound.
+ * <p>
+ * This class is thread safe.
+ */
+public class FairQueue<T> {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    static final int MAX_TENANT_STATS = 1000;
+
+    public enum PRIORITY {
+        HIGH, NORMAL, LOW;
+
+        /**
+         * @return the priority, or {@link #NORMAL} if <code>s</code> is blank
+         * @throws IllegalArgumentException if the priority isn't known
+         */
+        public static PRIORITY parse(String s) {
+            if (StringUtils.isBlank(s)) {
+                return NORMAL;
+            }
+            try {
+                return PRIORITY.valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("priority must be one of high, normal " +
+                        "or low; I regret I do not understand: " + s);
+            }
+        }
+    }
+
+    private final Function<T, String> tenantOf;
+    private final Function<T, PRIORITY> priorityOf;
+    private final int maxQueuedPerTenant;
+    private final int maxQueued;
+    private final Map<String, Integer> weights;
+
+    //per priority class: tenant -> queue; tenants with nothing queued are removed
+    private final List<Map<String, TenantQueue<T>>> classes;
+    //per priority class: the pass of the last tenant served
+    private final double[] classPass = new double[PRIORITY.values().length];
+    //tenant -> counters, least recently used first
+    private final Map<String, TenantStats> stats = new LinkedHashMap<>(16, 0.75f, true);
+    private int queued = 0;
+
+    /**
+     * @param maxQueuedPerTenant the most items a tenant may have queued
+     * @param maxQueued          the most items in the queue, across tenants
+     * @param weights            tenant -> weight; tenants that aren't listed have a weight of 1
+     */
+    public FairQueue(Function<T, String> tenantOf, Function<T, PRIORITY> priorityOf,
+                     int maxQueuedPerTenant, int maxQueued, Map<String, Integer> weights) {
+        this.tenantOf = tenantOf;
+        this.priorityOf = priorityOf;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.maxQueued = maxQueued;
+        this.weights = new HashMap<>(weights);
+        this.classes = new ArrayList<>();
+        for (int i = 0; i < PRIORITY.values().length; i++) {
+            classes.add(new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Adds all the items or, if that would go over a tenant's limit or the
+     * total limit, none of them.
+     *
+     * @return whether the items were added
+     */
+    public synchronized boolean offer(List<T> items) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (T item : items) {
+            counts.merge(tenant(item), 1, Integer::sum);
+        }
+        boolean reject = queued + items.size() > maxQueued;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (reject) {
+                break;
+            }
+            reject = getStats(e.getKey()).queued + e.getValue() > maxQueuedPerTenant;
+        }
+        if (reject) {
+            //none of the batch is added, so it is rejected for every tenant in it
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                getStats(e.getKey()).rejected += e.getValue();
+            }
+            return false;
+        }
+        for (T item : items) {
+            String tenant = tenant(item);
+            int p = priorityOf.apply(item).ordinal();
+            TenantQueue<T> q = classes.get(p).get(tenant);
+            if (q == null) {
+                q = new TenantQueue<>(1.0 / weights.getOrDefault(tenant, 1), classPass[p]);
+                classes.get(p).put(tenant, q);
+            }
+            q.items.add(item);
+            TenantStats s = getStats(tenant);
+            s.queued++;
+            s.offered++;
+        }
+        queued += items.size();
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * @return the next item, or <code>null</code> if there wasn't one within the timeout
+     */
+    public synchronized T poll(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (queued == 0) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return null;
+            }
+            wait(wait);
+        }
+        for (int p = 0; p < classes.size(); p++) {
+            Map<String, TenantQueue<T>> tenants = classes.get(p);
+            if (tenants.isEmpty()) {
+                continue;
+            }
+            String next = null;
+            TenantQueue<T> nextQueue = null;
+            for (Map.Entry<String, TenantQueue<T>> e : tenants.entrySet()) {
+                if (nextQueue == null || e.getValue().pass < nextQueue.pass) {
+                    next = e.getKey();
+                    nextQueue = e.getValue();
+                }
+            }
+            T item = nextQueue.items.poll();
+            classPass[p] = nextQueue.pass;
+            nextQueue.pass += nextQueue.stride;
+            if (nextQueue.items.isEmpty()) {
+                tenants.remove(next);
+            }
+            TenantStats s = getStats(next);
+            s.queued--;
+            s.taken++;
+            queued--;
+            return item;
+        }
+        //unreachable: queued > 0
+        throw new IllegalStateException("queued=" + queued + ", but nothing is queued");
+    }
+
+    public synchronized int size() {
+        return queued;
+    }
+
+    /**
+     * @return tenant -> counters
+     */
+    public synchronized Map<String, TenantStats> getStats() {
+        Map<String, TenantStats> copy = new TreeMap<>();
+        for (Map.Entry<String, TenantStats> e : stats.entrySet()) {
+            copy.put(e.getKey(), new TenantStats(e.getValue()));
+        }
+        return copy;
+    }
+
+    private String tenant(T item) {
+        String tenant = tenantOf.apply(item);
+        return StringUtils.isBlank(tenant) ? DEFAULT_TENANT : tenant;
+    }
+
+    private TenantStats getStats(String tenant) {
+        TenantStats s = stats.get(tenant);
+        if (s == null) {
+            s = new TenantStats();
+            stats.put(tenant, s);
+            dropIdleStats(tenant);
+        }
+        return s;
+    }
+
+    private void dropIdleStats(String keep) {
+        Iterator<Map.Entry<String, TenantStats>> it = stats.entrySet().iterator();
+        while (stats.size() > MAX_TENANT_STATS && it.hasNext()) {
+            Map.Entry<String, TenantStats> e = it.next();
+            if (e.getValue().queued == 0 && !e.getKey().equals(keep)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class TenantQueue<T> {
+        private final ArrayDeque<T> items = new ArrayDeque<>();
+        private final double stride;
+        private double pass;
+
+        private TenantQueue(double stride, double pass) {
+            this.stride = stride;
+            this.pass = pass;
+        }
+    }
+
+    public static class TenantStats {
+        private long queued = 0;
+        private long offered = 0;
+        private long taken = 0;
+        private long rejected = 0;
+
+        private TenantStats() {
+        }
+
+        private TenantStats(TenantStats other) {
+            this.queued = other.queued;
+            this.offered = other.offered;
+            this.taken = other.taken;
+            this.rejected = other.rejected;
+        }
+
+        /**
+         * @return the number of items that are queued now
+         */
+        public long getQueued() {
+            return queued;
+        }
+
+        public long getOffered() {
+            return offered;
+        }
+
+        public long getTaken() {
+            return taken;
+        }
+
+        /**
+         * @return the number of items that weren't added because of the limits
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("queued", queued);
+            map.put("offered", offered);
+            map.put("taken", taken);
+            map.put("rejected", rejected);
+            return map;
+        }
+    }
+}
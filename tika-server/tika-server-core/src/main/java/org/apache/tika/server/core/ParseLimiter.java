@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of parses that run at once, independently of the number
+ * of requests that the server is handling; see
+ * {@link TikaServerConfig#setMaxConcurrentParses(int)}. Permits are handed out
+ * in the order that they were asked for.
+ */
+public class ParseLimiter {
+
+    private final int maxConcurrentParses;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    public ParseLimiter(int maxConcurrentParses) {
+        if (maxConcurrentParses < 1) {
+            throw new IllegalArgumentException("maxConcurrentParses must be > 0");
+        }
+        this.maxConcurrentParses = maxConcurrentParses;
+        this.permits = new Semaphore(maxConcurrentParses, true);
+    }
+
+    /**
+     * Waits until a parse may start. Every call that returns must be followed
+     * by a call to {@link #release()}.
+     */
+    public void acquire() throws InterruptedException {
+        //unlike tryAcquire(), this doesn't jump the queue
+        if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            return;
+        }
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        } finally {
+            waiting.decrementAndGet();
+            totalWaitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrentParses() {
+        return maxConcurrentParses;
+    }
+
+    /**
+     * @return the number of parses that are running
+     */
+    public int getActive() {
+        return maxConcurrentParses - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of requests that are waiting to parse
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+}
@@ -18,9 +18,12 @@ package org.apache.tika.server.core;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.tika.pipes.PipesMetrics;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +38,10 @@ public class ServerStatus {
     private Map<Long, TaskStatus> tasks = new HashMap<>();
     private STATUS status = STATUS.OPERATING;
     private volatile long lastStarted = Instant.now().toEpochMilli();
+    //endpoint -> its queue
+    private final Map<String, FairQueue<?>> queues = new LinkedHashMap<>();
+    //endpoint -> its pipes metrics
+    private final Map<String, PipesMetrics> pipesMetrics = new LinkedHashMap<>();
 
     public ServerStatus(String serverId, int numRestarts) {
         this(serverId, numRestarts, false);
@@ -97,6 +104,39 @@ public class ServerStatus {
         return status == STATUS.OPERATING;
     }
 
+    /**
+     * Registers an endpoint's queue, so that its per-tenant counters
+     * are reported with the status.
+     */
+    public synchronized void addQueue(String endpoint, FairQueue<?> queue) {
+        queues.put(endpoint, queue);
+    }
+
+    /**
+     * @return endpoint -> tenant -> counters, for the endpoints that queue by tenant
+     */
+    public synchronized Map<String, Map<String, FairQueue.TenantStats>> getQueueStats() {
+        Map<String, Map<String, FairQueue.TenantStats>> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, FairQueue<?>> e : queues.entrySet()) {
+            stats.put(e.getKey(), e.getValue().getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Registers an endpoint's pipes metrics, so that they are reported by /metrics.
+     */
+    public synchronized void addPipesMetrics(String endpoint, PipesMetrics metrics) {
+        pipesMetrics.put(endpoint, metrics);
+    }
+
+    /**
+     * @return endpoint -> metrics
+     */
+    public synchronized Map<String, PipesMetrics> getPipesMetrics() {
+        return new LinkedHashMap<>(pipesMetrics);
+    }
+
     public String getServerId() {
         return serverId;
     }
@@ -23,8 +23,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -75,6 +77,15 @@ public class TikaServerConfig extends ConfigBase {
      * Number of milliseconds to wait for forked process to startup
      */
     public static final long DEFAULT_FORKED_STARTUP_MILLIS = 120000;
+    /**
+     * Number of requests that a tenant may have queued in /async or /pipes.
+     */
+    public static final int DEFAULT_MAX_QUEUED_PER_TENANT = 10000;
+
+    /**
+     * Number of requests that may be queued in /async or /pipes, across tenants.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 100000;
     //used in fork mode -- restart after processing this many files
     private static final long DEFAULT_MAX_FILES = 100000;
     private static final int DEFAULT_DIGEST_MARK_LIMIT = 20 * 1024 * 1024;
@@ -90,7 +101,8 @@ public class TikaServerConfig extends ConfigBase {
     private static final List<String> ONLY_IN_FORK_MODE = Arrays.asList(
             new String[]{"taskTimeoutMillis", "taskPulseMillis",
                     "maxFiles", "javaPath", "maxRestarts", "numRestarts",
-                    "forkedStatusFile", "maxForkedStartupMillis", "tmpFilePrefix"});
+                    "forkedStatusFile", "maxForkedStartupMillis", "tmpFilePrefix",
+                    "sharedArchiveFile"});
 
         /*
     TODO: integrate these settings:
@@ -127,6 +139,7 @@ public class TikaServerConfig extends ConfigBase {
     private int digestMarkLimit = DEFAULT_DIGEST_MARK_LIMIT;
     private String digest = "";
     private String javaPath = "java";
+    private Path sharedArchiveFile = null;
     //debug or info only
     private String logLevel = "";
     private Path configPath;
@@ -139,6 +152,11 @@ public class TikaServerConfig extends ConfigBase {
     private boolean preventStopMethod = false;
 
     private TlsConfig tlsConfig = new TlsConfig();
+    private int maxQueuedPerTenant = DEFAULT_MAX_QUEUED_PER_TENANT;
+    private int maxQueued = DEFAULT_MAX_QUEUED;
+    private Map<String, Integer> tenantWeights = new HashMap<>();
+    private boolean virtualThreads = false;
+    private int maxConcurrentParses = -1;
     /**
      * Config with only the defaults
      */
@@ -398,6 +416,22 @@ public class TikaServerConfig extends ConfigBase {
         this.javaPath = javaPath;
     }
 
+    public Path getSharedArchiveFile() {
+        return sharedArchiveFile;
+    }
+
+    /**
+     * AppCDS archive for the forked server process. If it doesn't exist yet,
+     * it is created by a training run before the first forked process is started;
+     * see {@link org.apache.tika.utils.SharedArchiveUtils}. This requires java 13
+     * or later for the forked process; with older versions, it is ignored.
+     *
+     * @param sharedArchiveFile
+     */
+    public void setSharedArchiveFile(String sharedArchiveFile) {
+        this.sharedArchiveFile = Paths.get(sharedArchiveFile);
+    }
+
     public List<String> getForkedJvmArgs() {
         //defensively copy
         return new ArrayList<>(forkedJvmArgs);
@@ -539,6 +573,101 @@ public class TikaServerConfig extends ConfigBase {
         this.returnStackTrace = returnStackTrace;
     }
 
+    public int getMaxQueuedPerTenant() {
+        return maxQueuedPerTenant;
+    }
+
+    /**
+     * The /async and /pipes endpoints queue requests per tenant, see {@link FairQueue}.
+     * A request that would take a tenant over this many queued tuples is throttled.
+     *
+     * @param maxQueuedPerTenant
+     */
+    public void setMaxQueuedPerTenant(int maxQueuedPerTenant) {
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * A request that would take the queue of /async or /pipes over this many
+     * tuples, across tenants, is throttled.
+     *
+     * @param maxQueued
+     */
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Handle each request on its own virtual thread rather than on one from
+     * Jetty's bounded pool, so that requests that are blocked reading the body,
+     * fetching or writing the response don't tie up a thread. This needs a Java
+     * runtime with virtual threads (21+); on older runtimes the server logs a
+     * warning and uses the usual pool.
+     * <p>
+     * Parsing is CPU bound, so when this is on, the number of parses that run at
+     * once is limited by {@link #setMaxConcurrentParses(int)}.
+     *
+     * @param virtualThreads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMaxConcurrentParses() {
+        return maxConcurrentParses;
+    }
+
+    /**
+     * The most parses that may run at once in the synchronous endpoints, e.g.
+     * /tika and /rmeta. Other requests wait for a parse to finish, after their
+     * input has been spooled. If this is not set, parses aren't limited, unless
+     * {@link #setVirtualThreads(boolean)} is on, in which case the limit is the
+     * number of processors.
+     *
+     * @param maxConcurrentParses
+     */
+    public void setMaxConcurrentParses(int maxConcurrentParses) {
+        this.maxConcurrentParses = maxConcurrentParses;
+    }
+
+    public Map<String, Integer> getTenantWeights() {
+        return tenantWeights;
+    }
+
+    /**
+     * Tenant -> weight. Within a priority class, tenants are served in proportion
+     * to their weights. Tenants that aren't listed have a weight of 1.
+     *
+     * @param tenantWeights
+     * @throws TikaConfigException if a weight isn't a positive integer
+     */
+    public void setTenantWeights(Map<String, String> tenantWeights) throws TikaConfigException {
+        Map<String, Integer> weights = new HashMap<>();
+        for (Map.Entry<String, String> e : tenantWeights.entrySet()) {
+            int weight;
+            try {
+                weight = Integer.parseInt(e.getValue().trim());
+            } catch (NumberFormatException ex) {
+                throw new TikaConfigException("weight for tenant '" + e.getKey() +
+                        "' must be an integer: " + e.getValue());
+            }
+            if (weight < 1) {
+                throw new TikaConfigException("weight for tenant '" + e.getKey() +
+                        "' must be > 0: " + weight);
+            }
+            weights.put(e.getKey(), weight);
+        }
+        this.tenantWeights = weights;
+    }
+
     public void setTlsConfig(TlsConfig tlsConfig) {
         this.tlsConfig = tlsConfig;
     }
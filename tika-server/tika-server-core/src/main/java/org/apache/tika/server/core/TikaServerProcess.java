@@ -52,6 +52,7 @@ import org.apache.cxf.rs.security.cors.CrossOriginResourceSharingFilter;
 import org.apache.cxf.service.factory.ServiceConstructionException;
 import org.apache.cxf.transport.common.gzip.GZIPInInterceptor;
 import org.apache.cxf.transport.common.gzip.GZIPOutInterceptor;
+import org.apache.cxf.transport.http_jetty.JettyHTTPServerEngine;
 import org.apache.cxf.transport.http_jetty.JettyHTTPServerEngineFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,6 +77,7 @@ import org.apache.tika.server.core.resource.TikaDetectors;
 import org.apache.tika.server.core.resource.TikaMimeTypes;
 import org.apache.tika.server.core.resource.TikaParsers;
 import org.apache.tika.server.core.resource.TikaResource;
+import org.apache.tika.server.core.resource.TikaServerMetrics;
 import org.apache.tika.server.core.resource.TikaServerResource;
 import org.apache.tika.server.core.resource.TikaServerStatus;
 import org.apache.tika.server.core.resource.TikaVersion;
@@ -275,6 +277,9 @@ public class TikaServerProcess {
             factory.setBus(sf.getBus());
             manager.registerBindingFactory(JAXRSBindingFactory.JAXRS_BINDING_ID, factory);
         }
+        if (tikaServerConfig.isVirtualThreads()) {
+            configureVirtualThreads(sf, host, port);
+        }
         ServerDetails details = new ServerDetails();
         details.sf = sf;
         details.url = url;
@@ -283,6 +288,26 @@ public class TikaServerProcess {
         return details;
     }
 
+    private static void configureVirtualThreads(JAXRSServerFactoryBean sf, String host, int port)
+            throws GeneralSecurityException, IOException {
+        if (!VirtualThreadPool.isSupported()) {
+            LOG.warn("virtualThreads is set, but this Java runtime ({}) doesn't have virtual " +
+                    "threads. Using the default thread pool.", System.getProperty("java.version"));
+            return;
+        }
+        JettyHTTPServerEngineFactory factory = new JettyHTTPServerEngineFactory();
+        factory.setBus(sf.getBus());
+        //with TLS, the engine was created when its parameters were set
+        JettyHTTPServerEngine engine = factory.retrieveJettyHTTPServerEngine(port);
+        if (engine == null) {
+            engine = factory.createJettyHTTPServerEngine(host, port, "http");
+        }
+        engine.setThreadPool(new VirtualThreadPool());
+        //TikaResource.init always sets up a limiter when virtual threads are on
+        LOG.info("Handling requests on virtual threads, with at most {} parses at once",
+                TikaResource.getParseLimiter().getMaxConcurrentParses());
+    }
+
     private static TLSServerParameters getTlsParams(TlsConfig tlsConfig)
             throws GeneralSecurityException, IOException {
         KeyStoreType keyStore = new KeyStoreType();
@@ -392,6 +417,8 @@ public class TikaServerProcess {
                 }
                 resourceProviders
                         .add(new SingletonResourceProvider(new TikaServerStatus(serverStatus)));
+                resourceProviders
+                        .add(new SingletonResourceProvider(new TikaServerMetrics(serverStatus)));
             }
         } else {
             for (String endPoint : tikaServerConfig.getEndpoints()) {
@@ -424,13 +451,16 @@ public class TikaServerProcess {
                     addAsyncResource = true;
                 } else if ("status".equals(endPoint)) {
                     resourceProviders.add(new SingletonResourceProvider(new TikaServerStatus(serverStatus)));
+                } else if ("metrics".equals(endPoint)) {
+                    resourceProviders.add(new SingletonResourceProvider(new TikaServerMetrics(serverStatus)));
                 }
             }
         }
 
         if (addAsyncResource) {
             final AsyncResource localAsyncResource = new AsyncResource(
-                    tikaServerConfig.getConfigPath(), tikaServerConfig.getSupportedFetchers());
+                    tikaServerConfig.getConfigPath(), tikaServerConfig.getSupportedFetchers(),
+                    tikaServerConfig, serverStatus);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
                     localAsyncResource.shutdownNow();
@@ -442,7 +472,8 @@ public class TikaServerProcess {
         }
         if (addPipesResource) {
             final PipesResource localPipesResource =
-                    new PipesResource(tikaServerConfig.getConfigPath());
+                    new PipesResource(tikaServerConfig.getConfigPath(),
+                            tikaServerConfig, serverStatus);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
                     localPipesResource.close();
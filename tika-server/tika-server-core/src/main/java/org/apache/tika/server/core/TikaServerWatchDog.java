@@ -49,6 +49,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.utils.ProcessUtils;
+import org.apache.tika.utils.SharedArchiveUtils;
 
 public class TikaServerWatchDog implements Callable<WatchDogResult> {
 
@@ -408,6 +409,8 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
             //this is mostly for log4j 1.x so that different processes
             //can log to different log files
             jvmArgs.add("-Dtika.server.id=" + tikaServerConfig.getId());
+            argList.addAll(SharedArchiveUtils.getJvmArgs(javaPath, jvmArgs,
+                    tikaServerConfig.getSharedArchiveFile()));
             argList.addAll(jvmArgs);
 
             argList.add("org.apache.tika.server.core.TikaServerProcess");
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jetty thread pool that runs each task on a new virtual thread, see
+ * {@link TikaServerConfig#setVirtualThreads(boolean)}. Nothing is pooled:
+ * virtual threads are cheap to start, and a task that blocks on I/O gives
+ * its carrier thread back to the JVM instead of holding a pool thread.
+ * <p>
+ * The server is built for Java 8, so virtual threads are looked up by
+ * reflection; {@link #isSupported()} is <code>false</code> on runtimes
+ * without them.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPool.class);
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = loadFactory("tika-server-");
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @return whether this runtime has virtual threads
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    public VirtualThreadPool() {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later; this is " +
+                    System.getProperty("java.version"));
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!isRunning()) {
+            throw new RejectedExecutionException("thread pool is " + getState());
+        }
+        Thread thread = VIRTUAL_THREAD_FACTORY.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                threads.decrementAndGet();
+            }
+        });
+        threads.incrementAndGet();
+        try {
+            thread.start();
+        } catch (RuntimeException | Error e) {
+            threads.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        stopped.countDown();
+        super.doStop();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @return the number of tasks that are running
+     */
+    @Override
+    public int getThreads() {
+        return threads.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    //Thread.ofVirtual().name(prefix, 0).factory()
+    private static ThreadFactory loadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, prefix, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //e.g. a preview API on 19 or 20 without --enable-preview
+            LOG.debug("can't create virtual threads", e);
+            return null;
+        }
+    }
+}
@@ -22,7 +22,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -44,11 +43,15 @@ import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.metadata.serialization.JsonFetchEmitTupleList;
 import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.async.AsyncConfig;
 import org.apache.tika.pipes.async.AsyncProcessor;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.emitter.EmitterManager;
 import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.server.core.FairQueue;
+import org.apache.tika.server.core.ServerStatus;
+import org.apache.tika.server.core.TikaServerConfig;
 
 @Path("/async")
 public class AsyncResource {
@@ -59,13 +62,47 @@ public class AsyncResource {
     private final AsyncProcessor asyncProcessor;
     private final Set<String> supportedFetchers;
     private final EmitterManager emitterManager;
+    private final FairQueue<FetchEmitTuple> fairQueue;
+    private final int processorQueueSize;
+    //the most tuples to have waiting in the processor's queue
+    private final int dispatchDepth;
+    private final Thread dispatcher;
+    private volatile boolean closed = false;
     private ArrayBlockingQueue<FetchEmitTuple> queue;
 
     public AsyncResource(java.nio.file.Path tikaConfigPath, Set<String> supportedFetchers)
             throws TikaException, IOException, SAXException {
+        this(tikaConfigPath, supportedFetchers, TikaServerConfig.load(), null);
+    }
+
+    /**
+     * Posted tuples are queued per tenant in a {@link FairQueue}, which feeds the
+     * {@link AsyncProcessor}. Only a few tuples at a time are handed to the processor,
+     * so that a large batch in the processor's queue can't hold up other tenants.
+     *
+     * @param serverStatus if not <code>null</code>, the tenants' counters are reported
+     *                     through this
+     */
+    public AsyncResource(java.nio.file.Path tikaConfigPath, Set<String> supportedFetchers,
+                         TikaServerConfig tikaServerConfig, ServerStatus serverStatus)
+            throws TikaException, IOException, SAXException {
         this.asyncProcessor = new AsyncProcessor(tikaConfigPath);
         this.supportedFetchers = supportedFetchers;
         this.emitterManager = EmitterManager.load(tikaConfigPath);
+        AsyncConfig asyncConfig = AsyncConfig.load(tikaConfigPath);
+        this.processorQueueSize = asyncConfig.getQueueSize();
+        this.dispatchDepth = Math.min(asyncConfig.getNumClients() *
+                Math.max(1, asyncConfig.getConcurrentParsesPerProcess()), processorQueueSize);
+        this.fairQueue = new FairQueue<>(TenantHeaders::tenantOf, TenantHeaders::priorityOf,
+                tikaServerConfig.getMaxQueuedPerTenant(), tikaServerConfig.getMaxQueued(),
+                tikaServerConfig.getTenantWeights());
+        if (serverStatus != null) {
+            serverStatus.addQueue("async", fairQueue);
+            serverStatus.addPipesMetrics("async", asyncProcessor.getMetrics());
+        }
+        this.dispatcher = new Thread(this::dispatch, "async-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
     }
 
     public ArrayBlockingQueue<FetchEmitTuple> getFetchEmitQueue(int queueSize) {
@@ -99,6 +136,9 @@ public class AsyncResource {
                                     @Context UriInfo info) throws Exception {
 
         AsyncRequest request = deserializeASyncRequest(is);
+        for (FetchEmitTuple t : request.getTuples()) {
+            TenantHeaders.apply(t, httpHeaders);
+        }
 
         //make sure that there are no problems with
         //the requested fetchers and emitters
@@ -111,8 +151,7 @@ public class AsyncResource {
                 return badEmitter(t.getEmitKey());
             }
         }
-        Instant start = Instant.now();
-        boolean offered = asyncProcessor.offer(request.getTuples(), maxQueuePauseMs);
+        boolean offered = fairQueue.offer(request.getTuples());
         if (offered) {
             return ok(request.getTuples().size());
         } else {
@@ -148,7 +187,40 @@ public class AsyncResource {
         }
     }
 
+    /**
+     * Moves tuples from the fair queue to the processor, keeping the processor's
+     * queue short.
+     */
+    private void dispatch() {
+        while (!closed) {
+            try {
+                if (processorQueueSize - asyncProcessor.getCapacity() >= dispatchDepth) {
+                    Thread.sleep(50);
+                    continue;
+                }
+                FetchEmitTuple t = fairQueue.poll(1000);
+                if (t == null) {
+                    continue;
+                }
+                while (!closed && !asyncProcessor.offer(t, maxQueuePauseMs)) {
+                    LOG.warn("couldn't hand tuple {} to the async processor within {} ms; " +
+                            "trying again", t.getId(), maxQueuePauseMs);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IllegalStateException e) {
+                //the processor has been closed
+                LOG.debug("async processor closed", e);
+                return;
+            } catch (Exception e) {
+                LOG.warn("problem handing tuple to the async processor", e);
+            }
+        }
+    }
+
     public void shutdownNow() throws Exception {
+        closed = true;
+        dispatcher.interrupt();
         asyncProcessor.close();
     }
 
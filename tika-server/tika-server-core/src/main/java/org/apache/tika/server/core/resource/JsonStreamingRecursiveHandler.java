@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.resource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.filter.MetadataFilter;
+import org.apache.tika.metadata.filter.NoOpFilter;
+import org.apache.tika.metadata.serialization.JsonStreamingSerializer;
+import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.sax.ContentSink;
+import org.apache.tika.sax.ContentSinkRecursiveParserWrapperHandler;
+
+/**
+ * Handler for the streaming <code>/rmeta</code> endpoint. Rather than collecting the
+ * metadata of every document as {@link org.apache.tika.sax.RecursiveParserWrapperHandler}
+ * does, this writes each embedded document's metadata to the response as a json
+ * object as soon as that document has been parsed, so that memory use doesn't grow
+ * with the number of embedded documents.
+ * <p>
+ * The text of each document is written by the content handler as UTF-8 into a
+ * {@link ContentSink} segment, and copied from there into the json, so it is never
+ * held as a <code>String</code>. Metadata filters don't see the text in the sink, so
+ * if a filter other than {@link NoOpFilter} is configured, the text is built as a
+ * <code>String</code> and added to the metadata before it is filtered instead.
+ * <p>
+ * The container document is completed last, so it is the <em>last</em> object
+ * in the array rather than the first. Call {@link #close()} after the parse to
+ * end the array.
+ */
+public class JsonStreamingRecursiveHandler extends ContentSinkRecursiveParserWrapperHandler {
+
+    private final JsonStreamingSerializer serializer;
+    //false if the metadata filter has to see the text
+    private final boolean useContentSink;
+
+    public JsonStreamingRecursiveHandler(ContentHandlerFactory contentHandlerFactory,
+                                         int maxEmbeddedResources,
+                                         MetadataFilter metadataFilter, Writer writer) {
+        super(contentHandlerFactory, maxEmbeddedResources, metadataFilter, new ContentSink());
+        this.serializer = new JsonStreamingSerializer(writer);
+        this.useContentSink = metadataFilter instanceof NoOpFilter;
+    }
+
+    @Override
+    public ContentHandler getNewContentHandler() {
+        if (useContentSink) {
+            return super.getNewContentHandler();
+        }
+        return getContentHandlerFactory().getNewContentHandler();
+    }
+
+    @Override
+    public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata)
+            throws SAXException {
+        if (!useContentSink) {
+            addContent(contentHandler, metadata);
+        }
+        super.endEmbeddedDocument(contentHandler, metadata);
+    }
+
+    @Override
+    public void endDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+        if (!useContentSink) {
+            addContent(contentHandler, metadata);
+        }
+        super.endDocument(contentHandler, metadata);
+    }
+
+    /**
+     * Ends the json array, closes the writer and gives back the sink's buffers.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            serializer.close();
+        } finally {
+            super.close();
+        }
+    }
+
+    @Override
+    protected void handleDocument(Metadata metadata, ContentSink.Segment content,
+                                  boolean isContainer) throws SAXException {
+        try {
+            if (content == null) {
+                if (metadata.size() > 0) {
+                    serializer.add(metadata);
+                }
+            } else {
+                try (Reader reader = content.newReader()) {
+                    serializer.add(metadata, reader);
+                }
+            }
+            //let the client have it now rather than when the buffers fill up
+            serializer.flush();
+        } catch (IOException e) {
+            //most likely the client went away; stop the parse
+            throw new SAXException(e);
+        } finally {
+            if (content != null) {
+                content.release();
+            }
+        }
+    }
+}
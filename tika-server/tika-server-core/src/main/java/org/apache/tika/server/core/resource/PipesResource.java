@@ -22,8 +22,13 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -43,6 +48,9 @@ import org.apache.tika.pipes.PipesConfig;
 import org.apache.tika.pipes.PipesException;
 import org.apache.tika.pipes.PipesParser;
 import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.server.core.FairQueue;
+import org.apache.tika.server.core.ServerStatus;
+import org.apache.tika.server.core.TikaServerConfig;
 
 @Path("/pipes")
 public class PipesResource {
@@ -51,7 +59,27 @@ public class PipesResource {
     private static final Logger LOG = LoggerFactory.getLogger(PipesResource.class);
 
     private final PipesParser pipesParser;
+    private final FairQueue<Ticket> fairQueue;
+    //one per parse that the clients can run at once; a request may only start
+    //its parse once it holds one
+    private final Semaphore permits;
+    private final long maxWaitForClientMillis;
+    private final Thread dispatcher;
+    private volatile boolean closed = false;
+
     public PipesResource(java.nio.file.Path tikaConfig) throws TikaConfigException, IOException {
+        this(tikaConfig, TikaServerConfig.load(), null);
+    }
+
+    /**
+     * Requests wait for a free client in a {@link FairQueue}, so that a tenant that
+     * sends many requests at once can't keep the clients from the other tenants.
+     *
+     * @param serverStatus if not <code>null</code>, the tenants' counters are reported
+     *                     through this
+     */
+    public PipesResource(java.nio.file.Path tikaConfig, TikaServerConfig tikaServerConfig,
+                         ServerStatus serverStatus) throws TikaConfigException, IOException {
         PipesConfig pipesConfig = PipesConfig.load(tikaConfig);
         //this has to be zero. everything must be emitted through the PipesServer
         long maxEmit = pipesConfig.getMaxForEmitBatchBytes();
@@ -62,6 +90,19 @@ public class PipesResource {
             }
         }
         this.pipesParser = new PipesParser(pipesConfig);
+        this.permits = new Semaphore(PipesParser.getMaxConcurrentParses(pipesConfig));
+        this.maxWaitForClientMillis = pipesConfig.getMaxWaitForClientMillis();
+        this.fairQueue = new FairQueue<>(ticket -> TenantHeaders.tenantOf(ticket.tuple),
+                ticket -> TenantHeaders.priorityOf(ticket.tuple),
+                tikaServerConfig.getMaxQueuedPerTenant(), tikaServerConfig.getMaxQueued(),
+                tikaServerConfig.getTenantWeights());
+        if (serverStatus != null) {
+            serverStatus.addQueue("pipes", fairQueue);
+            serverStatus.addPipesMetrics("pipes", pipesParser.getMetrics());
+        }
+        this.dispatcher = new Thread(this::dispatch, "pipes-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
     }
 
 
@@ -89,13 +130,27 @@ public class PipesResource {
         try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
             t = JsonFetchEmitTuple.fromJson(reader);
         }
+        TenantHeaders.apply(t, httpHeaders);
         return processTuple(t);
     }
 
     private Map<String, String> processTuple(FetchEmitTuple fetchEmitTuple)
             throws InterruptedException, PipesException, IOException {
 
-        PipesResult pipesResult = pipesParser.parse(fetchEmitTuple);
+        Ticket ticket = new Ticket(fetchEmitTuple);
+        if (!fairQueue.offer(Collections.singletonList(ticket))) {
+            return returnThrottled();
+        }
+        if (!ticket.await(maxWaitForClientMillis)) {
+            throw new IllegalStateException("client not available within " +
+                    "allotted amount of time");
+        }
+        PipesResult pipesResult;
+        try {
+            pipesResult = pipesParser.parse(fetchEmitTuple);
+        } finally {
+            permits.release();
+        }
         switch (pipesResult.getStatus()) {
             case CLIENT_UNAVAILABLE_WITHIN_MS:
                 throw new IllegalStateException("client not available within " +
@@ -145,6 +200,13 @@ public class PipesResource {
         return statusMap;
     }
 
+    private Map<String, String> returnThrottled() {
+        Map<String, String> statusMap = new HashMap<>();
+        statusMap.put("status", "throttled");
+        statusMap.put("msg", "too many requests are queued at this time");
+        return statusMap;
+    }
+
     private Map<String, String> returnSuccess() {
         Map<String, String> statusMap = new HashMap<>();
         statusMap.put("status", "ok");
@@ -158,7 +220,71 @@ public class PipesResource {
         return statusMap;
     }
 
+    /**
+     * Hands the permits to the queued requests, in the order of the fair queue.
+     */
+    private void dispatch() {
+        while (!closed) {
+            try {
+                permits.acquire();
+                Ticket ticket = fairQueue.poll(1000);
+                if (ticket == null || !ticket.admit()) {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
     public void close() throws IOException {
+        closed = true;
+        dispatcher.interrupt();
         pipesParser.close();
     }
+
+    /**
+     * A request waiting in the fair queue. Either the dispatcher admits it, and
+     * hands it a permit, or the request gives up waiting; whichever comes first.
+     */
+    private class Ticket {
+        private final FetchEmitTuple tuple;
+        private final CountDownLatch admitted = new CountDownLatch(1);
+        private final AtomicBoolean decided = new AtomicBoolean(false);
+
+        private Ticket(FetchEmitTuple tuple) {
+            this.tuple = tuple;
+        }
+
+        /**
+         * @return false if the request has given up
+         */
+        private boolean admit() {
+            if (decided.compareAndSet(false, true)) {
+                admitted.countDown();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return whether the request was admitted and holds a permit
+         */
+        private boolean await(long timeoutMillis) throws InterruptedException {
+            try {
+                if (admitted.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                //give up; if the dispatcher has admitted the request already,
+                //hand back the permit that nobody else would release
+                if (!decided.compareAndSet(false, true)) {
+                    permits.release();
+                }
+                throw e;
+            }
+            //if this fails, the dispatcher admitted the request in the meantime
+            return !decided.compareAndSet(false, true);
+        }
+    }
 }
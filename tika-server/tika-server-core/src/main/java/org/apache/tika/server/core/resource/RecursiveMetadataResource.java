@@ -17,10 +17,12 @@
 
 package org.apache.tika.server.core.resource;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.tika.server.core.resource.TikaResource.fillMetadata;
 import static org.apache.tika.server.core.resource.TikaResource.fillParseContext;
 
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.util.List;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -33,6 +35,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
@@ -183,6 +186,84 @@ public class RecursiveMetadataResource {
                         HandlerConfig.PARSE_MODE.RMETA))).build();
     }
 
+    /**
+     * Streaming variant of {@link #getMetadata(InputStream, HttpHeaders, UriInfo, String)}
+     * for containers with very many embedded documents. Each document's metadata
+     * is written to the response as soon as that document has been parsed, instead
+     * of the whole list being collected and written at the end, so the client gets
+     * the first bytes early and the server's memory use doesn't grow with the
+     * number of embedded documents.
+     * <p>
+     * The response is the same json array as for <code>/rmeta</code>, except that
+     * the main document comes <em>last</em>;
+     * {@link org.apache.tika.metadata.serialization.JsonMetadataList#fromJson(java.io.Reader)}
+     * moves it back to the front.
+     * Once the first document has been written, the status code can't change;
+     * if the parse fails after that, the response is cut short.
+     * <p>
+     * Specify the handler for the content (xml, html, text, ignore)
+     * in the path:<br/>
+     * /rmeta/stream (default: xml)<br/>
+     * /rmeta/stream/xml    (store the content as xml)<br/>
+     * /rmeta/stream/text   (store the content as text)<br/>
+     * /rmeta/stream/ignore (don't record any content)<br/>
+     *
+     * @param info            uri info
+     * @param handlerTypeName which type of handler to use
+     * @return output that writes a json array of metadata objects
+     * @throws Exception
+     */
+    @PUT
+    @Produces("application/json")
+    @Path("stream{" + HANDLER_TYPE_PARAM + " : (/\\w+)?}")
+    public StreamingOutput getMetadataStreaming(InputStream is, @Context HttpHeaders httpHeaders,
+                                                @Context UriInfo info,
+                                                @PathParam(HANDLER_TYPE_PARAM)
+                                                        String handlerTypeName)
+            throws Exception {
+        Metadata metadata = new Metadata();
+        if (handlerTypeName != null && handlerTypeName.startsWith("/")) {
+            handlerTypeName = handlerTypeName.substring(1);
+        }
+        return produceStreamingOutput(TikaResource.getInputStream(is, metadata, httpHeaders, info),
+                metadata, httpHeaders.getRequestHeaders(),
+                buildHandlerConfig(httpHeaders.getRequestHeaders(), handlerTypeName,
+                        HandlerConfig.PARSE_MODE.RMETA));
+    }
+
+    private StreamingOutput produceStreamingOutput(InputStream is, Metadata metadata,
+                                                   MultivaluedMap<String, String> httpHeaders,
+                                                   HandlerConfig handlerConfig) {
+        final ParseContext context = new ParseContext();
+        Parser parser = TikaResource.createParser();
+
+        RecursiveParserWrapper wrapper = new RecursiveParserWrapper(parser);
+        fillMetadata(parser, metadata, httpHeaders);
+        fillParseContext(httpHeaders, metadata, context);
+        TikaResource.logRequest(LOG, "/rmeta/stream", metadata);
+
+        return outputStream -> {
+            JsonStreamingRecursiveHandler handler = new JsonStreamingRecursiveHandler(
+                    new BasicContentHandlerFactory(handlerConfig.getType(),
+                            handlerConfig.getWriteLimit()),
+                    handlerConfig.getMaxEmbeddedResources(),
+                    TikaResource.getConfig().getMetadataFilter(),
+                    new OutputStreamWriter(outputStream, UTF_8));
+            try {
+                TikaResource.parse(wrapper, LOG, "/rmeta/stream", is, handler, metadata, context);
+            } catch (TikaServerParseException e) {
+                //do nothing
+                LOG.debug("server parse exception", e);
+            } catch (SecurityException | WebApplicationException e) {
+                throw e;
+            } catch (Exception e) {
+                //we shouldn't get here?
+                LOG.error("something went seriously wrong", e);
+            }
+            handler.close();
+        };
+    }
+
     private MetadataList parseMetadataToMetadataList(InputStream is, Metadata metadata,
                                                      MultivaluedMap<String, String> httpHeaders,
                                                      UriInfo info, HandlerConfig handlerConfig)
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.resource;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.server.core.FairQueue;
+import org.apache.tika.utils.StringUtils;
+
+/**
+ * The tenant and priority of a tuple for the {@link FairQueue}s of /async and /pipes.
+ * They come from {@link FetchEmitTuple#TENANT} and {@link FetchEmitTuple#PRIORITY}
+ * in the tuple's metadata or, if those aren't set, from the request headers.
+ */
+class TenantHeaders {
+
+    static final String TENANT_HEADER = "X-Tika-Tenant";
+    static final String PRIORITY_HEADER = "X-Tika-Priority";
+
+    /**
+     * Copies the headers to the tuple's metadata, unless it has its own values.
+     *
+     * @throws BadRequestException if the priority isn't known
+     */
+    static void apply(FetchEmitTuple t, HttpHeaders httpHeaders) {
+        if (httpHeaders != null) {
+            String tenant = httpHeaders.getHeaderString(TENANT_HEADER);
+            if (!StringUtils.isBlank(tenant) && StringUtils.isBlank(t.getTenant())) {
+                t.getMetadata().set(FetchEmitTuple.TENANT, tenant);
+            }
+            String priority = httpHeaders.getHeaderString(PRIORITY_HEADER);
+            if (!StringUtils.isBlank(priority) && StringUtils.isBlank(t.getPriority())) {
+                t.getMetadata().set(FetchEmitTuple.PRIORITY, priority);
+            }
+        }
+        try {
+            FairQueue.PRIORITY.parse(t.getPriority());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    static String tenantOf(FetchEmitTuple t) {
+        return t.getTenant();
+    }
+
+    static FairQueue.PRIORITY priorityOf(FetchEmitTuple t) {
+        return FairQueue.PRIORITY.parse(t.getPriority());
+    }
+}
@@ -67,6 +67,8 @@ import org.apache.tika.config.TikaTaskTimeout;
 import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.AutoDetectParser;
@@ -82,6 +84,7 @@ import org.apache.tika.sax.boilerpipe.BoilerpipeContentHandler;
 import org.apache.tika.server.core.CompositeParseContextConfig;
 import org.apache.tika.server.core.InputStreamFactory;
 import org.apache.tika.server.core.ParseContextConfig;
+import org.apache.tika.server.core.ParseLimiter;
 import org.apache.tika.server.core.ServerStatus;
 import org.apache.tika.server.core.TikaServerConfig;
 import org.apache.tika.server.core.TikaServerParseException;
@@ -100,6 +103,7 @@ public class TikaResource {
     private static DigestingParser.Digester DIGESTER = null;
     private static InputStreamFactory INPUTSTREAM_FACTORY = null;
     private static ServerStatus SERVER_STATUS = null;
+    private static ParseLimiter PARSE_LIMITER = null;
 
     private static ParseContextConfig PARSE_CONTEXT_CONFIG = new CompositeParseContextConfig();
 
@@ -112,6 +116,19 @@ public class TikaResource {
         DIGESTER = digester;
         INPUTSTREAM_FACTORY = inputStreamFactory;
         SERVER_STATUS = serverStatus;
+        int maxConcurrentParses = tikaServerConfg.getMaxConcurrentParses();
+        if (maxConcurrentParses < 1 && tikaServerConfg.isVirtualThreads()) {
+            maxConcurrentParses = Runtime.getRuntime().availableProcessors();
+        }
+        PARSE_LIMITER = maxConcurrentParses > 0 ? new ParseLimiter(maxConcurrentParses) : null;
+    }
+
+    /**
+     * @return the limiter of concurrent parses, or <code>null</code> if parses
+     * aren't limited
+     */
+    public static ParseLimiter getParseLimiter() {
+        return PARSE_LIMITER;
     }
 
 
@@ -352,6 +369,10 @@ public class TikaResource {
         String fileName = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
         long timeoutMillis = getTaskTimeout(parseContext);
 
+        ParseLimiter parseLimiter = PARSE_LIMITER;
+        if (parseLimiter != null) {
+            inputStream = acquireParse(parseLimiter, inputStream, metadata);
+        }
         long taskId = SERVER_STATUS.start(ServerStatus.TASK.PARSE, fileName, timeoutMillis);
         try {
             parser.parse(inputStream, handler, metadata, parseContext);
@@ -371,10 +392,45 @@ public class TikaResource {
             throw e;
         } finally {
             SERVER_STATUS.complete(taskId);
+            if (parseLimiter != null) {
+                parseLimiter.release();
+            }
             inputStream.close();
         }
     }
 
+    /**
+     * Reads the whole input, i.e. the request body or the fetched file, into a
+     * temporary file and then waits for the limiter to let the parse start. The
+     * input is read first so that slow clients and fetchers don't hold a permit,
+     * and so that the parse's timeout doesn't include waiting for one.
+     *
+     * @return the spooled stream, which closes the original one. If this
+     * throws, the input has been closed.
+     */
+    private static InputStream acquireParse(ParseLimiter parseLimiter, InputStream inputStream,
+                                            Metadata metadata) throws IOException {
+        TikaInputStream tis = TikaInputStream.get(inputStream, new TemporaryResources(), metadata);
+        boolean acquired = false;
+        try {
+            try {
+                tis.getPath();
+            } catch (IOException e) {
+                throw new TikaServerParseException(e);
+            }
+            parseLimiter.acquire();
+            acquired = true;
+            return tis;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(e, Response.Status.SERVICE_UNAVAILABLE);
+        } finally {
+            if (!acquired) {
+                tis.close();
+            }
+        }
+    }
+
     protected static long getTaskTimeout(ParseContext parseContext) {
 
         TikaTaskTimeout tikaTaskTimeout = parseContext.get(TikaTaskTimeout.class);
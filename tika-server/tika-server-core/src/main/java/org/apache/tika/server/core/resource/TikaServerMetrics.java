@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.resource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.tika.pipes.PipesMetrics;
+import org.apache.tika.server.core.ParseLimiter;
+import org.apache.tika.server.core.ServerStatus;
+import org.apache.tika.utils.XMLReaderUtils;
+
+/**
+ * The latencies of the pipes stages and the result counts of /async and /pipes,
+ * the use of the XML parser pools and, if parses are limited, the parses that
+ * are running and waiting, in the Prometheus text format.
+ */
+@Path("/metrics")
+public class TikaServerMetrics {
+    private final ServerStatus serverStatus;
+
+    public TikaServerMetrics(ServerStatus serverStatus) {
+        this.serverStatus = serverStatus;
+    }
+
+    @GET
+    @Produces("text/plain; version=0.0.4")
+    public String getMetrics() throws IOException {
+        StringWriter writer = new StringWriter();
+        PipesMetrics.writePrometheus(serverStatus.getPipesMetrics(), writer);
+        writeXMLPoolStats(writer);
+        writeParseLimiterStats(writer);
+        return writer.toString();
+    }
+
+    private static void writeXMLPoolStats(Writer writer) throws IOException {
+        XMLReaderUtils.PoolStats sax = XMLReaderUtils.getSAXPoolStats();
+        XMLReaderUtils.PoolStats dom = XMLReaderUtils.getDOMPoolStats();
+        writer.write("# HELP tika_xml_pool_acquired_total Parsers taken from the XML pools.\n");
+        writer.write("# TYPE tika_xml_pool_acquired_total counter\n");
+        writeSample(writer, "tika_xml_pool_acquired_total", "sax", sax.getAcquired());
+        writeSample(writer, "tika_xml_pool_acquired_total", "dom", dom.getAcquired());
+        writer.write("# HELP tika_xml_pool_created_total Parsers built because none was idle.\n");
+        writer.write("# TYPE tika_xml_pool_created_total counter\n");
+        writeSample(writer, "tika_xml_pool_created_total", "sax", sax.getCreated());
+        writeSample(writer, "tika_xml_pool_created_total", "dom", dom.getCreated());
+        writer.write("# HELP tika_xml_pool_dropped_total Parsers not kept because the pool " +
+                "was full.\n");
+        writer.write("# TYPE tika_xml_pool_dropped_total counter\n");
+        writeSample(writer, "tika_xml_pool_dropped_total", "sax", sax.getDropped());
+        writeSample(writer, "tika_xml_pool_dropped_total", "dom", dom.getDropped());
+        writer.write("# HELP tika_xml_pool_acquire_seconds_total Time spent getting parsers " +
+                "from the XML pools.\n");
+        writer.write("# TYPE tika_xml_pool_acquire_seconds_total counter\n");
+        writeSample(writer, "tika_xml_pool_acquire_seconds_total", "sax",
+                sax.getTotalAcquireNanos() / 1e9);
+        writeSample(writer, "tika_xml_pool_acquire_seconds_total", "dom",
+                dom.getTotalAcquireNanos() / 1e9);
+    }
+
+    private static void writeParseLimiterStats(Writer writer) throws IOException {
+        ParseLimiter parseLimiter = TikaResource.getParseLimiter();
+        if (parseLimiter == null) {
+            return;
+        }
+        writer.write("# HELP tika_server_parses_active Parses that are running.\n");
+        writer.write("# TYPE tika_server_parses_active gauge\n");
+        writer.write("tika_server_parses_active " + parseLimiter.getActive() + "\n");
+        writer.write("# HELP tika_server_parses_waiting Requests waiting for a parse to " +
+                "finish.\n");
+        writer.write("# TYPE tika_server_parses_waiting gauge\n");
+        writer.write("tika_server_parses_waiting " + parseLimiter.getWaiting() + "\n");
+        writer.write("# HELP tika_server_parses_max Parses that may run at once.\n");
+        writer.write("# TYPE tika_server_parses_max gauge\n");
+        writer.write("tika_server_parses_max " + parseLimiter.getMaxConcurrentParses() + "\n");
+        writer.write("# HELP tika_server_parse_wait_seconds_total Time spent waiting for " +
+                "a parse to finish.\n");
+        writer.write("# TYPE tika_server_parse_wait_seconds_total counter\n");
+        writer.write("tika_server_parse_wait_seconds_total " +
+                parseLimiter.getTotalWaitNanos() / 1e9 + "\n");
+    }
+
+    private static void writeSample(Writer writer, String name, String pool, Object value)
+            throws IOException {
+        writer.write(name + "{pool=\"" + pool + "\"} " + value + "\n");
+    }
+}
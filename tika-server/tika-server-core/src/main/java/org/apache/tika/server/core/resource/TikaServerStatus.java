@@ -22,6 +22,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 
+import org.apache.tika.server.core.FairQueue;
 import org.apache.tika.server.core.ServerStatus;
 
 @Path("/status")
@@ -41,6 +42,18 @@ public class TikaServerStatus {
         map.put("millis_since_last_parse_started", serverStatus.getMillisSinceLastParseStarted());
         map.put("files_processed", serverStatus.getFilesProcessed());
         map.put("num_restarts", serverStatus.getNumRestarts());
+        Map<String, Map<String, FairQueue.TenantStats>> queueStats = serverStatus.getQueueStats();
+        if (!queueStats.isEmpty()) {
+            Map<String, Object> queues = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, FairQueue.TenantStats>> e : queueStats.entrySet()) {
+                Map<String, Object> tenants = new LinkedHashMap<>();
+                for (Map.Entry<String, FairQueue.TenantStats> t : e.getValue().entrySet()) {
+                    tenants.put(t.getKey(), t.getValue().toMap());
+                }
+                queues.put(e.getKey(), tenants);
+            }
+            map.put("tenant_queues", queues);
+        }
         return map;
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class FairQueueTest {
+
+    @Test
+    public void testPriority() throws Exception {
+        FairQueue<Item> q = newQueue(100, Collections.emptyMap());
+        assertTrue(q.offer(items("a", FairQueue.PRIORITY.LOW, 2)));
+        assertTrue(q.offer(items("b", FairQueue.PRIORITY.HIGH, 1)));
+        assertTrue(q.offer(items("c", FairQueue.PRIORITY.NORMAL, 1)));
+        assertEquals("b", q.poll(0).tenant);
+        assertEquals("c", q.poll(0).tenant);
+        assertEquals("a", q.poll(0).tenant);
+        assertEquals("a", q.poll(0).tenant);
+        assertNull(q.poll(10));
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 2);
+        FairQueue<Item> q = newQueue(100, weights);
+        //a sends everything first, b still gets its share
+        assertTrue(q.offer(items("a", FairQueue.PRIORITY.NORMAL, 50)));
+        assertTrue(q.offer(items("b", FairQueue.PRIORITY.NORMAL, 50)));
+        Map<String, Integer> taken = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            taken.merge(q.poll(0).tenant, 1, Integer::sum);
+        }
+        assertEquals(20, (int) taken.get("a"));
+        assertEquals(10, (int) taken.get("b"));
+    }
+
+    @Test
+    public void testNoCreditWhileIdle() throws Exception {
+        FairQueue<Item> q = newQueue(100, Collections.emptyMap());
+        assertTrue(q.offer(items("a", FairQueue.PRIORITY.NORMAL, 20)));
+        for (int i = 0; i < 10; i++) {
+            q.poll(0);
+        }
+        //b arrives late and alternates with a rather than going ten times in a row
+        assertTrue(q.offer(items("b", FairQueue.PRIORITY.NORMAL, 10)));
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            order.add(q.poll(0).tenant);
+        }
+        assertEquals(2, Collections.frequency(order, "a"));
+        assertEquals(2, Collections.frequency(order, "b"));
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        FairQueue<Item> q = newQueue(5, Collections.emptyMap());
+        assertTrue(q.offer(items("a", FairQueue.PRIORITY.NORMAL, 4)));
+        //all or nothing
+        assertFalse(q.offer(items("a", FairQueue.PRIORITY.NORMAL, 2)));
+        assertTrue(q.offer(items("b", FairQueue.PRIORITY.NORMAL, 5)));
+        assertEquals(9, q.size());
+
+        Map<String, FairQueue.TenantStats> stats = q.getStats();
+        assertEquals(4, stats.get("a").getQueued());
+        assertEquals(4, stats.get("a").getOffered());
+        assertEquals(2, stats.get("a").getRejected());
+        assertEquals(5, stats.get("b").getQueued());
+
+        q.poll(0);
+        stats = q.getStats();
+        assertEquals(1, stats.get("a").getTaken() + stats.get("b").getTaken());
+    }
+
+    @Test
+    public void testMixedBatchRejected() throws Exception {
+        FairQueue<Item> q = newQueue(5, Collections.emptyMap());
+        assertTrue(q.offer(items("a", FairQueue.PRIORITY.NORMAL, 4)));
+        List<Item> batch = items("a", FairQueue.PRIORITY.NORMAL, 2);
+        batch.addAll(items("b", FairQueue.PRIORITY.NORMAL, 3));
+        //a's limit rejects the whole batch, b's items too
+        assertFalse(q.offer(batch));
+        Map<String, FairQueue.TenantStats> stats = q.getStats();
+        assertEquals(2, stats.get("a").getRejected());
+        assertEquals(3, stats.get("b").getRejected());
+        assertEquals(0, stats.get("b").getQueued());
+    }
+
+    @Test
+    public void testStatsAreBounded() throws Exception {
+        FairQueue<Item> q = newQueue(5, Collections.emptyMap());
+        assertTrue(q.offer(items("queued", FairQueue.PRIORITY.NORMAL, 1)));
+        for (int i = 0; i < FairQueue.MAX_TENANT_STATS * 2; i++) {
+            q.offer(items("tenant-" + i, FairQueue.PRIORITY.NORMAL, 6));
+        }
+        Map<String, FairQueue.TenantStats> stats = q.getStats();
+        assertEquals(FairQueue.MAX_TENANT_STATS, stats.size());
+        //tenants with queued items are kept
+        assertEquals(1, stats.get("queued").getQueued());
+        assertEquals(6, stats.get("tenant-" + (FairQueue.MAX_TENANT_STATS * 2 - 1))
+                .getRejected());
+        assertNull(stats.get("tenant-0"));
+    }
+
+    @Test
+    public void testDefaultTenant() throws Exception {
+        FairQueue<Item> q = newQueue(5, Collections.emptyMap());
+        assertTrue(q.offer(items(null, FairQueue.PRIORITY.NORMAL, 1)));
+        assertEquals(1, q.getStats().get(FairQueue.DEFAULT_TENANT).getQueued());
+    }
+
+    @Test
+    public void testParsePriority() {
+        assertEquals(FairQueue.PRIORITY.NORMAL, FairQueue.PRIORITY.parse(null));
+        assertEquals(FairQueue.PRIORITY.HIGH, FairQueue.PRIORITY.parse(" High"));
+        assertThrows(IllegalArgumentException.class, () -> FairQueue.PRIORITY.parse("urgent"));
+    }
+
+    private static FairQueue<Item> newQueue(int maxQueuedPerTenant,
+                                            Map<String, Integer> weights) {
+        return new FairQueue<>(item -> item.tenant, item -> item.priority,
+                maxQueuedPerTenant, 1000, weights);
+    }
+
+    private static List<Item> items(String tenant, FairQueue.PRIORITY priority, int n) {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            items.add(new Item(tenant, priority));
+        }
+        return items;
+    }
+
+    private static class Item {
+        private final String tenant;
+        private final FairQueue.PRIORITY priority;
+
+        Item(String tenant, FairQueue.PRIORITY priority) {
+            this.tenant = tenant;
+            this.priority = priority;
+        }
+    }
+}
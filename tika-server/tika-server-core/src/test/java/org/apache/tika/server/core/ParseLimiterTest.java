@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ParseLimiterTest {
+
+    @Test
+    public void testLimit() throws Exception {
+        ParseLimiter limiter = new ParseLimiter(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    limiter.acquire();
+                    try {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.sleep(20);
+                        running.decrementAndGet();
+                    } finally {
+                        limiter.release();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, limiter.getActive());
+        assertEquals(0, limiter.getWaiting());
+        assertTrue(limiter.getTotalWaitNanos() > 0);
+    }
+
+    @Test
+    public void testWaiting() throws Exception {
+        ParseLimiter limiter = new ParseLimiter(1);
+        limiter.acquire();
+        assertEquals(1, limiter.getActive());
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                limiter.release();
+            } catch (InterruptedException e) {
+                //expected
+            }
+        });
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 60000;
+        while (limiter.getWaiting() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, limiter.getWaiting());
+        limiter.release();
+        waiter.join(60000);
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(0, limiter.getActive());
+    }
+
+    @Test
+    public void testBadLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimiter(0));
+    }
+}
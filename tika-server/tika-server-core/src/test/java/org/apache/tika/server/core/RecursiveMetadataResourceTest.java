@@ -44,6 +44,8 @@ public class RecursiveMetadataResourceTest extends CXFTestBase {
 
     public static final String TEST_NULL_POINTER = "test-documents/mock/null_pointer.xml";
 
+    public static final String TEST_EMBEDDED = "test-documents/mock/embedded_docs.xml";
+
     @Override
     protected void setUpResources(JAXRSServerFactoryBean sf) {
         sf.setResourceClasses(RecursiveMetadataResource.class);
@@ -73,6 +75,29 @@ public class RecursiveMetadataResourceTest extends CXFTestBase {
                 metadata.get(TikaCoreProperties.CONTAINER_EXCEPTION));
 
     }
+
+    @Test
+    public void testStreaming() throws Exception {
+        Response response = WebClient.create(endPoint + META_PATH + "/stream/text")
+                .accept("application/json")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_EMBEDDED));
+        assertEquals(200, response.getStatus());
+        Reader reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        List<Metadata> metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(3, metadataList.size());
+        //the container is written last; fromJson moves it back to the front
+        Metadata container = metadataList.get(0);
+        assertEquals("Nikolai Lobachevsky", container.get("author"));
+        assertEquals("0", container.get(TikaCoreProperties.EMBEDDED_DEPTH));
+        assertContains("main_content", container.get(TikaCoreProperties.TIKA_CONTENT));
+        assertEquals("ToTextContentHandler",
+                container.get(TikaCoreProperties.TIKA_CONTENT_HANDLER));
+        assertEquals("embeddedAuthor1", metadataList.get(1).get("author"));
+        assertContains("embedded_content1",
+                metadataList.get(1).get(TikaCoreProperties.TIKA_CONTENT));
+        assertEquals("embeddedAuthor2", metadataList.get(2).get("author"));
+    }
+
     /*
     @Test
     public void testWriteLimitInAll() throws Exception {